@@ -0,0 +1,91 @@
+package de.geolykt.easyconomy.api;
+
+import java.util.Objects;
+import java.util.UUID;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Identifies an account, which is either the balance of a player or a {@link Bank}.
+ *  Used by operations such as {@link EasyconomyEcoAPI#transfer(AccountKey, AccountKey, double, boolean)}
+ *  that work on both kinds of accounts.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+public final class AccountKey {
+
+    private final @Nullable UUID player;
+    private final @Nullable String bank;
+
+    private AccountKey(@Nullable UUID player, @Nullable String bank) {
+        this.player = player;
+        this.bank = bank;
+    }
+
+    /**
+     * Obtains the key of the balance of a player.
+     * @param player The UUID of the player
+     * @return The key of the account
+     * @since 1.2.0
+     */
+    public static @NotNull AccountKey player(@NotNull UUID player) {
+        return new AccountKey(Objects.requireNonNull(player, "player"), null);
+    }
+
+    /**
+     * Obtains the key of a bank.
+     * @param bank The name of the bank
+     * @return The key of the account
+     * @since 1.2.0
+     */
+    public static @NotNull AccountKey bank(@NotNull String bank) {
+        return new AccountKey(null, Objects.requireNonNull(bank, "bank"));
+    }
+
+    /**
+     * Queries whether the account is a bank.
+     * @return True if the account is a bank, false if it is the balance of a player
+     * @since 1.2.0
+     */
+    public boolean isBank() {
+        return bank != null;
+    }
+
+    /**
+     * Obtains the UUID of the player.
+     * @return The UUID of the player, or null if the account is a bank
+     * @since 1.2.0
+     */
+    public @Nullable UUID getPlayer() {
+        return player;
+    }
+
+    /**
+     * Obtains the name of the bank.
+     * @return The name of the bank, or null if the account is the balance of a player
+     * @since 1.2.0
+     */
+    public @Nullable String getBank() {
+        return bank;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+        if (!(obj instanceof AccountKey)) {
+            return false;
+        }
+        AccountKey other = (AccountKey) obj;
+        return Objects.equals(player, other.player) && Objects.equals(bank, other.bank);
+    }
+
+    @Override
+    public int hashCode() {
+        return player != null ? player.hashCode() : ~bank.hashCode();
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return player != null ? player.toString() : "bank:" + bank;
+    }
+}
@@ -0,0 +1,93 @@
+package de.geolykt.easyconomy.api;
+
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Locks accounts above the storages, so that work which has to happen in the order in which the balance of an account
+ *  changes, such as auditing the change, can be done while the account is locked. Accounts are mapped to one of 64
+ *  stripes and a set of stripes is represented by the bits of a long. The stripes of a set are always locked in
+ *  ascending order, so several accounts can be locked without risking a deadlock and {@link #ALL all} stripes can be
+ *  locked at once without recursion, which excludes every change that is made while holding a stripe.
+ * <br/>
+ * The stripes are acquired before the lock of any {@link Bank} and before any lock of a {@link PlayerDataStorage},
+ *  which means that they can be held while invoking the {@link TransferEngine}.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+public final class AccountLocks {
+
+    /**
+     * The set of all stripes.
+     * @since 1.2.0
+     */
+    public static final long ALL = -1L;
+
+    private final @NotNull ReentrantLock @NotNull[] stripes = new ReentrantLock[64];
+
+    public AccountLocks() {
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Obtains the stripe of the balance of a player.
+     * @param player The UUID of the player
+     * @return The set that only contains the stripe of the player
+     * @since 1.2.0
+     */
+    public static long stripe(@NotNull UUID player) {
+        return stripe(player.hashCode());
+    }
+
+    /**
+     * Obtains the stripe of a bank.
+     * @param bank The name of the bank
+     * @return The set that only contains the stripe of the bank
+     * @since 1.2.0
+     */
+    public static long stripe(@NotNull String bank) {
+        return stripe(bank.hashCode());
+    }
+
+    /**
+     * Obtains the stripe of an account.
+     * @param account The account
+     * @return The set that only contains the stripe of the account
+     * @since 1.2.0
+     */
+    public static long stripe(@NotNull AccountKey account) {
+        UUID player = account.getPlayer();
+        return player != null ? stripe(player) : stripe(account.getBank());
+    }
+
+    private static long stripe(int hash) {
+        return 1L << ((hash ^ (hash >>> 16) ^ (hash >>> 26)) & 63);
+    }
+
+    /**
+     * Locks a set of stripes in ascending order, blocking until all of them are acquired.
+     *  The stripes are reentrant, so a thread may lock a stripe it already holds.
+     * @param stripes The set of stripes, 0 to lock nothing
+     * @since 1.2.0
+     */
+    public void lock(long stripes) {
+        for (long remaining = stripes; remaining != 0; remaining &= remaining - 1) {
+            this.stripes[Long.numberOfTrailingZeros(remaining)].lock();
+        }
+    }
+
+    /**
+     * Unlocks a set of stripes that was locked by {@link #lock(long)}.
+     * @param stripes The set of stripes, 0 to unlock nothing
+     * @since 1.2.0
+     */
+    public void unlock(long stripes) {
+        for (long remaining = stripes; remaining != 0; remaining &= remaining - 1) {
+            this.stripes[Long.numberOfTrailingZeros(remaining)].unlock();
+        }
+    }
+}
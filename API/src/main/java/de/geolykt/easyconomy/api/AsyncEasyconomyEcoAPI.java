@@ -0,0 +1,359 @@
+package de.geolykt.easyconomy.api;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import de.geolykt.easyconomy.api.storage.AuditRecord;
+
+/**
+ * An asynchronous variant of the {@link EasyconomyEcoAPI}, where every operation returns a {@link CompletableFuture}
+ *  instead of blocking the calling thread. The operations are run by a dedicated storage executor, which uses virtual
+ *  threads if the JVM supports them, and the futures are completed on the completion executor that is passed to the
+ *  constructor, which usually is the scheduler of the main thread. Callbacks attached to the futures thus run on that
+ *  thread as well and can safely interact with the server.
+ * <br/>
+ * If the completion executor no longer accepts tasks, for example while the server shuts down, the future is
+ *  completed exceptionally with a {@link RejectedExecutionException} instead, even if the operation itself succeeded.
+ *  Only callbacks that handle failures, such as {@link CompletableFuture#exceptionally(java.util.function.Function)},
+ *  then run on the thread of the storage executor.
+ * <br/>
+ * The operations are performed on the synchronous API and thereby behave the same way, including logging. Operations
+ *  are not guaranteed to be performed in the order in which they were submitted.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+public class AsyncEasyconomyEcoAPI implements AutoCloseable {
+
+    /**
+     * The amount of seconds {@link #close()} waits for submitted operations to complete.
+     * @since 1.2.0
+     */
+    public static final long CLOSE_TIMEOUT_SECONDS = 30L;
+
+    private final @NotNull EasyconomyEcoAPI api;
+    private final @NotNull ExecutorService storageExecutor;
+    private final @NotNull Executor completionExecutor;
+    private final boolean ownsExecutor;
+
+    /**
+     * Creates a new asynchronous API that runs the operations on a new executor created by
+     *  {@link #newStorageExecutor()}, which is shut down once this instance is closed.
+     * @param api The synchronous API that performs the operations
+     * @param completionExecutor The executor the futures are completed on, such as the scheduler of the main thread
+     * @since 1.2.0
+     */
+    public AsyncEasyconomyEcoAPI(@NotNull EasyconomyEcoAPI api, @NotNull Executor completionExecutor) {
+        this(api, newStorageExecutor(), completionExecutor, true);
+    }
+
+    /**
+     * Creates a new asynchronous API that runs the operations on the given executor, which is not shut down
+     *  once this instance is closed.
+     * @param api The synchronous API that performs the operations
+     * @param storageExecutor The executor that runs the operations, it should tolerate blocking tasks
+     * @param completionExecutor The executor the futures are completed on, such as the scheduler of the main thread
+     * @since 1.2.0
+     */
+    public AsyncEasyconomyEcoAPI(@NotNull EasyconomyEcoAPI api, @NotNull ExecutorService storageExecutor,
+            @NotNull Executor completionExecutor) {
+        this(api, storageExecutor, completionExecutor, false);
+    }
+
+    private AsyncEasyconomyEcoAPI(@NotNull EasyconomyEcoAPI api, @NotNull ExecutorService storageExecutor,
+            @NotNull Executor completionExecutor, boolean ownsExecutor) {
+        this.api = api;
+        this.storageExecutor = storageExecutor;
+        this.completionExecutor = completionExecutor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    /**
+     * Creates an executor that is suited to run storage operations. A new virtual thread is used for every task if
+     *  the JVM supports virtual threads, otherwise a fixed amount of daemon threads is used.
+     * @return The new executor
+     * @since 1.2.0
+     */
+    public static @NotNull ExecutorService newStorageExecutor() {
+        try {
+            // Only exists on Java 21 and newer, while the API needs to run on Java 8
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | ClassCastException expected) {
+            int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+            return Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "Easyconomy storage");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Obtains the synchronous API that performs the operations.
+     * @return The synchronous API
+     * @since 1.2.0
+     */
+    public @NotNull EasyconomyEcoAPI getSynchronous() {
+        return api;
+    }
+
+    /**
+     * Runs an operation on the storage executor and completes the returned future on the completion executor.
+     */
+    private <T> @NotNull CompletableFuture<T> supply(@NotNull Supplier<T> operation) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            storageExecutor.execute(() -> {
+                T result;
+                try {
+                    result = operation.get();
+                } catch (Throwable t) {
+                    complete(future, null, t);
+                    return;
+                }
+                complete(future, result, null);
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private <T> void complete(@NotNull CompletableFuture<T> future, @Nullable T result, @Nullable Throwable failure) {
+        try {
+            completionExecutor.execute(() -> {
+                if (failure == null) {
+                    future.complete(result);
+                } else {
+                    future.completeExceptionally(failure);
+                }
+            });
+        } catch (RuntimeException e) {
+            // The scheduler no longer accepts tasks, for example because the server is shutting down. Completing the
+            // future normally would run the callbacks on this thread, where they must not interact with the server.
+            RejectedExecutionException rejected = new RejectedExecutionException(failure == null
+                    ? "The operation was performed, but the completion executor no longer accepts tasks."
+                    : "The operation failed and the completion executor no longer accepts tasks.", e);
+            if (failure != null) {
+                rejected.addSuppressed(failure);
+            }
+            future.completeExceptionally(rejected);
+        }
+    }
+
+    /**
+     * @see EasyconomyEcoAPI#givePlayerMoney(UUID, double)
+     * @since 1.2.0
+     */
+    public @NotNull CompletableFuture<Double> givePlayerMoney(@NotNull UUID player, double amount) {
+        return supply(() -> api.givePlayerMoney(player, amount));
+    }
+
+    /**
+     * @see EasyconomyEcoAPI#removePlayerMoney(UUID, double)
+     * @since 1.2.0
+     */
+    public @NotNull CompletableFuture<Double> removePlayerMoney(@NotNull UUID player, double amount) {
+        return supply(() -> api.removePlayerMoney(player, amount));
+    }
+
+    /**
+     * @see EasyconomyEcoAPI#withdrawIfAtLeast(UUID, double)
+     * @since 1.2.0
+     */
+    public @NotNull CompletableFuture<WithdrawResult> withdrawIfAtLeast(@NotNull UUID player, double amount) {
+        return supply(() -> api.withdrawIfAtLeast(player, amount));
+    }
+
+    /**
+     * @see EasyconomyEcoAPI#giveBankMoney(String, double)
+     * @since 1.2.0
+     */
+    public @NotNull CompletableFuture<Boolean> giveBankMoney(@NotNull String bankName, double amount) {
+        return supply(() -> api.giveBankMoney(bankName, amount));
+    }
+
+    /**
+     * @see EasyconomyEcoAPI#removeBankMoney(String, double)
+     * @since 1.2.0
+     */
+    public @NotNull CompletableFuture<Boolean> removeBankMoney(@NotNull String bankName, double amount) {
+        return supply(() -> api.removeBankMoney(bankName, amount));
+    }
+
+    /**
+     * @see EasyconomyEcoAPI#getBank(String)
+     * @since 1.2.0
+     */
+    public @NotNull CompletableFuture<Bank> getBank(@NotNull String name) {
+        return supply(() -> api.getBank(name));
+    }
+
+    /**
+     * @see EasyconomyEcoAPI#createBank(String)
+     * @since 1.2.0
+     */
+    public @NotNull CompletableFuture<Boolean> createBank(@NotNull String name) {
+        return supply(() -> api.createBank(name));
+    }
+
+    /**
+     * @see EasyconomyEcoAPI#isPlayerExisting(UUID)
+     * @since 1.2.0
+     */
+    public @NotNull CompletableFuture<Boolean> isPlayerExisting(@NotNull UUID player) {
+        return supply(() -> api.isPlayerExisting(player));
+    }
+
+    /**
+     * @see EasyconomyEcoAPI#createPlayer(UUID)
+     * @since 1.2.0
+     */
+    public @NotNull CompletableFuture<Boolean> createPlayer(@NotNull UUID player) {
+        return supply(() -> api.createPlayer(player));
+    }
+
+    /**
+     * @see EasyconomyEcoAPI#setBalance(UUID, double)
+     * @since 1.2.0
+     */
+    public @NotNull CompletableFuture<Double> setBalance(@NotNull UUID player, double amount) {
+        return supply(() -> api.setBalance(player, amount));
+    }
+
+    /**
+     * @see EasyconomyEcoAPI#setBalance(String, double)
+     * @since 1.2.0
+     */
+    public @NotNull CompletableFuture<Double> setBalance(@NotNull String bank, double amount) {
+        return supply(() -> api.setBalance(bank, amount));
+    }
+
+    /**
+     * @see EasyconomyEcoAPI#getPlayerBalance(UUID)
+     * @since 1.2.0
+     */
+    public @NotNull CompletableFuture<Double> getPlayerBalance(@NotNull UUID player) {
+        return supply(() -> api.getPlayerBalance(player));
+    }
+
+    /**
+     * @see EasyconomyEcoAPI#getBankBalance(String)
+     * @since 1.2.0
+     */
+    public @NotNull CompletableFuture<Double> getBankBalance(@NotNull String bank) {
+        return supply(() -> api.getBankBalance(bank));
+    }
+
+    /**
+     * @see EasyconomyEcoAPI#getPlayerBalances(UUID[])
+     * @since 1.2.0
+     */
+    public @NotNull CompletableFuture<double[]> getPlayerBalances(@NotNull UUID @NotNull[] players) {
+        return supply(() -> api.getPlayerBalances(players));
+    }
+
+    /**
+     * @see EasyconomyEcoAPI#applyPlayerDeltas(UUID[], double[])
+     * @since 1.2.0
+     */
+    public @NotNull CompletableFuture<double[]> applyPlayerDeltas(@NotNull UUID @NotNull[] players,
+            double @NotNull[] amounts) {
+        return supply(() -> api.applyPlayerDeltas(players, amounts));
+    }
+
+    /**
+     * @see EasyconomyEcoAPI#getBankBalances(String[])
+     * @since 1.2.0
+     */
+    public @NotNull CompletableFuture<double[]> getBankBalances(@NotNull String @NotNull[] banks) {
+        return supply(() -> api.getBankBalances(banks));
+    }
+
+    /**
+     * @see EasyconomyEcoAPI#applyBankDeltas(String[], double[])
+     * @since 1.2.0
+     */
+    public @NotNull CompletableFuture<double[]> applyBankDeltas(@NotNull String @NotNull[] banks,
+            double @NotNull[] amounts) {
+        return supply(() -> api.applyBankDeltas(banks, amounts));
+    }
+
+    /**
+     * @see EasyconomyEcoAPI#transferBalance(UUID, UUID, double)
+     * @since 1.2.0
+     */
+    public @NotNull CompletableFuture<Double> transferBalance(@NotNull UUID src, @NotNull UUID dest, double amount) {
+        return supply(() -> api.transferBalance(src, dest, amount));
+    }
+
+    /**
+     * @see EasyconomyEcoAPI#transfer(AccountKey, AccountKey, double, boolean)
+     * @since 1.2.0
+     */
+    public @NotNull CompletableFuture<Boolean> transfer(@NotNull AccountKey src, @NotNull AccountKey dest, double amount,
+            boolean failIfInsufficient) {
+        return supply(() -> api.transfer(src, dest, amount, failIfInsufficient));
+    }
+
+    /**
+     * The future completes exceptionally with an {@link UncheckedIOException} if the audit log could not be read.
+     * @see EasyconomyEcoAPI#getHistory(UUID, int, int)
+     * @since 1.2.0
+     */
+    public @NotNull CompletableFuture<List<AuditRecord>> getHistory(@NotNull UUID player, int skip, int limit) {
+        return supply(() -> {
+            try {
+                return api.getHistory(player, skip, limit);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Shuts down the storage executor if it was created by this instance and waits up to
+     *  {@link #CLOSE_TIMEOUT_SECONDS} seconds for the operations that were already submitted, so that their changes
+     *  are included in a save that follows. New operations fail with a {@link RejectedExecutionException}.
+     * @since 1.2.0
+     */
+    @Override
+    public void close() {
+        close(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Shuts down the storage executor if it was created by this instance and waits for the operations that were
+     *  already submitted to complete. New operations fail with a {@link RejectedExecutionException}.
+     * @param timeout The maximum time to wait
+     * @param unit The unit of the timeout
+     * @return True if all operations completed, false if the timeout elapsed or the thread was interrupted first.
+     *  Always true if the executor was not created by this instance, as it is neither shut down nor waited for.
+     * @since 1.2.0
+     */
+    public boolean close(long timeout, @NotNull TimeUnit unit) {
+        if (!ownsExecutor) {
+            return true;
+        }
+        storageExecutor.shutdown();
+        try {
+            return storageExecutor.awaitTermination(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -2,23 +2,32 @@ package de.geolykt.easyconomy.api;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Set;
 import java.util.UUID;
 
 import org.jetbrains.annotations.NotNull;
 
+/**
+ * A bank account. Operations that read and then change the balance synchronise on the bank instance,
+ *  so that they are atomic with respect to each other and to transfers.
+ */
 public interface Bank {
 
     public default void addMoney(double amount) {
-        // BigDecimal for less approximations when dealing with doubles (due to how floating point values are handled in
-        // Java, there will always be approximations) ( https://docs.oracle.com/cd/E19957-01/806-3568/ncg_goldberg.html )
-        this.setMoney(BigDecimal.valueOf(this.getMoney()).add(BigDecimal.valueOf(amount)).doubleValue());
+        synchronized (this) {
+            // Added as decimals for less approximations when dealing with doubles (due to how floating point values are handled in
+            // Java, there will always be approximations) ( https://docs.oracle.com/cd/E19957-01/806-3568/ncg_goldberg.html )
+            this.setMoney(FixedPoint.addDecimal(this.getMoney(), amount));
+        }
     }
 
     public default void removeMoney(double amount) {
-        // BigDecimal for less approximations when dealing with doubles (due to how floating point values are handled in
-        // Java, there will always be approximations) ( https://docs.oracle.com/cd/E19957-01/806-3568/ncg_goldberg.html )
-        this.setMoney(BigDecimal.valueOf(this.getMoney()).subtract(BigDecimal.valueOf(amount)).doubleValue());
+        synchronized (this) {
+            // Subtracted as decimals for less approximations when dealing with doubles (due to how floating point values are handled in
+            // Java, there will always be approximations) ( https://docs.oracle.com/cd/E19957-01/806-3568/ncg_goldberg.html )
+            this.setMoney(FixedPoint.addDecimal(this.getMoney(), -amount));
+        }
     }
 
     public void setMoney(double amount);
@@ -27,6 +36,15 @@ public interface Bank {
     public boolean isMember(@NotNull UUID player);
     public boolean isMember(@NotNull String player);
 
+    /**
+     * Obtains the members of the bank, used by storages that store the members without the serialised form of the bank.
+     * @return A read-only view of the UUIDs of the members, empty if the bank does not support members
+     * @since 1.2.0
+     */
+    public default @NotNull Set<UUID> getMembers() {
+        return Collections.emptySet();
+    }
+
     public @NotNull String getName();
 
     public void serialize(@NotNull OutputStream outStream) throws IOException;
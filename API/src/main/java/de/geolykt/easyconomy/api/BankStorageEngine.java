@@ -65,6 +65,21 @@ public interface BankStorageEngine extends Saveable {
      */
     public @Nullable Bank get(@NotNull String name);
 
+    /**
+     * Removes the bank of a given name from the storage engine.
+     * @param name The name of the bank to remove
+     * @return The removed bank or null if there was no bank with the requested name
+     * @implNote The default implementation removes the bank via the set returned by {@link #getBanks()}.
+     * @since 1.2.0
+     */
+    public default @Nullable Bank remove(@NotNull String name) {
+        Bank bank = get(name);
+        if (bank != null) {
+            getBanks().remove(name);
+        }
+        return bank;
+    }
+
     /**
      * Copies the internal reference file to the backupDirectory
      * @param file The directory where the backups are held
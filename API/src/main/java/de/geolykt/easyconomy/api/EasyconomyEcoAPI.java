@@ -1,10 +1,16 @@
 package de.geolykt.easyconomy.api;
 
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import de.geolykt.easyconomy.api.storage.AuditLog;
+import de.geolykt.easyconomy.api.storage.AuditRecord;
+
 /**
  * The API interface of the Easyconomy plugin that can be used by other plugins to perform more complex tasks.
  *  It is also used as a bridge between different Economy APIs so the internal components of the plugin are guaranteed to 
@@ -90,6 +96,51 @@ public interface EasyconomyEcoAPI {
         return true;
     }
 
+    /**
+     * Atomically withdraws money from the balance of a player if the balance is at least the amount, which replaces
+     *  querying the balance and removing the money afterwards, as the balance may change in between.
+     * @param player The player that should be the target of the operation
+     * @param amount The amount of money that should be removed from the player
+     * @return Whether the money was withdrawn and the balance of the player afterwards,
+     *  Double.NEGATIVE_INFINITY if the player isn't known
+     * @implNote The default implementation uses {@link PlayerDataStorage#addAndGetIfAtLeast(UUID, double, double)}
+     *  and only queries the balance again if the withdrawal failed.
+     * @implSpec The implementation should always be thread safe.
+     * @since 1.2.0
+     */
+    public default @NotNull WithdrawResult withdrawIfAtLeast(@NotNull UUID player, double amount) {
+        double balance = getPlayerDataStorage().addAndGetIfAtLeast(player, -amount, amount);
+        if (Double.isNaN(balance)) {
+            return WithdrawResult.failure(getPlayerBalance(player));
+        }
+        return WithdrawResult.success(balance);
+    }
+
+    /**
+     * Atomically withdraws money from a bank if it's balance is at least the amount.
+     * @param bankName The bank that should be the target of the operation.
+     * @param amount The amount of money that should be removed from the bank
+     * @return Whether the money was withdrawn and the balance of the bank afterwards,
+     *  Double.NEGATIVE_INFINITY if the bank does not exist
+     * @implNote The default implementation synchronises on the bank, like {@link Bank#removeMoney(double)}.
+     * @implSpec The implementation should always be thread safe.
+     * @since 1.2.0
+     */
+    public default @NotNull WithdrawResult withdrawBankIfAtLeast(@NotNull String bankName, double amount) {
+        Bank bank = getBank(bankName);
+        if (bank == null) {
+            return WithdrawResult.failure(Double.NEGATIVE_INFINITY);
+        }
+        synchronized (bank) {
+            double balance = bank.getMoney();
+            if (!(balance >= amount)) {
+                return WithdrawResult.failure(balance);
+            }
+            bank.removeMoney(amount);
+            return WithdrawResult.success(bank.getMoney());
+        }
+    }
+
     /**
      * Converts an amount of the currency into the implementation's format. This may include adding adding currency symbols
      *  or adapting punctuation marks and other things to the different languages
@@ -193,6 +244,91 @@ public interface EasyconomyEcoAPI {
      */
     public double getBankBalance(@NotNull String bank);
 
+    // Batch operations
+    /**
+     * Returns the balances of several players at once, which is cheaper than querying them one after another.
+     * @param players the players to query
+     * @return the balances of the players, the balance of the player at index i of the array is at index i;
+     *  Double.NEGATIVE_INFINITY for players that are not known
+     * @implNote The default implementation queries the players one after another.
+     * @implSpec The implementation should always be thread safe.
+     * @since 1.2.0
+     */
+    public default double @NotNull[] getPlayerBalances(@NotNull UUID @NotNull[] players) {
+        double[] balances = new double[players.length];
+        for (int i = 0; i < players.length; i++) {
+            balances[i] = getPlayerBalance(players[i]);
+        }
+        return balances;
+    }
+
+    /**
+     * Applies several changes to the balances of players at once, as if {@link #givePlayerMoney(UUID, double)} was
+     *  invoked for each of them in order. Meant for plugins that settle many payments at once, such as shops or jobs,
+     *  as the implementation can lock, update the leaderboard and log once per batch instead of once per change.
+     *  Each balance is changed atomically, but the batch as a whole is not.
+     * @param players The players that should be the target of the operation, may contain duplicates
+     * @param amounts The amounts to give, the amount at index i is given to the player at index i.
+     *  Negative amounts remove money.
+     * @return The new balances, the balance after the change at index i is at index i
+     * @throws IllegalArgumentException If the arrays are not of the same length
+     * @implNote The default implementation invokes {@link #givePlayerMoney(UUID, double)} for each player.
+     * @implSpec The implementation should always be thread safe.
+     * @since 1.2.0
+     */
+    public default double @NotNull[] applyPlayerDeltas(@NotNull UUID @NotNull[] players, double @NotNull[] amounts) {
+        if (players.length != amounts.length) {
+            throw new IllegalArgumentException("There are " + players.length + " players but " + amounts.length + " amounts.");
+        }
+        double[] balances = new double[players.length];
+        for (int i = 0; i < players.length; i++) {
+            balances[i] = givePlayerMoney(players[i], amounts[i]);
+        }
+        return balances;
+    }
+
+    /**
+     * Returns the balances of several banks at once.
+     * @param banks the banks to query
+     * @return the balances of the banks, the balance of the bank at index i of the array is at index i;
+     *  Double.NEGATIVE_INFINITY if there is no bank attached to the name
+     * @implNote The default implementation queries the banks one after another.
+     * @implSpec The implementation should always be thread safe.
+     * @since 1.2.0
+     */
+    public default double @NotNull[] getBankBalances(@NotNull String @NotNull[] banks) {
+        double[] balances = new double[banks.length];
+        for (int i = 0; i < banks.length; i++) {
+            balances[i] = getBankBalance(banks[i]);
+        }
+        return balances;
+    }
+
+    /**
+     * Applies several changes to the balances of banks at once, as if {@link #giveBankMoney(String, double)} was
+     *  invoked for each of them in order. Like {@link #applyPlayerDeltas(UUID[], double[])} the batch as a whole
+     *  is not atomic.
+     * @param banks The banks that should be the target of the operation, may contain duplicates
+     * @param amounts The amounts to give, the amount at index i is given to the bank at index i.
+     *  Negative amounts remove money.
+     * @return The new balances, the balance after the change at index i is at index i;
+     *  Double.NEGATIVE_INFINITY if there is no bank attached to the name
+     * @throws IllegalArgumentException If the arrays are not of the same length
+     * @implNote The default implementation invokes {@link #giveBankMoney(String, double)} for each bank.
+     * @implSpec The implementation should always be thread safe.
+     * @since 1.2.0
+     */
+    public default double @NotNull[] applyBankDeltas(@NotNull String @NotNull[] banks, double @NotNull[] amounts) {
+        if (banks.length != amounts.length) {
+            throw new IllegalArgumentException("There are " + banks.length + " banks but " + amounts.length + " amounts.");
+        }
+        double[] balances = new double[banks.length];
+        for (int i = 0; i < banks.length; i++) {
+            balances[i] = giveBankMoney(banks[i], amounts[i]) ? getBankBalance(banks[i]) : Double.NEGATIVE_INFINITY;
+        }
+        return balances;
+    }
+
     /**
      * Transfers a portion of the balance of a Bank to the balance of the other.
      *  The implementation may stop the source player from going negative
@@ -200,12 +336,58 @@ public interface EasyconomyEcoAPI {
      * @param dest The destination balance
      * @param amount The maximum amount to transfer
      * @return The amount of money that was transfered
+     * @implNote The default implementation moves the money atomically via
+     *  {@link PlayerDataStorage#transfer(UUID, UUID, double, double)}.
      * @implSpec The implementation should always be thread safe
      * @since 1.1.0
      */
     public default double transferBalance(@NotNull UUID src, @NotNull UUID dest, double amount) {
-        removePlayerMoney(src, amount);
-        givePlayerMoney(dest, amount);
+        getPlayerDataStorage().transfer(src, dest, amount, Double.NEGATIVE_INFINITY);
         return amount;
     }
+
+    /**
+     * Atomically transfers money from one account to another, each of which can be the balance of a player or a bank.
+     *  No other thread can observe the money missing from both accounts and concurrent transfers can not deadlock.
+     * @param src The account the money is taken from
+     * @param dest The account the money is given to
+     * @param amount The amount to transfer. Should be over 0.
+     * @param failIfInsufficient Whether the transfer should fail if the source has less money than the amount
+     * @return True if the money was transfered, false if a bank does not exist or the source has insufficient money
+     * @implNote The default implementation uses a {@link TransferEngine} that changes the balances of banks
+     *  with decimal arithmetic.
+     * @implSpec The implementation should always be thread safe
+     * @since 1.2.0
+     */
+    public default boolean transfer(@NotNull AccountKey src, @NotNull AccountKey dest, double amount, boolean failIfInsufficient) {
+        return new TransferEngine(getPlayerDataStorage(), getBankStorage(), null).transfer(src, dest, amount, failIfInsufficient);
+    }
+
+    /**
+     * Obtains the audit log that records every change of a balance made through this API.
+     * @return The audit log, or null if changes are not audited
+     * @since 1.2.0
+     */
+    public default @Nullable AuditLog getAuditLog() {
+        return null;
+    }
+
+    /**
+     * Obtains the transaction history of a player, which are all audited changes of the balance of the player including
+     *  transfers from and to the player, starting with the most recent change.
+     * @param player The UUID of the player
+     * @param skip The amount of most recent changes to skip, used for paging
+     * @param limit The maximum amount of changes to return
+     * @return The changes, most recent first. Empty if changes are not audited.
+     * @throws IOException If an IO Exception occurs while reading the audit log
+     * @implNote The default implementation queries the {@link #getAuditLog() audit log}.
+     * @since 1.2.0
+     */
+    public default @NotNull List<@NotNull AuditRecord> getHistory(@NotNull UUID player, int skip, int limit) throws IOException {
+        AuditLog log = getAuditLog();
+        if (log == null) {
+            return Collections.emptyList();
+        }
+        return log.getHistory(player, skip, limit);
+    }
 }
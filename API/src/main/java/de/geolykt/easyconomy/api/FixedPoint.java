@@ -0,0 +1,150 @@
+package de.geolykt.easyconomy.api;
+
+import java.math.BigDecimal;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Fixed-point arithmetic for balances, which computes with whole minor units (such as cents) as longs instead of
+ *  approximating the decimal value via {@link java.math.BigDecimal BigDecimals}. This is exact and does not allocate.
+ * <br/>
+ * Balances are still passed around and stored as doubles, so the storage formats and the double based APIs stay
+ *  the same. Every double produced by this class is the double nearest to the amount of minor units divided by
+ *  10<sup>fractional digits</sup>, which is converted back into the same amount of minor units without any loss
+ *  as long as the amount of minor units stays below 2<sup>53</sup>. Other doubles are rounded to the nearest minor unit
+ *  when they enter the arithmetic.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+public final class FixedPoint {
+
+    /**
+     * The largest amount of minor units that can be represented by a double without loss.
+     */
+    public static final long MAXIMUM_MINOR_UNITS = 1L << 53;
+
+    private static final int MAXIMUM_FRACTIONAL_DIGITS = 9;
+    private static final double @NotNull[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9};
+    // Below this amount of minor units the decimal value of a double is the only one with as many digits
+    private static final double EXACT_DECIMAL_LIMIT = 1L << 52;
+
+    private final int fractionalDigits;
+    private final double factor;
+
+    /**
+     * Creates a new fixed-point scale.
+     * @param fractionalDigits The amount of digits after the decimal point, between 0 and 9
+     * @throws IllegalArgumentException If the amount of digits is out of range
+     * @since 1.2.0
+     */
+    public FixedPoint(int fractionalDigits) {
+        if (fractionalDigits < 0 || fractionalDigits > MAXIMUM_FRACTIONAL_DIGITS) {
+            throw new IllegalArgumentException("The amount of fractional digits must be between 0 and "
+                    + MAXIMUM_FRACTIONAL_DIGITS + ", got " + fractionalDigits + ".");
+        }
+        this.fractionalDigits = fractionalDigits;
+        long factor = 1L;
+        for (int i = 0; i < fractionalDigits; i++) {
+            factor *= 10L;
+        }
+        this.factor = factor;
+    }
+
+    /**
+     * Obtains the amount of digits after the decimal point that are kept.
+     * @return The amount of fractional digits
+     * @since 1.2.0
+     */
+    public int getFractionalDigits() {
+        return fractionalDigits;
+    }
+
+    /**
+     * Converts an amount into minor units, rounding to the nearest minor unit.
+     * @param amount The amount
+     * @return The amount of minor units
+     * @throws ArithmeticException If the amount is not finite or too large to be represented exactly
+     * @since 1.2.0
+     */
+    public long toMinorUnits(double amount) {
+        double scaled = Math.rint(amount * factor);
+        if (!(Math.abs(scaled) <= MAXIMUM_MINOR_UNITS)) {
+            throw new ArithmeticException("The amount " + amount + " can not be represented in minor units.");
+        }
+        return (long) scaled;
+    }
+
+    /**
+     * Converts an amount of minor units into the double nearest to it's decimal value.
+     * @param minorUnits The amount of minor units
+     * @return The amount
+     * @since 1.2.0
+     */
+    public double toDouble(long minorUnits) {
+        // Both operands are exact, so the division is correctly rounded
+        return minorUnits / factor;
+    }
+
+    /**
+     * Rounds an amount to the nearest minor unit.
+     * @param amount The amount
+     * @return The rounded amount
+     * @throws ArithmeticException If the amount is not finite or too large to be represented exactly
+     * @since 1.2.0
+     */
+    public double round(double amount) {
+        return toDouble(toMinorUnits(amount));
+    }
+
+    /**
+     * Adds two amounts in minor units.
+     * @param balance The first amount, usually a balance
+     * @param amount The second amount, may be negative
+     * @return The sum
+     * @throws ArithmeticException If an amount or the sum can not be represented in minor units
+     * @since 1.2.0
+     */
+    public double add(double balance, double amount) {
+        long sum = Math.addExact(toMinorUnits(balance), toMinorUnits(amount));
+        if (Math.abs(sum) > MAXIMUM_MINOR_UNITS) {
+            throw new ArithmeticException("The sum of " + balance + " and " + amount + " can not be represented in minor units.");
+        }
+        return toDouble(sum);
+    }
+
+    /**
+     * Subtracts an amount from another in minor units.
+     * @param balance The amount to subtract from, usually a balance
+     * @param amount The amount to subtract
+     * @return The difference
+     * @throws ArithmeticException If an amount or the difference can not be represented in minor units
+     * @since 1.2.0
+     */
+    public double subtract(double balance, double amount) {
+        return add(balance, -amount);
+    }
+
+    /**
+     * Adds two amounts as decimals, which yields the same result as
+     *  {@code BigDecimal.valueOf(a).add(BigDecimal.valueOf(b)).doubleValue()}. Amounts with up to 9 fractional digits
+     *  are added as whole units of the smallest scale that represents both, so that only other amounts allocate
+     *  {@link BigDecimal BigDecimals}. Used when fixed-point balances are disabled.
+     * @param a The first amount
+     * @param b The second amount
+     * @return The sum
+     * @throws NumberFormatException If an amount is not finite
+     * @since 1.2.0
+     */
+    public static double addDecimal(double a, double b) {
+        for (double factor : POWERS_OF_TEN) {
+            double scaledA = Math.rint(a * factor);
+            double scaledB = Math.rint(b * factor);
+            if (Math.abs(scaledA) <= EXACT_DECIMAL_LIMIT && Math.abs(scaledB) <= EXACT_DECIMAL_LIMIT
+                    && scaledA / factor == a && scaledB / factor == b) {
+                // The sum is exact and both operands of the division are, so it is correctly rounded
+                return ((long) scaledA + (long) scaledB) / factor;
+            }
+        }
+        return BigDecimal.valueOf(a).add(BigDecimal.valueOf(b)).doubleValue();
+    }
+}
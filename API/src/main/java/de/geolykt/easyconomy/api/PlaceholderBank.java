@@ -25,12 +25,12 @@ public class PlaceholderBank implements Bank {
     }
 
     @Override
-    public void setMoney(double amount) {
+    public synchronized void setMoney(double amount) {
         money = amount;
     }
 
     @Override
-    public double getMoney() {
+    public synchronized double getMoney() {
         return money;
     }
 
@@ -2,12 +2,19 @@ package de.geolykt.easyconomy.api;
 
 import java.io.File;
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.UUID;
 
 import org.jetbrains.annotations.NotNull;
 
+import de.geolykt.easyconomy.api.storage.BalanceSnapshot;
+
 /**
  * @author Geolykt
  * @since 1.1.0
@@ -36,6 +43,139 @@ public interface PlayerDataStorage extends Saveable {
      */
     public void set(@NotNull UUID key, double value);
 
+    /**
+     * Atomically adds an amount to the balance of a player and creates the balance if needed, in which case
+     *  the balance is treated as if it was 0 beforehand. Unlike a {@link #getOrDefault(UUID, double)} followed by
+     *  a {@link #set(UUID, double)}, concurrent invocations will never lose an update.
+     * @param key The player that should be the target of the operation
+     * @param amount The amount to add, may be negative
+     * @return The new balance of the player
+     * @implNote The default implementation synchronises on the instance, implementations should override it
+     *  with something more scalable.
+     * @since 1.2.0
+     */
+    public default double addAndGet(@NotNull UUID key, double amount) {
+        synchronized (this) {
+            // BigDecimal for less approximations when dealing with doubles (due to how floating point values are handled in
+            // Java, there will always be approximations) ( https://docs.oracle.com/cd/E19957-01/806-3568/ncg_goldberg.html )
+            double balance = BigDecimal.valueOf(getOrDefault(key, 0.0)).add(BigDecimal.valueOf(amount)).doubleValue();
+            set(key, balance);
+            return balance;
+        }
+    }
+
+    /**
+     * Atomically adds an amount to the balance of a player, but only if the balance is at least the given minimum.
+     *  Unknown players are treated as if their balance was 0, their balance is only created if it is changed.
+     * @param key The player that should be the target of the operation
+     * @param amount The amount to add, may be negative
+     * @param minimum The balance the player needs to have at least
+     * @return The new balance of the player, or {@link Double#NaN} if the balance is below the minimum,
+     *  in which case it was not changed
+     * @implNote The default implementation synchronises on the instance, like {@link #addAndGet(UUID, double)}.
+     * @since 1.2.0
+     */
+    public default double addAndGetIfAtLeast(@NotNull UUID key, double amount, double minimum) {
+        synchronized (this) {
+            if (!(getOrDefault(key, 0.0) >= minimum)) {
+                return Double.NaN;
+            }
+            return addAndGet(key, amount);
+        }
+    }
+
+    /**
+     * Atomically moves an amount from the balance of one player to the balance of another player, so that no other
+     *  thread can observe the amount missing from both balances. Balances are created if needed.
+     * @param src The player the amount is taken from
+     * @param dest The player the amount is given to
+     * @param amount The amount to move
+     * @param minimum The balance the source needs to have at least, {@link Double#NEGATIVE_INFINITY} to always
+     *  move the amount
+     * @return True if the amount was moved, false if the balance of the source is below the minimum
+     * @implNote The default implementation synchronises on the instance, like {@link #addAndGet(UUID, double)}.
+     * @since 1.2.0
+     */
+    public default boolean transfer(@NotNull UUID src, @NotNull UUID dest, double amount, double minimum) {
+        synchronized (this) {
+            if (!(getOrDefault(src, 0.0) >= minimum)) {
+                return false;
+            }
+            addAndGet(src, -amount);
+            addAndGet(dest, amount);
+            return true;
+        }
+    }
+
+    /**
+     * Atomically moves an amount from the balance of one player to the balance of another player like
+     *  {@link #transfer(UUID, UUID, double, double)} and obtains the balances of both players after the transfer,
+     *  so that the transfer can be audited with the resulting balances.
+     * @param src The player the amount is taken from
+     * @param dest The player the amount is given to
+     * @param amount The amount to move
+     * @param minimum The balance the source needs to have at least, {@link Double#NEGATIVE_INFINITY} to always
+     *  move the amount
+     * @param balances The array the balance of the source is stored in at index 0 and the balance of the destination
+     *  at index 1, which are the same if both are the same player. Left untouched if the amount was not moved.
+     * @return True if the amount was moved, false if the balance of the source is below the minimum
+     * @implNote The default implementation synchronises on the instance, like {@link #addAndGet(UUID, double)}.
+     * @since 1.2.0
+     */
+    public default boolean transfer(@NotNull UUID src, @NotNull UUID dest, double amount, double minimum,
+            double @NotNull[] balances) {
+        synchronized (this) {
+            if (!(getOrDefault(src, 0.0) >= minimum)) {
+                return false;
+            }
+            balances[0] = addAndGet(src, -amount);
+            balances[1] = addAndGet(dest, amount);
+            if (src.equals(dest)) {
+                balances[0] = balances[1];
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Obtains the balances of several players at once, which is cheaper than querying them one after another
+     *  as the implementation can amortise it's locking. Does not create balances.
+     * @param players The players to query
+     * @param defaultValue the amount to return for players that are not known to the implementation yet.
+     * @return The balances of the players, the balance of the player at index i of the array is at index i
+     * @implNote The default implementation queries the players one after another.
+     * @since 1.2.0
+     */
+    public default double @NotNull[] getBalances(@NotNull UUID @NotNull[] players, double defaultValue) {
+        double[] balances = new double[players.length];
+        for (int i = 0; i < players.length; i++) {
+            balances[i] = getOrDefault(players[i], defaultValue);
+        }
+        return balances;
+    }
+
+    /**
+     * Adds amounts to the balances of several players, as if {@link #addAndGet(UUID, double)} was invoked for each
+     *  of them in order. Each balance is changed atomically, but the batch as a whole is not, so other threads may
+     *  observe some of the changes before others.
+     * @param players The players that should be the target of the operation, may contain duplicates
+     * @param amounts The amounts to add, the amount at index i is added to the player at index i. May be negative
+     * @return The new balances, the balance after the change at index i is at index i
+     * @throws IllegalArgumentException If the arrays are not of the same length
+     * @implNote The default implementation invokes {@link #addAndGet(UUID, double)} for each player.
+     * @since 1.2.0
+     */
+    public default double @NotNull[] addAndGetAll(@NotNull UUID @NotNull[] players, double @NotNull[] amounts) {
+        if (players.length != amounts.length) {
+            throw new IllegalArgumentException("There are " + players.length + " players but " + amounts.length + " amounts.");
+        }
+        double[] balances = new double[players.length];
+        for (int i = 0; i < players.length; i++) {
+            balances[i] = addAndGet(players[i], amounts[i]);
+        }
+        return balances;
+    }
+
     /**
      * Reloads the data from file
      * @implNote This should be thread safe, but may block
@@ -43,7 +183,150 @@ public interface PlayerDataStorage extends Saveable {
      */
     public void reload();
 
+    /**
+     * Hints that the balance of the player is about to be used, for example because the player is logging in.
+     *  Implementations that do not keep all balances in memory may load the balance in advance, so that the
+     *  lookup does not need to read from the disk later on.
+     * @param player The player whose balance will be used
+     * @implNote Does nothing by default. May block, so it should not be called on the main thread.
+     * @since 1.2.0
+     */
+    public default void preload(@NotNull UUID player) {
+        // Does nothing by default
+    }
+
     public @NotNull Map<UUID, Double> getBaltop();
+
+    /**
+     * Obtains a section of the leaderboard of all players with a positive balance, ordered from the highest to the
+     *  lowest balance and then by UUID. Unlike {@link #getBaltop()} the section is not limited to the configured
+     *  amount of players, so it can be used to show any page of the leaderboard.
+     * @param skip The amount of players to skip, for example the players on the previous pages
+     * @param limit The maximum amount of players to return
+     * @return The UUIDs and balances of the players in order
+     * @implNote The default implementation scans all players and keeps the best skip + limit players in a heap.
+     * @since 1.2.0
+     */
+    public default @NotNull Map<UUID, Double> getBaltop(int skip, int limit) {
+        Map<UUID, Double> top = getBalancesBetween(Double.MIN_VALUE, Double.POSITIVE_INFINITY, Math.max(skip, 0) + limit);
+        Map<UUID, Double> page = new LinkedHashMap<>();
+        int position = 0;
+        for (Map.Entry<UUID, Double> entry : top.entrySet()) {
+            if (position++ >= skip) {
+                page.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Obtains the position of a player when all players are ordered from the highest to the lowest balance
+     *  and then by UUID.
+     * @param player The player to query
+     * @return The rank, 1 for the player with the highest balance, or 0 if the player has no balance
+     * @implNote The default implementation counts the players with a higher balance, which requires a scan
+     *  of all players.
+     * @since 1.2.0
+     */
+    public default int getRank(@NotNull UUID player) {
+        double balance = getOrDefault(player, Double.NaN);
+        if (Double.isNaN(balance)) {
+            return 0;
+        }
+        UUID[] players = getAllKeys().toArray(new UUID[0]);
+        double[] balances = getBalances(players, Double.NaN);
+        int rank = 1;
+        for (int i = 0; i < players.length; i++) {
+            int cmp = Double.compare(balances[i], balance);
+            if (cmp > 0 || (cmp == 0 && players[i].compareTo(player) < 0)) {
+                rank++;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Obtains the players whose balance lies within a range, ordered from the highest to the lowest balance
+     *  and then by UUID.
+     * @param min The lowest balance of the range, inclusive
+     * @param max The highest balance of the range, inclusive
+     * @param limit The maximum amount of players to return, the players with the highest balances are returned first
+     * @return The UUIDs and balances of the players in order
+     * @implNote The default implementation scans all players and keeps the best players in a heap of the given limit.
+     * @since 1.2.0
+     */
+    public default @NotNull Map<UUID, Double> getBalancesBetween(double min, double max, int limit) {
+        if (limit <= 0) {
+            return new LinkedHashMap<>();
+        }
+        UUID[] players = getAllKeys().toArray(new UUID[0]);
+        double[] balances = getBalances(players, Double.NaN);
+        // The head of the heap is the worst of the best players
+        Comparator<Integer> order = (a, b) -> {
+            int cmp = Double.compare(balances[b], balances[a]);
+            return cmp != 0 ? cmp : players[a].compareTo(players[b]);
+        };
+        PriorityQueue<Integer> heap = new PriorityQueue<>(Math.min(limit, players.length) + 1, order.reversed());
+        for (int i = 0; i < players.length; i++) {
+            if (balances[i] >= min && balances[i] <= max) {
+                heap.add(i);
+                if (heap.size() > limit) {
+                    heap.poll();
+                }
+            }
+        }
+        Integer[] best = heap.toArray(new Integer[0]);
+        Arrays.sort(best, order);
+        Map<UUID, Double> result = new LinkedHashMap<>();
+        for (Integer index : best) {
+            result.put(players[index], balances[index]);
+        }
+        return result;
+    }
+
+    /**
+     * Replaces the balances of all players at once, so that no other change is made while only some of the balances
+     *  were replaced. Players that are not contained in the map are set to a balance of 0 as they can not be removed.
+     * @param balances The new balances of the players
+     * @implNote The default implementation obtains the known players first and then synchronises on the instance,
+     *  like {@link #addAndGet(UUID, double)}.
+     * @since 1.2.0
+     */
+    public default void setAll(@NotNull Map<UUID, Double> balances) {
+        List<UUID> known = getAllKeys();
+        synchronized (this) {
+            for (UUID player : known) {
+                if (!balances.containsKey(player)) {
+                    set(player, 0.0);
+                }
+            }
+            for (Map.Entry<UUID, Double> player : balances.entrySet()) {
+                set(player.getKey(), player.getValue());
+            }
+        }
+    }
+
+    /**
+     * Passes the balances of all players as they were at a single moment to the writer, so that a copy of the
+     *  balances can be taken while they keep changing.
+     * @param writer The writer to pass the UUIDs and balances of the players to
+     * @return The moment the balances are from, in milliseconds since the epoch
+     * @throws IOException If the writer throws an IO Exception
+     * @implNote The default implementation reads the balances one after another after obtaining the time, so changes
+     *  that are made while they are read may or may not be included.
+     * @since 1.2.0
+     */
+    public default long snapshotBalances(@NotNull BalanceSnapshot.EntryWriter writer) throws IOException {
+        long time = System.currentTimeMillis();
+        UUID[] players = getAllKeys().toArray(new UUID[0]);
+        double[] balances = getBalances(players, Double.NaN);
+        for (int i = 0; i < players.length; i++) {
+            if (!Double.isNaN(balances[i])) {
+                writer.write(players[i].getMostSignificantBits(), players[i].getLeastSignificantBits(), balances[i]);
+            }
+        }
+        return time;
+    }
     
     public boolean has(@NotNull UUID key);
 
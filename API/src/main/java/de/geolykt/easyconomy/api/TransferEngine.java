@@ -0,0 +1,142 @@
+package de.geolykt.easyconomy.api;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Moves money atomically between any two accounts, may they be the balances of players or {@link Bank Banks}.
+ *  No global lock is used, instead every transfer only locks the accounts it involves:
+ * <ul>
+ * <li>Transfers between players are performed by {@link PlayerDataStorage#transfer(UUID, UUID, double, double)},
+ *  which locks the two accounts in a fixed order.</li>
+ * <li>Banks are locked by synchronising on the bank instance, two banks are locked in the order of their names.</li>
+ * <li>Bank locks are always acquired before the locks of player accounts and the player side of a transfer with a
+ *  bank is a single atomic operation performed while the bank is locked.</li>
+ * </ul>
+ * As every transfer acquires locks in the same global order, concurrent transfers can not deadlock.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+public class TransferEngine {
+
+    private final @NotNull PlayerDataStorage players;
+    private final @NotNull BankStorageEngine banks;
+    private final @Nullable FixedPoint fixedPoint;
+
+    /**
+     * Creates a new transfer engine.
+     * @param players The storage of the balances of the players
+     * @param banks The storage of the banks
+     * @param fixedPoint The scale used to change the balances of banks, or null to use decimal arithmetic.
+     *  The balances of players are changed by the storage itself.
+     * @since 1.2.0
+     */
+    public TransferEngine(@NotNull PlayerDataStorage players, @NotNull BankStorageEngine banks,
+            @Nullable FixedPoint fixedPoint) {
+        this.players = players;
+        this.banks = banks;
+        this.fixedPoint = fixedPoint;
+    }
+
+    /**
+     * Atomically moves an amount from one account to another, so that no other thread can observe the amount missing
+     *  from both accounts. Balances of players are created if needed, banks are not.
+     * @param src The account the amount is taken from
+     * @param dest The account the amount is given to
+     * @param amount The amount to move, should be over 0
+     * @param failIfInsufficient Whether the transfer should fail if the balance of the source is below the amount
+     * @return True if the amount was moved, false if a bank does not exist or the balance of the source was
+     *  insufficient
+     * @since 1.2.0
+     */
+    public boolean transfer(@NotNull AccountKey src, @NotNull AccountKey dest, double amount, boolean failIfInsufficient) {
+        return transfer(src, dest, amount, failIfInsufficient, new double[2]);
+    }
+
+    /**
+     * Atomically moves an amount from one account to another like
+     *  {@link #transfer(AccountKey, AccountKey, double, boolean)} and obtains the balances of both accounts after
+     *  the transfer, so that the transfer can be audited with the resulting balances.
+     * @param src The account the amount is taken from
+     * @param dest The account the amount is given to
+     * @param amount The amount to move, should be over 0
+     * @param failIfInsufficient Whether the transfer should fail if the balance of the source is below the amount
+     * @param balances The array the balance of the source is stored in at index 0 and the balance of the destination
+     *  at index 1. Left untouched if the amount was not moved.
+     * @return True if the amount was moved, false if a bank does not exist or the balance of the source was
+     *  insufficient
+     * @since 1.2.0
+     */
+    public boolean transfer(@NotNull AccountKey src, @NotNull AccountKey dest, double amount, boolean failIfInsufficient,
+            double @NotNull[] balances) {
+        double minimum = failIfInsufficient ? amount : Double.NEGATIVE_INFINITY;
+        if (!src.isBank() && !dest.isBank()) {
+            return players.transfer(src.getPlayer(), dest.getPlayer(), amount, minimum, balances);
+        }
+        Bank srcBank = null;
+        if (src.isBank()) {
+            srcBank = banks.get(src.getBank());
+            if (srcBank == null) {
+                return false;
+            }
+        }
+        Bank destBank = null;
+        if (dest.isBank()) {
+            destBank = banks.get(dest.getBank());
+            if (destBank == null) {
+                return false;
+            }
+        }
+        if (srcBank == null) {
+            synchronized (destBank) {
+                double srcBalance = players.addAndGetIfAtLeast(src.getPlayer(), -amount, minimum);
+                if (Double.isNaN(srcBalance)) {
+                    return false;
+                }
+                destBank.setMoney(add(destBank.getMoney(), amount));
+                balances[0] = srcBalance;
+                balances[1] = destBank.getMoney();
+                return true;
+            }
+        }
+        if (destBank == null) {
+            synchronized (srcBank) {
+                if (!(srcBank.getMoney() >= minimum)) {
+                    return false;
+                }
+                srcBank.setMoney(add(srcBank.getMoney(), -amount));
+                balances[0] = srcBank.getMoney();
+                balances[1] = players.addAndGet(dest.getPlayer(), amount);
+                return true;
+            }
+        }
+        boolean srcFirst = srcBank.getName().compareTo(destBank.getName()) <= 0;
+        synchronized (srcFirst ? srcBank : destBank) {
+            synchronized (srcFirst ? destBank : srcBank) {
+                if (!(srcBank.getMoney() >= minimum)) {
+                    return false;
+                }
+                srcBank.setMoney(add(srcBank.getMoney(), -amount));
+                destBank.setMoney(add(destBank.getMoney(), amount));
+                balances[0] = srcBank.getMoney();
+                balances[1] = destBank.getMoney();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Adds an amount to the balance of a bank, in minor units if fixed-point balances are enabled.
+     */
+    private double add(double balance, double amount) {
+        if (fixedPoint != null) {
+            return fixedPoint.add(balance, amount);
+        }
+        // BigDecimal for less approximations when dealing with doubles (due to how floating point values are handled in
+        // Java, there will always be approximations) ( https://docs.oracle.com/cd/E19957-01/806-3568/ncg_goldberg.html )
+        return BigDecimal.valueOf(balance).add(BigDecimal.valueOf(amount)).doubleValue();
+    }
+}
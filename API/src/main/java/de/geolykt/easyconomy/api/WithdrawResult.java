@@ -0,0 +1,64 @@
+package de.geolykt.easyconomy.api;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The result of a conditional withdrawal such as {@link EasyconomyEcoAPI#withdrawIfAtLeast(java.util.UUID, double)},
+ *  which holds whether the money was withdrawn together with the balance of the account afterwards,
+ *  so that callers do not need to query the balance again.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+public final class WithdrawResult {
+
+    private final boolean success;
+    private final double newBalance;
+
+    private WithdrawResult(boolean success, double newBalance) {
+        this.success = success;
+        this.newBalance = newBalance;
+    }
+
+    /**
+     * Creates the result of a withdrawal that succeeded.
+     * @param newBalance The balance of the account after the money was withdrawn
+     * @return The result
+     * @since 1.2.0
+     */
+    public static @NotNull WithdrawResult success(double newBalance) {
+        return new WithdrawResult(true, newBalance);
+    }
+
+    /**
+     * Creates the result of a withdrawal that failed.
+     * @param balance The unchanged balance of the account, Double.NEGATIVE_INFINITY if the account does not exist
+     * @return The result
+     * @since 1.2.0
+     */
+    public static @NotNull WithdrawResult failure(double balance) {
+        return new WithdrawResult(false, balance);
+    }
+
+    /**
+     * Queries whether the money was withdrawn.
+     * @return True if the money was withdrawn, false if the balance was insufficient or the account does not exist
+     * @since 1.2.0
+     */
+    public boolean isSuccess() {
+        return success;
+    }
+
+    /**
+     * Obtains the balance of the account after the operation, which is the unchanged balance if the operation failed.
+     * @return The balance of the account; Double.NEGATIVE_INFINITY if the account does not exist
+     * @since 1.2.0
+     */
+    public double getNewBalance() {
+        return newBalance;
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return (success ? "success, " : "failure, ") + newBalance;
+    }
+}
@@ -0,0 +1,204 @@
+package de.geolykt.easyconomy.api.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The per-player index of a segment of the {@link AuditLog}, which maps the UUID of every player that occurs within
+ *  the segment to the offsets of the blocks that contain records of that player.
+ *  Thereby the history of a player can be read without inflating the blocks of any other players.
+ * <br/>
+ * The index of a sealed segment is stored next to it as {@code audit-<creation time>.idx}. The file starts with a
+ *  magic number, a version and the length of the segment it was created for, followed by entries sorted by UUID and
+ *  offset that are looked up by binary search:
+ * <pre>
+ * [UUID MSB] [UUID LSB] [BLOCK OFFSET]
+ *   8 bytes    8 bytes     8 bytes
+ * </pre>
+ * @author Geolykt
+ * @since 1.2.0
+ */
+final class AuditIndex {
+
+    static final String SUFFIX = ".idx";
+    private static final int MAGIC = 0x45434149; // "ECAI"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int ENTRY_SIZE = 24;
+
+    // Guarded by this
+    private final @NotNull Map<UUID, Offsets> entries = new HashMap<>();
+
+    /**
+     * The offsets of the blocks of a single player, in ascending order.
+     */
+    private static final class Offsets {
+        private long @NotNull[] values = new long[4];
+        private int size;
+
+        private void add(long offset) {
+            if (size != 0 && values[size - 1] == offset) {
+                return; // The player occurs several times in the same block
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = offset;
+        }
+    }
+
+    /**
+     * Adds a player to the index.
+     * @param msb The most significant bits of the UUID of the player
+     * @param lsb The least significant bits of the UUID of the player
+     * @param offset The offset of the block, which must not be below the offsets that were added before
+     */
+    synchronized void add(long msb, long lsb, long offset) {
+        entries.computeIfAbsent(new UUID(msb, lsb), key -> new Offsets()).add(offset);
+    }
+
+    /**
+     * Obtains the offsets of the blocks that contain records of a player.
+     * @param player The UUID of the player
+     * @return The offsets in ascending order
+     */
+    synchronized long @NotNull[] get(@NotNull UUID player) {
+        Offsets offsets = entries.get(player);
+        return offsets == null ? new long[0] : Arrays.copyOf(offsets.values, offsets.size);
+    }
+
+    /**
+     * Writes the index into a file. The file is written to a temporary file first and then moved,
+     *  so that readers never observe a partially written index.
+     * @param file The index file
+     * @param segmentLength The length of the segment the index belongs to
+     * @throws IOException If an IO Exception occurs
+     */
+    synchronized void write(@NotNull File file, long segmentLength) throws IOException {
+        List<UUID> players = new ArrayList<>(entries.keySet());
+        players.sort(AuditIndex::compare);
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(ENTRY_SIZE * 1024);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(segmentLength);
+            for (UUID player : players) {
+                Offsets offsets = entries.get(player);
+                for (int i = 0; i < offsets.size; i++) {
+                    if (buffer.remaining() < ENTRY_SIZE) {
+                        drain(buffer, out);
+                    }
+                    buffer.putLong(player.getMostSignificantBits()).putLong(player.getLeastSignificantBits())
+                        .putLong(offsets.values[i]);
+                }
+            }
+            drain(buffer, out);
+            out.force(false);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Clears the index so it can be reused for the next segment.
+     */
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    private static void drain(@NotNull ByteBuffer buffer, @NotNull FileChannel out) throws IOException {
+        ((Buffer) buffer).flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        ((Buffer) buffer).clear();
+    }
+
+    private static int compare(@NotNull UUID a, @NotNull UUID b) {
+        int cmp = Long.compare(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return cmp != 0 ? cmp : Long.compare(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    }
+
+    /**
+     * Looks up the offsets of the blocks of a player within an index file.
+     * @param file The index file
+     * @param segmentLength The length of the segment, used to detect stale indices
+     * @param player The UUID of the player
+     * @return The offsets in ascending order, or null if the index does not exist or does not match the segment
+     * @throws IOException If an IO Exception occurs
+     */
+    static long @Nullable[] lookup(@NotNull File file, long segmentLength, @NotNull UUID player) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(ENTRY_SIZE);
+            long size = in.size();
+            if (size < HEADER_SIZE || (size - HEADER_SIZE) % ENTRY_SIZE != 0 || !read(in, buffer, 0, HEADER_SIZE)
+                    || buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != segmentLength) {
+                return null;
+            }
+            long msb = player.getMostSignificantBits();
+            long lsb = player.getLeastSignificantBits();
+            // Binary search for the first entry of the player
+            long low = 0;
+            long high = (size - HEADER_SIZE) / ENTRY_SIZE;
+            long count = high;
+            while (low < high) {
+                long mid = (low + high) >>> 1;
+                if (!read(in, buffer, HEADER_SIZE + mid * ENTRY_SIZE, ENTRY_SIZE)) {
+                    return null;
+                }
+                int cmp = Long.compare(buffer.getLong(), msb);
+                if (cmp == 0) {
+                    cmp = Long.compare(buffer.getLong(), lsb);
+                }
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            long[] offsets = new long[4];
+            int found = 0;
+            for (long i = low; i < count; i++) {
+                if (!read(in, buffer, HEADER_SIZE + i * ENTRY_SIZE, ENTRY_SIZE)
+                        || buffer.getLong() != msb || buffer.getLong() != lsb) {
+                    break;
+                }
+                if (found == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, found * 2);
+                }
+                offsets[found++] = buffer.getLong();
+            }
+            return Arrays.copyOf(offsets, found);
+        }
+    }
+
+    private static boolean read(@NotNull FileChannel in, @NotNull ByteBuffer buffer, long position, int length)
+            throws IOException {
+        ((Buffer) buffer).clear();
+        ((Buffer) buffer).limit(length);
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer, position + buffer.position()) == -1) {
+                return false;
+            }
+        }
+        ((Buffer) buffer).flip();
+        return true;
+    }
+}
@@ -0,0 +1,899 @@
+package de.geolykt.easyconomy.api.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import de.geolykt.easyconomy.api.AccountKey;
+import de.geolykt.easyconomy.api.AccountLocks;
+import de.geolykt.easyconomy.api.Saveable;
+import de.geolykt.easyconomy.api.storage.AuditRecord.Action;
+
+/**
+ * An asynchronous audit log of balance changes. Threads that change a balance only copy a few primitive values into
+ *  a preallocated lock-free ring buffer, the records are encoded, compressed and written by a single background
+ *  thread. Nothing is formatted while writing, the text representation is rendered by {@link AuditRecord#toString()}
+ *  once the log is read. Should the ring buffer be full, producers wait for the writer instead of dropping records.
+ *  Blocks that can not be written are kept and written again a second later, failures are reported to
+ *  {@link #onWriteFailed(IOException, int, boolean)}.
+ * <br/>
+ * Records are logged in the order in which they were appended, the time and position of a record are assigned once
+ *  it is appended. The change of an account and it's record thus need to be made while holding the stripe of the
+ *  account in the {@link #getLocks() account locks} of the log, so that the changes of every account are logged in
+ *  the order in which they were made.
+ * <br/>
+ * The log consists of segments named {@code audit-<creation time>.log} within the log directory. A new segment is
+ *  started once the current one exceeds the configured size and segments are deleted once all of their records are
+ *  older than the retention period. Segments begin with a magic number and a version and consist of independently
+ *  compressed blocks, so readers can skip blocks outside of the requested time range without inflating them.
+ *  Once a segment is sealed, an {@link AuditIndex} of the blocks of every player is written next to it, which allows
+ *  to read the {@link #getHistory(UUID, int, int) history} of a player without scanning the entire log.
+ * <br/>
+ * Block layout (big endian):
+ * <pre>
+ * [COMPRESSED LENGTH] [UNCOMPRESSED LENGTH] [RECORD COUNT] [FIRST TIME] [LAST TIME] [DEFLATED PAYLOAD]
+ *       4 bytes              4 bytes            4 bytes       8 bytes     8 bytes
+ * </pre>
+ * The payload starts with the names of the banks referenced by the block ({@code [COUNT] ([LENGTH] [UTF-8])*}),
+ *  followed by the records (64 bytes each):
+ * <pre>
+ * [TIME] [ACTION] [FLAGS] [RESERVED] [ACCOUNT MSB] [ACCOUNT LSB] [OTHER MSB] [OTHER LSB] [AMOUNT] [BALANCE]
+ *   8       1        1        6           8             8            8           8          8         8
+ * </pre>
+ * Bank accounts store the index of their name instead of the UUID.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+public class AuditLog implements Saveable, Closeable {
+
+    public static final int RECORD_SIZE = 64;
+    private static final int MAGIC = 0x45434155; // "ECAU"
+    private static final int VERSION = 1;
+    private static final String PREFIX = "audit-";
+    private static final String SUFFIX = ".log";
+    private static final int SEGMENT_HEADER_SIZE = 8;
+    private static final int BLOCK_HEADER_SIZE = 28;
+    private static final int BLOCK_RECORDS = 4096;
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+    private static final long RETRY_INTERVAL_MILLIS = 1000;
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+    private static final int SLOT_LONGS = 8;
+
+    private static final int FLAG_BANK = 1;
+    private static final int FLAG_COUNTERPARTY = 2;
+    private static final int FLAG_COUNTERPARTY_BANK = 4;
+    private static final int FLAG_COUNTERPARTY_BALANCE = 8;
+
+    private final @NotNull File directory;
+    private final @NotNull AccountLocks locks = new AccountLocks();
+    private final long segmentSize;
+    private final long retentionMillis;
+
+    // The ring buffer. Record i occupies slot i & mask, published[slot] is set to i + 1 once it has been written.
+    private final int mask;
+    private final long @NotNull[] slots;
+    private final @Nullable Object @NotNull[] names;
+    private final @NotNull AtomicLongArray published;
+    private final @NotNull AtomicLong claimed = new AtomicLong();
+    private volatile long consumed;
+    private volatile long written;
+    private volatile long flushRequested;
+    // The reason the oldest pending block could not be written, null once it was written
+    private volatile @Nullable IOException failure;
+    private volatile boolean open = true;
+    private volatile boolean stopped;
+    private final @NotNull Thread writer;
+
+    // Only used by the writer thread
+    private final @NotNull ByteBuffer records = ByteBuffer.allocate(BLOCK_RECORDS * RECORD_SIZE);
+    private final @NotNull List<String> blockNames = new ArrayList<>();
+    private final @NotNull Map<String, Integer> blockNameIds = new HashMap<>();
+    private final @NotNull Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private byte @NotNull[] payload = new byte[BLOCK_RECORDS * RECORD_SIZE + 1024];
+    private byte @NotNull[] compressed = new byte[BLOCK_RECORDS * RECORD_SIZE + BLOCK_HEADER_SIZE];
+    private int blockRecords;
+    private long blockStart;
+    private long firstTime;
+    private long lastTime;
+    private long retryAt;
+    private @Nullable FileChannel segment;
+
+    // The index of the segment that is currently written, both guarded by the index
+    private final @NotNull AuditIndex activeIndex = new AuditIndex();
+    private @Nullable String activeSegment;
+
+    /**
+     * Creates a new audit log and starts it's writer thread.
+     * @param directory The directory the segments are stored in, it is created if needed
+     * @param segmentSize The size in bytes after which a new segment is started
+     * @param retentionMillis The amount of milliseconds after which records are deleted, 0 or less keeps them forever
+     * @param capacity The amount of records the ring buffer can hold, rounded up to a power of two
+     * @since 1.2.0
+     */
+    public AuditLog(@NotNull File directory, long segmentSize, long retentionMillis, int capacity) {
+        this.directory = directory;
+        this.segmentSize = Math.max(segmentSize, SEGMENT_HEADER_SIZE + BLOCK_HEADER_SIZE);
+        this.retentionMillis = retentionMillis;
+        int size = Integer.highestOneBit(Math.max(2, Math.min(capacity, 1 << 24)) * 2 - 1);
+        mask = size - 1;
+        slots = new long[size * SLOT_LONGS];
+        names = new Object[size * 2];
+        published = new AtomicLongArray(size);
+        writer = new Thread(this::write, "Easyconomy audit log writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Obtains the directory the segments are stored in.
+     * @return The directory
+     * @since 1.2.0
+     */
+    public @NotNull File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Obtains the locks that need to be held while changing an account and appending the record of the change.
+     * @return The account locks
+     * @since 1.2.0
+     */
+    public @NotNull AccountLocks getLocks() {
+        return locks;
+    }
+
+    /**
+     * Audits a change of the balance of a player.
+     * @param action The kind of change
+     * @param player The UUID of the player
+     * @param amount The amount of the change, the new balance for {@link Action#SET}
+     * @param balance The balance after the change, NaN if it is not known
+     * @since 1.2.0
+     */
+    public void appendPlayer(@NotNull Action action, @NotNull UUID player, double amount, double balance) {
+        append(action, player.getMostSignificantBits(), player.getLeastSignificantBits(), null, 0L, 0L, null, false,
+                false, amount, balance);
+    }
+
+    /**
+     * Audits a change of the balance of a bank.
+     * @param action The kind of change
+     * @param bank The name of the bank
+     * @param amount The amount of the change, the new balance for {@link Action#SET}
+     * @param balance The balance after the change, NaN if it is not known
+     * @since 1.2.0
+     */
+    public void appendBank(@NotNull Action action, @NotNull String bank, double amount, double balance) {
+        append(action, 0L, 0L, bank, 0L, 0L, null, false, false, amount, balance);
+    }
+
+    /**
+     * Audits a transfer of money between two accounts. The transfer is audited as two {@link Action#TRANSFER}
+     *  records, one per side, which carry the balance of their side after the transfer. This allows to replay every
+     *  record by setting the balance of a single account.
+     * @param src The account the money was taken from
+     * @param dest The account the money was given to
+     * @param amount The amount that was transferred
+     * @param srcBalance The balance of the source after the transfer
+     * @param destBalance The balance of the destination after the transfer
+     * @since 1.2.0
+     */
+    public void appendTransfer(@NotNull AccountKey src, @NotNull AccountKey dest, double amount,
+            double srcBalance, double destBalance) {
+        UUID srcPlayer = src.getPlayer();
+        UUID destPlayer = dest.getPlayer();
+        long srcMsb = srcPlayer == null ? 0L : srcPlayer.getMostSignificantBits();
+        long srcLsb = srcPlayer == null ? 0L : srcPlayer.getLeastSignificantBits();
+        long destMsb = destPlayer == null ? 0L : destPlayer.getMostSignificantBits();
+        long destLsb = destPlayer == null ? 0L : destPlayer.getLeastSignificantBits();
+        append(Action.TRANSFER, srcMsb, srcLsb, src.getBank(), destMsb, destLsb, dest.getBank(), true, false,
+                amount, srcBalance);
+        append(Action.TRANSFER, srcMsb, srcLsb, src.getBank(), destMsb, destLsb, dest.getBank(), true, true,
+                amount, destBalance);
+    }
+
+    /**
+     * Audits a batch of changes of the balances of players, where every change is audited as a
+     *  {@link Action#DEPOSIT} or {@link Action#WITHDRAW} depending on the sign of the amount.
+     * @param players The UUIDs of the players
+     * @param amounts The amounts that were added to the balances
+     * @param balances The balances after the changes
+     * @since 1.2.0
+     */
+    public void appendPlayers(@NotNull UUID @NotNull[] players, double @NotNull[] amounts, double @NotNull[] balances) {
+        for (int i = 0; i < players.length; i++) {
+            double amount = amounts[i];
+            appendPlayer(amount < 0 ? Action.WITHDRAW : Action.DEPOSIT, players[i], Math.abs(amount), balances[i]);
+        }
+    }
+
+    /**
+     * Audits a batch of changes of the balances of banks, where every change is audited as a
+     *  {@link Action#DEPOSIT} or {@link Action#WITHDRAW} depending on the sign of the amount.
+     * @param banks The names of the banks
+     * @param amounts The amounts that were added to the balances
+     * @param balances The balances after the changes, Double.NEGATIVE_INFINITY for banks that do not exist
+     * @since 1.2.0
+     */
+    public void appendBanks(@NotNull String @NotNull[] banks, double @NotNull[] amounts, double @NotNull[] balances) {
+        for (int i = 0; i < banks.length; i++) {
+            if (balances[i] == Double.NEGATIVE_INFINITY) {
+                continue;
+            }
+            double amount = amounts[i];
+            appendBank(amount < 0 ? Action.WITHDRAW : Action.DEPOSIT, banks[i], Math.abs(amount), balances[i]);
+        }
+    }
+
+    private void append(@NotNull Action action, long accountMsb, long accountLsb, @Nullable String accountBank,
+            long otherMsb, long otherLsb, @Nullable String otherBank, boolean hasCounterparty,
+            boolean counterpartyBalance, double amount, double balance) {
+        if (!open) {
+            return;
+        }
+        long time = System.currentTimeMillis();
+        long seq = claimed.getAndIncrement();
+        while (seq - consumed > mask) {
+            // The ring buffer is full, wait for the writer to catch up
+            if (stopped) {
+                return;
+            }
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS / 10);
+        }
+        int slot = (int) seq & mask;
+        int flags = (accountBank != null ? FLAG_BANK : 0) | (hasCounterparty ? FLAG_COUNTERPARTY : 0)
+                | (otherBank != null ? FLAG_COUNTERPARTY_BANK : 0)
+                | (counterpartyBalance ? FLAG_COUNTERPARTY_BALANCE : 0);
+        int base = slot * SLOT_LONGS;
+        slots[base] = time;
+        slots[base + 1] = action.ordinal() | (flags << 8);
+        slots[base + 2] = accountMsb;
+        slots[base + 3] = accountLsb;
+        slots[base + 4] = otherMsb;
+        slots[base + 5] = otherLsb;
+        slots[base + 6] = Double.doubleToRawLongBits(amount);
+        slots[base + 7] = Double.doubleToRawLongBits(balance);
+        names[slot * 2] = accountBank;
+        names[slot * 2 + 1] = otherBank;
+        // Release the slot to the writer, which reads the sequence with volatile semantics
+        published.lazySet(slot, seq + 1);
+    }
+
+    /**
+     * The loop of the writer thread, which drains the ring buffer into blocks.
+     */
+    private void write() {
+        long next = 0;
+        try {
+            while (true) {
+                int slot = (int) next & mask;
+                if (blockRecords < BLOCK_RECORDS && published.get(slot) == next + 1) {
+                    encode(slot);
+                    consumed = ++next;
+                    if (blockRecords == BLOCK_RECORDS && failure == null) {
+                        writeBlock(next);
+                    }
+                    continue;
+                }
+                long now = System.currentTimeMillis();
+                if (blockRecords != 0 && (failure == null || !open || now >= retryAt)
+                        && (!open || blockRecords == BLOCK_RECORDS || flushRequested > written
+                                || now - blockStart >= FLUSH_INTERVAL_MILLIS)) {
+                    writeBlock(next);
+                    continue;
+                }
+                if (!open && blockRecords == 0 && next == claimed.get()) {
+                    break;
+                }
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        } finally {
+            stopped = true;
+            closeSegment();
+            deflater.end();
+        }
+    }
+
+    private void encode(int slot) {
+        int base = slot * SLOT_LONGS;
+        long time = slots[base];
+        int header = (int) slots[base + 1];
+        int flags = header >>> 8;
+        if (blockRecords == 0) {
+            blockStart = System.currentTimeMillis();
+            firstTime = time;
+            lastTime = time;
+        } else {
+            firstTime = Math.min(firstTime, time);
+            lastTime = Math.max(lastTime, time);
+        }
+        records.putLong(time);
+        records.put((byte) header);
+        records.put((byte) flags);
+        records.putShort((short) 0).putInt(0);
+        if ((flags & FLAG_BANK) != 0) {
+            records.putLong(nameId((String) names[slot * 2])).putLong(0L);
+        } else {
+            records.putLong(slots[base + 2]).putLong(slots[base + 3]);
+        }
+        if ((flags & FLAG_COUNTERPARTY_BANK) != 0) {
+            records.putLong(nameId((String) names[slot * 2 + 1])).putLong(0L);
+        } else {
+            records.putLong(slots[base + 4]).putLong(slots[base + 5]);
+        }
+        records.putLong(slots[base + 6]).putLong(slots[base + 7]);
+        names[slot * 2] = null;
+        names[slot * 2 + 1] = null;
+        blockRecords++;
+    }
+
+    private int nameId(@NotNull String name) {
+        Integer id = blockNameIds.get(name);
+        if (id == null) {
+            id = blockNames.size();
+            blockNames.add(name);
+            blockNameIds.put(name, id);
+        }
+        return id;
+    }
+
+    /**
+     * Compresses the current block and appends it to the current segment. Blocks that can not be written are kept
+     *  and written again later, unless the log is being closed.
+     */
+    private void writeBlock(long next) {
+        ByteBuffer raw = ByteBuffer.wrap(payload);
+        int namesLength = 4;
+        for (String name : blockNames) {
+            namesLength += 2 + name.length() * 3;
+        }
+        if (payload.length < namesLength + records.position()) {
+            payload = new byte[namesLength + records.position()];
+            raw = ByteBuffer.wrap(payload);
+        }
+        raw.putInt(blockNames.size());
+        for (String name : blockNames) {
+            byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+            raw.putShort((short) encoded.length).put(encoded);
+        }
+        // The records are kept until the block was written, so it can be compressed again should writing fail
+        raw.put(records.array(), 0, records.position());
+        int length = raw.position();
+        int count = blockRecords;
+        deflater.reset();
+        deflater.setInput(payload, 0, length);
+        deflater.finish();
+        int compressedLength = BLOCK_HEADER_SIZE;
+        while (!deflater.finished()) {
+            if (compressedLength == compressed.length) {
+                byte[] grown = new byte[compressed.length * 2];
+                System.arraycopy(compressed, 0, grown, 0, compressedLength);
+                compressed = grown;
+            }
+            compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+        }
+        ByteBuffer.wrap(compressed, 0, BLOCK_HEADER_SIZE).putInt(compressedLength - BLOCK_HEADER_SIZE)
+                .putInt(length).putInt(count).putLong(firstTime).putLong(lastTime);
+        try {
+            FileChannel channel = segment;
+            if (channel == null) {
+                channel = openSegment();
+                segment = channel;
+            }
+            long offset = channel.position();
+            ByteBuffer block = ByteBuffer.wrap(compressed, 0, compressedLength);
+            while (block.hasRemaining()) {
+                channel.write(block);
+            }
+            channel.force(false);
+            // Only index the block once it is complete, readers may read it as soon as it is indexed
+            index(ByteBuffer.wrap(payload, 0, length), count, offset, activeIndex);
+            if (channel.size() >= segmentSize) {
+                closeSegment();
+            }
+        } catch (IOException e) {
+            // A partially written block ends the segment, as readers stop at the first torn block
+            closeSegment();
+            failure = e;
+            retryAt = System.currentTimeMillis() + RETRY_INTERVAL_MILLIS;
+            onWriteFailed(e, count, !open);
+            if (open) {
+                return;
+            }
+        }
+        ((Buffer) records).clear();
+        blockNames.clear();
+        blockNameIds.clear();
+        blockRecords = 0;
+        failure = null;
+        written = next;
+    }
+
+    /**
+     * Called on the writer thread if a block of records could not be written.
+     * @param e The exception that prevented the block from being written
+     * @param records The amount of records in the block
+     * @param discarded True if the records were discarded because the log is being closed, false if the block
+     *  is written again later
+     * @since 1.2.0
+     */
+    protected void onWriteFailed(@NotNull IOException e, int records, boolean discarded) {
+        e.printStackTrace();
+    }
+
+    /**
+     * Called on the writer thread if an expired segment or it's index could not be deleted.
+     * @param segment The segment
+     * @since 1.2.0
+     */
+    protected void onDeleteFailed(@NotNull File segment) {
+        // Does nothing by default
+    }
+
+    private @NotNull FileChannel openSegment() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create the audit log directory " + directory.getPath());
+        }
+        long now = System.currentTimeMillis();
+        deleteExpired(now);
+        File file = new File(directory, PREFIX + now + SUFFIX);
+        while (file.exists()) {
+            file = new File(directory, PREFIX + ++now + SUFFIX);
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+        ((Buffer) header).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        synchronized (activeIndex) {
+            activeSegment = file.getName();
+        }
+        return channel;
+    }
+
+    /**
+     * Deletes all segments whose records are older than the retention period, which are the segments
+     *  whose successor was created before the retention period began, together with their indices.
+     */
+    private void deleteExpired(long now) {
+        if (retentionMillis <= 0) {
+            return;
+        }
+        Long successor = null;
+        for (Map.Entry<Long, File> entry : segments(directory).descendingMap().entrySet()) {
+            if (successor != null && successor < now - retentionMillis) {
+                File segment = entry.getValue();
+                File index = indexFile(segment);
+                if ((!index.delete() && index.exists()) || !segment.delete()) {
+                    onDeleteFailed(segment);
+                }
+            }
+            successor = entry.getKey();
+        }
+    }
+
+    /**
+     * Seals the current segment by writing it's index and closing it.
+     */
+    private void closeSegment() {
+        FileChannel channel = segment;
+        segment = null;
+        if (channel == null) {
+            return;
+        }
+        synchronized (activeIndex) {
+            try {
+                File file = new File(directory, activeSegment);
+                activeIndex.write(indexFile(file), channel.size());
+            } catch (IOException e) {
+                // The index is rebuilt once the history of the segment is queried
+                e.printStackTrace();
+            }
+            activeIndex.clear();
+            activeSegment = null;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static @NotNull File indexFile(@NotNull File segment) {
+        String name = segment.getName();
+        return new File(segment.getParentFile(), name.substring(0, name.length() - SUFFIX.length()) + AuditIndex.SUFFIX);
+    }
+
+    private static @NotNull TreeMap<Long, File> segments(@NotNull File directory) {
+        TreeMap<Long, File> segments = new TreeMap<>();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return segments;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(PREFIX) && name.endsWith(SUFFIX)) {
+                try {
+                    segments.put(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())), file);
+                } catch (NumberFormatException ignored) {
+                    // Not one of our files
+                }
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Waits until every record that was appended before this method was called has been written to disk.
+     * @throws IOException If some of these records could not be written yet, the writer keeps retrying
+     * @since 1.2.0
+     */
+    public void flush() throws IOException {
+        long target = claimed.get();
+        while (written < target && !stopped) {
+            IOException cause = failure;
+            if (cause != null) {
+                throw new IOException("Unable to write the audit log, the records are written again later.", cause);
+            }
+            flushRequested = target;
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Writes all pending records to disk, see {@link #flush()}.
+     * @throws IOException If some of the records could not be written yet
+     */
+    @Override
+    public void save() throws IOException {
+        flush();
+    }
+
+    /**
+     * Reads the records of this log within a time range, after writing all pending records.
+     * @param from The earliest time of the records, inclusive, in milliseconds since the epoch
+     * @param to The latest time of the records, inclusive, in milliseconds since the epoch
+     * @param consumer The consumer that receives the records in the order in which they were written
+     * @throws IOException If an IO Exception occurs while reading
+     * @since 1.2.0
+     */
+    public void read(long from, long to, @NotNull Consumer<@NotNull AuditRecord> consumer) throws IOException {
+        flush();
+        read(directory, from, to, consumer);
+    }
+
+    /**
+     * Reads the records of the log stored in the given directory within a time range.
+     *  Reading a segment stops at the first block that is torn or otherwise invalid.
+     * @param directory The directory the segments are stored in
+     * @param from The earliest time of the records, inclusive, in milliseconds since the epoch
+     * @param to The latest time of the records, inclusive, in milliseconds since the epoch
+     * @param consumer The consumer that receives the records in the order in which they were written
+     * @throws IOException If an IO Exception occurs while reading
+     * @since 1.2.0
+     */
+    public static void read(@NotNull File directory, long from, long to,
+            @NotNull Consumer<@NotNull AuditRecord> consumer) throws IOException {
+        List<File> files = new ArrayList<>();
+        Long successor = null;
+        for (Map.Entry<Long, File> entry : segments(directory).descendingMap().entrySet()) {
+            // All records of a segment were written before it's successor was created
+            if (successor == null || successor >= from) {
+                files.add(0, entry.getValue());
+            }
+            successor = entry.getKey();
+        }
+        Inflater inflater = new Inflater();
+        try {
+            for (File file : files) {
+                try (BlockReader reader = new BlockReader(file, inflater)) {
+                    long offset = SEGMENT_HEADER_SIZE;
+                    while (reader.readHeader(offset)) {
+                        if (reader.last >= from && reader.first <= to) {
+                            ByteBuffer block = reader.inflate(offset);
+                            if (block == null) {
+                                break;
+                            }
+                            decodeBlock(block, reader.count, from, to, null, consumer);
+                        }
+                        offset = reader.next(offset);
+                    }
+                }
+            }
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Obtains the history of a player, which are all records where the player is the account or the counterparty,
+     *  starting with the most recent record. Only the blocks that contain records of the player are read,
+     *  which are looked up in the per-player index of every segment. Missing indices of segments that were not
+     *  sealed properly, for example due to a crash, are rebuilt.
+     * @param player The UUID of the player
+     * @param skip The amount of most recent records to skip, used for paging
+     * @param limit The maximum amount of records to return
+     * @return The records, most recent first
+     * @throws IOException If an IO Exception occurs while reading
+     * @since 1.2.0
+     */
+    public @NotNull List<@NotNull AuditRecord> getHistory(@NotNull UUID player, int skip, int limit) throws IOException {
+        flush();
+        List<AuditRecord> history = new ArrayList<>();
+        if (limit <= 0) {
+            return history;
+        }
+        List<AuditRecord> block = new ArrayList<>();
+        Inflater inflater = new Inflater();
+        try {
+            for (File segment : segments(directory).descendingMap().values()) {
+                long[] offsets = offsets(segment, player);
+                if (offsets.length == 0) {
+                    continue;
+                }
+                try (BlockReader reader = new BlockReader(segment, inflater)) {
+                    for (int i = offsets.length - 1; i >= 0; i--) {
+                        ByteBuffer payload = reader.readHeader(offsets[i]) ? reader.inflate(offsets[i]) : null;
+                        if (payload == null) {
+                            continue;
+                        }
+                        block.clear();
+                        decodeBlock(payload, reader.count, Long.MIN_VALUE, Long.MAX_VALUE, player, block::add);
+                        for (int j = block.size() - 1; j >= 0; j--) {
+                            if (skip > 0) {
+                                skip--;
+                                continue;
+                            }
+                            history.add(block.get(j));
+                            if (history.size() == limit) {
+                                return history;
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            inflater.end();
+        }
+        return history;
+    }
+
+    /**
+     * Obtains the offsets of the blocks of a segment that contain records of a player.
+     */
+    private long @NotNull[] offsets(@NotNull File segment, @NotNull UUID player) throws IOException {
+        synchronized (activeIndex) {
+            if (segment.getName().equals(activeSegment)) {
+                return activeIndex.get(player);
+            }
+        }
+        File indexFile = indexFile(segment);
+        long length = segment.length();
+        long[] offsets = AuditIndex.lookup(indexFile, length, player);
+        if (offsets != null) {
+            return offsets;
+        }
+        AuditIndex index = new AuditIndex();
+        Inflater inflater = new Inflater();
+        try (BlockReader reader = new BlockReader(segment, inflater)) {
+            long offset = SEGMENT_HEADER_SIZE;
+            while (reader.readHeader(offset)) {
+                ByteBuffer block = reader.inflate(offset);
+                if (block == null) {
+                    break;
+                }
+                index(block, reader.count, offset, index);
+                offset = reader.next(offset);
+            }
+        } finally {
+            inflater.end();
+        }
+        index.write(indexFile, length);
+        return index.get(player);
+    }
+
+    /**
+     * Adds the players of a block to an index.
+     */
+    private static void index(@NotNull ByteBuffer block, int count, long offset, @NotNull AuditIndex index) {
+        int names = block.getInt();
+        for (int i = 0; i < names; i++) {
+            int length = block.getShort() & 0xFFFF;
+            block.position(block.position() + length);
+        }
+        int base = block.position();
+        for (int i = 0; i < count; i++, base += RECORD_SIZE) {
+            int flags = block.get(base + 9);
+            if ((flags & FLAG_BANK) == 0) {
+                index.add(block.getLong(base + 16), block.getLong(base + 24), offset);
+            }
+            if ((flags & (FLAG_COUNTERPARTY | FLAG_COUNTERPARTY_BANK)) == FLAG_COUNTERPARTY) {
+                index.add(block.getLong(base + 32), block.getLong(base + 40), offset);
+            }
+        }
+    }
+
+    private static void decodeBlock(@NotNull ByteBuffer block, int count, long from, long to, @Nullable UUID player,
+            @NotNull Consumer<@NotNull AuditRecord> consumer) {
+        String[] banks = new String[block.getInt()];
+        for (int i = 0; i < banks.length; i++) {
+            byte[] name = new byte[block.getShort() & 0xFFFF];
+            block.get(name);
+            banks[i] = new String(name, StandardCharsets.UTF_8);
+        }
+        for (int i = 0; i < count; i++) {
+            long time = block.getLong();
+            Action action = Action.byId(block.get());
+            int flags = block.get();
+            block.getShort();
+            block.getInt();
+            long accountMsb = block.getLong();
+            long accountLsb = block.getLong();
+            long otherMsb = block.getLong();
+            long otherLsb = block.getLong();
+            double amount = block.getDouble();
+            double balance = block.getDouble();
+            if (time < from || time > to || action == null) {
+                continue;
+            }
+            if (player != null) {
+                boolean isAccount = (flags & FLAG_BANK) == 0 && accountMsb == player.getMostSignificantBits()
+                        && accountLsb == player.getLeastSignificantBits();
+                boolean isCounterparty = (flags & (FLAG_COUNTERPARTY | FLAG_COUNTERPARTY_BANK)) == FLAG_COUNTERPARTY
+                        && otherMsb == player.getMostSignificantBits() && otherLsb == player.getLeastSignificantBits();
+                if ((flags & FLAG_COUNTERPARTY) != 0 && !Double.isNaN(balance)) {
+                    // Transfers are audited once per side, a player only sees the record that carries it's balance
+                    boolean counterpartySide = (flags & FLAG_COUNTERPARTY_BALANCE) != 0;
+                    isAccount &= !counterpartySide;
+                    isCounterparty &= counterpartySide;
+                }
+                if (!isAccount && !isCounterparty) {
+                    continue;
+                }
+            }
+            AccountKey account = (flags & FLAG_BANK) != 0 ? AccountKey.bank(banks[(int) accountMsb])
+                    : AccountKey.player(new UUID(accountMsb, accountLsb));
+            AccountKey counterparty = null;
+            if ((flags & FLAG_COUNTERPARTY_BANK) != 0) {
+                counterparty = AccountKey.bank(banks[(int) otherMsb]);
+            } else if ((flags & FLAG_COUNTERPARTY) != 0) {
+                counterparty = AccountKey.player(new UUID(otherMsb, otherLsb));
+            }
+            consumer.accept(new AuditRecord(time, action, account, counterparty, amount, balance,
+                    (flags & FLAG_COUNTERPARTY_BALANCE) != 0));
+        }
+    }
+
+    /**
+     * Reads single blocks of a segment at arbitrary offsets.
+     */
+    private static final class BlockReader implements Closeable {
+
+        private final @NotNull FileChannel channel;
+        private final @NotNull Inflater inflater;
+        private final @NotNull ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+        private byte @NotNull[] input = new byte[0];
+        private byte @NotNull[] output = new byte[0];
+        private int compressedLength;
+        private int length;
+        private int count;
+        private long first;
+        private long last;
+
+        private BlockReader(@NotNull File segment, @NotNull Inflater inflater) throws IOException {
+            this.channel = FileChannel.open(segment.toPath(), StandardOpenOption.READ);
+            this.inflater = inflater;
+            ByteBuffer magic = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+            if (!read(magic, 0) || magic.getInt() != MAGIC || magic.getInt() != VERSION) {
+                channel.close();
+                throw new IOException("The file " + segment.getName() + " is not an audit log segment of a known version.");
+            }
+        }
+
+        /**
+         * Reads the header of the block at the given offset.
+         * @return False if there is no block at the offset or the block is torn
+         */
+        private boolean readHeader(long offset) throws IOException {
+            ((Buffer) header).clear();
+            if (!read(header, offset)) {
+                return false;
+            }
+            compressedLength = header.getInt();
+            length = header.getInt();
+            count = header.getInt();
+            first = header.getLong();
+            last = header.getLong();
+            return count >= 0 && count <= BLOCK_RECORDS && compressedLength >= 0
+                    && length >= 4 + count * RECORD_SIZE && offset + BLOCK_HEADER_SIZE + compressedLength <= channel.size();
+        }
+
+        /**
+         * Inflates the payload of the block whose header was read last.
+         * @return The payload, or null if it is invalid
+         */
+        private @Nullable ByteBuffer inflate(long offset) throws IOException {
+            if (input.length < compressedLength) {
+                input = new byte[compressedLength];
+            }
+            if (output.length < length) {
+                output = new byte[length];
+            }
+            if (!read(ByteBuffer.wrap(input, 0, compressedLength), offset + BLOCK_HEADER_SIZE)) {
+                return null;
+            }
+            inflater.reset();
+            inflater.setInput(input, 0, compressedLength);
+            try {
+                if (inflater.inflate(output, 0, length) != length) {
+                    return null;
+                }
+            } catch (DataFormatException e) {
+                return null;
+            }
+            return ByteBuffer.wrap(output, 0, length);
+        }
+
+        private long next(long offset) {
+            return offset + BLOCK_HEADER_SIZE + compressedLength;
+        }
+
+        /**
+         * Fills the remaining bytes of a buffer that starts at the beginning of it's backing array and flips it.
+         */
+        private boolean read(@NotNull ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) == -1) {
+                    return false;
+                }
+            }
+            ((Buffer) buffer).flip();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Stops accepting new records, writes all pending records to disk and stops the writer thread.
+     *  Records that are appended afterwards are discarded.
+     * @since 1.2.0
+     */
+    @Override
+    public void close() {
+        open = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
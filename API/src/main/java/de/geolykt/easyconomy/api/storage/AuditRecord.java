@@ -0,0 +1,175 @@
+package de.geolykt.easyconomy.api.storage;
+
+import java.time.Instant;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import de.geolykt.easyconomy.api.AccountKey;
+
+/**
+ * A single entry of the {@link AuditLog}, as it is decoded while the log is read.
+ *  The text representation is only rendered by {@link #toString()}, writing the log never formats anything.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+public final class AuditRecord {
+
+    /**
+     * The kind of change that was audited. The ordinal is stored in the log, so new actions may only be appended.
+     * @since 1.2.0
+     */
+    public static enum Action {
+        /**
+         * Money was added to the account.
+         */
+        DEPOSIT,
+        /**
+         * Money was removed from the account.
+         */
+        WITHDRAW,
+        /**
+         * The balance of the account was set to the amount.
+         */
+        SET,
+        /**
+         * Money was moved from the account to the counterparty.
+         */
+        TRANSFER;
+
+        private static final Action[] VALUES = values();
+
+        static @Nullable Action byId(int id) {
+            return id >= 0 && id < VALUES.length ? VALUES[id] : null;
+        }
+    }
+
+    private final long timestamp;
+    private final @NotNull Action action;
+    private final @NotNull AccountKey account;
+    private final @Nullable AccountKey counterparty;
+    private final double amount;
+    private final double balance;
+    private final boolean counterpartyBalance;
+
+    /**
+     * Creates a new record.
+     * @param timestamp The time of the change in milliseconds since the epoch
+     * @param action The kind of change
+     * @param account The account that was changed, the source of a transfer
+     * @param counterparty The destination of a transfer, null for other actions
+     * @param amount The amount of the change
+     * @param balance The balance of the account after the change, NaN if it is not known
+     * @since 1.2.0
+     */
+    public AuditRecord(long timestamp, @NotNull Action action, @NotNull AccountKey account,
+            @Nullable AccountKey counterparty, double amount, double balance) {
+        this(timestamp, action, account, counterparty, amount, balance, false);
+    }
+
+    /**
+     * Creates a new record.
+     * @param timestamp The time of the change in milliseconds since the epoch
+     * @param action The kind of change
+     * @param account The account that was changed, the source of a transfer
+     * @param counterparty The destination of a transfer, null for other actions
+     * @param amount The amount of the change
+     * @param balance The balance after the change, NaN if it is not known
+     * @param counterpartyBalance Whether the balance is the balance of the counterparty instead of the account
+     * @since 1.2.0
+     */
+    public AuditRecord(long timestamp, @NotNull Action action, @NotNull AccountKey account,
+            @Nullable AccountKey counterparty, double amount, double balance, boolean counterpartyBalance) {
+        this.timestamp = timestamp;
+        this.action = action;
+        this.account = account;
+        this.counterparty = counterparty;
+        this.amount = amount;
+        this.balance = balance;
+        this.counterpartyBalance = counterpartyBalance && counterparty != null;
+    }
+
+    /**
+     * Obtains the time of the change.
+     * @return The time in milliseconds since the epoch
+     * @since 1.2.0
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Obtains the kind of change.
+     * @return The action
+     * @since 1.2.0
+     */
+    public @NotNull Action getAction() {
+        return action;
+    }
+
+    /**
+     * Obtains the account that was changed, which is the source of the money for transfers.
+     * @return The account
+     * @since 1.2.0
+     */
+    public @NotNull AccountKey getAccount() {
+        return account;
+    }
+
+    /**
+     * Obtains the account the money was transferred to.
+     * @return The destination of the transfer, or null if the record is not a transfer
+     * @since 1.2.0
+     */
+    public @Nullable AccountKey getCounterparty() {
+        return counterparty;
+    }
+
+    /**
+     * Obtains the amount of the change, which is the new balance for {@link Action#SET}.
+     * @return The amount
+     * @since 1.2.0
+     */
+    public double getAmount() {
+        return amount;
+    }
+
+    /**
+     * Obtains the balance of the account after the change, or the balance of the counterparty for the record of the
+     *  receiving side of a transfer. See {@link #getBalanceAccount()}.
+     * @return The balance, or NaN if it was not known when the change was audited
+     * @since 1.2.0
+     */
+    public double getBalance() {
+        return balance;
+    }
+
+    /**
+     * Obtains the account that has the {@link #getBalance() balance} of the record. Transfers are audited as one record
+     *  per side, both of which name the source as the account and the destination as the counterparty.
+     * @return The account, or the counterparty if the record is the receiving side of a transfer
+     * @since 1.2.0
+     */
+    public @NotNull AccountKey getBalanceAccount() {
+        AccountKey counterparty = this.counterparty;
+        return counterpartyBalance && counterparty != null ? counterparty : account;
+    }
+
+    @Override
+    public @NotNull String toString() {
+        StringBuilder builder = new StringBuilder(128);
+        builder.append(Instant.ofEpochMilli(timestamp)).append(' ').append(action).append(' ').append(account);
+        if (counterparty != null) {
+            builder.append(" -> ").append(counterparty);
+        }
+        builder.append(' ').append(amount);
+        if (!Double.isNaN(balance)) {
+            builder.append(" (balance ");
+            if (counterpartyBalance) {
+                builder.append("of ").append(counterparty).append(' ');
+            }
+            builder.append(balance).append(')');
+        }
+        return builder.toString();
+    }
+}
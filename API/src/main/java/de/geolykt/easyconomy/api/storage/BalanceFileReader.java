@@ -0,0 +1,327 @@
+package de.geolykt.easyconomy.api.storage;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Reads player storage files of the v1, v2, v3 and v4 binary storage formats into a {@link BalanceTable}.
+ * The table is sized up front from the header of the file, after which the file is streamed through a reusable
+ *  direct buffer. Large chunks are decoded in parallel on the common {@link ForkJoinPool}, which requires the table
+ *  to be thread safe and means that the order in which the entries are inserted is not defined.
+ * <br/>
+ * The storage formats are as follows (all values are big endian):
+ * <ul>
+ * <li>v1: The version byte followed by 24 byte entries consisting of the UUID and the balance.</li>
+ * <li>v2: The version byte followed by the time of the last backup (8 bytes), the amount of active and inactive
+ *  accounts (4 bytes each) and the balance of inactive accounts (8 bytes). Then the UUIDs of the inactive accounts
+ *  (16 bytes each) and the entries of the active accounts (24 bytes each) follow.</li>
+ * <li>v3: See {@link MappedBalanceTable}.</li>
+ * <li>v4: See {@link BalanceFileWriter}. As it is variable length encoded, it is decoded sequentially.</li>
+ * </ul>
+ * @author Geolykt
+ * @since 1.2.0
+ */
+public class BalanceFileReader implements Closeable {
+
+    /**
+     * Thrown if the length of a storage file does not match the length announced by it's header.
+     * @since 1.2.0
+     */
+    public static class CorruptedStorageException extends IOException {
+
+        private static final long serialVersionUID = -1651457460281963840L;
+
+        public CorruptedStorageException(@NotNull String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The amount of records that are read from the disk at once.
+     */
+    private static final int CHUNK_RECORDS = 1 << 18;
+    /**
+     * The amount of records below which a chunk is no longer split into smaller tasks.
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 14;
+
+    private final @NotNull FileChannel channel;
+    private final long size;
+    private final int version;
+    private long lastBackup = Long.MIN_VALUE;
+    private ByteBuffer buffer;
+
+    /**
+     * Opens a storage file and reads it's version.
+     * @param file The file to read
+     * @throws IOException If the file could not be opened
+     * @since 1.2.0
+     */
+    public BalanceFileReader(@NotNull File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        size = channel.size();
+        if (size == 0) {
+            version = -1;
+        } else {
+            version = Byte.toUnsignedInt(readFully(0, 1).get(0));
+        }
+    }
+
+    /**
+     * Obtains the version byte of the file.
+     * @return The version of the storage format of the file, or -1 if the file is empty
+     * @since 1.2.0
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Checks whether a version of the storage format can be read.
+     * @param version The version to check
+     * @return True if files of the version can be read
+     * @since 1.2.0
+     */
+    public static boolean isSupported(int version) {
+        return version == 1 || version == 2 || version == MappedBalanceTable.FORMAT_VERSION
+                || version == BalanceFileWriter.COMPACT_FORMAT_VERSION;
+    }
+
+    /**
+     * Obtains the time of the last backup that is stored in v2 and v4 files.
+     * @return The time of the last backup, or {@link Long#MIN_VALUE} if it is not known
+     * @since 1.2.0
+     */
+    public long getLastBackup() {
+        return lastBackup;
+    }
+
+    /**
+     * Reads the file into the table using the given storage format, which is usually the {@link #getVersion() version}
+     *  of the file. Empty files are ignored.
+     * @param target The table to read the entries into
+     * @param format The storage format to interpret the file as
+     * @throws CorruptedStorageException If the length of the file does not match it's header
+     * @throws IOException If an IO Exception occurs or the storage format is not supported
+     * @since 1.2.0
+     */
+    public void read(@NotNull BalanceTable target, int format) throws IOException {
+        if (size == 0) {
+            return;
+        }
+        switch (format) {
+        case 1: {
+            if ((size - 1) % 24 != 0) {
+                throw new CorruptedStorageException("Unexpected file size for the v1 binary storage format.");
+            }
+            long count = (size - 1) / 24;
+            target.ensureCapacity(target.size() + (int) count);
+            readRegion(target, 1, count, 24, 0.0);
+            break;
+        }
+        case 2: {
+            ByteBuffer header = readFully(1, 24);
+            lastBackup = header.getLong(0);
+            int activeAccounts = header.getInt(8);
+            int inactiveAccounts = header.getInt(12);
+            double defaultMoney = header.getDouble(16);
+            if (activeAccounts < 0 || inactiveAccounts < 0
+                    || 25 + inactiveAccounts * 16L + activeAccounts * 24L != size) {
+                throw new CorruptedStorageException("Unexpected file size for the v2 binary storage format.");
+            }
+            target.ensureCapacity(target.size() + activeAccounts + inactiveAccounts);
+            readRegion(target, 25, inactiveAccounts, 16, defaultMoney);
+            readRegion(target, 25 + inactiveAccounts * 16L, activeAccounts, 24, 0.0);
+            break;
+        }
+        case MappedBalanceTable.FORMAT_VERSION: {
+            if (size < MappedBalanceTable.HEADER_SIZE) {
+                throw new CorruptedStorageException("Unexpected file size for the v3 binary storage format.");
+            }
+            int slots = readFully(4, 4).getInt(0);
+            if (slots < 0 || MappedBalanceTable.HEADER_SIZE + (long) slots * MappedBalanceTable.SLOT_SIZE > size) {
+                throw new CorruptedStorageException("Unexpected slot count for the v3 binary storage format.");
+            }
+            target.ensureCapacity(target.size() + slots);
+            readRegion(target, MappedBalanceTable.HEADER_SIZE, slots, MappedBalanceTable.SLOT_SIZE, 0.0);
+            break;
+        }
+        case BalanceFileWriter.COMPACT_FORMAT_VERSION:
+            try {
+                readCompact(target);
+            } catch (EOFException e) {
+                throw new CorruptedStorageException("Unexpected end of file for the v4 binary storage format.");
+            }
+            break;
+        default:
+            throw new IOException("Unsupported binary storage format: v" + format);
+        }
+    }
+
+    /**
+     * Reads a region of records. Records with a length of 16 bytes only consist of the UUID and are assigned
+     *  the default balance.
+     */
+    private void readRegion(@NotNull BalanceTable target, long offset, long count, int recordSize, double defaultBalance) throws IOException {
+        while (count > 0) {
+            int records = (int) Math.min(count, CHUNK_RECORDS);
+            ByteBuffer chunk = readFully(offset, records * recordSize);
+            if (records < PARALLEL_THRESHOLD) {
+                decode(chunk, target, 0, records, recordSize, defaultBalance);
+            } else {
+                ForkJoinPool.commonPool().invoke(new DecodeTask(chunk, target, 0, records, recordSize, defaultBalance));
+            }
+            offset += (long) records * recordSize;
+            count -= records;
+        }
+    }
+
+    private void readCompact(@NotNull BalanceTable target) throws IOException {
+        CRC32 checksum = new CRC32();
+        channel.position(0);
+        InputStream rawIn = new BufferedInputStream(Channels.newInputStream(channel), 1 << 16);
+        DataInputStream in = new DataInputStream(new CheckedInputStream(rawIn, checksum));
+        in.readUnsignedByte(); // Version
+        lastBackup = in.readLong();
+        int accounts = in.readInt();
+        int keyBytes = in.readUnsignedByte();
+        int dictionarySize = in.readUnsignedByte();
+        if (accounts < 0 || keyBytes > 16 || dictionarySize > BalanceFileWriter.MAXIMUM_DICTIONARY_SIZE) {
+            throw new CorruptedStorageException("Invalid header for the v4 binary storage format.");
+        }
+        double[] dictionary = new double[dictionarySize];
+        for (int i = 0; i < dictionarySize; i++) {
+            dictionary[i] = in.readDouble();
+        }
+        target.ensureCapacity(target.size() + accounts);
+        long msb = 0;
+        long lsb = 0;
+        for (int i = 0; i < accounts; i++) {
+            // Read the 128 bit delta and add it to the previous key
+            long deltaLsb = 0;
+            long deltaMsb = 0;
+            for (int shift = 0;; shift += 7) {
+                if (shift > 126) {
+                    throw new CorruptedStorageException("Overlong UUID delta in the v4 binary storage format.");
+                }
+                int b = in.readUnsignedByte();
+                long bits = b & 0x7F;
+                if (shift < 64) {
+                    deltaLsb |= bits << shift;
+                    if (shift > 57) {
+                        deltaMsb |= bits >>> (64 - shift);
+                    }
+                } else {
+                    deltaMsb |= bits << (shift - 64);
+                }
+                if ((b & 0x80) == 0) {
+                    break;
+                }
+            }
+            // Shift the upper bits into place and append the lower key bytes
+            for (int j = 0; j < keyBytes; j++) {
+                deltaMsb = (deltaMsb << 8) | (deltaLsb >>> 56);
+                deltaLsb = (deltaLsb << 8) | in.readUnsignedByte();
+            }
+            long newLsb = lsb + deltaLsb;
+            msb += deltaMsb + (Long.compareUnsigned(newLsb, lsb) < 0 ? 1 : 0);
+            lsb = newLsb;
+
+            int token = in.readUnsignedByte();
+            double balance;
+            if (token == 0) {
+                balance = in.readDouble();
+            } else if (token <= dictionarySize) {
+                balance = dictionary[token - 1];
+            } else {
+                throw new CorruptedStorageException("Invalid balance token in the v4 binary storage format.");
+            }
+            target.load(msb, lsb, balance);
+        }
+        int expected = (int) checksum.getValue();
+        if (new DataInputStream(rawIn).readInt() != expected || rawIn.read() != -1) {
+            throw new CorruptedStorageException("Checksum mismatch for the v4 binary storage format.");
+        }
+    }
+
+    private static void decode(@NotNull ByteBuffer chunk, @NotNull BalanceTable target, int from, int to, int recordSize, double defaultBalance) {
+        for (int i = from; i < to; i++) {
+            int position = i * recordSize;
+            target.load(chunk.getLong(position), chunk.getLong(position + 8),
+                    recordSize == 16 ? defaultBalance : chunk.getDouble(position + 16));
+        }
+    }
+
+    private static class DecodeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 3125407372817049958L;
+
+        private final transient ByteBuffer chunk;
+        private final transient BalanceTable target;
+        private final int from;
+        private final int to;
+        private final int recordSize;
+        private final double defaultBalance;
+
+        private DecodeTask(ByteBuffer chunk, BalanceTable target, int from, int to, int recordSize, double defaultBalance) {
+            this.chunk = chunk;
+            this.target = target;
+            this.from = from;
+            this.to = to;
+            this.recordSize = recordSize;
+            this.defaultBalance = defaultBalance;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                decode(chunk, target, from, to, recordSize, defaultBalance);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new DecodeTask(chunk, target, from, middle, recordSize, defaultBalance),
+                    new DecodeTask(chunk, target, middle, to, recordSize, defaultBalance));
+        }
+    }
+
+    /**
+     * Reads the given amount of bytes at the given position of the file into the shared buffer.
+     * @return The buffer, with the position at 0 and the limit at the amount of read bytes
+     */
+    private @NotNull ByteBuffer readFully(long position, int length) throws IOException {
+        if (buffer == null || buffer.capacity() < length) {
+            buffer = ByteBuffer.allocateDirect(Math.max(length, 4096));
+        }
+        ((Buffer) buffer).clear();
+        ((Buffer) buffer).limit(length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read == -1) {
+                throw new EOFException("Unexpected end of the storage file.");
+            }
+        }
+        ((Buffer) buffer).flip();
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
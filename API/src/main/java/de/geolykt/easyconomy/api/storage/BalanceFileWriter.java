@@ -0,0 +1,269 @@
+package de.geolykt.easyconomy.api.storage;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Writes snapshots of balance tables in the v2 or v4 binary storage format, see {@link BalanceFileReader}.
+ * <br/>
+ * The compact v4 format sorts the accounts by their UUID and stores the difference between consecutive UUIDs.
+ *  As the UUIDs are mostly random, the lower bits of the differences are incompressible, which is why the lowest
+ *  {@code KEY BYTES} bytes of every difference are stored as-is, while the remaining upper bits are written as
+ *  a variable length integer that usually fits a single byte. The amount of key bytes is derived from the amount of
+ *  accounts. Balances are encoded as a token, where 0 is followed by the balance itself and any other token refers to
+ *  an entry of a dictionary of the most common balances. On a server with a million accounts, most of which share
+ *  a few balances (most notably the starting balance), a typical account occupies 15 bytes.
+ * <pre>
+ * [VERSION = 4] [LAST BACKUP] [ACCOUNTS] [KEY BYTES] [DICTIONARY SIZE] [DICTIONARY]  [ACCOUNTS]  [CRC32]
+ *     1 byte       8 bytes     4 bytes     1 byte        1 byte        8 bytes each               4 bytes
+ *
+ * Account: [UUID DELTA >>> KEY BYTES * 8] [LOWER KEY BYTES OF THE UUID DELTA] [TOKEN] ([BALANCE])
+ *                  varint                         KEY BYTES bytes              1 byte   8 bytes
+ * </pre>
+ * The CRC32 checksum covers all preceding bytes of the file.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+public final class BalanceFileWriter {
+
+    public static final int COMPACT_FORMAT_VERSION = 4;
+
+    /**
+     * The maximum size of the dictionary of the v4 format, chosen so that every token fits in a single byte.
+     */
+    static final int MAXIMUM_DICTIONARY_SIZE = 127;
+
+    private BalanceFileWriter() {
+        // Utility class
+    }
+
+    /**
+     * Writes the snapshot in the v2 binary storage format.
+     * @param snapshot The snapshot to write
+     * @param out The stream to write to, should be buffered
+     * @param lastBackup The time of the last backup
+     * @param defaultBalance The balance of inactive accounts, which are stored without their balance
+     * @throws IOException If an IO Exception occurs
+     * @since 1.2.0
+     */
+    public static void writeV2(@NotNull BalanceSnapshot snapshot, @NotNull OutputStream out, long lastBackup,
+            double defaultBalance) throws IOException {
+        long defaultBits = Double.doubleToLongBits(defaultBalance);
+        int[] inactiveAccounts = new int[1];
+        snapshot.writeEntries((msb, lsb, balance) -> {
+            if (Double.doubleToLongBits(balance) == defaultBits) {
+                inactiveAccounts[0]++;
+            }
+        });
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.write(2);
+        dataOut.writeLong(lastBackup);
+        dataOut.writeInt(snapshot.size() - inactiveAccounts[0]);
+        dataOut.writeInt(inactiveAccounts[0]);
+        dataOut.writeDouble(defaultBalance);
+        snapshot.writeEntries((msb, lsb, balance) -> {
+            if (Double.doubleToLongBits(balance) == defaultBits) {
+                dataOut.writeLong(msb);
+                dataOut.writeLong(lsb);
+            }
+        });
+        snapshot.writeEntries((msb, lsb, balance) -> {
+            if (Double.doubleToLongBits(balance) != defaultBits) {
+                dataOut.writeLong(msb);
+                dataOut.writeLong(lsb);
+                dataOut.writeDouble(balance);
+            }
+        });
+        dataOut.flush();
+    }
+
+    /**
+     * Writes the snapshot in the compact v4 binary storage format.
+     * @param snapshot The snapshot to write
+     * @param out The stream to write to, should be buffered
+     * @param lastBackup The time of the last backup
+     * @throws IOException If an IO Exception occurs
+     * @since 1.2.0
+     */
+    public static void writeV4(@NotNull BalanceSnapshot snapshot, @NotNull OutputStream out, long lastBackup) throws IOException {
+        int size = snapshot.size();
+        long[] keys = new long[size * 2];
+        double[] balances = new double[size];
+        int[] count = new int[1];
+        snapshot.writeEntries((msb, lsb, balance) -> {
+            int i = count[0]++;
+            keys[i * 2] = msb;
+            keys[i * 2 + 1] = lsb;
+            balances[i] = balance;
+        });
+        sort(keys, balances, 0, size - 1);
+        long[] dictionary = buildDictionary(balances);
+        // Lookup table from the bits of a balance to it's token
+        long[] sortedDictionary = dictionary.clone();
+        Arrays.sort(sortedDictionary);
+        int[] tokens = new int[dictionary.length];
+        for (int i = 0; i < dictionary.length; i++) {
+            tokens[Arrays.binarySearch(sortedDictionary, dictionary[i])] = i + 1;
+        }
+
+        CRC32 checksum = new CRC32();
+        DataOutputStream dataOut = new DataOutputStream(new CheckedOutputStream(out, checksum));
+        dataOut.write(COMPACT_FORMAT_VERSION);
+        dataOut.writeLong(lastBackup);
+        dataOut.writeInt(size);
+        // The differences are about 2^128 / size large, store all bytes below that as-is
+        int keyBytes = (128 - (32 - Integer.numberOfLeadingZeros(size))) / 8;
+        dataOut.write(keyBytes);
+        dataOut.write(dictionary.length);
+        for (long bits : dictionary) {
+            dataOut.writeLong(bits);
+        }
+        long previousMsb = 0;
+        long previousLsb = 0;
+        for (int i = 0; i < size; i++) {
+            long msb = keys[i * 2];
+            long lsb = keys[i * 2 + 1];
+            // 128 bit subtraction of the previous key
+            long deltaLsb = lsb - previousLsb;
+            long deltaMsb = msb - previousMsb - (Long.compareUnsigned(lsb, previousLsb) < 0 ? 1 : 0);
+            writeDelta(dataOut, deltaMsb, deltaLsb, keyBytes);
+            previousMsb = msb;
+            previousLsb = lsb;
+
+            long bits = Double.doubleToLongBits(balances[i]);
+            int index = Arrays.binarySearch(sortedDictionary, bits);
+            if (index < 0) {
+                dataOut.write(0);
+                dataOut.writeLong(bits);
+            } else {
+                dataOut.write(tokens[index]);
+            }
+        }
+        dataOut.flush();
+        // The checksum itself is not part of the checksum
+        new DataOutputStream(out).writeInt((int) checksum.getValue());
+        out.flush();
+    }
+
+    /**
+     * Finds the most common balances that occur more than once, ordered by their frequency.
+     * @return The bits of the balances
+     */
+    private static long @NotNull[] buildDictionary(double @NotNull[] balances) {
+        long[] bits = new long[balances.length];
+        for (int i = 0; i < balances.length; i++) {
+            bits[i] = Double.doubleToLongBits(balances[i]);
+        }
+        Arrays.sort(bits);
+        // Runs of equal values, packed as the negated run length in the upper and the index of the run in the lower half
+        long[] runs = new long[bits.length];
+        int runCount = 0;
+        for (int start = 0; start < bits.length;) {
+            int end = start + 1;
+            while (end < bits.length && bits[end] == bits[start]) {
+                end++;
+            }
+            if (end - start > 1) {
+                runs[runCount++] = ((long) -(end - start) << 32) | start;
+            }
+            start = end;
+        }
+        Arrays.sort(runs, 0, runCount);
+        long[] dictionary = new long[Math.min(runCount, MAXIMUM_DICTIONARY_SIZE)];
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = bits[(int) runs[i]];
+        }
+        return dictionary;
+    }
+
+    private static void writeDelta(@NotNull DataOutputStream out, long high, long low, int keyBytes) throws IOException {
+        int shift = keyBytes * 8;
+        if (shift == 0) {
+            writeVarInt128(out, high, low);
+        } else if (shift < 64) {
+            writeVarInt128(out, high >>> shift, (low >>> shift) | (high << (64 - shift)));
+        } else if (shift < 128) {
+            writeVarInt128(out, 0, high >>> (shift - 64));
+        } else {
+            writeVarInt128(out, 0, 0);
+        }
+        for (int i = keyBytes - 1; i >= 0; i--) {
+            out.write((int) (i < 8 ? low >>> (i * 8) : high >>> ((i - 8) * 8)));
+        }
+    }
+
+    private static void writeVarInt128(@NotNull DataOutputStream out, long high, long low) throws IOException {
+        while (high != 0 || (low & ~0x7FL) != 0) {
+            out.write((int) (low & 0x7F) | 0x80);
+            low = (low >>> 7) | (high << 57);
+            high >>>= 7;
+        }
+        out.write((int) low);
+    }
+
+    private static int compareKeys(long @NotNull[] keys, int a, int b) {
+        int result = Long.compareUnsigned(keys[a * 2], keys[b * 2]);
+        if (result != 0) {
+            return result;
+        }
+        return Long.compareUnsigned(keys[a * 2 + 1], keys[b * 2 + 1]);
+    }
+
+    private static void swap(long @NotNull[] keys, double @NotNull[] balances, int a, int b) {
+        long msb = keys[a * 2];
+        long lsb = keys[a * 2 + 1];
+        double balance = balances[a];
+        keys[a * 2] = keys[b * 2];
+        keys[a * 2 + 1] = keys[b * 2 + 1];
+        balances[a] = balances[b];
+        keys[b * 2] = msb;
+        keys[b * 2 + 1] = lsb;
+        balances[b] = balance;
+    }
+
+    /**
+     * Sorts the entries by their UUID in unsigned order, which is the order in which the deltas are positive.
+     *  Also used to sort the segments of the {@link LsmBalanceStorage}.
+     */
+    static void sort(long @NotNull[] keys, double @NotNull[] balances, int low, int high) {
+        while (high - low > 16) {
+            // Median of three as the pivot, which is moved to the end of the range
+            int middle = (low + high) >>> 1;
+            if (compareKeys(keys, middle, low) < 0) {
+                swap(keys, balances, middle, low);
+            }
+            if (compareKeys(keys, high, low) < 0) {
+                swap(keys, balances, high, low);
+            }
+            if (compareKeys(keys, middle, high) < 0) {
+                swap(keys, balances, middle, high);
+            }
+            int store = low;
+            for (int i = low; i < high; i++) {
+                if (compareKeys(keys, i, high) < 0) {
+                    swap(keys, balances, i, store++);
+                }
+            }
+            swap(keys, balances, store, high);
+            // Recurse into the smaller half to bound the depth of the stack
+            if (store - low < high - store) {
+                sort(keys, balances, low, store - 1);
+                low = store + 1;
+            } else {
+                sort(keys, balances, store + 1, high);
+                high = store - 1;
+            }
+        }
+        for (int i = low + 1; i <= high; i++) {
+            for (int j = i; j > low && compareKeys(keys, j, j - 1) < 0; j--) {
+                swap(keys, balances, j, j - 1);
+            }
+        }
+    }
+}
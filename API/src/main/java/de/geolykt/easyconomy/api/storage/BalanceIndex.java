@@ -0,0 +1,480 @@
+package de.geolykt.easyconomy.api.storage;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An incrementally maintained index of all accounts of a {@link BalanceTable}, ordered from the highest to the
+ *  lowest balance. Accounts with the same balance are ordered by their UUID.
+ * <br/>
+ * The accounts are kept in a treap, a binary search tree that is balanced by random priorities, whose nodes know the
+ *  size of their subtree. A change of a balance thus costs O(log n), and the rank of an account, a page of the
+ *  leaderboard or the accounts within a range of balances are found in O(log n) plus the amount of returned accounts,
+ *  without ever sorting the accounts. The nodes are stored in parallel arrays, so the index costs roughly 60 bytes
+ *  per account and does not create any objects per account.
+ * <br/>
+ * Like the {@link Leaderboard}, changes need to be passed to {@link #update(long, long, double)} in the order in which
+ *  they were applied to the table, which is why it is meant to be called by the update listener of the table.
+ *  Changes that are not made through the listener require an {@link #invalidate()}.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+public class BalanceIndex {
+
+    private static final int STALE = 0;
+    private static final int REBUILDING = 1;
+    private static final int VALID = 2;
+
+    private final @NotNull Leaderboard.Source source;
+    // Ensures that only a single thread scans the table at once
+    private final @NotNull Object rebuildLock = new Object();
+
+    // Guarded by the instance
+    private @NotNull Tree tree = new Tree(16);
+    private int generation;
+
+    // Changes that were made while the table was scanned, guarded by the instance
+    private long @NotNull[] pendingKeys = new long[32];
+    private double @NotNull[] pendingBalances = new double[16];
+    private int pendingCount;
+
+    // Only written while holding the lock of the instance
+    private volatile int state = STALE;
+
+    /**
+     * Creates a new index of the table. It is computed once it is first queried.
+     * @param table The table whose balances should be indexed
+     * @since 1.2.0
+     */
+    public BalanceIndex(@NotNull BalanceTable table) {
+        this(table::forEach);
+    }
+
+    /**
+     * Creates a new index of accounts that are not stored in a {@link BalanceTable}. Changes need to be passed
+     *  to the index in the same way. It is computed once it is first queried.
+     * @param source The accounts that should be indexed
+     * @since 1.2.0
+     */
+    public BalanceIndex(@NotNull Leaderboard.Source source) {
+        this.source = source;
+    }
+
+    /**
+     * Notifies the index about the new balance of an account.
+     * @param mostSigBits The most significant bits of the UUID
+     * @param leastSigBits The least significant bits of the UUID
+     * @param balance The new balance of the account
+     * @since 1.2.0
+     */
+    public synchronized void update(long mostSigBits, long leastSigBits, double balance) {
+        if (state == VALID) {
+            tree.accept(mostSigBits, leastSigBits, balance);
+        } else if (state == REBUILDING) {
+            addPending(mostSigBits, leastSigBits, balance);
+        }
+    }
+
+    /**
+     * Notifies the index about the new balances of several accounts, which only locks the index once.
+     * @param keys The keys of the accounts, the most significant bits of account i are at index 2i,
+     *  the least significant at 2i + 1
+     * @param newBalances The new balances of the accounts
+     * @param count The amount of accounts
+     * @since 1.2.0
+     */
+    public synchronized void updateAll(long @NotNull[] keys, double @NotNull[] newBalances, int count) {
+        for (int i = 0; i < count; i++) {
+            if (state == VALID) {
+                tree.accept(keys[i * 2], keys[i * 2 + 1], newBalances[i]);
+            } else if (state == REBUILDING) {
+                addPending(keys[i * 2], keys[i * 2 + 1], newBalances[i]);
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Discards the index so that it is computed from the table again once it is queried.
+     *  Needs to be called after the table was modified without notifying the index.
+     * @since 1.2.0
+     */
+    public synchronized void invalidate() {
+        generation++;
+        state = STALE;
+        pendingCount = 0;
+        tree = new Tree(16);
+    }
+
+    /**
+     * Computes the index from the table if it is not up to date. Changes that are made while the table is scanned
+     *  are buffered and applied afterwards, so the table is not locked as a whole.
+     * @since 1.2.0
+     */
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            int expectedGeneration;
+            synchronized (this) {
+                if (state != STALE) {
+                    return;
+                }
+                state = REBUILDING;
+                expectedGeneration = generation;
+                pendingCount = 0;
+            }
+            Tree scanned = new Tree(1024);
+            try {
+                source.forEach(scanned);
+            } catch (RuntimeException | Error e) {
+                synchronized (this) {
+                    if (generation == expectedGeneration) {
+                        state = STALE;
+                    }
+                }
+                throw e;
+            }
+            synchronized (this) {
+                if (generation != expectedGeneration) {
+                    return; // Invalidated during the scan, the next scan needs to start over
+                }
+                for (int i = 0; i < pendingCount; i++) {
+                    scanned.accept(pendingKeys[i * 2], pendingKeys[i * 2 + 1], pendingBalances[i]);
+                }
+                pendingCount = 0;
+                pendingKeys = new long[32];
+                pendingBalances = new double[16];
+                tree = scanned;
+                state = VALID;
+            }
+        }
+    }
+
+    /**
+     * Computes the index in the background if it is not up to date, so that the caller does not need to wait
+     *  for the table to be scanned. Threads that query the index in the meantime wait for the scan to finish.
+     * @since 1.2.0
+     */
+    public void rebuildAsync() {
+        if (state == STALE) {
+            ForkJoinPool.commonPool().execute(this::rebuild);
+        }
+    }
+
+    /**
+     * Runs a query on the index, which is computed first if it is not up to date.
+     */
+    private <T> T query(@NotNull Function<@NotNull Tree, T> query) {
+        while (true) {
+            if (state != VALID) {
+                rebuild();
+            }
+            synchronized (this) {
+                if (state != VALID) {
+                    continue; // Invalidated in the meantime
+                }
+                return query.apply(tree);
+            }
+        }
+    }
+
+    /**
+     * Obtains the amount of indexed accounts.
+     * @return The amount of accounts
+     * @since 1.2.0
+     */
+    public int size() {
+        return query(tree -> tree.size[tree.root]);
+    }
+
+    /**
+     * Obtains the position of an account when all accounts are ordered from the highest to the lowest balance.
+     * @param player The UUID of the account
+     * @return The rank, 1 for the account with the highest balance, or 0 if the account is not known
+     * @since 1.2.0
+     */
+    public int getRank(@NotNull UUID player) {
+        return query(tree -> tree.rank(player.getMostSignificantBits(), player.getLeastSignificantBits()));
+    }
+
+    /**
+     * Obtains a section of the leaderboard, which contains the accounts with positive balances ordered from the
+     *  highest to the lowest balance.
+     * @param skip The amount of accounts to skip, for example the accounts on the previous pages
+     * @param limit The maximum amount of accounts to return
+     * @return The UUIDs and balances of the accounts in order
+     * @since 1.2.0
+     */
+    public @NotNull LinkedHashMap<UUID, Double> getTop(int skip, int limit) {
+        int from = Math.max(skip, 0);
+        return query(tree -> tree.collect(from, (int) Math.min(tree.countAbove(0.0, false), (long) from + Math.max(limit, 0))));
+    }
+
+    /**
+     * Obtains the accounts whose balance lies within a range, ordered from the highest to the lowest balance.
+     * @param min The lowest balance of the range, inclusive
+     * @param max The highest balance of the range, inclusive
+     * @param limit The maximum amount of accounts to return, the accounts with the highest balances are returned first
+     * @return The UUIDs and balances of the accounts in order
+     * @since 1.2.0
+     */
+    public @NotNull LinkedHashMap<UUID, Double> getBetween(double min, double max, int limit) {
+        return query(tree -> {
+            int from = tree.countAbove(max, false);
+            return tree.collect(from, (int) Math.min(tree.countAbove(min, true), (long) from + Math.max(limit, 0)));
+        });
+    }
+
+    private void addPending(long mostSigBits, long leastSigBits, double balance) {
+        if (pendingCount == pendingBalances.length) {
+            pendingKeys = Arrays.copyOf(pendingKeys, pendingKeys.length * 2);
+            pendingBalances = Arrays.copyOf(pendingBalances, pendingBalances.length * 2);
+        }
+        pendingKeys[pendingCount * 2] = mostSigBits;
+        pendingKeys[pendingCount * 2 + 1] = leastSigBits;
+        pendingBalances[pendingCount++] = balance;
+    }
+
+    /**
+     * The treap itself. Node 0 is the empty tree, whose size is always 0. Removed nodes are linked through
+     *  their left child and reused.
+     */
+    private static final class Tree implements UUIDBalanceMap.EntryConsumer {
+
+        private long @NotNull[] keys;
+        private double @NotNull[] balances;
+        private int @NotNull[] left;
+        private int @NotNull[] right;
+        private int @NotNull[] size;
+        private int @NotNull[] priority;
+        // The node of every account, stored as the balance of the map
+        private final @NotNull UUIDBalanceMap nodes = new UUIDBalanceMap();
+        private int root;
+        private int next = 1;
+        private int free;
+        private int seed = 0x2545F491;
+
+        private Tree(int capacity) {
+            keys = new long[capacity * 2];
+            balances = new double[capacity];
+            left = new int[capacity];
+            right = new int[capacity];
+            size = new int[capacity];
+            priority = new int[capacity];
+        }
+
+        /**
+         * Inserts, moves or removes an account. NaN balances remove the account.
+         */
+        @Override
+        public void accept(long mostSigBits, long leastSigBits, double balance) {
+            double existing = nodes.getOrDefault(mostSigBits, leastSigBits, -1.0);
+            int node = (int) existing;
+            if (node > 0) {
+                if (Double.doubleToLongBits(balances[node]) == Double.doubleToLongBits(balance)) {
+                    return;
+                }
+                root = delete(root, node);
+                if (Double.isNaN(balance)) {
+                    nodes.remove(mostSigBits, leastSigBits);
+                    left[node] = free;
+                    free = node;
+                    return;
+                }
+            } else if (Double.isNaN(balance)) {
+                return;
+            } else {
+                node = allocate();
+                keys[node * 2] = mostSigBits;
+                keys[node * 2 + 1] = leastSigBits;
+                nodes.put(mostSigBits, leastSigBits, node);
+            }
+            balances[node] = balance;
+            left[node] = 0;
+            right[node] = 0;
+            size[node] = 1;
+            root = insert(root, node);
+        }
+
+        private int allocate() {
+            if (free != 0) {
+                int node = free;
+                free = left[node];
+                priority[node] = random();
+                return node;
+            }
+            if (next == balances.length) {
+                int capacity = balances.length * 2;
+                keys = Arrays.copyOf(keys, capacity * 2);
+                balances = Arrays.copyOf(balances, capacity);
+                left = Arrays.copyOf(left, capacity);
+                right = Arrays.copyOf(right, capacity);
+                size = Arrays.copyOf(size, capacity);
+                priority = Arrays.copyOf(priority, capacity);
+            }
+            priority[next] = random();
+            return next++;
+        }
+
+        private int random() {
+            // Xorshift, the priorities only need to be independent of the order of the accounts
+            seed ^= seed << 13;
+            seed ^= seed >>> 17;
+            seed ^= seed << 5;
+            return seed;
+        }
+
+        /**
+         * Compares an account with a node.
+         * @return A negative value if the account is ordered before the node, 0 if it is the node
+         */
+        private int compare(double balance, long mostSigBits, long leastSigBits, int node) {
+            int cmp = Double.compare(balances[node], balance);
+            if (cmp == 0) {
+                cmp = Long.compare(mostSigBits, keys[node * 2]);
+                if (cmp == 0) {
+                    cmp = Long.compare(leastSigBits, keys[node * 2 + 1]);
+                }
+            }
+            return cmp;
+        }
+
+        private int compare(int node, int other) {
+            return compare(balances[node], keys[node * 2], keys[node * 2 + 1], other);
+        }
+
+        private void resize(int node) {
+            size[node] = size[left[node]] + size[right[node]] + 1;
+        }
+
+        private int insert(int subtree, int node) {
+            if (subtree == 0) {
+                return node;
+            }
+            if (compare(node, subtree) < 0) {
+                left[subtree] = insert(left[subtree], node);
+                if (priority[left[subtree]] > priority[subtree]) {
+                    // Rotate right
+                    int child = left[subtree];
+                    left[subtree] = right[child];
+                    right[child] = subtree;
+                    resize(subtree);
+                    resize(child);
+                    return child;
+                }
+            } else {
+                right[subtree] = insert(right[subtree], node);
+                if (priority[right[subtree]] > priority[subtree]) {
+                    // Rotate left
+                    int child = right[subtree];
+                    right[subtree] = left[child];
+                    left[child] = subtree;
+                    resize(subtree);
+                    resize(child);
+                    return child;
+                }
+            }
+            resize(subtree);
+            return subtree;
+        }
+
+        private int delete(int subtree, int node) {
+            if (subtree == node) {
+                return merge(left[node], right[node]);
+            }
+            if (compare(node, subtree) < 0) {
+                left[subtree] = delete(left[subtree], node);
+            } else {
+                right[subtree] = delete(right[subtree], node);
+            }
+            size[subtree]--;
+            return subtree;
+        }
+
+        /**
+         * Merges two subtrees, all nodes of the first one are ordered before the nodes of the second one.
+         */
+        private int merge(int first, int second) {
+            if (first == 0) {
+                return second;
+            } else if (second == 0) {
+                return first;
+            } else if (priority[first] > priority[second]) {
+                right[first] = merge(right[first], second);
+                resize(first);
+                return first;
+            } else {
+                left[second] = merge(first, left[second]);
+                resize(second);
+                return second;
+            }
+        }
+
+        private int rank(long mostSigBits, long leastSigBits) {
+            int node = (int) nodes.getOrDefault(mostSigBits, leastSigBits, -1.0);
+            if (node <= 0) {
+                return 0;
+            }
+            double balance = balances[node];
+            int before = 0;
+            int subtree = root;
+            while (subtree != node) {
+                if (compare(balance, mostSigBits, leastSigBits, subtree) < 0) {
+                    subtree = left[subtree];
+                } else {
+                    before += size[left[subtree]] + 1;
+                    subtree = right[subtree];
+                }
+            }
+            return before + size[left[node]] + 1;
+        }
+
+        /**
+         * Counts the accounts whose balance is above, or optionally equal to, the given balance.
+         *  As the accounts are ordered by their balance, they are the first accounts of the tree.
+         */
+        private int countAbove(double balance, boolean inclusive) {
+            int count = 0;
+            int subtree = root;
+            while (subtree != 0) {
+                if (balances[subtree] > balance || (inclusive && balances[subtree] == balance)) {
+                    count += size[left[subtree]] + 1;
+                    subtree = right[subtree];
+                } else {
+                    subtree = left[subtree];
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Collects the accounts at the positions from (inclusive) to (exclusive) in order.
+         */
+        private @NotNull LinkedHashMap<UUID, Double> collect(int from, int to) {
+            LinkedHashMap<UUID, Double> out = new LinkedHashMap<>();
+            collect(root, 0, from, to, out);
+            return out;
+        }
+
+        /**
+         * Collects the accounts at the positions from (inclusive) to (exclusive) of a subtree in order.
+         * @param offset The position of the first account of the subtree
+         */
+        private void collect(int subtree, int offset, int from, int to, @NotNull LinkedHashMap<UUID, Double> out) {
+            if (subtree == 0 || offset >= to || offset + size[subtree] <= from) {
+                return;
+            }
+            collect(left[subtree], offset, from, to, out);
+            int position = offset + size[left[subtree]];
+            if (position >= from && position < to) {
+                out.put(new UUID(keys[subtree * 2], keys[subtree * 2 + 1]), balances[subtree]);
+            }
+            collect(right[subtree], position + 1, from, to, out);
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package de.geolykt.easyconomy.api.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An append-only write-ahead journal for player balances. Every change of a balance is appended as a fixed-size record
+ *  to the current journal segment, so that the full storage file only needs to be rewritten during a checkpoint.
+ * Records are buffered in memory and written as well as synced to disk in a background thread every commit interval
+ *  (group commit), so a crash loses at most the changes of a single commit window.
+ * <br/>
+ * Journal segments are stored next to the storage file and are named {@code <storage file>.<segment>.journal}.
+ * <br/>
+ * Record layout (32 bytes, big endian):
+ * <pre>
+ * [UUID MSB] [UUID LSB] [BALANCE] [SEQUENCE]
+ *   8 bytes    8 bytes   8 bytes    8 bytes
+ * </pre>
+ * The sequence number is strictly increasing, which allows to detect torn writes at the end of a segment.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+public class BalanceJournal implements Closeable {
+
+    public static final int RECORD_SIZE = 32;
+    private static final String SUFFIX = ".journal";
+    private static final int INITIAL_BUFFER_SIZE = RECORD_SIZE * 1024;
+
+    /**
+     * Writes the snapshot of the storage during a checkpoint.
+     * @since 1.2.0
+     */
+    @FunctionalInterface
+    public static interface SnapshotWriter {
+        public void writeSnapshot() throws IOException;
+    }
+
+    private final @NotNull File directory;
+    private final @NotNull String prefix;
+    private final long commitInterval;
+
+    /**
+     * Lock that serialises flushes, rotations and closing of the journal.
+     */
+    private final Object flushLock = new Object();
+
+    // Guarded by this
+    private @NotNull ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private @Nullable FileChannel channel;
+    private long sequence;
+    private long recordsSinceCheckpoint;
+
+    // Guarded by flushLock
+    private @NotNull ByteBuffer spare = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    // The amount of bytes that were committed to the current segment
+    private long committed;
+    private long nextSegment;
+    private @Nullable ScheduledExecutorService committer;
+
+    /**
+     * Creates a new journal for the given storage file. The journal is inactive until {@link #start()} is called.
+     * @param storageFile The storage file the journal belongs to
+     * @param commitIntervalMillis The amount of milliseconds between two group commits
+     * @since 1.2.0
+     */
+    public BalanceJournal(@NotNull File storageFile, long commitIntervalMillis) {
+        directory = storageFile.getAbsoluteFile().getParentFile();
+        prefix = storageFile.getName() + ".";
+        commitInterval = Math.max(1, commitIntervalMillis);
+    }
+
+    private @NotNull TreeMap<Long, File> segments() {
+        TreeMap<Long, File> segments = new TreeMap<>();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return segments;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(prefix) && name.endsWith(SUFFIX)) {
+                try {
+                    segments.put(Long.parseLong(name.substring(prefix.length(), name.length() - SUFFIX.length())), file);
+                } catch (NumberFormatException ignored) {
+                    // Not one of our files
+                }
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Replays all records of all journal segments in the order they were written.
+     * Replaying stops at the first torn or otherwise invalid record of a segment.
+     * If the journal is active, pending records are committed before the segments are read.
+     * @param consumer The consumer that receives the records
+     * @return The amount of replayed records
+     * @throws IOException If an IO Exception occurs while reading the segments
+     * @since 1.2.0
+     */
+    public long replay(@NotNull UUIDBalanceMap.EntryConsumer consumer) throws IOException {
+        synchronized (flushLock) {
+            flush(false);
+            long replayed = 0;
+            long lastSequence = 0;
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            for (Map.Entry<Long, File> segment : segments().entrySet()) {
+                nextSegment = Math.max(nextSegment, segment.getKey() + 1);
+                try (FileChannel in = FileChannel.open(segment.getValue().toPath(), StandardOpenOption.READ)) {
+                    while (true) {
+                        ((Buffer) record).clear();
+                        while (record.hasRemaining() && in.read(record) != -1) {
+                            // Read the entire record
+                        }
+                        if (record.hasRemaining()) {
+                            break; // End of segment or torn record
+                        }
+                        ((Buffer) record).flip();
+                        long msb = record.getLong();
+                        long lsb = record.getLong();
+                        double balance = record.getDouble();
+                        long seq = record.getLong();
+                        if (seq <= lastSequence) {
+                            break; // Torn write
+                        }
+                        lastSequence = seq;
+                        consumer.accept(msb, lsb, balance);
+                        replayed++;
+                    }
+                }
+            }
+            synchronized (this) {
+                sequence = Math.max(sequence, lastSequence);
+                recordsSinceCheckpoint = Math.max(recordsSinceCheckpoint, replayed);
+            }
+            return replayed;
+        }
+    }
+
+    /**
+     * Activates the journal by opening a new segment and starting the group committer.
+     * Does nothing if the journal is already active.
+     * @throws IOException If the segment could not be created
+     * @since 1.2.0
+     */
+    public void start() throws IOException {
+        synchronized (flushLock) {
+            if (committer != null) {
+                return;
+            }
+            TreeMap<Long, File> segments = segments();
+            if (!segments.isEmpty()) {
+                nextSegment = Math.max(nextSegment, segments.lastKey() + 1);
+            }
+            FileChannel segment = openSegment();
+            synchronized (this) {
+                channel = segment;
+            }
+            committed = 0;
+            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "Easyconomy journal committer (" + prefix + ")");
+                t.setDaemon(true);
+                return t;
+            });
+            executor.scheduleWithFixedDelay(() -> {
+                try {
+                    commit();
+                } catch (IOException e) {
+                    // The records are kept and committed again with the next commit
+                    onCommitFailed(e);
+                }
+            }, commitInterval, commitInterval, TimeUnit.MILLISECONDS);
+            committer = executor;
+        }
+    }
+
+    private @NotNull FileChannel openSegment() throws IOException {
+        File file = new File(directory, prefix + nextSegment++ + SUFFIX);
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Appends a record to the journal. The record is made durable by the next group commit.
+     * Records appended while the journal is inactive are discarded.
+     * @param mostSigBits The most significant bits of the UUID
+     * @param leastSigBits The least significant bits of the UUID
+     * @param balance The new balance of the player
+     * @since 1.2.0
+     */
+    public synchronized void append(long mostSigBits, long leastSigBits, double balance) {
+        if (channel == null) {
+            return;
+        }
+        if (pending.remaining() < RECORD_SIZE) {
+            ByteBuffer grown = ByteBuffer.allocate(pending.capacity() * 2);
+            ((Buffer) pending).flip();
+            grown.put(pending);
+            pending = grown;
+        }
+        pending.putLong(mostSigBits).putLong(leastSigBits).putDouble(balance).putLong(++sequence);
+        recordsSinceCheckpoint++;
+    }
+
+    /**
+     * Appends several records to the journal at once, which only locks the journal once.
+     * @param keys The UUIDs of the players, the most significant bits of record i are at index 2i,
+     *  the least significant at 2i + 1
+     * @param balances The new balances of the players
+     * @param count The amount of records
+     * @since 1.2.0
+     */
+    public synchronized void appendAll(long @NotNull[] keys, double @NotNull[] balances, int count) {
+        for (int i = 0; i < count; i++) {
+            append(keys[i * 2], keys[i * 2 + 1], balances[i]);
+        }
+    }
+
+    /**
+     * Obtains the amount of records that were appended (or replayed) since the last checkpoint.
+     * @return The amount of records
+     * @since 1.2.0
+     */
+    public synchronized long getRecordsSinceCheckpoint() {
+        return recordsSinceCheckpoint;
+    }
+
+    /**
+     * Writes all pending records to the current segment and syncs it to disk. Should that fail, the records are kept
+     *  and written again by the next commit, so a failed commit only delays the records.
+     * @throws IOException If an IO Exception occurs while writing
+     * @since 1.2.0
+     */
+    public void commit() throws IOException {
+        synchronized (flushLock) {
+            flush(false);
+        }
+    }
+
+    /**
+     * Performs a checkpoint: subsequent records are written to a new segment, then the snapshot is written
+     *  and finally the old segments are deleted. Since the snapshot is taken after the segments were rotated,
+     *  it contains every change of the old segments. Should writing the snapshot fail, the old segments are retained.
+     * @param writer The writer that writes the full storage file
+     * @throws IOException If an IO Exception occurs
+     * @since 1.2.0
+     */
+    public void checkpoint(@NotNull SnapshotWriter writer) throws IOException {
+        List<File> obsolete;
+        synchronized (flushLock) {
+            obsolete = new ArrayList<>(segments().values());
+            flush(true);
+        }
+        writer.writeSnapshot();
+        for (File segment : obsolete) {
+            if (!segment.delete() && segment.exists()) {
+                throw new IOException("Unable to delete the obsolete journal segment " + segment.getName());
+            }
+        }
+    }
+
+    /**
+     * Writes the pending records to the current segment, optionally rotating to a new segment.
+     * The records are written at the end of the committed records, so should writing fail, the records are put back
+     *  in front of the records that were appended in the meantime and written to the same position again later,
+     *  which overwrites any part of them that was written. A rotation is undone if the records could not be written.
+     * The caller must hold the flush lock.
+     */
+    private void flush(boolean rotate) throws IOException {
+        FileChannel next = null;
+        if (rotate && committer != null) {
+            next = openSegment();
+        }
+        ByteBuffer records;
+        FileChannel target;
+        long rotated = 0;
+        synchronized (this) {
+            target = channel;
+            if (target == null) {
+                if (rotate) {
+                    recordsSinceCheckpoint = 0;
+                }
+                return;
+            }
+            records = pending;
+            pending = spare;
+            if (next != null) {
+                channel = next;
+                rotated = recordsSinceCheckpoint;
+                recordsSinceCheckpoint = 0;
+            }
+        }
+        ((Buffer) records).flip();
+        try {
+            while (records.hasRemaining()) {
+                target.write(records, committed + records.position());
+            }
+            target.force(false);
+        } catch (IOException e) {
+            synchronized (this) {
+                // Put the records back in front of the records that were appended in the meantime
+                ByteBuffer appended = pending;
+                ((Buffer) appended).flip();
+                int length = records.limit();
+                if (length + appended.remaining() > records.capacity()) {
+                    ByteBuffer grown = ByteBuffer.allocate(Integer.highestOneBit(length + appended.remaining()) * 2);
+                    ((Buffer) records).position(0);
+                    grown.put(records);
+                    records = grown;
+                } else {
+                    ((Buffer) records).limit(records.capacity()).position(length);
+                }
+                records.put(appended);
+                pending = records;
+                ((Buffer) appended).clear();
+                spare = appended;
+                if (next != null) {
+                    channel = target;
+                    recordsSinceCheckpoint += rotated;
+                }
+            }
+            if (next != null) {
+                next.close();
+                new File(directory, prefix + --nextSegment + SUFFIX).delete();
+            }
+            throw e;
+        }
+        committed += records.limit();
+        ((Buffer) records).clear();
+        spare = records;
+        if (next != null) {
+            committed = 0;
+            target.close();
+        }
+    }
+
+    /**
+     * Commits all pending records and deactivates the journal. Should committing fail, the journal stays open
+     *  and closing it can be attempted again.
+     * @throws IOException If an IO Exception occurs while committing
+     * @since 1.2.0
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (flushLock) {
+            ScheduledExecutorService executor = committer;
+            if (executor != null) {
+                executor.shutdown();
+                committer = null;
+            }
+            flush(false);
+            FileChannel segment;
+            synchronized (this) {
+                segment = channel;
+                channel = null;
+            }
+            if (segment != null) {
+                segment.close();
+            }
+        }
+    }
+
+    /**
+     * Called when a group commit in the background failed. The records are kept and committed again by the next
+     *  commit.
+     * @param e The IO Exception that occurred while committing
+     * @since 1.2.0
+     */
+    protected void onCommitFailed(@NotNull IOException e) {
+        e.printStackTrace();
+    }
+}
@@ -0,0 +1,47 @@
+package de.geolykt.easyconomy.api.storage;
+
+import java.io.IOException;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An immutable point-in-time view of a {@link BalanceTable}. Snapshots are taken without copying the entire table
+ *  and can be serialised without holding any lock of the table, so saving does not block balance changes.
+ * Snapshots should be closed once they are no longer needed as the table may need to copy data
+ *  until the snapshot was released.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+public interface BalanceSnapshot extends AutoCloseable {
+
+    /**
+     * Receives the entries of a snapshot, for example to write them to a file.
+     * @since 1.2.0
+     */
+    @FunctionalInterface
+    public static interface EntryWriter {
+        public void write(long mostSigBits, long leastSigBits, double balance) throws IOException;
+    }
+
+    /**
+     * Obtains the amount of entries within the snapshot.
+     * @return The amount of entries
+     * @since 1.2.0
+     */
+    public int size();
+
+    /**
+     * Passes every entry of the snapshot to the writer.
+     * @param writer The writer to pass the entries to
+     * @throws IOException If the writer throws an IO Exception
+     * @since 1.2.0
+     */
+    public void writeEntries(@NotNull EntryWriter writer) throws IOException;
+
+    /**
+     * Releases the snapshot.
+     * @since 1.2.0
+     */
+    @Override
+    public void close();
+}
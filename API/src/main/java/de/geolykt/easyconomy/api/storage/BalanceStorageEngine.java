@@ -0,0 +1,1257 @@
+package de.geolykt.easyconomy.api.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import de.geolykt.easyconomy.api.FixedPoint;
+import de.geolykt.easyconomy.api.PlayerDataStorage;
+
+/**
+ * The platform independent implementation of the {@link PlayerDataStorage} that stores the balances in binary flatfiles.
+ * <br/>
+ * The balances are kept in a {@link StripedBalanceMap}, whose stripes may be {@link DirectBalanceMap DirectBalanceMaps}
+ *  outside of the heap, or, if enabled, in a memory mapped {@link MappedBalanceTable} that is updated in place. Saves write a {@link BalanceSnapshot} in the v2 or v4 storage format and thus do not block
+ *  balance changes, while the top balances are maintained by an incremental {@link Leaderboard}.
+ *  Optionally changes are appended to a {@link BalanceJournal} so the flatfile only needs to be rewritten during checkpoints.
+ *  Whenever the storage file is rewritten a {@link BalanceSummary} of it is stored as {@code <file>.summary}, from
+ *  which the leaderboard and the aggregates are restored while loading an unchanged storage file.
+ * <br/>
+ * If sharding is enabled the balances are split into several files by the upper bits of the UUID, see
+ *  {@link ShardedBalanceMap}. Each shard has a dirty flag, so a save only rewrites the modified shards, and the shards
+ *  are saved and loaded in parallel on a small thread pool. A non-empty single storage file always takes precedence
+ *  over the shards, which is how storages are migrated between both layouts: Once all shards were written, the single
+ *  file is renamed to {@code <file>.unsharded}.
+ * <br/>
+ * If tiering is enabled, accounts that were not used for the configured time are moved out of memory into the
+ *  sorted cold file of a {@link ColdTier} during saves. They are moved back into memory once they are used, or
+ *  in advance through {@link #preload(UUID)}. The time an account was last used is tracked with the granularity of
+ *  a minute and stored in {@code <file>.seen}. If tiering is disabled again, the cold accounts are moved back into
+ *  the storage file.
+ * <br/>
+ * The engine does not log anything by itself, platforms may override the protected callbacks instead.
+ *  The storage file is not loaded by the constructor, {@link #reload()} needs to be invoked once the instance
+ *  is fully initialised.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+public class BalanceStorageEngine implements PlayerDataStorage, Closeable {
+
+    private final @NotNull File file;
+    private final @NotNull BalanceTable balances;
+    private final @Nullable MappedBalanceTable mappedBalances;
+    private final @Nullable ShardedBalanceMap shardedBalances;
+    // 1 for shards that were modified since they were last written
+    private final @Nullable AtomicIntegerArray dirtyShards;
+    private final @Nullable ExecutorService shardExecutor;
+    private final @Nullable BalanceJournal journal;
+    private final @Nullable Leaderboard leaderboard;
+    private final @Nullable BalanceIndex index;
+    private final @NotNull ColdTier coldTier;
+    // The minute accounts in memory were last used at, null if tiering is disabled
+    private final @Nullable StripedBalanceMap lastSeen;
+    // Accounts are only removed from memory under the write lock, which excludes promotions and balance changes
+    private final @NotNull ReentrantReadWriteLock tierLock = new ReentrantReadWriteLock();
+    private final @NotNull StorageSettings settings;
+    // Serialises saves, backups and reloads
+    private final @NotNull Object saveLock = new Object();
+    // Serialises the computation of the summary
+    private final @NotNull Object summaryLock = new Object();
+
+    private static final Pattern SHARD_NAME = Pattern.compile("shard-(\\d+)-of-(\\d+)\\.dat");
+
+    private volatile boolean modified = false;
+    // Whether the shard directory contains files of another amount of shards, guarded by the save lock
+    private boolean strayShards = false;
+    private volatile long lastBackup = 0;
+    private volatile boolean lastSeenModified = false;
+    // Whether the cold accounts were moved into memory as tiering was disabled, guarded by the save lock
+    private boolean coldMerged = false;
+    private volatile @Nullable BalanceSummary summary;
+    // Whether the balances were changed since the summary was computed
+    private volatile boolean summaryStale = true;
+
+    /**
+     * Creates a new engine that stores it's data in the given file.
+     * @param file The file to store the balances in
+     * @param settings The settings of the engine
+     * @since 1.2.0
+     */
+    public BalanceStorageEngine(@NotNull File file, @NotNull StorageSettings settings) {
+        this.file = file;
+        this.settings = settings;
+        if (settings.isMemoryMapped()) {
+            mappedBalances = new MappedBalanceTable(file);
+            balances = mappedBalances;
+            shardedBalances = null;
+            dirtyShards = null;
+            shardExecutor = null;
+        } else if (settings.getShards() != 0) {
+            mappedBalances = null;
+            shardedBalances = new ShardedBalanceMap(settings.getShards(), stripeFactory(settings));
+            balances = shardedBalances;
+            dirtyShards = new AtomicIntegerArray(settings.getShards());
+            int threads = Math.min(settings.getShards(), Runtime.getRuntime().availableProcessors());
+            shardExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "Easyconomy shard I/O");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            mappedBalances = null;
+            balances = new StripedBalanceMap(StripedBalanceMap.DEFAULT_STRIPES, stripeFactory(settings));
+            shardedBalances = null;
+            dirtyShards = null;
+            shardExecutor = null;
+        }
+        if (settings.isJournaled()) {
+            journal = new BalanceJournal(file, settings.getJournalCommitInterval());
+        } else {
+            journal = null;
+        }
+        coldTier = new ColdTier(file);
+        if (settings.getColdAfter() > 0 && mappedBalances == null) {
+            lastSeen = new StripedBalanceMap(StripedBalanceMap.DEFAULT_STRIPES, stripeFactory(settings));
+        } else {
+            lastSeen = null;
+        }
+        if (settings.isBalanceIndexed()) {
+            // The index knows the top accounts as well
+            index = lastSeen != null ? new BalanceIndex(this::forEachAccount) : new BalanceIndex(balances);
+            leaderboard = null;
+        } else if (settings.getLeaderboardSize() > 0 && lastSeen != null) {
+            index = null;
+            leaderboard = new Leaderboard(this::forEachAccount, settings.getLeaderboardSize());
+        } else if (settings.getLeaderboardSize() > 0) {
+            index = null;
+            leaderboard = new Leaderboard(balances, settings.getLeaderboardSize());
+        } else {
+            index = null;
+            leaderboard = null;
+        }
+        if (journal != null || leaderboard != null || index != null) {
+            balances.setUpdateListener(new UpdateListener(journal, leaderboard, index));
+        }
+    }
+
+    /**
+     * Forwards the changes of the table to the journal, the leaderboard and the balance index. Batches are forwarded
+     *  as a whole, so that each of them is only locked once per batch.
+     */
+    private static class UpdateListener implements UUIDBalanceMap.EntryConsumer {
+
+        private final @Nullable BalanceJournal journal;
+        private final @Nullable Leaderboard leaderboard;
+        private final @Nullable BalanceIndex index;
+
+        private UpdateListener(@Nullable BalanceJournal journal, @Nullable Leaderboard leaderboard,
+                @Nullable BalanceIndex index) {
+            this.journal = journal;
+            this.leaderboard = leaderboard;
+            this.index = index;
+        }
+
+        @Override
+        public void accept(long mostSigBits, long leastSigBits, double balance) {
+            if (journal != null) {
+                journal.append(mostSigBits, leastSigBits, balance);
+            }
+            if (leaderboard != null) {
+                leaderboard.update(mostSigBits, leastSigBits, balance);
+            }
+            if (index != null) {
+                index.update(mostSigBits, leastSigBits, balance);
+            }
+        }
+
+        @Override
+        public void acceptAll(long @NotNull[] keys, double @NotNull[] balances, int count) {
+            if (journal != null) {
+                journal.appendAll(keys, balances, count);
+            }
+            if (leaderboard != null) {
+                leaderboard.updateAll(keys, balances, count);
+            }
+            if (index != null) {
+                index.updateAll(keys, balances, count);
+            }
+        }
+    }
+
+    private static @NotNull Supplier<? extends UUIDBalanceMap> stripeFactory(@NotNull StorageSettings settings) {
+        return settings.isOffHeap() ? DirectBalanceMap::new : UUIDBalanceMap::new;
+    }
+
+    @Override
+    public double getOrDefault(@NotNull UUID player, double defaultValue) {
+        if (lastSeen == null) {
+            return balances.getOrDefault(player, defaultValue);
+        }
+        long msb = player.getMostSignificantBits();
+        long lsb = player.getLeastSignificantBits();
+        double balance = balances.getOrDefault(msb, lsb, Double.NaN);
+        if (!Double.isNaN(balance) || balances.containsKey(msb, lsb)) {
+            touch(msb, lsb);
+            return balance;
+        }
+        double[] result = new double[1];
+        return promote(msb, lsb, result) ? result[0] : defaultValue;
+    }
+
+    @Override
+    public void preload(@NotNull UUID player) {
+        if (lastSeen != null && !balances.containsKey(player)) {
+            promote(player.getMostSignificantBits(), player.getLeastSignificantBits(), new double[1]);
+        }
+    }
+
+    /**
+     * Moves an account from the cold tier into memory, unless it is in memory already.
+     * @param result The array the balance is stored in at index 0
+     * @return True if the account exists
+     */
+    private boolean promote(long msb, long lsb, double @NotNull[] result) {
+        tierLock.readLock().lock();
+        try {
+            double balance = balances.getOrDefault(msb, lsb, Double.NaN);
+            if (!Double.isNaN(balance) || balances.containsKey(msb, lsb)) {
+                // Promoted by another thread in the meantime
+                touch(msb, lsb);
+                result[0] = balance;
+                return true;
+            }
+            if (!coldTier.get(msb, lsb, result)) {
+                return false;
+            }
+            touch(msb, lsb);
+            // Inserted through an update so the journal and the leaderboard are notified
+            double cold = result[0];
+            result[0] = balances.update(msb, lsb, cold, DoubleUnaryOperator.identity());
+            markModified(msb);
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read the cold accounts of " + file.getName(), e);
+        } finally {
+            tierLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Records that an account in memory is used right now.
+     */
+    private void touch(long msb, long lsb) {
+        double now = currentMinute();
+        if (lastSeen.getOrDefault(msb, lsb, Double.NaN) != now) {
+            lastSeen.put(msb, lsb, now);
+            lastSeenModified = true;
+        }
+    }
+
+    private static double currentMinute() {
+        return System.currentTimeMillis() / 60_000L;
+    }
+
+    /**
+     * Obtains the balance of an account that is not in memory from the cold tier.
+     */
+    private double getColdOrDefault(long msb, long lsb, double defaultValue) {
+        double[] result = new double[1];
+        try {
+            return coldTier.get(msb, lsb, result) ? result[0] : defaultValue;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read the cold accounts of " + file.getName(), e);
+        }
+    }
+
+    /**
+     * Passes the accounts in memory and the cold accounts to the consumer, used by the leaderboard if tiering is enabled.
+     */
+    private void forEachAccount(@NotNull UUIDBalanceMap.EntryConsumer consumer) {
+        balances.forEach(consumer);
+        try {
+            coldTier.forEach(balances::containsKey, consumer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read the cold accounts of " + file.getName(), e);
+        }
+    }
+
+    /**
+     * Passes the balances as of a single moment to the writer. The time is obtained while no balance in memory can
+     *  change. If tiering is enabled the save lock keeps accounts from being demoted until the cold accounts that
+     *  are not in the snapshot were read, as accounts only change in memory.
+     */
+    @Override
+    public long snapshotBalances(@NotNull BalanceSnapshot.EntryWriter writer) throws IOException {
+        long[] time = new long[1];
+        if (lastSeen == null) {
+            try (BalanceSnapshot snapshot = balances.snapshot(() -> time[0] = System.currentTimeMillis())) {
+                snapshot.writeEntries(writer);
+            }
+            return time[0];
+        }
+        UUIDBalanceMap accounts;
+        synchronized (saveLock) {
+            try (BalanceSnapshot snapshot = balances.snapshot(() -> time[0] = System.currentTimeMillis())) {
+                accounts = new UUIDBalanceMap(snapshot.size());
+                snapshot.writeEntries(accounts::put);
+            }
+            coldTier.forEach(accounts::containsKey, accounts::put);
+        }
+        accounts.writeEntries(writer);
+        return time[0];
+    }
+
+    /**
+     * Replaces the balances while the table in memory is locked. If tiering is enabled the cold accounts are replaced
+     *  within a new cold file beforehand, so that they are not moved into memory, and the read lock of the tiers is
+     *  acquired before the table is locked, as it is by every other change. The save lock keeps accounts from being
+     *  demoted in the meantime.
+     */
+    @Override
+    public void setAll(@NotNull Map<UUID, Double> players) {
+        UUIDBalanceMap staged = new UUIDBalanceMap(players.size());
+        for (Map.Entry<UUID, Double> player : players.entrySet()) {
+            staged.put(player.getKey().getMostSignificantBits(), player.getKey().getLeastSignificantBits(), player.getValue());
+        }
+        if (lastSeen == null) {
+            balances.exclusive(() -> replace(staged, null));
+            return;
+        }
+        synchronized (saveLock) {
+            UUIDBalanceMap cold = new UUIDBalanceMap();
+            try {
+                coldTier.rewrite(balances::containsKey, (msb, lsb, balance) -> {
+                    cold.put(msb, lsb, balance);
+                    return staged.getOrDefault(msb, lsb, 0.0);
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to write the cold accounts of " + file.getName(), e);
+            }
+            tierLock.readLock().lock();
+            try {
+                balances.exclusive(() -> replace(staged, cold));
+            } finally {
+                tierLock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Replaces the balances in memory by the staged balances, accounts that are not staged are set to 0. Staged
+     *  accounts that were replaced within the cold file stay there unless they were promoted in the meantime.
+     *  The caller holds every lock of the table.
+     * @param cold The accounts that were replaced within the cold file, null if tiering is disabled
+     */
+    private void replace(@NotNull UUIDBalanceMap staged, @Nullable UUIDBalanceMap cold) {
+        UUIDBalanceMap removed = new UUIDBalanceMap();
+        balances.forEach((msb, lsb, balance) -> {
+            if (!staged.containsKey(msb, lsb)) {
+                removed.put(msb, lsb, 0.0);
+            }
+        });
+        UUIDBalanceMap.EntryConsumer put = (msb, lsb, balance) -> {
+            if (cold == null) {
+                balances.put(msb, lsb, balance);
+            } else if (!cold.containsKey(msb, lsb) || balances.containsKey(msb, lsb)) {
+                touch(msb, lsb);
+                balances.put(msb, lsb, balance);
+            } else {
+                return;
+            }
+            markModified(msb);
+        };
+        removed.forEach(put);
+        staged.forEach(put);
+    }
+
+    @Override
+    public @NotNull List<UUID> getAllKeys() {
+        List<UUID> keys = new ArrayList<>(balances.size());
+        if (lastSeen == null) {
+            balances.forEach((msb, lsb, balance) -> keys.add(new UUID(msb, lsb)));
+            return keys;
+        }
+        // The cold file may still contain accounts that were promoted since
+        UUIDBalanceMap resident = new UUIDBalanceMap(balances.size());
+        balances.forEach((msb, lsb, balance) -> {
+            keys.add(new UUID(msb, lsb));
+            resident.put(msb, lsb, balance);
+        });
+        try {
+            coldTier.forEach(resident::containsKey, (msb, lsb, balance) -> keys.add(new UUID(msb, lsb)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read the cold accounts of " + file.getName(), e);
+        }
+        return keys;
+    }
+
+    @Override
+    public void set(@NotNull UUID key, double value) {
+        if (lastSeen == null) {
+            balances.put(key, value);
+        } else {
+            tierLock.readLock().lock();
+            try {
+                touch(key.getMostSignificantBits(), key.getLeastSignificantBits());
+                balances.put(key, value);
+            } finally {
+                tierLock.readLock().unlock();
+            }
+        }
+        markModified(key.getMostSignificantBits());
+    }
+
+    @Override
+    public double addAndGet(@NotNull UUID key, double amount) {
+        double balance;
+        if (lastSeen == null) {
+            balance = balances.update(key, 0.0, old -> add(old, amount));
+        } else {
+            long msb = key.getMostSignificantBits();
+            long lsb = key.getLeastSignificantBits();
+            tierLock.readLock().lock();
+            try {
+                balance = balances.update(msb, lsb, absentValue(msb, lsb), old -> add(old, amount));
+            } finally {
+                tierLock.readLock().unlock();
+            }
+        }
+        markModified(key.getMostSignificantBits());
+        return balance;
+    }
+
+    @Override
+    public double addAndGetIfAtLeast(@NotNull UUID key, double amount, double minimum) {
+        long msb = key.getMostSignificantBits();
+        long lsb = key.getLeastSignificantBits();
+        double balance;
+        if (lastSeen == null) {
+            balance = balances.updateIfAtLeast(msb, lsb, 0.0, minimum, old -> add(old, amount));
+        } else {
+            tierLock.readLock().lock();
+            try {
+                balance = balances.updateIfAtLeast(msb, lsb, absentValue(msb, lsb), minimum, old -> add(old, amount));
+            } finally {
+                tierLock.readLock().unlock();
+            }
+        }
+        if (!Double.isNaN(balance)) {
+            markModified(msb);
+        }
+        return balance;
+    }
+
+    @Override
+    public boolean transfer(@NotNull UUID src, @NotNull UUID dest, double amount, double minimum) {
+        return transfer(src, dest, amount, minimum, new double[2]);
+    }
+
+    @Override
+    public boolean transfer(@NotNull UUID src, @NotNull UUID dest, double amount, double minimum,
+            double @NotNull[] results) {
+        long srcMsb = src.getMostSignificantBits();
+        long srcLsb = src.getLeastSignificantBits();
+        long destMsb = dest.getMostSignificantBits();
+        long destLsb = dest.getLeastSignificantBits();
+        boolean transferred;
+        if (lastSeen == null) {
+            transferred = balances.transfer(srcMsb, srcLsb, 0.0, destMsb, destLsb, 0.0, minimum,
+                    old -> results[0] = add(old, -amount), old -> results[1] = add(old, amount));
+        } else {
+            tierLock.readLock().lock();
+            try {
+                transferred = balances.transfer(srcMsb, srcLsb, absentValue(srcMsb, srcLsb),
+                        destMsb, destLsb, absentValue(destMsb, destLsb), minimum,
+                        old -> results[0] = add(old, -amount), old -> results[1] = add(old, amount));
+            } finally {
+                tierLock.readLock().unlock();
+            }
+        }
+        if (transferred) {
+            markModified(srcMsb);
+            markModified(destMsb);
+            if (srcMsb == destMsb && srcLsb == destLsb) {
+                // The balance of the source was changed before the balance of the destination
+                results[0] = results[1];
+            }
+        }
+        return transferred;
+    }
+
+    /**
+     * Records that an account is used and obtains the balance it has if it is not in memory, which is it's cold
+     *  balance or 0. The caller must hold the read lock of the tiers.
+     */
+    private double absentValue(long msb, long lsb) {
+        touch(msb, lsb);
+        // The absent value is ignored if the account was promoted concurrently
+        return balances.containsKey(msb, lsb) ? 0.0 : getColdOrDefault(msb, lsb, 0.0);
+    }
+
+    /**
+     * Adds an amount to a balance, in minor units if fixed-point balances are enabled.
+     */
+    private double add(double balance, double amount) {
+        FixedPoint fixedPoint = settings.getFixedPoint();
+        if (fixedPoint != null) {
+            return fixedPoint.add(balance, amount);
+        }
+        // BigDecimal for less approximations when dealing with doubles (due to how floating point values are handled in
+        // Java, there will always be approximations) ( https://docs.oracle.com/cd/E19957-01/806-3568/ncg_goldberg.html )
+        return BigDecimal.valueOf(balance).add(BigDecimal.valueOf(amount)).doubleValue();
+    }
+
+    @Override
+    public double @NotNull[] getBalances(@NotNull UUID @NotNull[] players, double defaultValue) {
+        double[] results = new double[players.length];
+        if (lastSeen != null) {
+            // Accounts may need to be promoted from the cold tier
+            for (int i = 0; i < players.length; i++) {
+                results[i] = getOrDefault(players[i], defaultValue);
+            }
+        } else {
+            balances.getAll(toKeys(players), defaultValue, results);
+        }
+        return results;
+    }
+
+    @Override
+    public double @NotNull[] addAndGetAll(@NotNull UUID @NotNull[] players, double @NotNull[] amounts) {
+        if (players.length != amounts.length) {
+            throw new IllegalArgumentException("There are " + players.length + " players but " + amounts.length + " amounts.");
+        }
+        long[] keys = toKeys(players);
+        double[] results = new double[players.length];
+        if (lastSeen == null) {
+            balances.updateAll(keys, amounts, 0.0, this::add, results);
+        } else {
+            tierLock.readLock().lock();
+            try {
+                double[] cold = new double[1];
+                for (int i = 0; i < players.length; i++) {
+                    touch(keys[i * 2], keys[i * 2 + 1]);
+                    if (!balances.containsKey(keys[i * 2], keys[i * 2 + 1])) {
+                        promote(keys[i * 2], keys[i * 2 + 1], cold);
+                    }
+                }
+                balances.updateAll(keys, amounts, 0.0, this::add, results);
+            } finally {
+                tierLock.readLock().unlock();
+            }
+        }
+        if (shardedBalances != null) {
+            for (int i = 0; i < players.length; i++) {
+                dirtyShards.set(shardedBalances.shardIndex(keys[i * 2]), 1);
+            }
+        }
+        modified = true;
+        summaryStale = true;
+        return results;
+    }
+
+    private static long @NotNull[] toKeys(@NotNull UUID @NotNull[] players) {
+        long[] keys = new long[players.length * 2];
+        for (int i = 0; i < players.length; i++) {
+            keys[i * 2] = players[i].getMostSignificantBits();
+            keys[i * 2 + 1] = players[i].getLeastSignificantBits();
+        }
+        return keys;
+    }
+
+    /**
+     * Marks the storage and the shard of the UUID as modified. Needs to be called after the change was applied
+     *  to the table, so that a concurrent save either includes the change or leaves the shard marked.
+     */
+    private void markModified(long mostSigBits) {
+        if (shardedBalances != null) {
+            dirtyShards.set(shardedBalances.shardIndex(mostSigBits), 1);
+        }
+        modified = true;
+        summaryStale = true;
+    }
+
+    @Override
+    public boolean has(@NotNull UUID key) {
+        if (balances.containsKey(key)) {
+            return true;
+        }
+        return lastSeen != null
+                && !Double.isNaN(getColdOrDefault(key.getMostSignificantBits(), key.getLeastSignificantBits(), Double.NaN));
+    }
+
+    /**
+     * Obtains the accounts with the highest positive balances, ordered from the highest to the lowest balance.
+     * @return An unmodifiable map of the top accounts, empty if the leaderboard is disabled
+     * @since 1.2.0
+     */
+    @Override
+    public @NotNull Map<UUID, Double> getBaltop() {
+        BalanceIndex index = this.index;
+        if (index != null) {
+            return Collections.unmodifiableMap(index.getTop(0, settings.getLeaderboardSize()));
+        }
+        Leaderboard leaderboard = this.leaderboard;
+        if (leaderboard == null) {
+            return Collections.emptyMap();
+        }
+        return leaderboard.getTop();
+    }
+
+    /**
+     * {@inheritDoc}
+     * @implNote Answered by the {@link BalanceIndex} in O(log n) if it is enabled.
+     */
+    @Override
+    public @NotNull Map<UUID, Double> getBaltop(int skip, int limit) {
+        BalanceIndex index = this.index;
+        if (index == null) {
+            return PlayerDataStorage.super.getBaltop(skip, limit);
+        }
+        return index.getTop(skip, limit);
+    }
+
+    /**
+     * {@inheritDoc}
+     * @implNote Answered by the {@link BalanceIndex} in O(log n) if it is enabled.
+     */
+    @Override
+    public int getRank(@NotNull UUID player) {
+        BalanceIndex index = this.index;
+        if (index == null) {
+            return PlayerDataStorage.super.getRank(player);
+        }
+        return index.getRank(player);
+    }
+
+    /**
+     * {@inheritDoc}
+     * @implNote Answered by the {@link BalanceIndex} in O(log n) if it is enabled.
+     */
+    @Override
+    public @NotNull Map<UUID, Double> getBalancesBetween(double min, double max, int limit) {
+        BalanceIndex index = this.index;
+        if (index == null) {
+            return PlayerDataStorage.super.getBalancesBetween(min, max, limit);
+        }
+        return index.getBetween(min, max, limit);
+    }
+
+    /**
+     * Saves the balances to the file on the disk if they were modified, or in journaled mode commits the journal
+     *  and performs a checkpoint if enough changes accumulated. If tiering is enabled, accounts that were not used
+     *  for the configured time are moved into the cold file afterwards.
+     * @throws IOException If an IO Exception occurs
+     * @since 1.2.0
+     */
+    @Override
+    public void save() throws IOException {
+        saveBalances();
+        if (lastSeen != null) {
+            demote(lastSeen);
+        }
+    }
+
+    private void saveBalances() throws IOException {
+        if (journal != null) {
+            if (journal.getRecordsSinceCheckpoint() >= settings.getCheckpointRecords()) {
+                journal.checkpoint(this::writeSnapshot);
+            } else {
+                journal.commit();
+            }
+            return;
+        }
+        if (modified) {
+            // Reset the flag beforehand so changes made during the save are not forgotten
+            modified = false;
+            try {
+                writeSnapshot();
+            } catch (IOException e) {
+                modified = true;
+                throw e;
+            }
+        }
+    }
+
+    private void writeSnapshot() throws IOException {
+        long time = System.currentTimeMillis();
+        synchronized (saveLock) {
+            if (mappedBalances != null) {
+                // The file is updated in place, so it only needs to be synced
+                mappedBalances.force();
+            } else if (shardedBalances != null) {
+                writeShards(shardedBalances);
+            } else {
+                // The snapshot is consistent and does not block any balance changes while it is written
+                try (BalanceSnapshot snapshot = balances.snapshot()) {
+                    writeFile(file, snapshot);
+                    if (lastSeen == null) {
+                        writeSummary(snapshot);
+                    }
+                }
+            }
+            if (coldMerged) {
+                // The former cold accounts are now stored in the storage file
+                coldTier.delete();
+                Files.deleteIfExists(getLastSeenFile().toPath());
+                coldMerged = false;
+            }
+        }
+        onSaved(System.currentTimeMillis() - time);
+    }
+
+    /**
+     * Moves the accounts that were not used within the configured time into the cold tier. The accounts are written
+     *  to the cold file before they are removed from memory, so they can never be lost, and accounts that were used
+     *  while the file was written stay in memory. As a save precedes the demotion the accounts are already stored
+     *  in the storage file or the journal, which are rewritten without them during the next save.
+     */
+    private void demote(@NotNull StripedBalanceMap lastSeen) throws IOException {
+        synchronized (saveLock) {
+            long time = System.currentTimeMillis();
+            double cutoff = currentMinute() - settings.getColdAfter() / 60_000L;
+            UUIDBalanceMap candidates = new UUIDBalanceMap();
+            lastSeen.forEach((msb, lsb, seen) -> {
+                if (seen < cutoff) {
+                    candidates.put(msb, lsb, seen);
+                }
+            });
+            if (!candidates.isEmpty()) {
+                LsmSegment.ArrayCursor demoted = new LsmSegment.ArrayCursor(candidates.size());
+                candidates.forEach((msb, lsb, seen) -> {
+                    double balance = balances.getOrDefault(msb, lsb, Double.NaN);
+                    if (!Double.isNaN(balance) || balances.containsKey(msb, lsb)) {
+                        demoted.add(msb, lsb, balance);
+                    }
+                });
+                if (demoted.size() != 0) {
+                    demoted.sort();
+                    coldTier.demote(demoted, balances::containsKey);
+                }
+                int[] removed = new int[1];
+                tierLock.writeLock().lock();
+                try {
+                    candidates.forEach((msb, lsb, seen) -> {
+                        // Accounts that were used in the meantime were touched and are kept
+                        if (lastSeen.getOrDefault(msb, lsb, Double.NaN) == seen) {
+                            lastSeen.remove(msb, lsb);
+                            if (((StripedBalanceMap) balances).remove(msb, lsb)) {
+                                markModified(msb);
+                                removed[0]++;
+                            }
+                        }
+                    });
+                } finally {
+                    tierLock.writeLock().unlock();
+                }
+                lastSeenModified = true;
+                if (removed[0] != 0) {
+                    onDemoted(removed[0], System.currentTimeMillis() - time);
+                }
+            }
+            if (lastSeenModified) {
+                lastSeenModified = false;
+                try (BalanceSnapshot snapshot = lastSeen.snapshot()) {
+                    StorageFiles.writeAtomically(getLastSeenFile(), out -> BalanceFileWriter.writeV4(snapshot, out, 0L));
+                } catch (IOException e) {
+                    lastSeenModified = true;
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the summary of the snapshot that was just written to the storage file, so that the next reload
+     *  does not need to compute it again.
+     */
+    private void writeSummary(@NotNull BalanceSnapshot snapshot) {
+        try {
+            BalanceSummary.compute(consumer -> {
+                try {
+                    snapshot.writeEntries(consumer::accept);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, settings.getDefaultBalance(), Leaderboard.capacityFor(settings.getLeaderboardSize()))
+                .write(getSummaryFile(), file);
+        } catch (IOException | UncheckedIOException e) {
+            // The summary is only a cache, a summary that does not match the storage file is ignored while loading
+        }
+    }
+
+    /**
+     * Obtains the aggregates, the histogram and the top accounts of all balances. The summary that was stored
+     *  alongside the storage file is used if the balances were not changed since they were loaded,
+     *  otherwise the summary is computed from all balances, which requires a scan.
+     * @return The summary of the balances
+     * @since 1.2.0
+     */
+    public @NotNull BalanceSummary getSummary() {
+        synchronized (summaryLock) {
+            BalanceSummary summary = this.summary;
+            if (summary != null && !summaryStale) {
+                return summary;
+            }
+            // Reset beforehand so that changes made during the scan are not missed
+            summaryStale = false;
+            summary = BalanceSummary.compute(lastSeen != null ? this::forEachAccount : balances::forEach,
+                    settings.getDefaultBalance(), Leaderboard.capacityFor(settings.getLeaderboardSize()));
+            this.summary = summary;
+            return summary;
+        }
+    }
+
+    /**
+     * Obtains the summary of all balances if it does not need to be computed, which is the case if the summary
+     *  stored alongside the storage file was loaded or a summary was computed since the balances were last changed.
+     * @return The summary of the balances, or null if {@link #getSummary()} would need to scan all balances
+     * @since 1.2.0
+     */
+    public @Nullable BalanceSummary getSummaryIfPresent() {
+        synchronized (summaryLock) {
+            return summaryStale ? null : summary;
+        }
+    }
+
+    private void writeFile(@NotNull File target, @NotNull BalanceSnapshot snapshot) throws IOException {
+        StorageFiles.writeAtomically(target, out -> {
+            if (settings.getFormat() == BalanceFileWriter.COMPACT_FORMAT_VERSION) {
+                BalanceFileWriter.writeV4(snapshot, out, lastBackup);
+            } else {
+                // Players that never spent their starting balance are stored without their balance
+                BalanceFileWriter.writeV2(snapshot, out, lastBackup, settings.getDefaultBalance());
+            }
+        });
+    }
+
+    /**
+     * Writes all modified shards in parallel.
+     */
+    private void writeShards(@NotNull ShardedBalanceMap sharded) throws IOException {
+        File directory = getShardDirectory();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create the shard directory " + directory.getPath());
+        }
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < sharded.getStripeCount(); i++) {
+            // Cleared before the snapshot is taken so changes made during the save are not forgotten
+            if (dirtyShards.compareAndSet(i, 1, 0)) {
+                int shard = i;
+                tasks.add(shardExecutor.submit(() -> {
+                    try (BalanceSnapshot snapshot = sharded.snapshot(shard)) {
+                        writeFile(getShardFile(shard), snapshot);
+                    } catch (IOException | RuntimeException e) {
+                        dirtyShards.set(shard, 1);
+                        throw e;
+                    }
+                    return null;
+                }));
+            }
+        }
+        awaitAll(tasks, null);
+        if (strayShards) {
+            // All balances of shards with another amount of shards are now stored in the current shards
+            String suffix = "-of-" + sharded.getStripeCount() + ".dat";
+            File[] strays = directory.listFiles((dir, name) -> SHARD_NAME.matcher(name).matches() && !name.endsWith(suffix));
+            if (strays != null) {
+                for (File stray : strays) {
+                    Files.delete(stray.toPath());
+                }
+            }
+            strayShards = false;
+        }
+        if (file.length() != 0) {
+            // All balances of the single storage file are now stored in the shards
+            Files.move(file.toPath(), new File(file.getParentFile(), file.getName() + ".unsharded").toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads all shard files into the table, in parallel if the storage is sharded. The shard files do not need to
+     *  match the current amount of shards.
+     * @return True if shards of another amount of shards were read
+     */
+    private boolean readShards(@NotNull BalanceTable target) throws IOException {
+        File[] shardFiles = getShardDirectory().listFiles((dir, name) -> SHARD_NAME.matcher(name).matches());
+        if (shardFiles == null) {
+            return false;
+        }
+        boolean strays = false;
+        List<File> files = new ArrayList<>();
+        List<Future<?>> tasks = new ArrayList<>();
+        for (File shardFile : shardFiles) {
+            Matcher matcher = SHARD_NAME.matcher(shardFile.getName());
+            matcher.matches();
+            strays |= shardedBalances == null || Integer.parseInt(matcher.group(2)) != shardedBalances.getStripeCount();
+            if (shardExecutor == null) {
+                try {
+                    readShard(shardFile, target);
+                } catch (BalanceFileReader.CorruptedStorageException e) {
+                    onCorrupted(shardFile, e);
+                    throw e;
+                }
+            } else {
+                files.add(shardFile);
+                tasks.add(shardExecutor.submit(() -> readShard(shardFile, target)));
+            }
+        }
+        awaitAll(tasks, files);
+        return strays;
+    }
+
+    /**
+     * Waits for all tasks to complete and rethrows the first IO Exception that was thrown by them.
+     * @param files The files the tasks read, used to report corrupted files, or null if they do not read files
+     */
+    private void awaitAll(@NotNull List<Future<?>> tasks, @Nullable List<File> files) throws IOException {
+        IOException failure = null;
+        for (int i = 0; i < tasks.size(); i++) {
+            try {
+                tasks.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure == null) {
+                    failure = new InterruptedIOException("Interrupted while waiting for the shards.");
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (!(cause instanceof IOException)) {
+                    throw new IllegalStateException("Unable to process a shard", cause);
+                }
+                if (failure == null) {
+                    failure = (IOException) cause;
+                    if (files != null && cause instanceof BalanceFileReader.CorruptedStorageException) {
+                        // Invoked on the calling thread as platforms may not be thread safe
+                        onCorrupted(files.get(i), (BalanceFileReader.CorruptedStorageException) cause);
+                    }
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private @Nullable Void readShard(@NotNull File source, @NotNull BalanceTable target) throws IOException {
+        try (BalanceFileReader reader = new BalanceFileReader(source)) {
+            int version = reader.getVersion();
+            if (version == 2 || version == BalanceFileWriter.COMPACT_FORMAT_VERSION) {
+                reader.read(target, version);
+            } else if (version != -1) {
+                throw new BalanceFileReader.CorruptedStorageException("Unexpected version for a shard: v" + version);
+            }
+            synchronized (this) {
+                lastBackup = Math.max(lastBackup, reader.getLastBackup());
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void reload() {
+        long time = System.currentTimeMillis();
+        synchronized (saveLock) {
+            BalanceSummary loadedSummary = null;
+            try {
+                if (lastSeen != null || coldTier.exists()) {
+                    coldTier.open();
+                }
+                if (mappedBalances != null) {
+                    mappedBalances.open(this::readSnapshot);
+                } else {
+                    balances.clear();
+                    modified = false;
+                    if (file.length() != 0) {
+                        readSnapshot(file, balances);
+                        if (shardedBalances == null && lastSeen == null) {
+                            loadedSummary = BalanceSummary.read(getSummaryFile(), file);
+                        }
+                        if (shardedBalances != null) {
+                            // Migrate the single storage file to shards during the next save, replacing any old shards
+                            for (int i = 0; i < dirtyShards.length(); i++) {
+                                dirtyShards.set(i, 1);
+                            }
+                            strayShards = true;
+                            modified = true;
+                        }
+                    } else if (getShardDirectory().isDirectory()) {
+                        strayShards = readShards(balances);
+                        if (strayShards) {
+                            // The amount of shards changed or sharding was disabled, so everything needs to be rewritten
+                            if (dirtyShards != null) {
+                                for (int i = 0; i < dirtyShards.length(); i++) {
+                                    dirtyShards.set(i, 1);
+                                }
+                            }
+                            modified = true;
+                        }
+                    }
+                }
+                long replayed = 0;
+                if (journal != null) {
+                    replayed = journal.replay((msb, lsb, balance) -> {
+                        balances.load(msb, lsb, balance);
+                        if (shardedBalances != null) {
+                            dirtyShards.set(shardedBalances.shardIndex(msb), 1);
+                        }
+                    });
+                    journal.start();
+                }
+                if (replayed != 0) {
+                    loadedSummary = null; // The journal changed the balances of the storage file
+                }
+                if (lastSeen != null) {
+                    readLastSeen(lastSeen);
+                } else if (coldTier.getFile() != null) {
+                    // Tiering was disabled, so the cold accounts are moved back into the storage file
+                    coldTier.forEach(balances::containsKey, balances::load);
+                    coldTier.close();
+                    loadedSummary = null;
+                    coldMerged = true;
+                    if (dirtyShards != null) {
+                        for (int i = 0; i < dirtyShards.length(); i++) {
+                            dirtyShards.set(i, 1);
+                        }
+                    }
+                    // The cold files are only deleted once the storage file was rewritten
+                    modified = true;
+                }
+                onLoaded(replayed, System.currentTimeMillis() - time);
+            } catch (IOException e) {
+                loadedSummary = null;
+                onLoadFailed(e);
+            } finally {
+                summary = loadedSummary;
+                summaryStale = loadedSummary == null;
+                // The balances were loaded without notifying the leaderboard and the index, both are restored from the
+                // summary or computed in the background so that loading does not wait for the scan
+                if (leaderboard != null) {
+                    leaderboard.invalidate();
+                    if (loadedSummary == null || !loadedSummary.restore(leaderboard)) {
+                        leaderboard.rebuildAsync();
+                    }
+                }
+                if (index != null) {
+                    index.invalidate();
+                    index.rebuildAsync();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the time the accounts in memory were last used at. Accounts without a known time are treated
+     *  as if they were used right now.
+     */
+    private void readLastSeen(@NotNull StripedBalanceMap lastSeen) throws IOException {
+        lastSeen.clear();
+        File seenFile = getLastSeenFile();
+        if (seenFile.length() != 0) {
+            try (BalanceFileReader reader = new BalanceFileReader(seenFile)) {
+                reader.read(lastSeen, reader.getVersion());
+            }
+        }
+        double now = currentMinute();
+        balances.forEach((msb, lsb, balance) -> {
+            if (!lastSeen.containsKey(msb, lsb)) {
+                lastSeen.load(msb, lsb, now);
+            }
+        });
+        lastSeenModified = true;
+    }
+
+    private void readSnapshot(@NotNull File source, @NotNull BalanceTable target) throws IOException {
+        try (BalanceFileReader reader = new BalanceFileReader(source)) {
+            int version = reader.getVersion();
+            if (version == -1) {
+                return; // File hasn't yet been created.
+            }
+            if (!BalanceFileReader.isSupported(version)) {
+                onUnsupportedVersion(source, version);
+                version = 1;
+            }
+            try {
+                reader.read(target, version);
+            } catch (BalanceFileReader.CorruptedStorageException e) {
+                onCorrupted(source, e);
+                throw e;
+            }
+            if (reader.getLastBackup() != Long.MIN_VALUE) {
+                lastBackup = reader.getLastBackup();
+            }
+        }
+    }
+
+    @Override
+    public void backup(@NotNull File backupDir) throws IOException {
+        synchronized (saveLock) {
+            if (journal != null) {
+                // The storage file alone is only complete right after a checkpoint
+                journal.checkpoint(this::writeSnapshot);
+            } else if (mappedBalances != null || shardedBalances != null) {
+                writeSnapshot();
+            }
+            String name = "backup-bal-" + new SimpleDateFormat("yyyy-MM-dd_HH:mm:ss").format(Date.from(Instant.now()));
+            if (shardedBalances != null) {
+                File backupShards = new File(backupDir, name);
+                if (!backupShards.mkdirs()) {
+                    throw new IOException("Unable to create the backup directory " + backupShards.getPath());
+                }
+                for (int i = 0; i < shardedBalances.getStripeCount(); i++) {
+                    File shardFile = getShardFile(i);
+                    if (shardFile.exists()) {
+                        Files.copy(shardFile.toPath(), new File(backupShards, shardFile.getName()).toPath());
+                    }
+                }
+            } else {
+                Files.copy(file.toPath(), new File(backupDir, name + ".dat").toPath());
+            }
+            File coldFile = coldTier.getFile();
+            if (coldFile != null) {
+                // Named so that it is picked up as the cold tier of the backup once it is restored
+                File backupCold = shardedBalances != null ? new File(new File(backupDir, name), file.getName() + ".cold.0")
+                        : new File(backupDir, name + ".dat.cold.0");
+                Files.copy(coldFile.toPath(), backupCold.toPath());
+            }
+            lastBackup = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Obtains the time of the last backup, which is stored in the storage file.
+     * @return The time of the last backup in milliseconds since the epoch, or 0 if it is not known
+     * @since 1.2.0
+     */
+    public long getLastBackup() {
+        return lastBackup;
+    }
+
+    @Override
+    public @NotNull File getStorageFile() {
+        return file;
+    }
+
+    /**
+     * Obtains the directory the shards are stored in, which exists only if sharding is or was enabled.
+     * @return The shard directory
+     * @since 1.2.0
+     */
+    public @NotNull File getShardDirectory() {
+        return new File(file.getParentFile(), file.getName() + ".shards");
+    }
+
+    private @NotNull File getSummaryFile() {
+        return new File(file.getParentFile(), file.getName() + ".summary");
+    }
+
+    private @NotNull File getLastSeenFile() {
+        return new File(file.getParentFile(), file.getName() + ".seen");
+    }
+
+    private @NotNull File getShardFile(int shard) {
+        return new File(getShardDirectory(), "shard-" + shard + "-of-" + shardedBalances.getStripeCount() + ".dat");
+    }
+
+    /**
+     * Commits and closes the journal, if one is used, as well as the mapped storage file and the cold file.
+     *  Should be called after the final save.
+     */
+    @Override
+    public void close() throws IOException {
+        coldTier.close();
+        if (journal != null) {
+            journal.close();
+        }
+        if (mappedBalances != null) {
+            mappedBalances.close();
+        }
+        if (shardExecutor != null) {
+            shardExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Called after the storage file was loaded.
+     * @param replayedRecords The amount of records that were replayed from the journal
+     * @param millis The time it took to load the file in milliseconds
+     * @since 1.2.0
+     */
+    protected void onLoaded(long replayedRecords, long millis) {
+        // Does nothing by default
+    }
+
+    /**
+     * Called if the storage file could not be loaded.
+     * @param e The exception that prevented the file from being loaded
+     * @since 1.2.0
+     */
+    protected void onLoadFailed(@NotNull IOException e) {
+        e.printStackTrace();
+    }
+
+    /**
+     * Called after the balances were saved.
+     * @param millis The time it took to save the balances in milliseconds
+     * @since 1.2.0
+     */
+    protected void onSaved(long millis) {
+        // Does nothing by default
+    }
+
+    /**
+     * Called after accounts that were not used for the configured time were moved into the cold file.
+     * @param accounts The amount of accounts that were moved
+     * @param millis The time it took to move the accounts in milliseconds
+     * @since 1.2.0
+     */
+    protected void onDemoted(int accounts, long millis) {
+        // Does nothing by default
+    }
+
+    /**
+     * Called if the version of the storage file is not known, in which case it is read as a v1 file anyway.
+     * @param source The storage file
+     * @param version The unknown version
+     * @since 1.2.0
+     */
+    protected void onUnsupportedVersion(@NotNull File source, int version) {
+        // Does nothing by default
+    }
+
+    /**
+     * Called if the length of the storage file does not match it's header, after which the exception is rethrown.
+     * @param source The storage file
+     * @param e The exception describing the corruption
+     * @since 1.2.0
+     */
+    protected void onCorrupted(@NotNull File source, @NotNull BalanceFileReader.CorruptedStorageException e) {
+        // Does nothing by default
+    }
+}
@@ -0,0 +1,383 @@
+package de.geolykt.easyconomy.api.storage;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * State that is derived from all balances of a storage: The aggregates, a histogram of the balances and the accounts
+ *  with the highest balances. The summary is stored next to the storage file as {@code <file>.summary} whenever the
+ *  storage file is rewritten, so that it does not need to be computed again while the storage is loaded.
+ * <br/>
+ * The summary file consists of a header and a list of sections, each of which starts with it's type and length so
+ *  that readers can skip sections they do not know. A summary is only valid for the exact storage file it was
+ *  computed from, which is recorded as the length and the modification time of that file. A CRC32 checksum of all
+ *  preceding bytes ends the file.
+ * <pre>
+ * [MAGIC] [VERSION] [STORAGE LENGTH] [STORAGE MODIFIED] [SECTIONS] [TYPE = 0] [CRC32]
+ * 4 bytes  4 bytes      8 bytes           8 bytes                    1 byte   4 bytes
+ *
+ * Section: [TYPE] [LENGTH] [PAYLOAD]
+ *          1 byte 4 bytes
+ * </pre>
+ * The aggregates section (type 1) holds the amount of accounts, the amount of accounts at the default balance,
+ *  the default balance, the sum of all balances and the highest and lowest balance. The histogram section (type 2)
+ *  holds the amount of buckets followed by the amount of accounts in each bucket, see {@link #getBucket(double)}.
+ *  The top section (type 3) holds the capacity of the top accounts, their amount and their UUIDs and balances.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+public final class BalanceSummary {
+
+    private static final int MAGIC = 0x4543534D; // "ECSM"
+    private static final int VERSION = 1;
+    private static final int SECTION_END = 0;
+    private static final int SECTION_AGGREGATES = 1;
+    private static final int SECTION_HISTOGRAM = 2;
+    private static final int SECTION_TOP = 3;
+
+    /**
+     * The amount of buckets of the histogram: Negative balances, balances below 1 and one bucket per power of ten
+     *  up to 10^19, above which all balances share the last bucket.
+     * @since 1.2.0
+     */
+    public static final int BUCKETS = 22;
+
+    private final int accounts;
+    private final int defaultAccounts;
+    private final double defaultBalance;
+    private final double total;
+    private final double highest;
+    private final double lowest;
+    private final long @NotNull[] histogram;
+    private final int topCapacity;
+    private final int topCount;
+    private final long @NotNull[] topKeys;
+    private final double @NotNull[] topBalances;
+
+    private BalanceSummary(int accounts, int defaultAccounts, double defaultBalance, double total, double highest,
+            double lowest, long @NotNull[] histogram, int topCapacity, int topCount, long @NotNull[] topKeys,
+            double @NotNull[] topBalances) {
+        this.accounts = accounts;
+        this.defaultAccounts = defaultAccounts;
+        this.defaultBalance = defaultBalance;
+        this.total = total;
+        this.highest = highest;
+        this.lowest = lowest;
+        this.histogram = histogram;
+        this.topCapacity = topCapacity;
+        this.topCount = topCount;
+        this.topKeys = topKeys;
+        this.topBalances = topBalances;
+    }
+
+    /**
+     * Computes the summary of the given accounts.
+     * @param source The accounts
+     * @param defaultBalance The balance of accounts that were never used
+     * @param topCapacity The amount of accounts with the highest positive balances to keep
+     * @return The summary
+     * @since 1.2.0
+     */
+    public static @NotNull BalanceSummary compute(@NotNull Leaderboard.Source source, double defaultBalance, int topCapacity) {
+        Builder builder = new Builder(defaultBalance, topCapacity);
+        source.forEach(builder);
+        return builder.build();
+    }
+
+    /**
+     * Collects the summary of the accounts that are passed to it.
+     */
+    private static final class Builder implements UUIDBalanceMap.EntryConsumer {
+
+        private final long defaultBits;
+        private final double defaultBalance;
+        private final long @NotNull[] histogram = new long[BUCKETS];
+        private final @NotNull Leaderboard.TopHeap top;
+        private int accounts;
+        private int defaultAccounts;
+        private double total;
+        // Kahan summation, so that millions of small balances do not lose their cents
+        private double compensation;
+        private double highest = Double.NEGATIVE_INFINITY;
+        private double lowest = Double.POSITIVE_INFINITY;
+
+        private Builder(double defaultBalance, int topCapacity) {
+            this.defaultBalance = defaultBalance;
+            defaultBits = Double.doubleToLongBits(defaultBalance);
+            top = new Leaderboard.TopHeap(Math.max(topCapacity, 0));
+        }
+
+        @Override
+        public void accept(long mostSigBits, long leastSigBits, double balance) {
+            accounts++;
+            if (Double.doubleToLongBits(balance) == defaultBits) {
+                defaultAccounts++;
+            }
+            double y = balance - compensation;
+            double t = total + y;
+            compensation = (t - total) - y;
+            total = t;
+            highest = Math.max(highest, balance);
+            lowest = Math.min(lowest, balance);
+            histogram[getBucket(balance)]++;
+            if (top.capacity() != 0) {
+                top.accept(mostSigBits, leastSigBits, balance);
+            }
+        }
+
+        private @NotNull BalanceSummary build() {
+            return new BalanceSummary(accounts, defaultAccounts, defaultBalance, total, highest, lowest, histogram,
+                    top.capacity(), top.count, Arrays.copyOf(top.keys, top.count * 2), Arrays.copyOf(top.balances, top.count));
+        }
+    }
+
+    /**
+     * Obtains the bucket of the histogram a balance belongs to.
+     * @param balance The balance
+     * @return The index of the bucket, 0 for negative balances, 1 for balances below 1, 2 for balances below 10 and so on
+     * @since 1.2.0
+     */
+    public static int getBucket(double balance) {
+        if (balance < 0.0) {
+            return 0;
+        }
+        int bucket = 1;
+        for (double bound = 1.0; bucket < BUCKETS - 1 && !(balance < bound); bound *= 10.0) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    public int getAccounts() {
+        return accounts;
+    }
+
+    /**
+     * Obtains the amount of accounts that still have the default balance, such as players that never used their
+     *  account. These are the inactive accounts of the v2 storage format.
+     * @return The amount of accounts
+     * @since 1.2.0
+     */
+    public int getDefaultAccounts() {
+        return defaultAccounts;
+    }
+
+    public double getDefaultBalance() {
+        return defaultBalance;
+    }
+
+    /**
+     * Obtains the sum of all balances, which is the amount of money in circulation.
+     * @return The sum of the balances
+     * @since 1.2.0
+     */
+    public double getTotal() {
+        return total;
+    }
+
+    /**
+     * Obtains the highest balance.
+     * @return The highest balance, or {@link Double#NEGATIVE_INFINITY} if there are no accounts
+     * @since 1.2.0
+     */
+    public double getHighest() {
+        return highest;
+    }
+
+    /**
+     * Obtains the lowest balance.
+     * @return The lowest balance, or {@link Double#POSITIVE_INFINITY} if there are no accounts
+     * @since 1.2.0
+     */
+    public double getLowest() {
+        return lowest;
+    }
+
+    /**
+     * Obtains the amount of accounts in each bucket of the histogram, see {@link #getBucket(double)}.
+     * @return A copy of the histogram with {@link #BUCKETS} entries
+     * @since 1.2.0
+     */
+    public long @NotNull[] getHistogram() {
+        return histogram.clone();
+    }
+
+    /**
+     * Obtains the accounts with the highest positive balances, ordered from the highest to the lowest balance.
+     * @param limit The maximum amount of accounts to return
+     * @return The UUIDs and balances of the accounts in order
+     * @since 1.2.0
+     */
+    public @NotNull LinkedHashMap<UUID, Double> getTop(int limit) {
+        Integer[] order = new Integer[topCount];
+        for (int i = 0; i < topCount; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(topBalances[b], topBalances[a]));
+        LinkedHashMap<UUID, Double> top = new LinkedHashMap<>();
+        for (int i = 0; i < topCount && i < limit; i++) {
+            top.put(new UUID(topKeys[order[i] * 2], topKeys[order[i] * 2 + 1]), topBalances[order[i]]);
+        }
+        return top;
+    }
+
+    /**
+     * Passes the tracked top accounts to a leaderboard so that it does not need to scan the accounts again.
+     * @param leaderboard The leaderboard
+     * @return True if the leaderboard was restored, false if too few accounts were tracked for it's size
+     */
+    boolean restore(@NotNull Leaderboard leaderboard) {
+        return leaderboard.restore(topKeys, topBalances, topCount, topCapacity);
+    }
+
+    /**
+     * Writes the summary to a file, which is replaced atomically.
+     * @param target The summary file
+     * @param storage The storage file the summary was computed from, which needs to be written already
+     * @throws IOException If an IO Exception occurs
+     * @since 1.2.0
+     */
+    public void write(@NotNull File target, @NotNull File storage) throws IOException {
+        long length = storage.length();
+        long modified = storage.lastModified();
+        StorageFiles.writeAtomically(target, rawOut -> {
+            CRC32 checksum = new CRC32();
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(rawOut, checksum));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(length);
+            out.writeLong(modified);
+
+            out.write(SECTION_AGGREGATES);
+            out.writeInt(40);
+            out.writeInt(accounts);
+            out.writeInt(defaultAccounts);
+            out.writeDouble(defaultBalance);
+            out.writeDouble(total);
+            out.writeDouble(highest);
+            out.writeDouble(lowest);
+
+            out.write(SECTION_HISTOGRAM);
+            out.writeInt(4 + histogram.length * 8);
+            out.writeInt(histogram.length);
+            for (long count : histogram) {
+                out.writeLong(count);
+            }
+
+            out.write(SECTION_TOP);
+            out.writeInt(8 + topCount * 24);
+            out.writeInt(topCapacity);
+            out.writeInt(topCount);
+            for (int i = 0; i < topCount; i++) {
+                out.writeLong(topKeys[i * 2]);
+                out.writeLong(topKeys[i * 2 + 1]);
+                out.writeDouble(topBalances[i]);
+            }
+
+            out.write(SECTION_END);
+            out.flush();
+            // The checksum itself is not part of the checksum
+            new DataOutputStream(rawOut).writeInt((int) checksum.getValue());
+        });
+    }
+
+    /**
+     * Reads the summary of a storage file.
+     * @param summary The summary file
+     * @param storage The storage file the summary should have been computed from
+     * @return The summary, or null if the file does not exist, is corrupted or was computed from another version
+     *  of the storage file
+     * @throws IOException If an IO Exception occurs
+     * @since 1.2.0
+     */
+    public static @Nullable BalanceSummary read(@NotNull File summary, @NotNull File storage) throws IOException {
+        if (!summary.isFile() || !storage.isFile()) {
+            return null;
+        }
+        CRC32 checksum = new CRC32();
+        try (BufferedInputStream rawIn = new BufferedInputStream(new FileInputStream(summary))) {
+            DataInputStream in = new DataInputStream(new CheckedInputStream(rawIn, checksum));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                    || in.readLong() != storage.length() || in.readLong() != storage.lastModified()) {
+                return null;
+            }
+            int accounts = 0;
+            int defaultAccounts = 0;
+            double defaultBalance = 0.0;
+            double total = 0.0;
+            double highest = Double.NEGATIVE_INFINITY;
+            double lowest = Double.POSITIVE_INFINITY;
+            long[] histogram = null;
+            int topCapacity = 0;
+            int topCount = -1;
+            long[] topKeys = null;
+            double[] topBalances = null;
+            for (int type = in.readUnsignedByte(); type != SECTION_END; type = in.readUnsignedByte()) {
+                int length = in.readInt();
+                switch (type) {
+                case SECTION_AGGREGATES:
+                    accounts = in.readInt();
+                    defaultAccounts = in.readInt();
+                    defaultBalance = in.readDouble();
+                    total = in.readDouble();
+                    highest = in.readDouble();
+                    lowest = in.readDouble();
+                    in.skipBytes(length - 40);
+                    break;
+                case SECTION_HISTOGRAM:
+                    int buckets = in.readInt();
+                    if (buckets != BUCKETS) {
+                        return null;
+                    }
+                    histogram = new long[buckets];
+                    for (int i = 0; i < buckets; i++) {
+                        histogram[i] = in.readLong();
+                    }
+                    break;
+                case SECTION_TOP:
+                    topCapacity = in.readInt();
+                    topCount = in.readInt();
+                    if (topCount < 0 || topCount > topCapacity || length != 8 + topCount * 24L) {
+                        return null;
+                    }
+                    topKeys = new long[topCount * 2];
+                    topBalances = new double[topCount];
+                    for (int i = 0; i < topCount; i++) {
+                        topKeys[i * 2] = in.readLong();
+                        topKeys[i * 2 + 1] = in.readLong();
+                        topBalances[i] = in.readDouble();
+                    }
+                    break;
+                default:
+                    // Sections of later versions
+                    if (length < 0 || in.skipBytes(length) != length) {
+                        return null;
+                    }
+                }
+            }
+            int expected = (int) checksum.getValue();
+            if (new DataInputStream(rawIn).readInt() != expected || rawIn.read() != -1
+                    || histogram == null || topKeys == null) {
+                return null;
+            }
+            return new BalanceSummary(accounts, defaultAccounts, defaultBalance, total, highest, lowest, histogram,
+                    topCapacity, topCount, topKeys, topBalances);
+        } catch (EOFException e) {
+            return null; // Truncated, it is simply computed again
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package de.geolykt.easyconomy.api.storage;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A thread safe table that maps the UUIDs of players to their balance. The keys are passed as the two halves of the UUID
+ *  to avoid allocating UUID instances in hot paths.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+public interface BalanceTable {
+
+    public double getOrDefault(long mostSigBits, long leastSigBits, double defaultValue);
+
+    public default double getOrDefault(@NotNull UUID key, double defaultValue) {
+        return getOrDefault(key.getMostSignificantBits(), key.getLeastSignificantBits(), defaultValue);
+    }
+
+    public boolean containsKey(long mostSigBits, long leastSigBits);
+
+    public default boolean containsKey(@NotNull UUID key) {
+        return containsKey(key.getMostSignificantBits(), key.getLeastSignificantBits());
+    }
+
+    /**
+     * Sets the balance of a key and notifies the update listener.
+     * @param mostSigBits The most significant bits of the UUID
+     * @param leastSigBits The least significant bits of the UUID
+     * @param balance The new balance
+     * @since 1.2.0
+     */
+    public void put(long mostSigBits, long leastSigBits, double balance);
+
+    public default void put(@NotNull UUID key, double balance) {
+        put(key.getMostSignificantBits(), key.getLeastSignificantBits(), balance);
+    }
+
+    /**
+     * Same as {@link #put(long, long, double)}, but without notifying the update listener.
+     * Used to fill the table from the storage file, which obviously does not need to be journaled again.
+     * @param mostSigBits The most significant bits of the UUID
+     * @param leastSigBits The least significant bits of the UUID
+     * @param balance The balance of the player
+     * @since 1.2.0
+     */
+    public void load(long mostSigBits, long leastSigBits, double balance);
+
+    /**
+     * Atomically replaces the balance of a key with the result of the given function.
+     * The function may be invoked while a lock is held, so it should be cheap and must not access the table.
+     * @param mostSigBits The most significant bits of the UUID
+     * @param leastSigBits The least significant bits of the UUID
+     * @param absentValue The balance that is passed to the function if the key is not known yet
+     * @param function The function that calculates the new balance from the old one
+     * @return The new balance
+     * @since 1.2.0
+     */
+    public double update(long mostSigBits, long leastSigBits, double absentValue, @NotNull DoubleUnaryOperator function);
+
+    public default double update(@NotNull UUID key, double absentValue, @NotNull DoubleUnaryOperator function) {
+        return update(key.getMostSignificantBits(), key.getLeastSignificantBits(), absentValue, function);
+    }
+
+    /**
+     * Atomically replaces the balance of a key with the result of the given function, but only if the balance is
+     *  at least the given minimum. Otherwise the table is left untouched, the key is not added either.
+     * The function may be invoked while a lock is held, so it should be cheap and must not access the table.
+     * @param mostSigBits The most significant bits of the UUID
+     * @param leastSigBits The least significant bits of the UUID
+     * @param absentValue The balance of the key if it is not known yet
+     * @param minimum The balance the key needs to have at least
+     * @param function The function that calculates the new balance from the old one
+     * @return The new balance, or {@link Double#NaN} if the balance is below the minimum
+     * @since 1.2.0
+     */
+    public double updateIfAtLeast(long mostSigBits, long leastSigBits, double absentValue, double minimum,
+            @NotNull DoubleUnaryOperator function);
+
+    /**
+     * Atomically changes the balances of two keys, so that no other thread observes only one of the changes.
+     *  The balances are only changed if the balance of the source is at least the given minimum.
+     *  Both functions may be invoked while locks are held, so they should be cheap and must not access the table.
+     * @param srcMostSigBits The most significant bits of the UUID of the source
+     * @param srcLeastSigBits The least significant bits of the UUID of the source
+     * @param srcAbsentValue The balance of the source if it is not known yet
+     * @param destMostSigBits The most significant bits of the UUID of the destination
+     * @param destLeastSigBits The least significant bits of the UUID of the destination
+     * @param destAbsentValue The balance of the destination if it is not known yet
+     * @param minimum The balance the source needs to have at least, {@link Double#NEGATIVE_INFINITY} to always
+     *  change the balances
+     * @param withdraw The function that calculates the new balance of the source
+     * @param deposit The function that calculates the new balance of the destination, which is applied after the
+     *  balance of the source was changed in case both are the same key
+     * @return True if the balances were changed, false if the balance of the source is below the minimum
+     * @since 1.2.0
+     */
+    public boolean transfer(long srcMostSigBits, long srcLeastSigBits, double srcAbsentValue,
+            long destMostSigBits, long destLeastSigBits, double destAbsentValue, double minimum,
+            @NotNull DoubleUnaryOperator withdraw, @NotNull DoubleUnaryOperator deposit);
+
+    /**
+     * Obtains the balances of several keys at once.
+     * @param keys The keys, the most significant bits of key i are at index 2i, the least significant at 2i + 1
+     * @param defaultValue The balance that is returned for keys that are not known
+     * @param results The array the balance of key i is stored in at index i
+     * @since 1.2.0
+     */
+    public default void getAll(long @NotNull[] keys, double defaultValue, double @NotNull[] results) {
+        for (int i = 0; i < results.length; i++) {
+            results[i] = getOrDefault(keys[i * 2], keys[i * 2 + 1], defaultValue);
+        }
+    }
+
+    /**
+     * Atomically replaces the balance of several keys with the result of the given function, which is passed the
+     *  old balance and the operand of the key. Each key is updated atomically, but the batch as a whole is not,
+     *  so other threads may observe some of the changes before others. Keys that occur several times are updated
+     *  in the order in which they occur.
+     * @param keys The keys, the most significant bits of key i are at index 2i, the least significant at 2i + 1
+     * @param operands The operand of key i is at index i
+     * @param absentValue The balance that is passed to the function if a key is not known yet
+     * @param function The function that calculates the new balance from the old one and the operand
+     * @param results The array the new balance of key i is stored in at index i
+     * @implNote The default implementation updates the keys one after another,
+     *  implementations should lock as few times as possible.
+     * @since 1.2.0
+     */
+    public default void updateAll(long @NotNull[] keys, double @NotNull[] operands, double absentValue,
+            @NotNull DoubleBinaryOperator function, double @NotNull[] results) {
+        for (int i = 0; i < operands.length; i++) {
+            double operand = operands[i];
+            results[i] = update(keys[i * 2], keys[i * 2 + 1], absentValue, old -> function.applyAsDouble(old, operand));
+        }
+    }
+
+    /**
+     * Sets the listener that is notified about every change made via {@link #put(long, long, double)}
+     *  or {@link #update(long, long, double, DoubleUnaryOperator)}. The listener observes the changes of a key
+     *  in the order in which they were applied. It must be cheap and must not access the table.
+     * @param listener The new listener, or null to remove the current one
+     * @since 1.2.0
+     */
+    public void setUpdateListener(@Nullable UUIDBalanceMap.EntryConsumer listener);
+
+    public int size();
+
+    public void clear();
+
+    /**
+     * Makes sure that the table can hold the given amount of entries without needing to grow.
+     * @param expectedSize The amount of entries the table is expected to hold
+     * @since 1.2.0
+     */
+    public void ensureCapacity(int expectedSize);
+
+    /**
+     * Passes every entry of the table to the consumer. The consumer may be invoked while a lock is held
+     *  and as such must not access the table.
+     * @param consumer The consumer to pass the entries to
+     * @since 1.2.0
+     */
+    public void forEach(@NotNull UUIDBalanceMap.EntryConsumer consumer);
+
+    /**
+     * Obtains the amount of partitions of the table, which can be iterated independently of each other
+     *  via {@link #forEach(int, UUIDBalanceMap.EntryConsumer)}, for example by several threads at once.
+     * @return The amount of partitions
+     * @implNote The default implementation has a single partition that covers the entire table.
+     * @since 1.2.0
+     */
+    public default int getPartitionCount() {
+        return 1;
+    }
+
+    /**
+     * Passes every entry of a single partition of the table to the consumer. The consumer may be invoked while a lock
+     *  is held and as such must not access the table.
+     * @param partition The index of the partition, between 0 and {@link #getPartitionCount()} - 1
+     * @param consumer The consumer to pass the entries to
+     * @implNote The default implementation passes the entire table to the consumer.
+     * @since 1.2.0
+     */
+    public default void forEach(int partition, @NotNull UUIDBalanceMap.EntryConsumer consumer) {
+        forEach(consumer);
+    }
+
+    /**
+     * Takes a consistent point-in-time snapshot of the table.
+     * @return The snapshot, which should be closed once it is no longer needed
+     * @since 1.2.0
+     */
+    public default @NotNull BalanceSnapshot snapshot() {
+        return snapshot(() -> {});
+    }
+
+    /**
+     * Takes a consistent point-in-time snapshot of the table and runs an action at the moment the snapshot is taken,
+     *  while no balance of the table can change. This allows to obtain the time of the snapshot, so that changes that
+     *  are recorded elsewhere can be told apart into those that are included in the snapshot and those that are not.
+     * @param cut The action to run while the table is locked, which should return quickly
+     * @return The snapshot, which should be closed once it is no longer needed
+     * @since 1.2.0
+     */
+    public @NotNull BalanceSnapshot snapshot(@NotNull Runnable cut);
+
+    /**
+     * Runs an action while no other thread can read or change any balance of the table, which allows to change
+     *  several balances at once without other threads observing only some of the changes. The table may be used by
+     *  the action itself.
+     * @param action The action to run while the table is locked
+     * @since 1.2.0
+     */
+    public void exclusive(@NotNull Runnable action);
+
+    /**
+     * Returns a read-only {@link Map} view of this table for APIs that operate on boxed values.
+     * @return A read-only view of the table
+     * @since 1.2.0
+     */
+    public @NotNull Map<UUID, Double> asMap();
+}
@@ -0,0 +1,87 @@
+package de.geolykt.easyconomy.api.storage;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A bloom filter over UUIDs, which tells whether a segment of the {@link LsmBalanceStorage} might contain an account
+ *  without reading the segment. Uses 10 bits and 7 hash functions per account, which yields a false positive
+ *  rate of roughly 1%.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+final class BloomFilter {
+
+    static final int BITS_PER_ENTRY = 10;
+    static final int HASH_FUNCTIONS = 7;
+
+    private final long @NotNull[] words;
+    private final int hashFunctions;
+    private final long bitCount;
+
+    BloomFilter(int expectedEntries) {
+        this(new long[(int) Math.max(1L, ((long) expectedEntries * BITS_PER_ENTRY + 63) / 64)], HASH_FUNCTIONS);
+    }
+
+    private BloomFilter(long @NotNull[] words, int hashFunctions) {
+        this.words = words;
+        this.hashFunctions = hashFunctions;
+        bitCount = words.length * 64L;
+    }
+
+    void add(long mostSigBits, long leastSigBits) {
+        long h1 = mix(mostSigBits ^ leastSigBits * 0x9E3779B97F4A7C15L);
+        long h2 = mix(leastSigBits ^ mostSigBits * 0xC2B2AE3D27D4EB4FL) | 1;
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    boolean mightContain(long mostSigBits, long leastSigBits) {
+        long h1 = mix(mostSigBits ^ leastSigBits * 0x9E3779B97F4A7C15L);
+        long h2 = mix(leastSigBits ^ mostSigBits * 0xC2B2AE3D27D4EB4FL) | 1;
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int getWordCount() {
+        return words.length;
+    }
+
+    int getHashFunctions() {
+        return hashFunctions;
+    }
+
+    void write(@NotNull DataOutputStream out) throws IOException {
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+
+    static @NotNull BloomFilter read(@NotNull ByteBuffer in, int wordCount, int hashFunctions) {
+        long[] words = new long[wordCount];
+        in.asLongBuffer().get(words);
+        ((Buffer) in).position(in.position() + wordCount * 8);
+        return new BloomFilter(words, hashFunctions);
+    }
+
+    private static long mix(long h) {
+        // Finaliser of the 64-bit MurmurHash3
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,255 @@
+package de.geolykt.easyconomy.api.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The accounts of a tiered {@link BalanceStorageEngine} that were not used for a while. They are stored in a single
+ *  {@link LsmSegment} that is sorted by UUID, so a lookup only needs to read a single block of the file after checking
+ *  the bloom filter and binary searching the sparse index. The file is named {@code <storage file>.cold.<generation>}
+ *  and replaced by a file of the next generation whenever accounts are demoted.
+ * <br/>
+ * The segment may still contain accounts that were promoted in the meantime, the caller is responsible for
+ *  checking the accounts in memory first.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+final class ColdTier implements Closeable {
+
+    /**
+     * Checks whether an account is kept in memory.
+     */
+    @FunctionalInterface
+    static interface Residency {
+        boolean isResident(long mostSigBits, long leastSigBits);
+    }
+
+    /**
+     * Obtains the new balance of a cold account for {@link #rewrite(Residency, Replacement)}.
+     */
+    @FunctionalInterface
+    static interface Replacement {
+        double replace(long mostSigBits, long leastSigBits, double balance);
+    }
+
+    private final @NotNull File storageFile;
+    private final @NotNull Pattern fileName;
+    private volatile @Nullable LsmSegment segment;
+    private long generation;
+
+    ColdTier(@NotNull File storageFile) {
+        this.storageFile = storageFile;
+        fileName = Pattern.compile(Pattern.quote(storageFile.getName()) + "\\.cold\\.(\\d+)");
+    }
+
+    /**
+     * Opens the cold file of the latest generation and deletes older generations, which are left over if the
+     *  storage was interrupted while demoting accounts.
+     */
+    synchronized void open() throws IOException {
+        close();
+        File[] files = storageFile.getAbsoluteFile().getParentFile().listFiles((dir, name) -> fileName.matcher(name).matches());
+        File latest = null;
+        long latestGeneration = -1;
+        if (files != null) {
+            for (File file : files) {
+                Matcher matcher = fileName.matcher(file.getName());
+                matcher.matches();
+                long fileGeneration = Long.parseLong(matcher.group(1));
+                if (fileGeneration > latestGeneration) {
+                    if (latest != null) {
+                        Files.delete(latest.toPath());
+                    }
+                    latest = file;
+                    latestGeneration = fileGeneration;
+                } else {
+                    Files.delete(file.toPath());
+                }
+            }
+        }
+        generation = latestGeneration + 1;
+        segment = latest == null ? null : LsmSegment.open(latestGeneration, latest);
+    }
+
+    /**
+     * Checks whether there are cold files, regardless of whether they were opened.
+     */
+    boolean exists() {
+        File[] files = storageFile.getAbsoluteFile().getParentFile().listFiles((dir, name) -> fileName.matcher(name).matches());
+        return files != null && files.length != 0;
+    }
+
+    /**
+     * Deletes all cold files, used once the accounts were moved back into the storage file after tiering was disabled.
+     */
+    synchronized void delete() throws IOException {
+        close();
+        File[] files = storageFile.getAbsoluteFile().getParentFile().listFiles((dir, name) -> fileName.matcher(name).matches());
+        if (files != null) {
+            for (File file : files) {
+                Files.delete(file.toPath());
+            }
+        }
+    }
+
+    @Nullable File getFile() {
+        LsmSegment current = segment;
+        return current == null ? null : current.getFile();
+    }
+
+    /**
+     * Looks up the balance of a cold account.
+     * @param result The array the balance is stored in at index 0
+     * @return True if the account is stored within the cold tier
+     */
+    boolean get(long mostSigBits, long leastSigBits, double @NotNull[] result) throws IOException {
+        while (true) {
+            LsmSegment current = segment;
+            if (current == null) {
+                return false;
+            }
+            if (current.retain()) {
+                try {
+                    return current.get(mostSigBits, leastSigBits, result);
+                } finally {
+                    current.release();
+                }
+            }
+            // Replaced in the meantime
+        }
+    }
+
+    /**
+     * Passes all cold accounts that are not resident to the consumer.
+     */
+    void forEach(@NotNull Residency residency, @NotNull UUIDBalanceMap.EntryConsumer consumer) throws IOException {
+        LsmSegment current = retain();
+        if (current == null) {
+            return;
+        }
+        try (LsmSegment.Cursor cursor = current.cursor()) {
+            while (cursor.next()) {
+                if (!residency.isResident(cursor.mostSigBits, cursor.leastSigBits)) {
+                    consumer.accept(cursor.mostSigBits, cursor.leastSigBits, cursor.balance);
+                }
+            }
+        } finally {
+            current.release();
+        }
+    }
+
+    private @Nullable LsmSegment retain() {
+        while (true) {
+            LsmSegment current = segment;
+            if (current == null || current.retain()) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * Writes a new cold file that contains the demoted accounts and all accounts of the current file that are not
+     *  resident, then replaces the current file.
+     * @param demoted The demoted accounts in sorted order, which are still resident
+     * @param residency Whether an account is resident
+     */
+    synchronized void demote(@NotNull LsmSegment.ArrayCursor demoted, @NotNull Residency residency) throws IOException {
+        LsmSegment current = segment;
+        File target = new File(storageFile.getAbsoluteFile().getParentFile(), storageFile.getName() + ".cold." + generation);
+        LsmSegment.Cursor merge;
+        int maximumEntries = demoted.size();
+        if (current == null) {
+            merge = demoted;
+        } else {
+            maximumEntries += current.size();
+            LsmSegment.Cursor old = current.cursor();
+            LsmSegment.Cursor remaining = new LsmSegment.Cursor() {
+                @Override
+                boolean next() throws IOException {
+                    while (old.next()) {
+                        // Resident accounts have a more recent balance in memory
+                        if (!residency.isResident(old.mostSigBits, old.leastSigBits)) {
+                            mostSigBits = old.mostSigBits;
+                            leastSigBits = old.leastSigBits;
+                            balance = old.balance;
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    old.close();
+                }
+            };
+            merge = new LsmSegment.MergeCursor(Arrays.asList(demoted, remaining), new LsmSegment[0]);
+        }
+        try (LsmSegment.Cursor source = merge) {
+            LsmSegment.write(target, source, maximumEntries);
+        }
+        segment = LsmSegment.open(generation++, target);
+        if (current != null) {
+            current.retire(true);
+        }
+    }
+
+    /**
+     * Writes a new cold file in which the balance of every account that is not resident is replaced by the result
+     *  of the function, then replaces the current file. Used to change cold accounts without promoting them.
+     * @param residency Whether an account is resident, resident accounts are dropped from the file
+     * @param replacement The function that obtains the new balance of an account from it's current balance
+     */
+    synchronized void rewrite(@NotNull Residency residency, @NotNull Replacement replacement) throws IOException {
+        LsmSegment current = segment;
+        if (current == null) {
+            return;
+        }
+        File target = new File(storageFile.getAbsoluteFile().getParentFile(), storageFile.getName() + ".cold." + generation);
+        LsmSegment.Cursor old = current.cursor();
+        LsmSegment.Cursor replaced = new LsmSegment.Cursor() {
+            @Override
+            boolean next() throws IOException {
+                while (old.next()) {
+                    if (!residency.isResident(old.mostSigBits, old.leastSigBits)) {
+                        mostSigBits = old.mostSigBits;
+                        leastSigBits = old.leastSigBits;
+                        balance = replacement.replace(old.mostSigBits, old.leastSigBits, old.balance);
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public void close() throws IOException {
+                old.close();
+            }
+        };
+        try (LsmSegment.Cursor source = replaced) {
+            LsmSegment.write(target, source, current.size());
+        }
+        segment = LsmSegment.open(generation++, target);
+        current.retire(true);
+    }
+
+    /**
+     * Closes the current file without deleting it.
+     */
+    @Override
+    public synchronized void close() {
+        LsmSegment current = segment;
+        segment = null;
+        if (current != null) {
+            current.retire(false);
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package de.geolykt.easyconomy.api.storage;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+import java.util.UUID;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A {@link UUIDBalanceMap} that stores it's table in a direct {@link ByteBuffer} instead of the heap, so that the
+ *  entries are not part of the working set of the garbage collector. The heap only holds the map and the buffer object.
+ *  The table uses the same open addressing scheme as it's superclass, each slot is 24 bytes long:
+ * <pre>
+ * [UUID MSB] [UUID LSB] [BALANCE]
+ *   8 bytes    8 bytes   8 bytes
+ * </pre>
+ * The memory of a buffer is released as soon as the table is resized or the map is {@link #free() freed}, as the
+ *  garbage collector may not notice that direct memory is running out (which is certain if
+ *  {@code -XX:+DisableExplicitGC} is set). Only if the JVM does not allow this the memory is left to the garbage
+ *  collector. The amount of direct memory is limited by the {@code -XX:MaxDirectMemorySize} flag of the JVM, which
+ *  defaults to the maximum heap size.
+ * <br/>
+ * This class is NOT thread safe, it is meant to be used as the stripe of a {@link StripedBalanceMap}.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+public class DirectBalanceMap extends UUIDBalanceMap {
+
+    private static final int SLOT_SIZE = 24;
+    private static final int MINIMUM_CAPACITY = 16;
+    // The largest power of two whose slots fit into a single buffer
+    private static final int MAXIMUM_CAPACITY = 1 << 26;
+    private static final float LOAD_FACTOR = 0.7f;
+
+    // Java 9 and above: sun.misc.Unsafe#invokeCleaner(ByteBuffer)
+    private static final @Nullable Object UNSAFE;
+    private static final @Nullable Method INVOKE_CLEANER;
+    // Java 8: sun.nio.ch.DirectBuffer#cleaner() and sun.misc.Cleaner#clean()
+    private static final @Nullable Method CLEANER;
+    private static final @Nullable Method CLEAN;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        Method cleaner = null;
+        Method clean = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            invokeCleaner = null;
+            try {
+                cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+                clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            } catch (ReflectiveOperationException | RuntimeException e2) {
+                cleaner = null;
+                clean = null;
+            }
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+        CLEANER = cleaner;
+        CLEAN = clean;
+    }
+
+    private @NotNull ByteBuffer slots;
+    private boolean hasNilKey;
+    private double nilValue;
+
+    public DirectBalanceMap() {
+        this(MINIMUM_CAPACITY);
+    }
+
+    /**
+     * Creates a new map that is able to hold the given amount of entries without needing to resize the table.
+     * @param expectedSize The amount of entries the map is expected to hold
+     * @since 1.2.0
+     */
+    public DirectBalanceMap(int expectedSize) {
+        super(true);
+        slots = allocate(capacityFor(expectedSize));
+    }
+
+    private DirectBalanceMap(@NotNull ByteBuffer slots) {
+        super(true);
+        this.slots = slots;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long required = (long) Math.ceil(Math.max(expectedSize, 1) / (double) LOAD_FACTOR);
+        if (required > MAXIMUM_CAPACITY) {
+            throw new IllegalArgumentException("Too many entries: " + expectedSize);
+        }
+        int capacity = MINIMUM_CAPACITY;
+        while (capacity < required) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private @NotNull ByteBuffer allocate(int capacity) {
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+        // Direct buffers are zeroed, which marks every slot as empty
+        return ByteBuffer.allocateDirect(capacity * SLOT_SIZE).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Releases the memory of a direct buffer right away, the buffer must not be used afterwards.
+     *  If the JVM does not permit this the memory is released once the buffer is garbage collected.
+     */
+    private static void deallocate(@NotNull ByteBuffer buffer) {
+        try {
+            if (INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } else if (CLEANER != null && CLEAN != null) {
+                Object cleaner = CLEANER.invoke(buffer);
+                if (cleaner != null) {
+                    CLEAN.invoke(cleaner);
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Left to the garbage collector
+        }
+    }
+
+    @Override
+    protected int indexOf(long mostSigBits, long leastSigBits) {
+        ByteBuffer slots = this.slots;
+        int slot = hash(mostSigBits, leastSigBits) & mask;
+        while (true) {
+            int offset = slot * SLOT_SIZE;
+            long msb = slots.getLong(offset);
+            long lsb = slots.getLong(offset + 8);
+            if (msb == mostSigBits && lsb == leastSigBits) {
+                return slot;
+            }
+            if (msb == 0L && lsb == 0L) {
+                return -slot - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    @Override
+    public double getOrDefault(long mostSigBits, long leastSigBits, double defaultValue) {
+        if (mostSigBits == 0L && leastSigBits == 0L) {
+            return hasNilKey ? nilValue : defaultValue;
+        }
+        int slot = indexOf(mostSigBits, leastSigBits);
+        return slot < 0 ? defaultValue : slots.getDouble(slot * SLOT_SIZE + 16);
+    }
+
+    @Override
+    public boolean containsKey(long mostSigBits, long leastSigBits) {
+        if (mostSigBits == 0L && leastSigBits == 0L) {
+            return hasNilKey;
+        }
+        return indexOf(mostSigBits, leastSigBits) >= 0;
+    }
+
+    @Override
+    public void put(long mostSigBits, long leastSigBits, double balance) {
+        if (mostSigBits == 0L && leastSigBits == 0L) {
+            if (!hasNilKey) {
+                hasNilKey = true;
+                size++;
+            }
+            nilValue = balance;
+            return;
+        }
+        int slot = indexOf(mostSigBits, leastSigBits);
+        if (slot >= 0) {
+            slots.putDouble(slot * SLOT_SIZE + 16, balance);
+            return;
+        }
+        writeSlot(slots, -slot - 1, mostSigBits, leastSigBits, balance);
+        if (++size > resizeThreshold) {
+            rehash((mask + 1) << 1);
+        }
+    }
+
+    private static void writeSlot(@NotNull ByteBuffer target, int slot, long mostSigBits, long leastSigBits, double balance) {
+        int offset = slot * SLOT_SIZE;
+        target.putLong(offset, mostSigBits);
+        target.putLong(offset + 8, leastSigBits);
+        target.putDouble(offset + 16, balance);
+    }
+
+    @Override
+    public boolean remove(long mostSigBits, long leastSigBits) {
+        if (mostSigBits == 0L && leastSigBits == 0L) {
+            if (!hasNilKey) {
+                return false;
+            }
+            hasNilKey = false;
+            nilValue = 0.0;
+            size--;
+            return true;
+        }
+        int gap = indexOf(mostSigBits, leastSigBits);
+        if (gap < 0) {
+            return false;
+        }
+        // Shift the following entries of the cluster back so that lookups do not stop at the gap
+        int slot = (gap + 1) & mask;
+        while (true) {
+            long msb = slots.getLong(slot * SLOT_SIZE);
+            long lsb = slots.getLong(slot * SLOT_SIZE + 8);
+            if (msb == 0L && lsb == 0L) {
+                break;
+            }
+            int home = hash(msb, lsb) & mask;
+            // The entry may only be moved if the gap is between it's home slot and it's current slot
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                writeSlot(slots, gap, msb, lsb, slots.getDouble(slot * SLOT_SIZE + 16));
+                gap = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        writeSlot(slots, gap, 0L, 0L, 0.0);
+        size--;
+        return true;
+    }
+
+    @Override
+    public void ensureCapacity(int expectedSize) {
+        int capacity = capacityFor(expectedSize);
+        if (capacity > mask + 1) {
+            rehash(capacity);
+        }
+    }
+
+    private void rehash(int capacity) {
+        if (capacity > MAXIMUM_CAPACITY) {
+            throw new IllegalStateException("The map can not hold more than " + (int) (MAXIMUM_CAPACITY * LOAD_FACTOR) + " entries.");
+        }
+        ByteBuffer oldSlots = slots;
+        int oldCapacity = mask + 1;
+        slots = allocate(capacity);
+        for (int i = 0; i < oldCapacity; i++) {
+            long msb = oldSlots.getLong(i * SLOT_SIZE);
+            long lsb = oldSlots.getLong(i * SLOT_SIZE + 8);
+            if (msb != 0L || lsb != 0L) {
+                writeSlot(slots, -indexOf(msb, lsb) - 1, msb, lsb, oldSlots.getDouble(i * SLOT_SIZE + 16));
+            }
+        }
+        deallocate(oldSlots);
+    }
+
+    @Override
+    public void clear() {
+        int capacity = mask + 1;
+        for (int i = 0; i < capacity; i++) {
+            writeSlot(slots, i, 0L, 0L, 0.0);
+        }
+        hasNilKey = false;
+        nilValue = 0.0;
+        size = 0;
+    }
+
+    /**
+     * Releases the direct memory of the table right away instead of waiting for the garbage collector.
+     *  The map must not be used afterwards.
+     * @since 1.2.0
+     */
+    @Override
+    public void free() {
+        deallocate(slots);
+    }
+
+    @Override
+    public @NotNull DirectBalanceMap copy() {
+        ByteBuffer source = slots.duplicate();
+        ((Buffer) source).clear();
+        DirectBalanceMap copy = new DirectBalanceMap(ByteBuffer.allocateDirect(source.capacity()).order(ByteOrder.nativeOrder()));
+        copy.slots.put(source);
+        ((Buffer) copy.slots).clear();
+        copy.mask = mask;
+        copy.size = size;
+        copy.resizeThreshold = resizeThreshold;
+        copy.hasNilKey = hasNilKey;
+        copy.nilValue = nilValue;
+        return copy;
+    }
+
+    @Override
+    public void forEach(@NotNull EntryConsumer consumer) {
+        if (hasNilKey) {
+            consumer.accept(0L, 0L, nilValue);
+        }
+        int capacity = mask + 1;
+        for (int i = 0; i < capacity; i++) {
+            long msb = slots.getLong(i * SLOT_SIZE);
+            long lsb = slots.getLong(i * SLOT_SIZE + 8);
+            if (msb != 0L || lsb != 0L) {
+                consumer.accept(msb, lsb, slots.getDouble(i * SLOT_SIZE + 16));
+            }
+        }
+    }
+
+    @Override
+    public void writeEntries(@NotNull BalanceSnapshot.EntryWriter writer) throws IOException {
+        if (hasNilKey) {
+            writer.write(0L, 0L, nilValue);
+        }
+        int capacity = mask + 1;
+        for (int i = 0; i < capacity; i++) {
+            long msb = slots.getLong(i * SLOT_SIZE);
+            long lsb = slots.getLong(i * SLOT_SIZE + 8);
+            if (msb != 0L || lsb != 0L) {
+                writer.write(msb, lsb, slots.getDouble(i * SLOT_SIZE + 16));
+            }
+        }
+    }
+
+    /**
+     * Returns a read-only {@link Map} of the entries of this map. Unlike the view of the superclass,
+     *  the map is a copy on the heap.
+     * @return A read-only copy of the map
+     * @since 1.2.0
+     */
+    @Override
+    public @NotNull Map<UUID, Double> asMap() {
+        UUIDBalanceMap copy = new UUIDBalanceMap(size);
+        forEach(copy::put);
+        return copy.asMap();
+    }
+}
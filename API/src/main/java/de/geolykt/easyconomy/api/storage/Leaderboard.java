@@ -0,0 +1,539 @@
+package de.geolykt.easyconomy.api.storage;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An incrementally maintained list of the accounts with the highest positive balances of a {@link BalanceTable}.
+ * <br/>
+ * The leaderboard tracks a few more candidates than it displays together with a floor, which is a balance that no
+ *  untracked account exceeds. A change to an untracked account that does not lift it above the floor can thus be
+ *  ignored without acquiring any lock. Only if too few tracked accounts remain above the floor, for example because
+ *  the richest players spent their money, the table is scanned again. As long as the leaderboard is up to date
+ *  obtaining it never sorts more than the tracked candidates.
+ * <br/>
+ * Scans only keep the candidates in a bounded min-heap, which costs O(n log k) for n accounts and k candidates.
+ *  Large tables that consist of several partitions, such as the stripes of a {@link StripedBalanceMap}, are scanned
+ *  by several threads at once, each of which fills its own heap. The heaps are merged afterwards.
+ * <br/>
+ * Changes need to be passed to {@link #update(long, long, double)} in the order in which they were applied to the
+ *  table, which is why it is meant to be called by the update listener of the table. Changes that are not
+ *  made through the listener, such as {@link BalanceTable#load(long, long, double)}, require an {@link #invalidate()}.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+public class Leaderboard {
+
+    /**
+     * The accounts a leaderboard is computed from.
+     * @since 1.2.0
+     */
+    @FunctionalInterface
+    public static interface Source {
+        /**
+         * Passes the balance of every account to the consumer.
+         * @param consumer The consumer to pass the balances to
+         */
+        public void forEach(@NotNull UUIDBalanceMap.EntryConsumer consumer);
+    }
+
+    private static final int STALE = 0;
+    private static final int REBUILDING = 1;
+    private static final int VALID = 2;
+
+    private static final long @NotNull[] NO_MEMBERS = new long[2];
+    // The amount of accounts below which a table is scanned by a single thread
+    private static final int PARALLEL_THRESHOLD = 65_536;
+
+    private final @NotNull Source source;
+    // The table whose partitions can be scanned in parallel, null if the accounts are provided by a source
+    private final @Nullable BalanceTable table;
+    private final int size;
+    private final int capacity;
+    // Ensures that only a single thread scans the table at once
+    private final @NotNull Object rebuildLock = new Object();
+
+    // The tracked candidates, guarded by the instance
+    private final long @NotNull[] keys;
+    private final double @NotNull[] balances;
+    private int count;
+    private int generation;
+    private @Nullable Map<UUID, Double> top;
+
+    // Changes that were made while the table was scanned, guarded by the instance
+    private long @NotNull[] pendingKeys = new long[32];
+    private double @NotNull[] pendingBalances = new double[16];
+    private int pendingCount;
+
+    private volatile int state = STALE;
+    // No untracked account has a balance above the floor
+    private volatile double floor;
+    // Open addressing hash set of the tracked UUIDs, replaced whenever the set of tracked accounts changes
+    private volatile long @NotNull[] members = NO_MEMBERS;
+
+    /**
+     * Creates a new leaderboard for the table. It is computed once it is first obtained.
+     * @param table The table whose balances should be ranked
+     * @param size The amount of accounts on the leaderboard
+     * @since 1.2.0
+     */
+    public Leaderboard(@NotNull BalanceTable table, int size) {
+        this(table::forEach, table, size);
+    }
+
+    /**
+     * Creates a new leaderboard for accounts that are not stored in a {@link BalanceTable}. Changes need to be passed
+     *  to the leaderboard in the same way. It is computed once it is first obtained.
+     * @param source The accounts that should be ranked
+     * @param size The amount of accounts on the leaderboard
+     * @since 1.2.0
+     */
+    public Leaderboard(@NotNull Source source, int size) {
+        this(source, null, size);
+    }
+
+    private Leaderboard(@NotNull Source source, @Nullable BalanceTable table, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("The size of the leaderboard needs to be positive.");
+        }
+        this.source = source;
+        this.table = table;
+        this.size = size;
+        capacity = capacityFor(size);
+        keys = new long[(capacity + 1) * 2];
+        balances = new double[capacity + 1];
+    }
+
+    /**
+     * Obtains the amount of candidates a leaderboard of the given size tracks.
+     */
+    static int capacityFor(int size) {
+        return size + Math.max(size, 16);
+    }
+
+    /**
+     * Obtains the amount of accounts that are shown on the leaderboard.
+     * @return The size of the leaderboard
+     * @since 1.2.0
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Notifies the leaderboard about the new balance of an account.
+     * @param mostSigBits The most significant bits of the UUID
+     * @param leastSigBits The least significant bits of the UUID
+     * @param balance The new balance of the account
+     * @since 1.2.0
+     */
+    public void update(long mostSigBits, long leastSigBits, double balance) {
+        int currentState = state;
+        if (currentState == STALE) {
+            return; // The change will be picked up by the next scan
+        }
+        if (currentState == VALID && balance <= floor && !isMember(mostSigBits, leastSigBits)) {
+            return;
+        }
+        synchronized (this) {
+            if (state == STALE) {
+                return;
+            }
+            if (state == REBUILDING) {
+                addPending(mostSigBits, leastSigBits, balance);
+                return;
+            }
+            if (apply(mostSigBits, leastSigBits, balance) && !isComplete()) {
+                state = STALE;
+            }
+        }
+    }
+
+    /**
+     * Notifies the leaderboard about the new balances of several accounts, which only locks the leaderboard once.
+     * @param keys The keys of the accounts, the most significant bits of account i are at index 2i,
+     *  the least significant at 2i + 1
+     * @param newBalances The new balances of the accounts
+     * @param count The amount of accounts
+     * @since 1.2.0
+     */
+    public void updateAll(long @NotNull[] keys, double @NotNull[] newBalances, int count) {
+        int first = 0;
+        if (state == VALID) {
+            // Skip the leading accounts that can not affect the leaderboard without locking
+            while (first < count && newBalances[first] <= floor && !isMember(keys[first * 2], keys[first * 2 + 1])) {
+                first++;
+            }
+        }
+        if (first == count || state == STALE) {
+            return;
+        }
+        synchronized (this) {
+            for (int i = first; i < count; i++) {
+                long msb = keys[i * 2];
+                long lsb = keys[i * 2 + 1];
+                if (state == STALE) {
+                    return;
+                } else if (state == REBUILDING) {
+                    addPending(msb, lsb, newBalances[i]);
+                } else if (newBalances[i] <= floor && !isMember(msb, lsb)) {
+                    continue;
+                } else if (apply(msb, lsb, newBalances[i]) && !isComplete()) {
+                    state = STALE;
+                }
+            }
+        }
+    }
+
+    /**
+     * Discards the leaderboard so that it is computed from the table again once it is obtained.
+     *  Needs to be called after the table was modified without notifying the leaderboard.
+     * @since 1.2.0
+     */
+    public synchronized void invalidate() {
+        generation++;
+        state = STALE;
+        count = 0;
+        pendingCount = 0;
+        top = null;
+        members = NO_MEMBERS;
+    }
+
+    /**
+     * Obtains the accounts with the highest positive balances, ordered from the highest to the lowest balance.
+     *  The table is only scanned if the leaderboard is not up to date.
+     * @return An unmodifiable map of the UUIDs and balances of the accounts
+     * @since 1.2.0
+     */
+    public @NotNull Map<UUID, Double> getTop() {
+        while (true) {
+            if (state != VALID) {
+                rebuild();
+            }
+            synchronized (this) {
+                if (state != VALID) {
+                    continue; // Invalidated in the meantime
+                }
+                Map<UUID, Double> result = top;
+                if (result == null) {
+                    result = Collections.unmodifiableMap(sortedEntries());
+                    top = result;
+                }
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Computes the leaderboard from the table if it is not up to date. Changes that are made while the table is scanned
+     *  are buffered and applied afterwards, so the table is not locked as a whole.
+     * @since 1.2.0
+     */
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            int expectedGeneration;
+            synchronized (this) {
+                if (state != STALE) {
+                    return;
+                }
+                state = REBUILDING;
+                expectedGeneration = generation;
+                pendingCount = 0;
+            }
+            TopHeap heap;
+            try {
+                heap = scan();
+            } catch (RuntimeException | Error e) {
+                synchronized (this) {
+                    if (generation == expectedGeneration) {
+                        state = STALE;
+                    }
+                }
+                throw e;
+            }
+            synchronized (this) {
+                if (generation != expectedGeneration) {
+                    return; // Invalidated during the scan, the next scan needs to start over
+                }
+                install(heap);
+            }
+        }
+    }
+
+    /**
+     * Restores the leaderboard from candidates that were tracked while the table was in the same state,
+     *  such as the top accounts of a {@link BalanceSummary}, so that the table does not need to be scanned.
+     * @param candidateKeys The keys of the candidates
+     * @param candidateBalances The balances of the candidates
+     * @param candidateCount The amount of candidates
+     * @param candidateCapacity The amount of candidates that were tracked at most
+     * @return True if the leaderboard was restored, false if it is not stale or too few candidates were tracked
+     */
+    synchronized boolean restore(long @NotNull[] candidateKeys, double @NotNull[] candidateBalances,
+            int candidateCount, int candidateCapacity) {
+        // If the candidates were limited to fewer accounts than the leaderboard tracks, some may be missing
+        if (state != STALE || (candidateCapacity < capacity && candidateCount == candidateCapacity)) {
+            return false;
+        }
+        TopHeap heap = new TopHeap(capacity);
+        for (int i = 0; i < candidateCount; i++) {
+            heap.accept(candidateKeys[i * 2], candidateKeys[i * 2 + 1], candidateBalances[i]);
+        }
+        pendingCount = 0;
+        install(heap);
+        return true;
+    }
+
+    /**
+     * Replaces the tracked accounts by the accounts of the heap and applies the pending changes.
+     */
+    private void install(@NotNull TopHeap heap) {
+        System.arraycopy(heap.keys, 0, keys, 0, heap.count * 2);
+        System.arraycopy(heap.balances, 0, balances, 0, heap.count);
+        count = heap.count;
+        // If there is space left all accounts with a positive balance are tracked
+        floor = heap.count == capacity ? heap.balances[0] : 0.0;
+        top = null;
+        for (int i = 0; i < pendingCount; i++) {
+            apply(pendingKeys[i * 2], pendingKeys[i * 2 + 1], pendingBalances[i]);
+        }
+        pendingCount = 0;
+        rebuildMembers();
+        // Written last so that the lock-free path only observes a fully applied leaderboard
+        state = isComplete() ? VALID : STALE;
+    }
+
+    /**
+     * Computes the leaderboard in the background if it is not up to date, so that the caller does not need to wait
+     *  for the table to be scanned. Threads that obtain the leaderboard in the meantime wait for the scan to finish.
+     * @since 1.2.0
+     */
+    public void rebuildAsync() {
+        if (state == STALE) {
+            ForkJoinPool.commonPool().execute(this::rebuild);
+        }
+    }
+
+    /**
+     * Scans the accounts for the candidates with the highest balances. The partitions of large tables are scanned
+     *  in parallel on the common pool.
+     */
+    private @NotNull TopHeap scan() {
+        BalanceTable table = this.table;
+        if (table == null || table.getPartitionCount() == 1 || table.size() < PARALLEL_THRESHOLD) {
+            TopHeap heap = new TopHeap(capacity);
+            source.forEach(heap);
+            return heap;
+        }
+        return IntStream.range(0, table.getPartitionCount()).parallel().mapToObj(partition -> {
+            TopHeap heap = new TopHeap(capacity);
+            table.forEach(partition, heap);
+            return heap;
+        }).reduce((a, b) -> {
+            for (int i = 0; i < b.count; i++) {
+                a.accept(b.keys[i * 2], b.keys[i * 2 + 1], b.balances[i]);
+            }
+            return a;
+        }).orElseGet(() -> new TopHeap(capacity));
+    }
+
+    /**
+     * Applies a change to the tracked accounts.
+     * @return True if the tracked accounts changed
+     */
+    private boolean apply(long mostSigBits, long leastSigBits, double balance) {
+        int index = indexOf(mostSigBits, leastSigBits);
+        if (index != -1) {
+            if (balance > 0.0) {
+                balances[index] = balance;
+            } else {
+                remove(index);
+                rebuildMembers();
+            }
+        } else if (balance > floor) {
+            keys[count * 2] = mostSigBits;
+            keys[count * 2 + 1] = leastSigBits;
+            balances[count++] = balance;
+            if (count > capacity) {
+                int lowest = 0;
+                for (int i = 1; i < count; i++) {
+                    if (balances[i] < balances[lowest]) {
+                        lowest = i;
+                    }
+                }
+                floor = Math.max(floor, balances[lowest]);
+                remove(lowest);
+            }
+            rebuildMembers();
+        } else {
+            return false;
+        }
+        top = null;
+        return true;
+    }
+
+    /**
+     * Checks whether the tracked accounts still contain the top accounts, which is the case if enough of them
+     *  are not below the floor.
+     */
+    private boolean isComplete() {
+        if (floor <= 0.0) {
+            return true;
+        }
+        int aboveFloor = 0;
+        for (int i = 0; i < count; i++) {
+            if (balances[i] >= floor && ++aboveFloor == size) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int indexOf(long mostSigBits, long leastSigBits) {
+        for (int i = 0; i < count; i++) {
+            if (keys[i * 2] == mostSigBits && keys[i * 2 + 1] == leastSigBits) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void remove(int index) {
+        count--;
+        keys[index * 2] = keys[count * 2];
+        keys[index * 2 + 1] = keys[count * 2 + 1];
+        balances[index] = balances[count];
+    }
+
+    private void addPending(long mostSigBits, long leastSigBits, double balance) {
+        if (pendingCount == pendingBalances.length) {
+            pendingKeys = Arrays.copyOf(pendingKeys, pendingKeys.length * 2);
+            pendingBalances = Arrays.copyOf(pendingBalances, pendingBalances.length * 2);
+        }
+        pendingKeys[pendingCount * 2] = mostSigBits;
+        pendingKeys[pendingCount * 2 + 1] = leastSigBits;
+        pendingBalances[pendingCount++] = balance;
+    }
+
+    private void rebuildMembers() {
+        int slots = Integer.highestOneBit(Math.max(count, 1) * 4);
+        long[] table = new long[slots * 2];
+        for (int i = 0; i < count; i++) {
+            int slot = UUIDBalanceMap.hash(keys[i * 2], keys[i * 2 + 1]) & (slots - 1);
+            while (table[slot * 2] != 0 || table[slot * 2 + 1] != 0) {
+                slot = (slot + 1) & (slots - 1);
+            }
+            table[slot * 2] = keys[i * 2];
+            table[slot * 2 + 1] = keys[i * 2 + 1];
+        }
+        members = table;
+    }
+
+    private boolean isMember(long mostSigBits, long leastSigBits) {
+        if (mostSigBits == 0 && leastSigBits == 0) {
+            return true; // The nil UUID marks empty slots, so it always takes the slow path
+        }
+        long[] table = members;
+        int mask = table.length / 2 - 1;
+        int slot = UUIDBalanceMap.hash(mostSigBits, leastSigBits) & mask;
+        while (table[slot * 2] != 0 || table[slot * 2 + 1] != 0) {
+            if (table[slot * 2] == mostSigBits && table[slot * 2 + 1] == leastSigBits) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    private @NotNull LinkedHashMap<UUID, Double> sortedEntries() {
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(balances[b], balances[a]));
+        LinkedHashMap<UUID, Double> entries = new LinkedHashMap<>();
+        for (int i = 0; i < count && i < size; i++) {
+            int index = order[i];
+            entries.put(new UUID(keys[index * 2], keys[index * 2 + 1]), balances[index]);
+        }
+        return entries;
+    }
+
+    /**
+     * A bounded min-heap of the accounts with the highest positive balances that are passed to it.
+     *  Also used to compute the top accounts of a {@link BalanceSummary}.
+     */
+    static class TopHeap implements UUIDBalanceMap.EntryConsumer {
+
+        final long @NotNull[] keys;
+        final double @NotNull[] balances;
+        int count;
+
+        TopHeap(int capacity) {
+            keys = new long[capacity * 2];
+            balances = new double[capacity];
+        }
+
+        int capacity() {
+            return balances.length;
+        }
+
+        @Override
+        public void accept(long mostSigBits, long leastSigBits, double balance) {
+            if (balance <= 0.0) {
+                return;
+            }
+            if (count < balances.length) {
+                int index = count++;
+                // Sift up
+                while (index > 0) {
+                    int parent = (index - 1) >>> 1;
+                    if (balances[parent] <= balance) {
+                        break;
+                    }
+                    move(parent, index);
+                    index = parent;
+                }
+                set(index, mostSigBits, leastSigBits, balance);
+            } else if (balance > balances[0]) {
+                // Replace the lowest balance and sift down
+                int index = 0;
+                while (true) {
+                    int child = index * 2 + 1;
+                    if (child >= count) {
+                        break;
+                    }
+                    if (child + 1 < count && balances[child + 1] < balances[child]) {
+                        child++;
+                    }
+                    if (balances[child] >= balance) {
+                        break;
+                    }
+                    move(child, index);
+                    index = child;
+                }
+                set(index, mostSigBits, leastSigBits, balance);
+            }
+        }
+
+        private void move(int from, int to) {
+            keys[to * 2] = keys[from * 2];
+            keys[to * 2 + 1] = keys[from * 2 + 1];
+            balances[to] = balances[from];
+        }
+
+        private void set(int index, long mostSigBits, long leastSigBits, double balance) {
+            keys[index * 2] = mostSigBits;
+            keys[index * 2 + 1] = leastSigBits;
+            balances[index] = balance;
+        }
+    }
+}
@@ -0,0 +1,759 @@
+package de.geolykt.easyconomy.api.storage;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import de.geolykt.easyconomy.api.FixedPoint;
+import de.geolykt.easyconomy.api.PlayerDataStorage;
+import de.geolykt.easyconomy.api.storage.BalanceFileReader.CorruptedStorageException;
+
+/**
+ * A log-structured {@link PlayerDataStorage} for a very large amount of accounts. Only the recently changed balances
+ *  are kept in memory, within the memtable. Once the memtable is full or the storage is saved, the memtable is
+ *  written to a new immutable {@link LsmSegment segment} that is sorted by UUID. Lookups check the memtable and then
+ *  the segments from the newest to the oldest, where a bloom filter and a sparse index per segment make sure that
+ *  a lookup reads at most a single block from the disk. Once there are too many segments, the newest ones are
+ *  merged into a single segment in the background.
+ * <br/>
+ * As such the memory usage is bounded by the memtable size and roughly 1.3 bytes per account for the bloom filters
+ *  and indexes, rather than the full account. The storage is a directory that contains the segment files and a
+ *  manifest listing the live segments, which is replaced atomically whenever a segment is added or segments
+ *  are merged.
+ * <br/>
+ * Like the {@link BalanceStorageEngine} the storage does not log anything by itself and needs to be loaded
+ *  via {@link #reload()} after it was constructed.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+public class LsmBalanceStorage implements PlayerDataStorage, Closeable {
+
+    /**
+     * The default amount of accounts within the memtable after which the memtable is written to a segment.
+     * @since 1.2.0
+     */
+    public static final int DEFAULT_MEMTABLE_SIZE = 1 << 17;
+
+    /**
+     * The amount of segments above which the newest segments are merged.
+     */
+    private static final int COMPACTION_THRESHOLD = 4;
+    private static final int MANIFEST_VERSION = 1;
+    private static final @NotNull String MANIFEST = "MANIFEST";
+    private static final @NotNull Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.lsm");
+    private static final LsmSegment @NotNull[] NO_SEGMENTS = new LsmSegment[0];
+
+    private final @NotNull File directory;
+    private final int memtableSize;
+    private final @Nullable Leaderboard leaderboard;
+    private final @NotNull ExecutorService background;
+
+    // Writers hold the read lock so that the memtable is not frozen while it is written to
+    private final @NotNull ReentrantReadWriteLock memtableLock = new ReentrantReadWriteLock();
+    // Ensures that only a single memtable is written at once
+    private final @NotNull Object flushLock = new Object();
+    // Ensures that only a single compaction runs at once and that segments are not closed by a reload while merged
+    private final @NotNull Object compactionLock = new Object();
+    // Guards the modification of the segments, the manifest and the next segment id
+    private final @NotNull Object manifestLock = new Object();
+    private final @NotNull AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final @NotNull AtomicBoolean compactionScheduled = new AtomicBoolean();
+    private final @NotNull AtomicInteger writes = new AtomicInteger();
+
+    private volatile @NotNull StripedBalanceMap memtable;
+    // The memtable that is currently written to a segment, if any. It is no longer modified.
+    private volatile @Nullable StripedBalanceMap flushing;
+    // From the newest to the oldest segment
+    private volatile LsmSegment @NotNull[] segments = NO_SEGMENTS;
+    private long nextId;
+    private volatile boolean loaded;
+    private volatile @Nullable FixedPoint fixedPoint;
+
+    /**
+     * Creates a new storage within the given directory.
+     * @param directory The directory of the storage
+     * @param memtableSize The amount of accounts in memory after which they are written to a segment
+     * @param leaderboardSize The amount of accounts on the leaderboard, 0 to disable it
+     * @since 1.2.0
+     */
+    public LsmBalanceStorage(@NotNull File directory, int memtableSize, int leaderboardSize) {
+        if (memtableSize < 1) {
+            throw new IllegalArgumentException("The memtable size needs to be positive.");
+        }
+        this.directory = directory;
+        this.memtableSize = memtableSize;
+        if (leaderboardSize > 0) {
+            leaderboard = new Leaderboard(this::scanUnchecked, leaderboardSize);
+        } else {
+            leaderboard = null;
+        }
+        memtable = newMemtable();
+        background = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Easyconomy LSM compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private @NotNull StripedBalanceMap newMemtable() {
+        StripedBalanceMap table = new StripedBalanceMap();
+        Leaderboard leaderboard = this.leaderboard;
+        if (leaderboard != null) {
+            table.setUpdateListener(leaderboard::update);
+        }
+        return table;
+    }
+
+    @Override
+    public double getOrDefault(@NotNull UUID player, double defaultValue) {
+        double[] result = new double[1];
+        try {
+            if (lookup(player.getMostSignificantBits(), player.getLeastSignificantBits(), result)) {
+                return result[0];
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return defaultValue;
+    }
+
+    @Override
+    public boolean has(@NotNull UUID key) {
+        try {
+            return lookup(key.getMostSignificantBits(), key.getLeastSignificantBits(), new double[1]);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean lookup(long mostSigBits, long leastSigBits, double @NotNull[] result) throws IOException {
+        // The memtable is read before the frozen memtable, which is read before the segments.
+        // This is the reverse order in which a flush publishes them, so an account can not be missed.
+        if (find(memtable, mostSigBits, leastSigBits, result)) {
+            return true;
+        }
+        return lookupFrozen(mostSigBits, leastSigBits, result);
+    }
+
+    private boolean lookupFrozen(long mostSigBits, long leastSigBits, double @NotNull[] result) throws IOException {
+        StripedBalanceMap frozen = flushing;
+        if (frozen != null && find(frozen, mostSigBits, leastSigBits, result)) {
+            return true;
+        }
+        retry:
+        while (true) {
+            for (LsmSegment segment : segments) {
+                if (!segment.retain()) {
+                    continue retry; // Replaced by a compaction in the meantime
+                }
+                try {
+                    if (segment.get(mostSigBits, leastSigBits, result)) {
+                        return true;
+                    }
+                } finally {
+                    segment.release();
+                }
+            }
+            return false;
+        }
+    }
+
+    private static boolean find(@NotNull StripedBalanceMap table, long mostSigBits, long leastSigBits, double @NotNull[] result) {
+        double balance = table.getOrDefault(mostSigBits, leastSigBits, Double.NaN);
+        // Only check the map again for the unlikely case of a NaN balance
+        if (!Double.isNaN(balance) || table.containsKey(mostSigBits, leastSigBits)) {
+            result[0] = balance;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void set(@NotNull UUID key, double value) {
+        StripedBalanceMap table;
+        memtableLock.readLock().lock();
+        try {
+            table = memtable;
+            table.put(key, value);
+        } finally {
+            memtableLock.readLock().unlock();
+        }
+        afterWrite(table);
+    }
+
+    @Override
+    public double addAndGet(@NotNull UUID key, double amount) {
+        long msb = key.getMostSignificantBits();
+        long lsb = key.getLeastSignificantBits();
+        StripedBalanceMap table;
+        double balance;
+        memtableLock.readLock().lock();
+        try {
+            table = memtable;
+            balance = table.update(msb, lsb, absentValue(table, msb, lsb), old -> add(old, amount));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            memtableLock.readLock().unlock();
+        }
+        afterWrite(table);
+        return balance;
+    }
+
+    @Override
+    public double addAndGetIfAtLeast(@NotNull UUID key, double amount, double minimum) {
+        long msb = key.getMostSignificantBits();
+        long lsb = key.getLeastSignificantBits();
+        StripedBalanceMap table;
+        double balance;
+        memtableLock.readLock().lock();
+        try {
+            table = memtable;
+            balance = table.updateIfAtLeast(msb, lsb, absentValue(table, msb, lsb), minimum, old -> add(old, amount));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            memtableLock.readLock().unlock();
+        }
+        if (!Double.isNaN(balance)) {
+            afterWrite(table);
+        }
+        return balance;
+    }
+
+    @Override
+    public boolean transfer(@NotNull UUID src, @NotNull UUID dest, double amount, double minimum) {
+        long srcMsb = src.getMostSignificantBits();
+        long srcLsb = src.getLeastSignificantBits();
+        long destMsb = dest.getMostSignificantBits();
+        long destLsb = dest.getLeastSignificantBits();
+        StripedBalanceMap table;
+        boolean transferred;
+        memtableLock.readLock().lock();
+        try {
+            table = memtable;
+            transferred = table.transfer(srcMsb, srcLsb, absentValue(table, srcMsb, srcLsb),
+                    destMsb, destLsb, absentValue(table, destMsb, destLsb), minimum,
+                    old -> add(old, -amount), old -> add(old, amount));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            memtableLock.readLock().unlock();
+        }
+        if (transferred) {
+            afterWrite(table);
+        }
+        return transferred;
+    }
+
+    /**
+     * Obtains the balance a player has if it is not in the memtable, which is the balance in the frozen memtable or
+     *  the segments, or 0. The caller must hold the read lock of the memtable.
+     */
+    private double absentValue(@NotNull StripedBalanceMap table, long msb, long lsb) throws IOException {
+        if (!table.containsKey(msb, lsb)) {
+            double[] result = new double[1];
+            if (lookupFrozen(msb, lsb, result)) {
+                return result[0];
+            }
+        }
+        return 0.0;
+    }
+
+    /**
+     * Adds an amount to a balance, in minor units if fixed-point balances are enabled.
+     */
+    private double add(double balance, double amount) {
+        FixedPoint fixedPoint = this.fixedPoint;
+        if (fixedPoint != null) {
+            return fixedPoint.add(balance, amount);
+        }
+        // BigDecimal for less approximations when dealing with doubles (due to how floating point values are handled in
+        // Java, there will always be approximations) ( https://docs.oracle.com/cd/E19957-01/806-3568/ncg_goldberg.html )
+        return BigDecimal.valueOf(balance).add(BigDecimal.valueOf(amount)).doubleValue();
+    }
+
+    private void afterWrite(@NotNull StripedBalanceMap table) {
+        // Counting the entries locks every stripe, so it is only done every now and then
+        if ((writes.incrementAndGet() & 0xFF) == 0 && table.size() >= memtableSize && flushScheduled.compareAndSet(false, true)) {
+            background.execute(() -> {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    onBackgroundFailure(e);
+                } finally {
+                    flushScheduled.set(false);
+                }
+            });
+        }
+    }
+
+    @Override
+    public @NotNull List<UUID> getAllKeys() {
+        List<UUID> keys = new ArrayList<>();
+        scanUnchecked((msb, lsb, balance) -> keys.add(new UUID(msb, lsb)));
+        return keys;
+    }
+
+    @Override
+    public @NotNull Map<UUID, Double> getBaltop() {
+        Leaderboard leaderboard = this.leaderboard;
+        if (leaderboard == null) {
+            return Collections.emptyMap();
+        }
+        return leaderboard.getTop();
+    }
+
+    private void scanUnchecked(@NotNull UUIDBalanceMap.EntryConsumer consumer) {
+        try {
+            scan(consumer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Passes the most recent balance of every account to the consumer, in ascending order of their UUID.
+     */
+    private void scan(@NotNull UUIDBalanceMap.EntryConsumer consumer) throws IOException {
+        // Same order as the lookup
+        LsmSegment.Cursor memory = sorted(memtable);
+        StripedBalanceMap frozen = flushing;
+        LsmSegment[] current = retainSegments();
+        try {
+            List<LsmSegment.Cursor> sources = new ArrayList<>(current.length + 2);
+            sources.add(memory);
+            if (frozen != null) {
+                sources.add(sorted(frozen));
+            }
+            try (LsmSegment.Cursor cursor = new LsmSegment.MergeCursor(sources, current)) {
+                while (cursor.next()) {
+                    consumer.accept(cursor.mostSigBits, cursor.leastSigBits, cursor.balance);
+                }
+            }
+        } finally {
+            for (LsmSegment segment : current) {
+                segment.release();
+            }
+        }
+    }
+
+    private LsmSegment @NotNull[] retainSegments() {
+        retry:
+        while (true) {
+            LsmSegment[] current = segments;
+            for (int i = 0; i < current.length; i++) {
+                if (!current[i].retain()) {
+                    for (int j = 0; j < i; j++) {
+                        current[j].release();
+                    }
+                    continue retry;
+                }
+            }
+            return current;
+        }
+    }
+
+    private static @NotNull LsmSegment.ArrayCursor sorted(@NotNull StripedBalanceMap table) {
+        LsmSegment.ArrayCursor cursor = new LsmSegment.ArrayCursor(table.size());
+        table.forEach(cursor::add);
+        cursor.sort();
+        return cursor;
+    }
+
+    /**
+     * Writes the memtable to a new segment. Does nothing if the memtable is empty.
+     * @return True if a segment was written
+     */
+    private boolean flush() throws IOException {
+        synchronized (flushLock) {
+            StripedBalanceMap frozen;
+            memtableLock.writeLock().lock();
+            try {
+                frozen = memtable;
+                if (frozen.size() == 0) {
+                    return false;
+                }
+                // Published before the memtable is replaced, see the lookup
+                flushing = frozen;
+                memtable = newMemtable();
+            } finally {
+                memtableLock.writeLock().unlock();
+            }
+            try {
+                LsmSegment.ArrayCursor entries = sorted(frozen);
+                long id;
+                synchronized (manifestLock) {
+                    id = nextId++;
+                }
+                File file = getSegmentFile(id);
+                LsmSegment.write(file, entries, entries.size());
+                LsmSegment segment = LsmSegment.open(id, file);
+                synchronized (manifestLock) {
+                    LsmSegment[] current = segments;
+                    LsmSegment[] updated = new LsmSegment[current.length + 1];
+                    updated[0] = segment;
+                    System.arraycopy(current, 0, updated, 1, current.length);
+                    try {
+                        writeManifest(directory, updated, nextId);
+                    } catch (IOException e) {
+                        segment.retire(true);
+                        throw e;
+                    }
+                    segments = updated;
+                }
+            } catch (IOException | RuntimeException e) {
+                // Keep the balances in memory so the next flush can retry writing them
+                memtableLock.writeLock().lock();
+                try {
+                    StripedBalanceMap table = memtable;
+                    frozen.forEach((msb, lsb, balance) -> {
+                        if (!table.containsKey(msb, lsb)) {
+                            table.load(msb, lsb, balance);
+                        }
+                    });
+                    flushing = null;
+                } finally {
+                    memtableLock.writeLock().unlock();
+                }
+                throw e;
+            }
+            flushing = null;
+        }
+        if (segments.length > COMPACTION_THRESHOLD && compactionScheduled.compareAndSet(false, true)) {
+            background.execute(() -> {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    onBackgroundFailure(e);
+                } finally {
+                    compactionScheduled.set(false);
+                }
+            });
+        }
+        return true;
+    }
+
+    /**
+     * Merges the newest segments as long as there are too many segments. A segment is only merged with newer segments
+     *  if it is not larger than the newer segments combined, so large segments are rewritten rarely.
+     */
+    private void compact() throws IOException {
+        synchronized (compactionLock) {
+            while (true) {
+                // Segments are only removed by compactions, so the selected segments stay open
+                LsmSegment[] current = segments;
+                if (current.length <= COMPACTION_THRESHOLD) {
+                    return;
+                }
+                int run = 1;
+                long total = current[0].size();
+                while (run < current.length && (run < 2 || current[run].size() <= total)) {
+                    total += current[run++].size();
+                }
+                LsmSegment[] selected = Arrays.copyOf(current, run);
+                long id;
+                synchronized (manifestLock) {
+                    id = nextId++;
+                }
+                File file = getSegmentFile(id);
+                List<LsmSegment.Cursor> none = Collections.emptyList();
+                try (LsmSegment.Cursor merge = new LsmSegment.MergeCursor(none, selected)) {
+                    LsmSegment.write(file, merge, (int) Math.min(total, Integer.MAX_VALUE));
+                }
+                LsmSegment merged = LsmSegment.open(id, file);
+                synchronized (manifestLock) {
+                    // Segments that were flushed in the meantime are newer than the merged segments
+                    LsmSegment[] latest = segments;
+                    int newer = latest.length - current.length;
+                    LsmSegment[] updated = new LsmSegment[latest.length - run + 1];
+                    System.arraycopy(latest, 0, updated, 0, newer);
+                    updated[newer] = merged;
+                    System.arraycopy(latest, newer + run, updated, newer + 1, latest.length - newer - run);
+                    try {
+                        writeManifest(directory, updated, nextId);
+                    } catch (IOException e) {
+                        merged.retire(true);
+                        throw e;
+                    }
+                    segments = updated;
+                }
+                for (LsmSegment segment : selected) {
+                    segment.retire(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the memtable to a new segment, after which all balances are stored on disk.
+     * @throws IOException If the segment could not be written, in which case the balances are retained in memory
+     * @since 1.2.0
+     */
+    @Override
+    public void save() throws IOException {
+        if (!loaded) {
+            // The manifest would no longer list the segments that could not be loaded
+            throw new IOException("Refusing to save " + directory.getName() + " as it could not be loaded.");
+        }
+        long time = System.currentTimeMillis();
+        if (flush()) {
+            onSaved(System.currentTimeMillis() - time);
+        }
+    }
+
+    /**
+     * Discards all unsaved changes and opens the segments listed in the manifest. Segment files that are not listed
+     *  within the manifest are left over by an interrupted flush or compaction and are deleted.
+     * @since 1.2.0
+     */
+    @Override
+    public void reload() {
+        long time = System.currentTimeMillis();
+        synchronized (compactionLock) {
+            synchronized (flushLock) {
+                memtableLock.writeLock().lock();
+                try {
+                    memtable = newMemtable();
+                    flushing = null;
+                } finally {
+                    memtableLock.writeLock().unlock();
+                }
+                LsmSegment[] old;
+                synchronized (manifestLock) {
+                    old = segments;
+                    segments = NO_SEGMENTS;
+                }
+                for (LsmSegment segment : old) {
+                    segment.retire(false);
+                }
+                try {
+                    load();
+                    loaded = true;
+                    onLoaded(segments.length, System.currentTimeMillis() - time);
+                } catch (IOException e) {
+                    loaded = false;
+                    onLoadFailed(e);
+                }
+            }
+        }
+        Leaderboard leaderboard = this.leaderboard;
+        if (leaderboard != null) {
+            leaderboard.invalidate();
+            leaderboard.rebuildAsync();
+        }
+    }
+
+    private void load() throws IOException {
+        directory.mkdirs();
+        File manifest = new File(directory, MANIFEST);
+        long next = 0;
+        long[] ids = new long[0];
+        if (manifest.exists()) {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(manifest))) {
+                int version = in.readUnsignedByte();
+                if (version != MANIFEST_VERSION) {
+                    throw new CorruptedStorageException("Unknown manifest version: " + version);
+                }
+                next = in.readLong();
+                ids = new long[in.readInt()];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = in.readLong();
+                }
+            }
+        }
+        Set<String> live = new HashSet<>();
+        LsmSegment[] opened = new LsmSegment[ids.length];
+        try {
+            for (int i = 0; i < ids.length; i++) {
+                opened[i] = LsmSegment.open(ids[i], getSegmentFile(ids[i]));
+                live.add(opened[i].getFile().getName());
+            }
+        } catch (IOException e) {
+            for (LsmSegment segment : opened) {
+                if (segment != null) {
+                    segment.retire(false);
+                }
+            }
+            throw e;
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getName());
+                if (matcher.matches() && !live.contains(file.getName())) {
+                    if (!manifest.exists()) {
+                        for (LsmSegment segment : opened) {
+                            segment.retire(false);
+                        }
+                        throw new CorruptedStorageException("The manifest of " + directory.getName() + " is missing.");
+                    }
+                    Files.delete(file.toPath());
+                } else if (file.getName().endsWith(".tmp")) {
+                    Files.delete(file.toPath());
+                }
+            }
+        }
+        synchronized (manifestLock) {
+            segments = opened;
+            nextId = next;
+        }
+    }
+
+    private static void writeManifest(@NotNull File directory, LsmSegment @NotNull[] segments, long nextId) throws IOException {
+        StorageFiles.writeAtomically(new File(directory, MANIFEST), stream -> {
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeByte(MANIFEST_VERSION);
+            out.writeLong(nextId);
+            out.writeInt(segments.length);
+            for (LsmSegment segment : segments) {
+                out.writeLong(segment.getId());
+            }
+            out.flush();
+        });
+    }
+
+    private @NotNull File getSegmentFile(long id) {
+        return new File(directory, "segment-" + id + ".lsm");
+    }
+
+    /**
+     * Saves the storage and copies the segments and the manifest to a new directory within the backup directory.
+     *  As segments are never modified they are hard linked where possible.
+     * @param backupDir The directory to write the backup to
+     * @throws IOException If the backup could not be written
+     * @since 1.2.0
+     */
+    @Override
+    public void backup(@NotNull File backupDir) throws IOException {
+        save();
+        File target = new File(backupDir, "backup-bal-" + new SimpleDateFormat("yyyy-MM-dd_HH:mm:ss").format(Date.from(Instant.now())));
+        if (!target.mkdirs()) {
+            throw new IOException("Unable to create the backup directory " + target.getName() + ".");
+        }
+        LsmSegment[] current = retainSegments();
+        try {
+            for (LsmSegment segment : current) {
+                File copy = new File(target, segment.getFile().getName());
+                try {
+                    Files.createLink(copy.toPath(), segment.getFile().toPath());
+                } catch (IOException | UnsupportedOperationException e) {
+                    Files.copy(segment.getFile().toPath(), copy.toPath());
+                }
+            }
+            long next;
+            synchronized (manifestLock) {
+                next = nextId;
+            }
+            writeManifest(target, current, next);
+        } finally {
+            for (LsmSegment segment : current) {
+                segment.release();
+            }
+        }
+    }
+
+    /**
+     * Sets the fixed-point scale balance changes are computed with, see {@link FixedPoint}.
+     * @param fixedPoint The scale, or null to add balances via {@link BigDecimal BigDecimals}
+     * @since 1.2.0
+     */
+    public void setFixedPoint(@Nullable FixedPoint fixedPoint) {
+        this.fixedPoint = fixedPoint;
+    }
+
+    @Override
+    public @NotNull File getStorageFile() {
+        return directory;
+    }
+
+    /**
+     * Waits for running compactions and closes all segments. Should be called after the final save.
+     */
+    @Override
+    public void close() throws IOException {
+        background.shutdown();
+        try {
+            background.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (compactionLock) {
+            LsmSegment[] old;
+            synchronized (manifestLock) {
+                old = segments;
+                segments = NO_SEGMENTS;
+            }
+            for (LsmSegment segment : old) {
+                segment.retire(false);
+            }
+            loaded = false;
+        }
+    }
+
+    /**
+     * Called after the segments were opened.
+     * @param segments The amount of segments
+     * @param millis The time it took to open the segments in milliseconds
+     * @since 1.2.0
+     */
+    protected void onLoaded(int segments, long millis) {
+        // Does nothing by default
+    }
+
+    /**
+     * Called if the storage could not be loaded, in which case the storage refuses to be saved.
+     * @param e The exception that prevented the storage from being loaded
+     * @since 1.2.0
+     */
+    protected void onLoadFailed(@NotNull IOException e) {
+        e.printStackTrace();
+    }
+
+    /**
+     * Called after the memtable was written to a segment during a save.
+     * @param millis The time it took to write the segment in milliseconds
+     * @since 1.2.0
+     */
+    protected void onSaved(long millis) {
+        // Does nothing by default
+    }
+
+    /**
+     * Called if a flush of a full memtable or a compaction failed in the background. Failed flushes are retried
+     *  during the next save and failed compactions once the next segment is written.
+     * @param e The exception that caused the failure
+     * @since 1.2.0
+     */
+    protected void onBackgroundFailure(@NotNull IOException e) {
+        e.printStackTrace();
+    }
+}
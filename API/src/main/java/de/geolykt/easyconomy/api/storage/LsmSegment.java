@@ -0,0 +1,442 @@
+package de.geolykt.easyconomy.api.storage;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import org.jetbrains.annotations.NotNull;
+
+import de.geolykt.easyconomy.api.storage.BalanceFileReader.CorruptedStorageException;
+
+/**
+ * An immutable, sorted file of balances that is written by the {@link LsmBalanceStorage} and used as the
+ *  {@link ColdTier} of a {@link BalanceStorageEngine}. The file is structured as follows:
+ * <pre>
+ * entries: [long msb][long lsb][double balance], sorted by the UUID in unsigned order
+ * index:   [long msb][long lsb] of the first entry of every block of {@value #BLOCK_ENTRIES} entries
+ * bloom:   [long] words of the {@link BloomFilter}
+ * footer:  [int entries][int bloom words][int hash functions][int CRC32 of the entries][int version]
+ * </pre>
+ * Only the index and the bloom filter are kept in memory, a lookup reads at most a single block from the disk.
+ * <br/>
+ * Segments are reference counted as they might be replaced by a compaction while they are still being read.
+ *  The file is closed and deleted once the segment was {@link #retire(boolean) retired} and released by all readers.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+final class LsmSegment {
+
+    /**
+     * A sequence of entries in ascending order of their UUID, all of which are unique.
+     */
+    abstract static class Cursor implements Closeable {
+        long mostSigBits;
+        long leastSigBits;
+        double balance;
+
+        /**
+         * Moves to the next entry.
+         * @return False if there are no more entries
+         */
+        abstract boolean next() throws IOException;
+
+        @Override
+        public void close() throws IOException {
+            // Nothing to close by default
+        }
+    }
+
+    static final int VERSION = 1;
+    static final int BLOCK_ENTRIES = 128;
+    static final int ENTRY_SIZE = 24;
+    private static final int FOOTER_SIZE = 20;
+
+    private final long id;
+    private final @NotNull File file;
+    private final @NotNull FileChannel channel;
+    private final int entries;
+    private final long @NotNull[] index;
+    private final @NotNull BloomFilter bloom;
+    // The segment itself holds a reference until it is retired
+    private final @NotNull AtomicInteger references = new AtomicInteger(1);
+    private volatile boolean deleteOnClose;
+
+    private LsmSegment(long id, @NotNull File file, @NotNull FileChannel channel, int entries, long @NotNull[] index,
+            @NotNull BloomFilter bloom) {
+        this.id = id;
+        this.file = file;
+        this.channel = channel;
+        this.entries = entries;
+        this.index = index;
+        this.bloom = bloom;
+    }
+
+    /**
+     * Writes the entries of the cursor to a new segment file.
+     * @param file The file to write to, which is replaced atomically
+     * @param source The entries
+     * @param maximumEntries The maximum amount of entries of the source, which is used to size the bloom filter
+     */
+    static void write(@NotNull File file, @NotNull Cursor source, int maximumEntries) throws IOException {
+        StorageFiles.writeAtomically(file, stream -> {
+            DataOutputStream out = new DataOutputStream(stream);
+            BloomFilter bloom = new BloomFilter(maximumEntries);
+            long[] index = new long[16];
+            int count = 0;
+            CRC32 crc = new CRC32();
+            ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+            while (source.next()) {
+                if (count % BLOCK_ENTRIES == 0) {
+                    int block = count / BLOCK_ENTRIES;
+                    if (block * 2 == index.length) {
+                        index = Arrays.copyOf(index, index.length * 2);
+                    }
+                    index[block * 2] = source.mostSigBits;
+                    index[block * 2 + 1] = source.leastSigBits;
+                }
+                bloom.add(source.mostSigBits, source.leastSigBits);
+                ((Buffer) entry).clear();
+                entry.putLong(source.mostSigBits).putLong(source.leastSigBits).putDouble(source.balance);
+                crc.update(entry.array(), 0, ENTRY_SIZE);
+                out.write(entry.array(), 0, ENTRY_SIZE);
+                count++;
+            }
+            int blocks = (count + BLOCK_ENTRIES - 1) / BLOCK_ENTRIES;
+            for (int i = 0; i < blocks * 2; i++) {
+                out.writeLong(index[i]);
+            }
+            bloom.write(out);
+            out.writeInt(count);
+            out.writeInt(bloom.getWordCount());
+            out.writeInt(bloom.getHashFunctions());
+            out.writeInt((int) crc.getValue());
+            out.writeInt(VERSION);
+            out.flush();
+        });
+    }
+
+    /**
+     * Opens a segment file, reading it's index and bloom filter.
+     * @param id The id of the segment
+     * @param file The segment file
+     * @return The opened segment
+     * @throws CorruptedStorageException If the file is not a valid segment
+     */
+    static @NotNull LsmSegment open(long id, @NotNull File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < FOOTER_SIZE) {
+                throw new CorruptedStorageException("Segment " + file.getName() + " is truncated.");
+            }
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+            readFully(channel, footer, size - FOOTER_SIZE);
+            int entries = footer.getInt(0);
+            int bloomWords = footer.getInt(4);
+            int hashFunctions = footer.getInt(8);
+            int version = footer.getInt(16);
+            if (version != VERSION) {
+                throw new CorruptedStorageException("Segment " + file.getName() + " has an unknown version: " + version);
+            }
+            int blocks = (entries + BLOCK_ENTRIES - 1) / BLOCK_ENTRIES;
+            long metadataSize = blocks * 16L + bloomWords * 8L;
+            if (entries < 0 || bloomWords < 1 || size != entries * (long) ENTRY_SIZE + metadataSize + FOOTER_SIZE) {
+                throw new CorruptedStorageException("Segment " + file.getName() + " has an invalid length.");
+            }
+            ByteBuffer metadata = ByteBuffer.allocate((int) metadataSize);
+            readFully(channel, metadata, entries * (long) ENTRY_SIZE);
+            long[] index = new long[blocks * 2];
+            metadata.asLongBuffer().get(index);
+            ((Buffer) metadata).position(blocks * 16);
+            BloomFilter bloom = BloomFilter.read(metadata, bloomWords, hashFunctions);
+            return new LsmSegment(id, file, channel, entries, index, bloom);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static void readFully(@NotNull FileChannel channel, @NotNull ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new CorruptedStorageException("Unexpected end of segment.");
+            }
+        }
+        ((Buffer) buffer).flip();
+    }
+
+    long getId() {
+        return id;
+    }
+
+    @NotNull File getFile() {
+        return file;
+    }
+
+    int size() {
+        return entries;
+    }
+
+    /**
+     * Looks up the balance of an account.
+     * @param mostSigBits The most significant bits of the UUID
+     * @param leastSigBits The least significant bits of the UUID
+     * @param result The array the balance is stored in at index 0
+     * @return True if the account is within the segment
+     */
+    boolean get(long mostSigBits, long leastSigBits, double @NotNull[] result) throws IOException {
+        if (!bloom.mightContain(mostSigBits, leastSigBits)) {
+            return false;
+        }
+        // Find the last block that starts at or before the key
+        int low = 0;
+        int high = index.length / 2 - 1;
+        int block = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (compare(index[middle * 2], index[middle * 2 + 1], mostSigBits, leastSigBits) <= 0) {
+                block = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (block == -1) {
+            return false;
+        }
+        int first = block * BLOCK_ENTRIES;
+        int count = Math.min(BLOCK_ENTRIES, entries - first);
+        ByteBuffer buffer = ByteBuffer.allocate(count * ENTRY_SIZE);
+        readFully(channel, buffer, first * (long) ENTRY_SIZE);
+        low = 0;
+        high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int offset = middle * ENTRY_SIZE;
+            int comparison = compare(buffer.getLong(offset), buffer.getLong(offset + 8), mostSigBits, leastSigBits);
+            if (comparison == 0) {
+                result[0] = buffer.getDouble(offset + 16);
+                return true;
+            } else if (comparison < 0) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Opens a cursor over all entries of the segment, which verifies the checksum of the entries once
+     *  it was fully read. The segment needs to be retained while the cursor is in use and the cursor needs
+     *  to be closed afterwards.
+     * @return The cursor
+     */
+    @NotNull Cursor cursor() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        return new Cursor() {
+            private final byte[] entry = new byte[ENTRY_SIZE];
+            private final ByteBuffer buffer = ByteBuffer.wrap(entry);
+            private final CRC32 crc = new CRC32();
+            private int remaining = entries;
+
+            @Override
+            boolean next() throws IOException {
+                if (remaining == 0) {
+                    return false;
+                }
+                in.readFully(entry);
+                crc.update(entry, 0, ENTRY_SIZE);
+                mostSigBits = buffer.getLong(0);
+                leastSigBits = buffer.getLong(8);
+                balance = buffer.getDouble(16);
+                if (--remaining == 0) {
+                    ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+                    readFully(channel, footer, channel.size() - FOOTER_SIZE);
+                    if (footer.getInt(12) != (int) crc.getValue()) {
+                        throw new CorruptedStorageException("Segment " + file.getName() + " has an invalid checksum.");
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public void close() throws IOException {
+                in.close();
+            }
+        };
+    }
+
+    /**
+     * Acquires a reference to the segment so it is not closed while it is read.
+     * @return False if the segment was already closed, in which case it must not be used
+     */
+    boolean retain() {
+        while (true) {
+            int current = references.get();
+            if (current == 0) {
+                return false;
+            }
+            if (references.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void release() {
+        if (references.decrementAndGet() == 0) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (deleteOnClose && !file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Releases the reference of the segment itself, so that it is closed once it is no longer read.
+     * @param delete Whether the file should be deleted afterwards as it was replaced
+     */
+    void retire(boolean delete) {
+        deleteOnClose = delete;
+        release();
+    }
+
+    static int compare(long mostSigBitsA, long leastSigBitsA, long mostSigBitsB, long leastSigBitsB) {
+        int result = Long.compareUnsigned(mostSigBitsA, mostSigBitsB);
+        if (result != 0) {
+            return result;
+        }
+        return Long.compareUnsigned(leastSigBitsA, leastSigBitsB);
+    }
+
+    /**
+     * A cursor over entries that are collected in memory and sorted afterwards.
+     */
+    static final class ArrayCursor extends Cursor {
+        private long @NotNull[] keys;
+        private double @NotNull[] balances;
+        private int size;
+        private int position = -1;
+
+        ArrayCursor(int expectedSize) {
+            keys = new long[Math.max(expectedSize, 1) * 2];
+            balances = new double[Math.max(expectedSize, 1)];
+        }
+
+        void add(long mostSigBits, long leastSigBits, double balance) {
+            if (size == balances.length) {
+                // The source grew while it was copied
+                keys = Arrays.copyOf(keys, keys.length * 2);
+                balances = Arrays.copyOf(balances, balances.length * 2);
+            }
+            keys[size * 2] = mostSigBits;
+            keys[size * 2 + 1] = leastSigBits;
+            balances[size++] = balance;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void sort() {
+            BalanceFileWriter.sort(keys, balances, 0, size - 1);
+        }
+
+        @Override
+        boolean next() {
+            if (++position >= size) {
+                return false;
+            }
+            mostSigBits = keys[position * 2];
+            leastSigBits = keys[position * 2 + 1];
+            balance = balances[position];
+            return true;
+        }
+    }
+
+    /**
+     * Merges cursors that are ordered from the newest to the oldest, the newest balance of an account wins.
+     *  The cursors are followed by the segments, which are opened by the merge.
+     */
+    static final class MergeCursor extends Cursor {
+        private final Cursor @NotNull[] sources;
+        private final boolean @NotNull[] exhausted;
+
+        MergeCursor(@NotNull List<Cursor> cursors, LsmSegment @NotNull[] segments) throws IOException {
+            sources = new Cursor[cursors.size() + segments.length];
+            exhausted = new boolean[sources.length];
+            int i = 0;
+            for (Cursor cursor : cursors) {
+                sources[i++] = cursor;
+            }
+            try {
+                for (LsmSegment segment : segments) {
+                    sources[i++] = segment.cursor();
+                }
+                for (i = 0; i < sources.length; i++) {
+                    exhausted[i] = !sources[i].next();
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        boolean next() throws IOException {
+            int newest = -1;
+            for (int i = 0; i < sources.length; i++) {
+                if (!exhausted[i] && (newest == -1 || LsmSegment.compare(sources[i].mostSigBits, sources[i].leastSigBits,
+                        sources[newest].mostSigBits, sources[newest].leastSigBits) < 0)) {
+                    newest = i;
+                }
+            }
+            if (newest == -1) {
+                return false;
+            }
+            mostSigBits = sources[newest].mostSigBits;
+            leastSigBits = sources[newest].leastSigBits;
+            balance = sources[newest].balance;
+            for (int i = newest; i < sources.length; i++) {
+                if (!exhausted[i] && sources[i].mostSigBits == mostSigBits && sources[i].leastSigBits == leastSigBits) {
+                    exhausted[i] = !sources[i].next();
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOException failure = null;
+            for (Cursor source : sources) {
+                if (source != null) {
+                    try {
+                        source.close();
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+}
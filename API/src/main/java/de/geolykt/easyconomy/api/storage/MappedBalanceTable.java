@@ -0,0 +1,696 @@
+package de.geolykt.easyconomy.api.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.DoubleUnaryOperator;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A {@link BalanceTable} that lives in a memory-mapped file using the v3 storage format instead of the heap.
+ * Updating the balance of a known player is an in-place write to the mapped file and opening the table only maps the
+ *  file, the operating system takes care of writing the changes back to the disk. Call {@link #force()} to sync
+ *  the changes to the disk, otherwise a crash of the operating system (but not of the server) may lose them.
+ * <br/>
+ * The v3 storage file consists of a 32 byte header followed by fixed 24 byte slots in insertion order:
+ * <pre>
+ * [VERSION] [PADDING] [SLOT COUNT] [RESERVED]   [UUID MSB] [UUID LSB] [BALANCE] ...
+ *   1 byte   3 bytes    4 bytes     24 bytes      8 bytes    8 bytes   8 bytes
+ * </pre>
+ * Slots are looked up via an open addressing hash index that is stored in {@code <storage file>.idx}. It contains
+ *  a 16 byte header (magic, capacity, slot count, reserved) followed by one integer per bucket, which is the slot
+ *  number plus one or 0 for empty buckets. As the index can be derived from the slots, it is rebuilt if it
+ *  does not match the storage file.
+ * <br/>
+ * Due to the limits of {@link MappedByteBuffer} the table can hold roughly 89 million players.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+public class MappedBalanceTable implements BalanceTable, Closeable {
+
+    public static final int FORMAT_VERSION = 3;
+    public static final int HEADER_SIZE = 32;
+    public static final int SLOT_SIZE = 24;
+
+    private static final int INDEX_HEADER_SIZE = 16;
+    private static final int INDEX_MAGIC = 0x45434958;
+    private static final int MINIMUM_SLOTS = 1024;
+    private static final int LOCK_STRIPES = 64;
+    private static final int MAXIMUM_SLOTS = (Integer.MAX_VALUE - HEADER_SIZE) / SLOT_SIZE;
+
+    /**
+     * Reads a storage file that is written in a format other than v3 into a table.
+     * @since 1.2.0
+     */
+    @FunctionalInterface
+    public static interface LegacyReader {
+        public void read(@NotNull File file, @NotNull BalanceTable target) throws IOException;
+    }
+
+    private final @NotNull File file;
+    private final @NotNull File indexFile;
+    /**
+     * The read lock is held by lookups and in-place updates, the write lock by everything that adds slots
+     *  or remaps the file.
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * Guards the balance of the slots whose hashes map to the stripe while only the read lock is held.
+     */
+    private final @NotNull Object[] stripeLocks = new Object[LOCK_STRIPES];
+    private volatile @Nullable UUIDBalanceMap.EntryConsumer updateListener;
+
+    private @Nullable FileChannel channel;
+    private @Nullable FileChannel indexChannel;
+    private MappedByteBuffer slots;
+    private MappedByteBuffer index;
+    private int slotCount;
+    private int slotCapacity;
+    private int indexMask;
+
+    /**
+     * Creates a new table that is backed by the given file. The table is unusable until {@link #open(LegacyReader)}
+     *  is called.
+     * @param file The storage file
+     * @since 1.2.0
+     */
+    public MappedBalanceTable(@NotNull File file) {
+        this.file = file;
+        this.indexFile = new File(file.getParentFile(), file.getName() + ".idx");
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            stripeLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * Maps the storage file, replacing any previous mapping. If the file is written in an older format,
+     *  it is read via the legacy reader and converted into the v3 format, the old file is kept as
+     *  {@code <storage file>.v<version>}.
+     * @param legacyReader The reader for storage files of older formats
+     * @throws IOException If an IO Exception occurs, or the file is corrupt
+     * @since 1.2.0
+     */
+    public void open(@NotNull LegacyReader legacyReader) throws IOException {
+        lock.writeLock().lock();
+        try {
+            closeChannels();
+            int version = -1;
+            if (file.exists()) {
+                try (FileInputStream in = new FileInputStream(file)) {
+                    version = in.read();
+                }
+            }
+            if (version != -1 && version != FORMAT_VERSION) {
+                StripedBalanceMap legacy = new StripedBalanceMap();
+                legacyReader.read(file, legacy);
+                File old = new File(file.getParentFile(), file.getName() + ".v" + version);
+                Files.move(file.toPath(), old.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                mapFile();
+                ensureSlotCapacity(legacy.size());
+                legacy.forEach((msb, lsb, balance) -> putLocked(msb, lsb, balance));
+                force();
+            } else {
+                mapFile();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void mapFile() throws IOException {
+        FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        channel = ch;
+        long length = ch.size();
+        if (length < HEADER_SIZE) {
+            mapSlots(MINIMUM_SLOTS);
+            slots.put(0, (byte) FORMAT_VERSION);
+            slots.putInt(4, 0);
+            slotCount = 0;
+        } else {
+            mapSlots((int) Math.min(MAXIMUM_SLOTS, Math.max(MINIMUM_SLOTS, (length - HEADER_SIZE) / SLOT_SIZE)));
+            slotCount = slots.getInt(4);
+            if (slotCount < 0 || slotCount > slotCapacity) {
+                throw new IOException("Storage file " + file.getName() + " has an invalid slot count of " + slotCount + ".");
+            }
+        }
+        indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        int capacity = indexCapacityFor(slotCapacity);
+        if (indexChannel.size() >= INDEX_HEADER_SIZE + ((long) capacity << 2)) {
+            index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER_SIZE + ((long) capacity << 2));
+            if (index.getInt(0) == INDEX_MAGIC && index.getInt(4) == capacity && index.getInt(8) == slotCount) {
+                indexMask = capacity - 1;
+                return;
+            }
+        }
+        rebuildIndex(capacity);
+    }
+
+    private void mapSlots(int capacity) throws IOException {
+        slots = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+        slotCapacity = capacity;
+    }
+
+    private static int indexCapacityFor(int slotCapacity) {
+        // Keep the load factor of the index at or below 0.5
+        return Integer.highestOneBit(Math.max(slotCapacity, 1) - 1) << 2;
+    }
+
+    /**
+     * Recreates the index from the slots. The caller must hold the write lock.
+     */
+    private void rebuildIndex(int capacity) throws IOException {
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER_SIZE + ((long) capacity << 2));
+        for (int i = INDEX_HEADER_SIZE; i < index.capacity(); i += 4) {
+            index.putInt(i, 0);
+        }
+        indexMask = capacity - 1;
+        for (int slot = 0; slot < slotCount; slot++) {
+            int offset = slotOffset(slot);
+            insertIndex(UUIDBalanceMap.hash(slots.getLong(offset), slots.getLong(offset + 8)), slot);
+        }
+        index.putInt(0, INDEX_MAGIC);
+        index.putInt(4, capacity);
+        index.putInt(8, slotCount);
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private void insertIndex(int hash, int slot) {
+        int bucket = hash & indexMask;
+        while (index.getInt(INDEX_HEADER_SIZE + (bucket << 2)) != 0) {
+            bucket = (bucket + 1) & indexMask;
+        }
+        index.putInt(INDEX_HEADER_SIZE + (bucket << 2), slot + 1);
+    }
+
+    /**
+     * Finds the slot of the given key. The caller must hold the read or the write lock.
+     */
+    private int findSlot(long mostSigBits, long leastSigBits, int hash) {
+        int bucket = hash & indexMask;
+        while (true) {
+            int entry = index.getInt(INDEX_HEADER_SIZE + (bucket << 2));
+            if (entry == 0) {
+                return -1;
+            }
+            int offset = slotOffset(entry - 1);
+            if (slots.getLong(offset) == mostSigBits && slots.getLong(offset + 8) == leastSigBits) {
+                return entry - 1;
+            }
+            bucket = (bucket + 1) & indexMask;
+        }
+    }
+
+    private @NotNull Object stripeLock(int hash) {
+        return stripeLocks[hash >>> 26];
+    }
+
+    /**
+     * Grows the storage file (and the index) so it can hold the given amount of slots. The caller must hold the write lock.
+     */
+    private void ensureSlotCapacity(int capacity) {
+        if (capacity <= slotCapacity) {
+            return;
+        }
+        if (capacity > MAXIMUM_SLOTS) {
+            throw new IllegalStateException("The storage file " + file.getName() + " cannot hold more than " + MAXIMUM_SLOTS + " players.");
+        }
+        try {
+            mapSlots((int) Math.min(MAXIMUM_SLOTS, Math.max(capacity, (long) slotCapacity << 1)));
+            int indexCapacity = indexCapacityFor(slotCapacity);
+            if (indexCapacity > indexMask + 1) {
+                rebuildIndex(indexCapacity);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Sets the balance of a key, adding a slot if needed. The caller must hold the write lock.
+     * @return The slot of the key
+     */
+    private int putLocked(long mostSigBits, long leastSigBits, double balance) {
+        int hash = UUIDBalanceMap.hash(mostSigBits, leastSigBits);
+        int slot = findSlot(mostSigBits, leastSigBits, hash);
+        if (slot == -1) {
+            ensureSlotCapacity(slotCount + 1);
+            slot = slotCount;
+            int offset = slotOffset(slot);
+            slots.putLong(offset, mostSigBits);
+            slots.putLong(offset + 8, leastSigBits);
+            insertIndex(hash, slot);
+            slots.putInt(4, ++slotCount);
+            index.putInt(8, slotCount);
+        }
+        slots.putDouble(slotOffset(slot) + 16, balance);
+        return slot;
+    }
+
+    @Override
+    public double getOrDefault(long mostSigBits, long leastSigBits, double defaultValue) {
+        int hash = UUIDBalanceMap.hash(mostSigBits, leastSigBits);
+        lock.readLock().lock();
+        try {
+            synchronized (stripeLock(hash)) {
+                int slot = findSlot(mostSigBits, leastSigBits, hash);
+                return slot == -1 ? defaultValue : slots.getDouble(slotOffset(slot) + 16);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean containsKey(long mostSigBits, long leastSigBits) {
+        lock.readLock().lock();
+        try {
+            return findSlot(mostSigBits, leastSigBits, UUIDBalanceMap.hash(mostSigBits, leastSigBits)) != -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void put(long mostSigBits, long leastSigBits, double balance) {
+        update(mostSigBits, leastSigBits, balance, old -> balance);
+    }
+
+    @Override
+    public void load(long mostSigBits, long leastSigBits, double balance) {
+        lock.writeLock().lock();
+        try {
+            putLocked(mostSigBits, leastSigBits, balance);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public double update(long mostSigBits, long leastSigBits, double absentValue, @NotNull DoubleUnaryOperator function) {
+        int hash = UUIDBalanceMap.hash(mostSigBits, leastSigBits);
+        lock.readLock().lock();
+        try {
+            synchronized (stripeLock(hash)) {
+                int slot = findSlot(mostSigBits, leastSigBits, hash);
+                if (slot != -1) {
+                    int offset = slotOffset(slot) + 16;
+                    double balance = function.applyAsDouble(slots.getDouble(offset));
+                    slots.putDouble(offset, balance);
+                    notifyListener(mostSigBits, leastSigBits, balance);
+                    return balance;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        // The key is unknown, so a slot needs to be added which requires exclusive access
+        lock.writeLock().lock();
+        try {
+            int slot = findSlot(mostSigBits, leastSigBits, hash);
+            double old = slot == -1 ? absentValue : slots.getDouble(slotOffset(slot) + 16);
+            double balance = function.applyAsDouble(old);
+            putLocked(mostSigBits, leastSigBits, balance);
+            notifyListener(mostSigBits, leastSigBits, balance);
+            return balance;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Atomically replaces the balance of a key if it is at least the given minimum. Like {@link #update(long, long,
+     *  double, DoubleUnaryOperator)} only the stripe of the key is locked if it already has a slot.
+     * @param mostSigBits The most significant bits of the UUID
+     * @param leastSigBits The least significant bits of the UUID
+     * @param absentValue The balance of the key if it is not known yet
+     * @param minimum The balance the key needs to have at least
+     * @param function The function that calculates the new balance from the old one
+     * @return The new balance, or {@link Double#NaN} if the balance is below the minimum
+     * @since 1.2.0
+     */
+    @Override
+    public double updateIfAtLeast(long mostSigBits, long leastSigBits, double absentValue, double minimum,
+            @NotNull DoubleUnaryOperator function) {
+        int hash = UUIDBalanceMap.hash(mostSigBits, leastSigBits);
+        lock.readLock().lock();
+        try {
+            synchronized (stripeLock(hash)) {
+                int slot = findSlot(mostSigBits, leastSigBits, hash);
+                if (slot != -1) {
+                    int offset = slotOffset(slot) + 16;
+                    double old = slots.getDouble(offset);
+                    if (!(old >= minimum)) {
+                        return Double.NaN;
+                    }
+                    double balance = function.applyAsDouble(old);
+                    slots.putDouble(offset, balance);
+                    notifyListener(mostSigBits, leastSigBits, balance);
+                    return balance;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        // The key is unknown, so a slot needs to be added which requires exclusive access
+        lock.writeLock().lock();
+        try {
+            double old = getLocked(mostSigBits, leastSigBits, absentValue);
+            if (!(old >= minimum)) {
+                return Double.NaN;
+            }
+            double balance = function.applyAsDouble(old);
+            putLocked(mostSigBits, leastSigBits, balance);
+            notifyListener(mostSigBits, leastSigBits, balance);
+            return balance;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Atomically changes the balances of two keys. If both keys already have a slot only their stripes are locked,
+     *  in ascending order so that concurrent transfers can not deadlock, otherwise exclusive access to the table
+     *  is required.
+     * @param srcMostSigBits The most significant bits of the UUID of the source
+     * @param srcLeastSigBits The least significant bits of the UUID of the source
+     * @param srcAbsentValue The balance of the source if it is not known yet
+     * @param destMostSigBits The most significant bits of the UUID of the destination
+     * @param destLeastSigBits The least significant bits of the UUID of the destination
+     * @param destAbsentValue The balance of the destination if it is not known yet
+     * @param minimum The balance the source needs to have at least, {@link Double#NEGATIVE_INFINITY} to always
+     *  change the balances
+     * @param withdraw The function that calculates the new balance of the source
+     * @param deposit The function that calculates the new balance of the destination
+     * @return True if the balances were changed, false if the balance of the source is below the minimum
+     * @since 1.2.0
+     */
+    @Override
+    public boolean transfer(long srcMostSigBits, long srcLeastSigBits, double srcAbsentValue,
+            long destMostSigBits, long destLeastSigBits, double destAbsentValue, double minimum,
+            @NotNull DoubleUnaryOperator withdraw, @NotNull DoubleUnaryOperator deposit) {
+        int srcHash = UUIDBalanceMap.hash(srcMostSigBits, srcLeastSigBits);
+        int destHash = UUIDBalanceMap.hash(destMostSigBits, destLeastSigBits);
+        lock.readLock().lock();
+        try {
+            int srcStripe = srcHash >>> 26;
+            int destStripe = destHash >>> 26;
+            synchronized (stripeLocks[Math.min(srcStripe, destStripe)]) {
+                synchronized (stripeLocks[Math.max(srcStripe, destStripe)]) {
+                    int srcSlot = findSlot(srcMostSigBits, srcLeastSigBits, srcHash);
+                    int destSlot = findSlot(destMostSigBits, destLeastSigBits, destHash);
+                    if (srcSlot != -1 && destSlot != -1) {
+                        int srcOffset = slotOffset(srcSlot) + 16;
+                        double srcBalance = slots.getDouble(srcOffset);
+                        if (!(srcBalance >= minimum)) {
+                            return false;
+                        }
+                        srcBalance = withdraw.applyAsDouble(srcBalance);
+                        slots.putDouble(srcOffset, srcBalance);
+                        // Read after writing the source, as both keys may be the same
+                        int destOffset = slotOffset(destSlot) + 16;
+                        double destBalance = deposit.applyAsDouble(slots.getDouble(destOffset));
+                        slots.putDouble(destOffset, destBalance);
+                        notifyListener(srcMostSigBits, srcLeastSigBits, srcBalance);
+                        notifyListener(destMostSigBits, destLeastSigBits, destBalance);
+                        return true;
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        // At least one of the keys is unknown, so a slot needs to be added which requires exclusive access
+        lock.writeLock().lock();
+        try {
+            double srcBalance = getLocked(srcMostSigBits, srcLeastSigBits, srcAbsentValue);
+            if (!(srcBalance >= minimum)) {
+                return false;
+            }
+            srcBalance = withdraw.applyAsDouble(srcBalance);
+            putLocked(srcMostSigBits, srcLeastSigBits, srcBalance);
+            double destBalance = deposit.applyAsDouble(getLocked(destMostSigBits, destLeastSigBits, destAbsentValue));
+            putLocked(destMostSigBits, destLeastSigBits, destBalance);
+            notifyListener(srcMostSigBits, srcLeastSigBits, srcBalance);
+            notifyListener(destMostSigBits, destLeastSigBits, destBalance);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Obtains the balance of a key, the caller must hold the write lock.
+     */
+    private double getLocked(long mostSigBits, long leastSigBits, double absentValue) {
+        int slot = findSlot(mostSigBits, leastSigBits, UUIDBalanceMap.hash(mostSigBits, leastSigBits));
+        return slot == -1 ? absentValue : slots.getDouble(slotOffset(slot) + 16);
+    }
+
+    private void notifyListener(long mostSigBits, long leastSigBits, double balance) {
+        UUIDBalanceMap.EntryConsumer listener = updateListener;
+        if (listener != null) {
+            listener.accept(mostSigBits, leastSigBits, balance);
+        }
+    }
+
+    @Override
+    public void setUpdateListener(@Nullable UUIDBalanceMap.EntryConsumer listener) {
+        updateListener = listener;
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slotCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            slotCount = 0;
+            slots.putInt(4, 0);
+            rebuildIndex(indexMask + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void ensureCapacity(int expectedSize) {
+        lock.writeLock().lock();
+        try {
+            ensureSlotCapacity(expectedSize);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Passes every entry of the table to the consumer in the order in which they were added.
+     *  The consumer is invoked while the read lock is held, so it must not modify the table.
+     * @param consumer The consumer to pass the entries to
+     * @since 1.2.0
+     */
+    @Override
+    public void forEach(@NotNull UUIDBalanceMap.EntryConsumer consumer) {
+        lock.readLock().lock();
+        try {
+            for (int slot = 0; slot < slotCount; slot++) {
+                int offset = slotOffset(slot);
+                synchronized (stripeLock(UUIDBalanceMap.hash(slots.getLong(offset), slots.getLong(offset + 8)))) {
+                    consumer.accept(slots.getLong(offset), slots.getLong(offset + 8), slots.getDouble(offset + 16));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs an action while the write lock of the table is held.
+     * @param action The action to run while the table is locked
+     * @since 1.2.0
+     */
+    @Override
+    public void exclusive(@NotNull Runnable action) {
+        lock.writeLock().lock();
+        try {
+            action.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Takes a snapshot of the table by copying the slots to the heap, during which the table is locked.
+     * @param cut The action to run while the table is locked
+     * @return The snapshot
+     * @since 1.2.0
+     */
+    @Override
+    public @NotNull BalanceSnapshot snapshot(@NotNull Runnable cut) {
+        ByteBuffer copy;
+        lock.writeLock().lock();
+        try {
+            cut.run();
+            ByteBuffer source = slots.duplicate();
+            ((Buffer) source).limit(slotOffset(slotCount));
+            ((Buffer) source).position(HEADER_SIZE);
+            copy = ByteBuffer.allocate(source.remaining());
+            copy.put(source);
+            ((Buffer) copy).flip();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return new BalanceSnapshot() {
+
+            @Override
+            public int size() {
+                return copy.limit() / SLOT_SIZE;
+            }
+
+            @Override
+            public void writeEntries(@NotNull EntryWriter writer) throws IOException {
+                ByteBuffer entries = copy.duplicate();
+                while (entries.hasRemaining()) {
+                    writer.write(entries.getLong(), entries.getLong(), entries.getDouble());
+                }
+            }
+
+            @Override
+            public void close() {
+                // Nothing is shared with the table
+            }
+        };
+    }
+
+    /**
+     * Returns a read-only {@link Map} view of this table. Lookups are performed on the table directly,
+     *  while iteration operates on a copy of the table.
+     * @return A read-only view of the table
+     * @since 1.2.0
+     */
+    @Override
+    public @NotNull Map<UUID, Double> asMap() {
+        return new AbstractMap<UUID, Double>() {
+
+            @Override
+            public int size() {
+                return MappedBalanceTable.this.size();
+            }
+
+            @Override
+            public boolean containsKey(@Nullable Object key) {
+                return key instanceof UUID && MappedBalanceTable.this.containsKey((UUID) key);
+            }
+
+            @Override
+            public @Nullable Double get(@Nullable Object key) {
+                if (!(key instanceof UUID)) {
+                    return null;
+                }
+                double balance = MappedBalanceTable.this.getOrDefault((UUID) key, Double.NaN);
+                if (Double.isNaN(balance) && !containsKey(key)) {
+                    return null;
+                }
+                return balance;
+            }
+
+            @Override
+            public @NotNull Set<Map.Entry<UUID, Double>> entrySet() {
+                return new AbstractSet<Map.Entry<UUID, Double>>() {
+
+                    @Override
+                    public int size() {
+                        return MappedBalanceTable.this.size();
+                    }
+
+                    @Override
+                    public @NotNull Iterator<Map.Entry<UUID, Double>> iterator() {
+                        List<Map.Entry<UUID, Double>> entries = new ArrayList<>();
+                        MappedBalanceTable.this.forEach((msb, lsb, balance) ->
+                                entries.add(new AbstractMap.SimpleImmutableEntry<>(new UUID(msb, lsb), balance)));
+                        return entries.iterator();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Syncs all changes of the storage file and the index to the disk.
+     * @since 1.2.0
+     */
+    public void force() {
+        lock.readLock().lock();
+        try {
+            slots.force();
+            index.force();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void closeChannels() throws IOException {
+        slots = null;
+        index = null;
+        slotCount = 0;
+        slotCapacity = 0;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        if (indexChannel != null) {
+            indexChannel.close();
+            indexChannel = null;
+        }
+    }
+
+    /**
+     * Syncs the changes to the disk and closes the storage file. The table cannot be used until it is opened again.
+     * @throws IOException If an IO Exception occurs while closing the file
+     * @since 1.2.0
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (slots != null) {
+                force();
+            }
+            closeChannels();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,638 @@
+package de.geolykt.easyconomy.api.storage;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import de.geolykt.easyconomy.api.Saveable;
+
+/**
+ * Maps the UUIDs of players to their last known names and back, so commands and the string-based methods of economy
+ *  APIs do not need to ask the server for the profile of a player, which may block while the profile is looked up.
+ *  The index is updated whenever a player logs in. Names are looked up case-insensitively.
+ * <br/>
+ * All players are kept in a compact file. Only the UUIDs, the hashes of the lower case names and the positions of
+ *  the names are kept in memory (28 bytes per player), along with a bounded cache of the names of the most recently
+ *  used players and the changes since the file was last written. A lookup thus reads at most the names with the
+ *  same hash from the file, which is done without holding the lock of the index. Players that are not known at all
+ *  are looked up by {@link #lookupName(UUID)} and {@link #lookupUUID(String)}, which find nothing by default.
+ * <br/>
+ * File layout (big endian):
+ * <pre>
+ * [MAGIC] [VERSION] [COUNT] ([UUID MSB] [UUID LSB] [NAME OFFSET]) * COUNT ([NAME HASH] [ROW]) * COUNT [NAMES]
+ *    4        4        4          8           8           4                     4        4
+ * </pre>
+ * The players are sorted by UUID and the second table is sorted by the hash of the lower case name, so both can
+ *  be binary searched. Names are stored as their length (2 bytes) followed by their UTF-8 encoding.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+public class PlayerNameIndex implements Saveable, Closeable {
+
+    private static final int MAGIC = 0x45434e49; // "ECNI"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 12;
+    private static final int PLAYER_ROW_SIZE = 20;
+    private static final int NAME_ROW_SIZE = 8;
+    private static final @NotNull Comparator<UUID> ORDER = Comparator.comparingLong(UUID::getMostSignificantBits)
+            .thenComparingLong(UUID::getLeastSignificantBits);
+
+    /**
+     * A read-only view of the players stored in the file. The UUIDs, the name hashes and the positions of the names
+     *  are kept in memory, only the names themselves are read from the file.
+     */
+    private static final class Table {
+
+        private final @NotNull FileChannel channel;
+        private final int count;
+        // The most and least significant bits of the UUID of each row, sorted by ORDER
+        private final long @NotNull[] players;
+        // The position of the name of each row within the names
+        private final int @NotNull[] offsets;
+        // The hash of the lower case name in the upper and the row in the lower 32 bits, sorted
+        private final long @NotNull[] names;
+        private final long namesStart;
+        private final long namesEnd;
+        // The table itself holds a reference until it is retired
+        private final @NotNull AtomicInteger references = new AtomicInteger(1);
+
+        private Table(@NotNull FileChannel channel, int count, long @NotNull[] players, int @NotNull[] offsets,
+                long @NotNull[] names, long namesEnd) {
+            this.channel = channel;
+            this.count = count;
+            this.players = players;
+            this.offsets = offsets;
+            this.names = names;
+            this.namesStart = HEADER_SIZE + (long) count * (PLAYER_ROW_SIZE + NAME_ROW_SIZE);
+            this.namesEnd = namesEnd;
+        }
+
+        private @NotNull UUID uuid(int row) {
+            return new UUID(players[row * 2], players[row * 2 + 1]);
+        }
+
+        private @NotNull String name(int row) throws IOException {
+            long position = namesStart + offsets[row];
+            long end = row + 1 < count ? namesStart + offsets[row + 1] : namesEnd;
+            if (end - position < 2 || end - position > 0x10001) {
+                throw new IOException("The name index is corrupted.");
+            }
+            // Positional reads, the table is read by lookups and saves at the same time
+            ByteBuffer name = ByteBuffer.allocate((int) (end - position));
+            while (name.hasRemaining()) {
+                if (channel.read(name, position + name.position()) < 0) {
+                    throw new IOException("The name index ends unexpectedly.");
+                }
+            }
+            int length = ((Buffer) name).flip().remaining() - 2;
+            if ((name.getShort() & 0xFFFF) != length) {
+                throw new IOException("The name index is corrupted.");
+            }
+            return new String(name.array(), 2, length, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Finds the row of a player, or -1 if the player is not stored.
+         */
+        private int find(@NotNull UUID player) {
+            long msb = player.getMostSignificantBits();
+            long lsb = player.getLeastSignificantBits();
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = Long.compare(players[mid * 2], msb);
+                if (cmp == 0) {
+                    cmp = Long.compare(players[mid * 2 + 1], lsb);
+                }
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Finds the rows of the players whose lower case name has the given hash, which may include other names.
+         */
+        private int @NotNull[] findHash(int hash) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if ((int) (names[mid] >> 32) < hash) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            int end = low;
+            while (end < count && (int) (names[end] >> 32) == hash) {
+                end++;
+            }
+            int[] rows = new int[end - low];
+            for (int i = low; i < end; i++) {
+                rows[i - low] = (int) names[i];
+            }
+            return rows;
+        }
+
+        /**
+         * Prevents the file from being closed while it is read without holding the lock of the index. May only be
+         *  called while holding the lock of the index and while the table is the current table of the index.
+         */
+        private void retain() {
+            references.incrementAndGet();
+        }
+
+        private void release() {
+            if (references.decrementAndGet() == 0) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        /**
+         * Closes the file once it is no longer read, called after the table was replaced.
+         */
+        private void retire() {
+            release();
+        }
+    }
+
+    private final @NotNull File file;
+    private final int capacity;
+    private final @NotNull Object saveLock = new Object();
+
+    // Guarded by this, in access order so the eldest entry is the least recently used player
+    private final @NotNull LinkedHashMap<UUID, String> cache;
+    // Guarded by this, the lower case names of the cached players
+    private final @NotNull Map<String, UUID> cachedUUIDs = new HashMap<>();
+    // Guarded by this, the changes that were not written yet. Forgotten players are mapped to null.
+    private final @NotNull Map<UUID, String> pending = new HashMap<>();
+    // Guarded by this, the lower case names of the pending players
+    private final @NotNull Map<String, UUID> pendingUUIDs = new HashMap<>();
+    // Guarded by this
+    private @Nullable Table table;
+    // Guarded by this, the amount of pending players that are not stored in the file
+    private int added;
+
+    /**
+     * Creates a new, empty instance. {@link #reload()} needs to be called to read the stored players.
+     * @param file The file the index is stored in
+     * @param capacity The maximum amount of players whose names are cached in memory
+     * @since 1.2.0
+     */
+    public PlayerNameIndex(@NotNull File file, int capacity) {
+        this.file = file;
+        this.capacity = Math.max(capacity, 1);
+        this.cache = new LinkedHashMap<UUID, String>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, String> eldest) {
+                if (size() <= PlayerNameIndex.this.capacity) {
+                    return false;
+                }
+                cachedUUIDs.remove(key(eldest.getValue()), eldest.getKey());
+                return true;
+            }
+        };
+    }
+
+    private static @NotNull String key(@NotNull String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * A 32 bit FNV-1a hash of a lower case name.
+     */
+    private static int hash(@NotNull String key) {
+        int hash = 0x811c9dc5;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+
+    /**
+     * Obtains the last known name of a player.
+     * @param player The UUID of the player
+     * @return The name, or null if the player is not known
+     * @since 1.2.0
+     */
+    public @Nullable String getName(@NotNull UUID player) {
+        String name = getKnownName(player);
+        return name != null ? name : lookupName(player);
+    }
+
+    /**
+     * Obtains the UUID of the player that last used a name.
+     * @param name The name of the player, which is not case sensitive
+     * @return The UUID, or null if no known player uses that name
+     * @since 1.2.0
+     */
+    public @Nullable UUID getUUID(@NotNull String name) {
+        UUID player = getKnownUUID(key(name));
+        return player != null ? player : lookupUUID(name);
+    }
+
+    /**
+     * Looks up the name of a player that is not known to the index, for example from a cache of the server.
+     *  Called without holding any lock of the index, the implementation must not block.
+     * @param player The UUID of the player
+     * @return The name of the player, or null if it is not known either
+     * @since 1.2.0
+     */
+    protected @Nullable String lookupName(@NotNull UUID player) {
+        return null; // Does nothing by default
+    }
+
+    /**
+     * Looks up the UUID of a player that is not known to the index, for example from a cache of the server.
+     *  Called without holding any lock of the index, the implementation must not block.
+     * @param name The name of the player
+     * @return The UUID of the player, or null if it is not known either
+     * @since 1.2.0
+     */
+    protected @Nullable UUID lookupUUID(@NotNull String name) {
+        return null; // Does nothing by default
+    }
+
+    /**
+     * Called when the file could not be read while looking up a player, the player is then treated as unknown.
+     * @param e The exception that was thrown
+     * @since 1.2.0
+     */
+    protected void onReadFailed(@NotNull IOException e) {
+        e.printStackTrace();
+    }
+
+    /**
+     * Obtains the amount of players that are known. Players that lost their name to another player are only
+     *  no longer counted once the index was saved.
+     * @return The amount of players
+     * @since 1.2.0
+     */
+    public synchronized int size() {
+        Table table = this.table;
+        return (table == null ? 0 : table.count) + added;
+    }
+
+    private @Nullable String getKnownName(@NotNull UUID player) {
+        Table table;
+        int row;
+        synchronized (this) {
+            if (pending.containsKey(player)) {
+                return pending.get(player);
+            }
+            String name = cache.get(player);
+            table = this.table;
+            if (name != null || table == null) {
+                return name;
+            }
+            row = table.find(player);
+            if (row < 0) {
+                return null;
+            }
+            table.retain();
+        }
+        String name;
+        try {
+            name = table.name(row);
+        } catch (IOException e) {
+            onReadFailed(e);
+            return null;
+        } finally {
+            table.release();
+        }
+        synchronized (this) {
+            // The player may have been renamed while the name was read
+            if (table == this.table && !pending.containsKey(player)) {
+                cache(player, name);
+            }
+        }
+        return name;
+    }
+
+    private @Nullable UUID getKnownUUID(@NotNull String key) {
+        Table table;
+        int[] rows;
+        synchronized (this) {
+            UUID player = pendingUUIDs.get(key);
+            if (player == null) {
+                player = cachedUUIDs.get(key);
+            }
+            if (player != null) {
+                cache.get(player); // Marks the player as recently used
+                return player;
+            }
+            table = this.table;
+            if (table == null) {
+                return null;
+            }
+            rows = table.findHash(hash(key));
+            if (rows.length == 0) {
+                return null;
+            }
+            table.retain();
+        }
+        try {
+            for (int row : rows) {
+                String name = table.name(row);
+                if (!key(name).equals(key)) {
+                    continue;
+                }
+                UUID candidate = table.uuid(row);
+                synchronized (this) {
+                    // The pending name of the player is more recent than the stored one and was checked above
+                    if (pending.containsKey(candidate)) {
+                        continue;
+                    }
+                    if (table == this.table) {
+                        cache(candidate, name);
+                    }
+                }
+                return candidate;
+            }
+        } catch (IOException e) {
+            onReadFailed(e);
+        } finally {
+            table.release();
+        }
+        return null;
+    }
+
+    private void cache(@NotNull UUID player, @NotNull String name) {
+        cache.put(player, name);
+        cachedUUIDs.put(key(name), player);
+    }
+
+    private void uncache(@NotNull UUID player) {
+        String name = cache.remove(player);
+        if (name != null) {
+            cachedUUIDs.remove(key(name), player);
+        }
+        name = pending.get(player);
+        if (name != null) {
+            pendingUUIDs.remove(key(name), player);
+        }
+    }
+
+    /**
+     * Sets the name of a player, which should be called whenever a player logs in.
+     *  If another player used that name before, that player is forgotten as it's new name is not known.
+     * @param player The UUID of the player
+     * @param name The current name of the player
+     * @since 1.2.0
+     */
+    public void update(@NotNull UUID player, @NotNull String name) {
+        // Looked up before locking the index, as both may need to read the file
+        if (name.equals(getKnownName(player))) {
+            return;
+        }
+        String key = key(name);
+        UUID owner = getKnownUUID(key);
+        synchronized (this) {
+            UUID previous = pendingUUIDs.get(key);
+            if (previous == null) {
+                previous = cachedUUIDs.get(key);
+            }
+            if (previous == null && owner != null && !pending.containsKey(owner)) {
+                previous = owner;
+            }
+            if (previous != null && !previous.equals(player)) {
+                uncache(previous);
+                pending.put(previous, null);
+            }
+            if (!pending.containsKey(player) && !isStored(player)) {
+                added++;
+            }
+            uncache(player);
+            pending.put(player, name);
+            pendingUUIDs.put(key, player);
+        }
+    }
+
+    private boolean isStored(@NotNull UUID player) {
+        Table table = this.table;
+        return table != null && table.find(player) >= 0;
+    }
+
+    /**
+     * Replaces the index with the players stored in the file, changes that were not saved are discarded.
+     *  The index is empty if the file does not exist.
+     * @throws IOException If an IO Exception occurs or the file is not a known version of the index
+     * @since 1.2.0
+     */
+    public void reload() throws IOException {
+        synchronized (saveLock) {
+            Table loaded = file.isFile() ? open() : null;
+            synchronized (this) {
+                Table old = table;
+                table = loaded;
+                cache.clear();
+                cachedUUIDs.clear();
+                pending.clear();
+                pendingUUIDs.clear();
+                added = 0;
+                if (old != null) {
+                    old.retire();
+                }
+            }
+        }
+    }
+
+    private @NotNull Table open() throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Read the entire header
+            }
+            ((Buffer) header).flip();
+            if (header.remaining() != HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("The file " + file.getName() + " is not a name index of a known version.");
+            }
+            int count = header.getInt();
+            long size = channel.size();
+            if (count < 0 || size < HEADER_SIZE + (long) count * (PLAYER_ROW_SIZE + NAME_ROW_SIZE)) {
+                throw new IOException("The name index " + file.getName() + " is truncated.");
+            }
+            long[] players = new long[count * 2];
+            int[] offsets = new int[count];
+            long[] names = new long[count];
+            // Not closed, as that would close the channel
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+            for (int i = 0; i < count; i++) {
+                players[i * 2] = in.readLong();
+                players[i * 2 + 1] = in.readLong();
+                offsets[i] = in.readInt();
+            }
+            for (int i = 0; i < count; i++) {
+                names[i] = in.readLong();
+            }
+            return new Table(channel, count, players, offsets, names, size);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the players into the file if the index changed since it was last read or written. The stored players are
+     *  merged with the changes, lookups are not blocked while the file is written.
+     * @throws IOException If an IO Exception occurs
+     * @since 1.2.0
+     */
+    @Override
+    public void save() throws IOException {
+        synchronized (saveLock) {
+            Map<UUID, String> changes;
+            Table stored;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                changes = new HashMap<>(pending);
+                stored = table;
+                if (stored != null) {
+                    stored.retain();
+                }
+            }
+            try {
+                write(changes, stored);
+            } finally {
+                if (stored != null) {
+                    stored.release();
+                }
+            }
+            Table loaded = open();
+            synchronized (this) {
+                Table old = table;
+                table = loaded;
+                added = 0;
+                for (Map.Entry<UUID, String> change : changes.entrySet()) {
+                    // Changes that were made while the file was written are kept
+                    if (pending.remove(change.getKey(), change.getValue()) && change.getValue() != null) {
+                        pendingUUIDs.remove(key(change.getValue()), change.getKey());
+                    }
+                }
+                for (Map.Entry<UUID, String> change : pending.entrySet()) {
+                    if (change.getValue() != null && !isStored(change.getKey())) {
+                        added++;
+                    }
+                }
+                if (old != null) {
+                    old.retire();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the stored players merged with the changes into the file.
+     */
+    private void write(@NotNull Map<UUID, String> changes, @Nullable Table stored) throws IOException {
+        UUID[] changed = changes.keySet().toArray(new UUID[0]);
+        Arrays.sort(changed, ORDER);
+        int expected = (stored == null ? 0 : stored.count) + changed.length;
+        long[] keys = new long[expected * 2];
+        int[] offsets = new int[expected];
+        ByteArrayOutputStream heap = new ByteArrayOutputStream();
+        DataOutputStream names = new DataOutputStream(heap);
+        long[] hashes = new long[expected];
+        int count = 0;
+        int row = 0;
+        int next = 0;
+        UUID storedPlayer = stored != null && stored.count != 0 ? stored.uuid(0) : null;
+        while (storedPlayer != null || next < changed.length) {
+            UUID player;
+            String name;
+            if (next < changed.length && (storedPlayer == null || ORDER.compare(changed[next], storedPlayer) <= 0)) {
+                player = changed[next++];
+                name = changes.get(player);
+                if (storedPlayer != null && storedPlayer.equals(player)) {
+                    storedPlayer = ++row < stored.count ? stored.uuid(row) : null;
+                }
+            } else {
+                player = storedPlayer;
+                name = stored.name(row);
+                storedPlayer = ++row < stored.count ? stored.uuid(row) : null;
+            }
+            if (name == null) {
+                continue; // Forgotten
+            }
+            byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+            keys[count * 2] = player.getMostSignificantBits();
+            keys[count * 2 + 1] = player.getLeastSignificantBits();
+            offsets[count] = names.size();
+            hashes[count] = ((long) hash(key(name)) << 32) | count;
+            names.writeShort(encoded.length);
+            names.write(encoded);
+            count++;
+        }
+        long[] nameRows = Arrays.copyOf(hashes, count);
+        Arrays.sort(nameRows);
+        int written = count;
+        StorageFiles.writeAtomically(file, stream -> {
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(written);
+            for (int i = 0; i < written; i++) {
+                out.writeLong(keys[i * 2]);
+                out.writeLong(keys[i * 2 + 1]);
+                out.writeInt(offsets[i]);
+            }
+            for (long nameRow : nameRows) {
+                out.writeLong(nameRow);
+            }
+            heap.writeTo(out);
+            out.flush();
+        });
+    }
+
+    /**
+     * Closes the file of the index. Changes that were not saved are not written.
+     * @throws IOException If an IO Exception occurs
+     * @since 1.2.0
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        Table table = this.table;
+        this.table = null;
+        if (table != null) {
+            table.retire();
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package de.geolykt.easyconomy.api.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import de.geolykt.easyconomy.api.AccountKey;
+import de.geolykt.easyconomy.api.AccountLocks;
+import de.geolykt.easyconomy.api.Bank;
+import de.geolykt.easyconomy.api.BankStorageEngine;
+import de.geolykt.easyconomy.api.PlaceholderBank;
+import de.geolykt.easyconomy.api.PlayerDataStorage;
+
+/**
+ * Restores the balances of all players and banks as of any moment within the retention period. Periodic snapshots
+ *  of all balances are stored as {@code snapshot-<time>.dat} files and the changes since a snapshot are replayed from
+ *  the {@link AuditLog}, which acts as the change stream.
+ * <br/>
+ * A restore is performed in two steps: {@link #stage(long)} rebuilds the balances as of the requested time in memory
+ *  without touching the live storages, which may take a while and should be done asynchronously, and
+ *  {@link #apply(State, PlayerDataStorage, BankStorageEngine)} swaps the staged balances into the live storages.
+ * <br/>
+ * The balances of the players are taken in a single cut, during which no balance can change, and the time of the
+ *  snapshot is taken within that cut. The balances of the banks are read before the cut and the replay starts at
+ *  the time they began to be read. Changes carry the resulting balance, transfers are audited once per side, so every
+ *  replayed change sets the balance of a single account. As the changes of an account are audited while the account
+ *  is locked by the {@link AuditLog#getLocks() account locks} of the log, they are logged in the order in which they
+ *  were made and the last replayed change of an account is the last change that was made. Replaying a change that
+ *  is already contained in the snapshot is therefore harmless, which means that the snapshot only needs to be older
+ *  than the restored time. Only changes that were audited without their resulting balance are replayed by adding
+ *  their amount.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+public class PointInTimeRecovery {
+
+    private static final int MAGIC = 0x45435350; // "ECSP"
+    private static final int VERSION = 2;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".dat";
+
+    /**
+     * The balances of all players and banks at a certain time.
+     * @since 1.2.0
+     */
+    public static final class State {
+
+        private final long time;
+        private final long replayFrom;
+        private final @NotNull Map<UUID, Double> players;
+        private final @NotNull Map<String, Double> banks;
+
+        private State(long time, long replayFrom, @NotNull Map<UUID, Double> players,
+                @NotNull Map<String, Double> banks) {
+            this.time = time;
+            this.replayFrom = replayFrom;
+            this.players = players;
+            this.banks = banks;
+        }
+
+        /**
+         * Obtains the time the balances are from.
+         * @return The time in milliseconds since the epoch
+         * @since 1.2.0
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * Obtains the balances of the players.
+         * @return An unmodifiable view of the balances
+         * @since 1.2.0
+         */
+        public @NotNull Map<UUID, Double> getPlayers() {
+            return Collections.unmodifiableMap(players);
+        }
+
+        /**
+         * Obtains the balances of the banks.
+         * @return An unmodifiable view of the balances
+         * @since 1.2.0
+         */
+        public @NotNull Map<String, Double> getBanks() {
+            return Collections.unmodifiableMap(banks);
+        }
+    }
+
+    private final @NotNull File directory;
+    private final @NotNull AuditLog log;
+    private final long retentionMillis;
+
+    /**
+     * Creates a new instance.
+     * @param directory The directory the snapshots are stored in, it is created if needed
+     * @param log The audit log the changes since a snapshot are read from
+     * @param retentionMillis The amount of milliseconds a restore should be possible for, 0 or less keeps all snapshots.
+     *  Should not exceed the retention period of the audit log.
+     * @since 1.2.0
+     */
+    public PointInTimeRecovery(@NotNull File directory, @NotNull AuditLog log, long retentionMillis) {
+        this.directory = directory;
+        this.log = log;
+        this.retentionMillis = retentionMillis;
+    }
+
+    /**
+     * Writes a snapshot of the balances of all players and banks and deletes snapshots that are no longer needed.
+     *  The storages may be modified concurrently.
+     * @param players The storage of the balances of the players
+     * @param banks The storage of the banks
+     * @return The time of the snapshot in milliseconds since the epoch
+     * @throws IOException If an IO Exception occurs while writing the snapshot
+     * @since 1.2.0
+     */
+    public long snapshot(@NotNull PlayerDataStorage players, @NotNull BankStorageEngine banks) throws IOException {
+        // Banks are not part of the cut, changes made while they are read are replayed
+        long replayFrom = System.currentTimeMillis();
+        Map<String, Double> bankBalances = new HashMap<>();
+        for (String name : banks.getBanks()) {
+            double balance = banks.getBalanceOrDefault(name, Double.NEGATIVE_INFINITY);
+            if (balance != Double.NEGATIVE_INFINITY) {
+                bankBalances.put(name, balance);
+            }
+        }
+        UUIDBalanceMap balances = new UUIDBalanceMap();
+        long time = players.snapshotBalances(balances::put);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create the snapshot directory " + directory.getPath());
+        }
+        File file = new File(directory, PREFIX + time + SUFFIX);
+        File temp = new File(directory, PREFIX + time + SUFFIX + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(temp))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(time);
+            out.writeLong(Math.min(replayFrom, time));
+            out.writeInt(balances.size());
+            balances.writeEntries((msb, lsb, balance) -> {
+                out.writeLong(msb);
+                out.writeLong(lsb);
+                out.writeDouble(balance);
+            });
+            out.writeInt(bankBalances.size());
+            for (Map.Entry<String, Double> bank : bankBalances.entrySet()) {
+                out.writeUTF(bank.getKey());
+                out.writeDouble(bank.getValue());
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        deleteExpired(time);
+        return time;
+    }
+
+    /**
+     * Deletes all snapshots that are older than the retention period, except for the most recent of them
+     *  which is still needed to restore the beginning of the retention period.
+     */
+    private void deleteExpired(long now) {
+        if (retentionMillis <= 0) {
+            return;
+        }
+        boolean needed = true;
+        for (File snapshot : snapshots().headMap(now - retentionMillis, true).descendingMap().values()) {
+            if (needed) {
+                needed = false;
+            } else if (!snapshot.delete()) {
+                onDeleteFailed(snapshot);
+            }
+        }
+    }
+
+    /**
+     * Called when an expired snapshot could not be deleted, deleting it is attempted again after the next snapshot.
+     * @param snapshot The snapshot file
+     * @since 1.2.0
+     */
+    protected void onDeleteFailed(@NotNull File snapshot) {
+        // Does nothing by default
+    }
+
+    private @NotNull TreeMap<Long, File> snapshots() {
+        TreeMap<Long, File> snapshots = new TreeMap<>();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return snapshots;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(PREFIX) && name.endsWith(SUFFIX)) {
+                try {
+                    snapshots.put(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())), file);
+                } catch (NumberFormatException ignored) {
+                    // Not one of our files
+                }
+            }
+        }
+        return snapshots;
+    }
+
+    /**
+     * Obtains the time of the oldest snapshot, before which no restore is possible.
+     * @return The time in milliseconds since the epoch, or Long.MAX_VALUE if there are no snapshots
+     * @since 1.2.0
+     */
+    public long getEarliestRestorableTime() {
+        TreeMap<Long, File> snapshots = snapshots();
+        return snapshots.isEmpty() ? Long.MAX_VALUE : snapshots.firstKey();
+    }
+
+    /**
+     * Rebuilds the balances of all players and banks as of the given time by loading the most recent snapshot
+     *  before that time and replaying the audited changes since then. The live storages are not touched.
+     * @param time The time in milliseconds since the epoch
+     * @return The balances as of that time, or null if there is no snapshot before that time
+     * @throws IOException If an IO Exception occurs while reading the snapshot or the audit log
+     * @since 1.2.0
+     */
+    public @Nullable State stage(long time) throws IOException {
+        Map.Entry<Long, File> snapshot = snapshots().floorEntry(time);
+        if (snapshot == null) {
+            return null;
+        }
+        State state = read(snapshot.getValue());
+        Map<UUID, Double> players = state.players;
+        Map<String, Double> banks = state.banks;
+        log.read(state.replayFrom, time, record -> {
+            if (!Double.isNaN(record.getBalance())) {
+                set(record.getBalanceAccount(), record.getBalance(), players, banks);
+                return;
+            }
+            // The resulting balance was not known when the change was audited
+            AccountKey account = record.getAccount();
+            double amount = record.getAmount();
+            switch (record.getAction()) {
+            case TRANSFER:
+                add(account, -amount, players, banks);
+                add(record.getCounterparty(), amount, players, banks);
+                break;
+            case SET:
+                set(account, amount, players, banks);
+                break;
+            case DEPOSIT:
+                add(account, amount, players, banks);
+                break;
+            case WITHDRAW:
+                add(account, -amount, players, banks);
+                break;
+            default:
+                break;
+            }
+        });
+        return new State(time, time, players, banks);
+    }
+
+    private static void set(@NotNull AccountKey account, double balance,
+            @NotNull Map<UUID, Double> players, @NotNull Map<String, Double> banks) {
+        if (account.isBank()) {
+            banks.put(account.getBank(), balance);
+        } else {
+            players.put(account.getPlayer(), balance);
+        }
+    }
+
+    private static void add(@Nullable AccountKey account, double amount,
+            @NotNull Map<UUID, Double> players, @NotNull Map<String, Double> banks) {
+        if (account == null) {
+            return;
+        }
+        if (account.isBank()) {
+            banks.merge(account.getBank(), amount, Double::sum);
+        } else {
+            players.merge(account.getPlayer(), amount, Double::sum);
+        }
+    }
+
+    private static @NotNull State read(@NotNull File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("The file " + file.getName() + " is not a snapshot of a known version.");
+            }
+            long time = in.readLong();
+            long replayFrom = in.readLong();
+            int count = in.readInt();
+            Map<UUID, Double> players = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                players.put(new UUID(in.readLong(), in.readLong()), in.readDouble());
+            }
+            count = in.readInt();
+            Map<String, Double> banks = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                banks.put(in.readUTF(), in.readDouble());
+            }
+            return new State(time, replayFrom, players, banks);
+        }
+    }
+
+    /**
+     * Swaps staged balances into the live storages. Players and banks that did not exist at the staged time
+     *  are set to a balance of 0 as they can not be removed, banks that were removed since then are recreated.
+     *  All {@link AuditLog#getLocks() account locks} of the log are held while the balances are swapped, so no
+     *  audited change can be made while only some balances were restored, and the balances of the players are
+     *  replaced by {@link PlayerDataStorage#setAll(Map)}, which excludes every other change of the players as well.
+     * @param state The staged balances
+     * @param players The storage of the balances of the players
+     * @param banks The storage of the banks
+     * @since 1.2.0
+     */
+    public void apply(@NotNull State state, @NotNull PlayerDataStorage players, @NotNull BankStorageEngine banks) {
+        AccountLocks locks = log.getLocks();
+        locks.lock(AccountLocks.ALL);
+        try {
+            for (Map.Entry<String, Double> entry : state.banks.entrySet()) {
+                if (banks.get(entry.getKey()) == null) {
+                    banks.add(new PlaceholderBank(entry.getKey(), entry.getValue()));
+                }
+            }
+            players.setAll(state.players);
+            for (String name : banks.getBanks()) {
+                Bank bank = banks.get(name);
+                if (bank != null) {
+                    synchronized (bank) {
+                        bank.setMoney(state.banks.getOrDefault(name, 0.0));
+                    }
+                }
+            }
+        } finally {
+            locks.unlock(AccountLocks.ALL);
+        }
+    }
+}
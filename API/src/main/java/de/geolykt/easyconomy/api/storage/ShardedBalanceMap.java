@@ -0,0 +1,55 @@
+package de.geolykt.easyconomy.api.storage;
+
+import java.util.function.Supplier;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A {@link StripedBalanceMap} whose stripes are selected by the upper bits of the UUID instead of it's hash,
+ *  so that every stripe holds a fixed range of the keyspace. This allows the {@link BalanceStorageEngine} to store
+ *  each stripe in a file of it's own, a so called shard, that can be saved and loaded independently of the others.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+public class ShardedBalanceMap extends StripedBalanceMap {
+
+    private final int shardShift;
+
+    /**
+     * Creates a new map with the given amount of shards.
+     * @param shardCount The amount of shards, needs to be a power of two and at least 2
+     * @since 1.2.0
+     */
+    public ShardedBalanceMap(int shardCount) {
+        this(shardCount, UUIDBalanceMap::new);
+    }
+
+    /**
+     * Creates a new map with the given amount of shards, whose stripes are created by the given factory.
+     * @param shardCount The amount of shards, needs to be a power of two and at least 2
+     * @param stripeFactory The factory that creates empty stripes
+     * @since 1.2.0
+     */
+    public ShardedBalanceMap(int shardCount, @NotNull Supplier<? extends UUIDBalanceMap> stripeFactory) {
+        super(shardCount, stripeFactory);
+        if (shardCount < 2) {
+            throw new IllegalArgumentException("A sharded map needs at least two shards.");
+        }
+        shardShift = 64 - Integer.numberOfTrailingZeros(shardCount);
+    }
+
+    /**
+     * Obtains the shard a UUID belongs to.
+     * @param mostSigBits The most significant bits of the UUID
+     * @return The index of the shard, which is also the index of it's stripe
+     * @since 1.2.0
+     */
+    public int shardIndex(long mostSigBits) {
+        return (int) (mostSigBits >>> shardShift);
+    }
+
+    @Override
+    protected int stripeIndex(long mostSigBits, long leastSigBits) {
+        return shardIndex(mostSigBits);
+    }
+}
@@ -0,0 +1,354 @@
+package de.geolykt.easyconomy.api.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import de.geolykt.easyconomy.api.FixedPoint;
+import de.geolykt.easyconomy.api.PlayerDataStorage;
+
+/**
+ * A {@link PlayerDataStorage} that stores the balances in an embedded SQLite or H2 database,
+ *  which allows to query the balances with any SQL tool.
+ * <br/>
+ * All balances are cached in a {@link StripedBalanceMap}, so reads never touch the database. Changes are collected
+ *  per player and written as a single batch of upserts within one transaction whenever the storage is saved.
+ *  The table is structured as follows:
+ * <pre>
+ * CREATE TABLE balances (msb BIGINT NOT NULL, lsb BIGINT NOT NULL, balance DOUBLE NOT NULL, PRIMARY KEY (msb, lsb))
+ * </pre>
+ * where msb and lsb are the most and least significant bits of the UUID of the player.
+ * <br/>
+ * Like the {@link BalanceStorageEngine} the storage does not log anything by itself and needs to be loaded
+ *  via {@link #reload()} after it was constructed.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+public class SqlBalanceStorage implements PlayerDataStorage, Closeable {
+
+    /**
+     * The amount of statements that are sent to the database at once.
+     */
+    private static final int BATCH_SIZE = 1024;
+
+    private final @NotNull File database;
+    private final @NotNull SqlDialect dialect;
+    private final @NotNull StripedBalanceMap balances = new StripedBalanceMap();
+    private final @Nullable Leaderboard leaderboard;
+    private volatile @Nullable FixedPoint fixedPoint;
+    // Serialises all access to the connection
+    private final @NotNull Object connectionLock = new Object();
+    private @Nullable Connection connection;
+
+    // The latest balance of every player that was changed since the last save, guarded by the pending lock
+    private @NotNull UUIDBalanceMap pending = new UUIDBalanceMap();
+    private final @NotNull Object pendingLock = new Object();
+
+    /**
+     * Creates a new storage that stores the balances in the given database.
+     * @param database The database file, which should end with the {@link SqlDialect#getFileExtension() file extension}
+     *  of the dialect
+     * @param dialect The database to use
+     * @param leaderboardSize The amount of accounts on the leaderboard, 0 to disable it
+     * @since 1.2.0
+     */
+    public SqlBalanceStorage(@NotNull File database, @NotNull SqlDialect dialect, int leaderboardSize) {
+        this.database = database;
+        this.dialect = dialect;
+        if (leaderboardSize > 0) {
+            leaderboard = new Leaderboard(balances, leaderboardSize);
+        } else {
+            leaderboard = null;
+        }
+        Leaderboard leaderboard = this.leaderboard;
+        balances.setUpdateListener((msb, lsb, balance) -> {
+            synchronized (pendingLock) {
+                pending.put(msb, lsb, balance);
+            }
+            if (leaderboard != null) {
+                leaderboard.update(msb, lsb, balance);
+            }
+        });
+    }
+
+    @Override
+    public double getOrDefault(@NotNull UUID player, double defaultValue) {
+        return balances.getOrDefault(player, defaultValue);
+    }
+
+    @Override
+    public @NotNull List<UUID> getAllKeys() {
+        List<UUID> keys = new ArrayList<>(balances.size());
+        balances.forEach((msb, lsb, balance) -> keys.add(new UUID(msb, lsb)));
+        return keys;
+    }
+
+    @Override
+    public void set(@NotNull UUID key, double value) {
+        balances.put(key, value);
+    }
+
+    @Override
+    public double addAndGet(@NotNull UUID key, double amount) {
+        return balances.update(key, 0.0, old -> add(old, amount));
+    }
+
+    @Override
+    public double addAndGetIfAtLeast(@NotNull UUID key, double amount, double minimum) {
+        return balances.updateIfAtLeast(key.getMostSignificantBits(), key.getLeastSignificantBits(), 0.0, minimum,
+                old -> add(old, amount));
+    }
+
+    @Override
+    public boolean transfer(@NotNull UUID src, @NotNull UUID dest, double amount, double minimum) {
+        return balances.transfer(src.getMostSignificantBits(), src.getLeastSignificantBits(), 0.0,
+                dest.getMostSignificantBits(), dest.getLeastSignificantBits(), 0.0, minimum,
+                old -> add(old, -amount), old -> add(old, amount));
+    }
+
+    /**
+     * Adds an amount to a balance, in minor units if fixed-point balances are enabled.
+     */
+    private double add(double balance, double amount) {
+        FixedPoint fixedPoint = this.fixedPoint;
+        if (fixedPoint != null) {
+            return fixedPoint.add(balance, amount);
+        }
+        // BigDecimal for less approximations when dealing with doubles (due to how floating point values are handled in
+        // Java, there will always be approximations) ( https://docs.oracle.com/cd/E19957-01/806-3568/ncg_goldberg.html )
+        return BigDecimal.valueOf(balance).add(BigDecimal.valueOf(amount)).doubleValue();
+    }
+
+    @Override
+    public boolean has(@NotNull UUID key) {
+        return balances.containsKey(key);
+    }
+
+    @Override
+    public @NotNull Map<UUID, Double> getBaltop() {
+        Leaderboard leaderboard = this.leaderboard;
+        if (leaderboard == null) {
+            return Collections.emptyMap();
+        }
+        return leaderboard.getTop();
+    }
+
+    /**
+     * Writes all balances that were changed since the last save to the database in a single transaction.
+     * @throws IOException If the database could not be written to, in which case the changes are retried during
+     *  the next save
+     * @since 1.2.0
+     */
+    @Override
+    public void save() throws IOException {
+        long time = System.currentTimeMillis();
+        synchronized (connectionLock) {
+            UUIDBalanceMap changes;
+            synchronized (pendingLock) {
+                if (pending.size() == 0) {
+                    return;
+                }
+                changes = pending;
+                pending = new UUIDBalanceMap();
+            }
+            try {
+                Connection connection = getConnection();
+                try (PreparedStatement upsert = connection.prepareStatement(dialect.getUpsert("balances", "msb, lsb", "balance"))) {
+                    int[] batched = new int[1];
+                    changes.writeEntries((msb, lsb, balance) -> {
+                        try {
+                            upsert.setLong(1, msb);
+                            upsert.setLong(2, lsb);
+                            upsert.setDouble(3, balance);
+                            upsert.addBatch();
+                            if (++batched[0] == BATCH_SIZE) {
+                                upsert.executeBatch();
+                                batched[0] = 0;
+                            }
+                        } catch (SQLException e) {
+                            throw new IOException(e);
+                        }
+                    });
+                    upsert.executeBatch();
+                    connection.commit();
+                } catch (SQLException | IOException e) {
+                    connection.rollback();
+                    throw e;
+                }
+            } catch (SQLException | IOException e) {
+                synchronized (pendingLock) {
+                    // Changes made in the meantime are more recent
+                    changes.forEach((msb, lsb, balance) -> {
+                        if (!pending.containsKey(msb, lsb)) {
+                            pending.put(msb, lsb, balance);
+                        }
+                    });
+                }
+                throw e instanceof IOException ? (IOException) e : new IOException("Unable to save the balances.", e);
+            }
+        }
+        onSaved(System.currentTimeMillis() - time);
+    }
+
+    /**
+     * Discards all unsaved changes and loads the balances from the database, creating the table if needed.
+     *  The balances are read in full before the cache is replaced, so if they can not be read the cache and the
+     *  unsaved changes are kept and {@link #onLoadFailed(IOException)} is called.
+     * @since 1.2.0
+     */
+    @Override
+    public void reload() {
+        long time = System.currentTimeMillis();
+        synchronized (connectionLock) {
+            UUIDBalanceMap loaded;
+            try {
+                Connection connection = getConnection();
+                try (Statement statement = connection.createStatement()) {
+                    try (ResultSet count = statement.executeQuery("SELECT COUNT(*) FROM balances")) {
+                        loaded = new UUIDBalanceMap(count.next() ? count.getInt(1) : 0);
+                    }
+                    statement.setFetchSize(BATCH_SIZE);
+                    try (ResultSet rows = statement.executeQuery("SELECT msb, lsb, balance FROM balances")) {
+                        while (rows.next()) {
+                            loaded.put(rows.getLong(1), rows.getLong(2), rows.getDouble(3));
+                        }
+                    }
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                onLoadFailed(new IOException("Unable to load the balances.", e));
+                return;
+            }
+            balances.exclusive(() -> {
+                balances.clear();
+                synchronized (pendingLock) {
+                    pending = new UUIDBalanceMap();
+                }
+                balances.ensureCapacity(loaded.size());
+                loaded.forEach(balances::load);
+            });
+            if (leaderboard != null) {
+                leaderboard.invalidate();
+                leaderboard.rebuildAsync();
+            }
+            onLoaded(System.currentTimeMillis() - time);
+        }
+    }
+
+    private @NotNull Connection getConnection() throws SQLException {
+        Connection connection = this.connection;
+        if (connection == null) {
+            database.getAbsoluteFile().getParentFile().mkdirs();
+            connection = dialect.connect(database);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS balances (msb BIGINT NOT NULL, lsb BIGINT NOT NULL,"
+                        + " balance DOUBLE NOT NULL, PRIMARY KEY (msb, lsb))");
+            }
+            connection.commit();
+            this.connection = connection;
+        }
+        return connection;
+    }
+
+    /**
+     * Saves the pending changes and writes a consistent copy of the database to the backup directory.
+     * @param backupDir The directory to write the backup to
+     * @throws IOException If the backup could not be written
+     * @since 1.2.0
+     */
+    @Override
+    public void backup(@NotNull File backupDir) throws IOException {
+        synchronized (connectionLock) {
+            save();
+            File backupFile = new File(backupDir, "backup-bal-" + new SimpleDateFormat("yyyy-MM-dd_HH:mm:ss").format(Date.from(Instant.now()))
+                    + (dialect == SqlDialect.H2 ? ".zip" : dialect.getFileExtension()));
+            try (Statement statement = getConnection().createStatement()) {
+                // Neither VACUUM INTO nor BACKUP may run within a transaction
+                getConnection().setAutoCommit(true);
+                try {
+                    statement.execute(dialect.getBackup(backupFile));
+                } finally {
+                    getConnection().setAutoCommit(false);
+                }
+            } catch (SQLException e) {
+                throw new IOException("Unable to back up the balances.", e);
+            }
+        }
+    }
+
+    /**
+     * Sets the fixed-point scale balance changes are computed with, see {@link FixedPoint}.
+     * @param fixedPoint The scale, or null to add balances via {@link BigDecimal BigDecimals}
+     * @since 1.2.0
+     */
+    public void setFixedPoint(@Nullable FixedPoint fixedPoint) {
+        this.fixedPoint = fixedPoint;
+    }
+
+    @Override
+    public @NotNull File getStorageFile() {
+        return database;
+    }
+
+    /**
+     * Closes the connection to the database. Should be called after the final save.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (connectionLock) {
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    throw new IOException(e);
+                } finally {
+                    connection = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Called after the balances were loaded from the database.
+     * @param millis The time it took to load the balances in milliseconds
+     * @since 1.2.0
+     */
+    protected void onLoaded(long millis) {
+        // Does nothing by default
+    }
+
+    /**
+     * Called if the balances could not be loaded.
+     * @param e The exception that prevented the balances from being loaded
+     * @since 1.2.0
+     */
+    protected void onLoadFailed(@NotNull IOException e) {
+        e.printStackTrace();
+    }
+
+    /**
+     * Called after changes were written to the database.
+     * @param millis The time it took to write the changes in milliseconds
+     * @since 1.2.0
+     */
+    protected void onSaved(long millis) {
+        // Does nothing by default
+    }
+}
@@ -0,0 +1,262 @@
+package de.geolykt.easyconomy.api.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import de.geolykt.easyconomy.api.Bank;
+import de.geolykt.easyconomy.api.BankStorageEngine;
+
+/**
+ * A {@link BankStorageEngine} that stores the banks in an embedded SQLite or H2 database, usually the same database
+ *  as the one of the {@link SqlBalanceStorage}. The table is structured as follows:
+ * <pre>
+ * CREATE TABLE banks (name VARCHAR(127) NOT NULL PRIMARY KEY, balance DOUBLE NOT NULL, members BLOB NOT NULL)
+ * </pre>
+ * where members are the UUIDs of the members, 16 bytes each.
+ * <br/>
+ * As banks are mutable, all banks are written as a single batch once any of them might have been modified.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+public class SqlBankStorage implements BankStorageEngine, Closeable {
+
+    /**
+     * Creates the platform specific bank instances from the rows of the database.
+     * @since 1.2.0
+     */
+    @FunctionalInterface
+    public static interface BankFactory {
+        public @NotNull Bank create(@NotNull String name, double balance, @NotNull Set<UUID> members);
+    }
+
+    private final @NotNull File database;
+    private final @NotNull SqlDialect dialect;
+    private final @NotNull BankFactory factory;
+    private final @NotNull Map<String, Bank> banks = new ConcurrentHashMap<>();
+    // Serialises all access to the connection
+    private final @NotNull Object connectionLock = new Object();
+    private @Nullable Connection connection;
+    // The names of the banks within the database, guarded by the connection lock
+    private @NotNull Set<String> persisted = new HashSet<>();
+    private volatile boolean modified;
+
+    /**
+     * Creates a new storage that stores the banks in the given database. {@link #reload()} needs to be called
+     *  to load the banks.
+     * @param database The database file
+     * @param dialect The database to use
+     * @param factory The factory that creates the banks
+     * @since 1.2.0
+     */
+    public SqlBankStorage(@NotNull File database, @NotNull SqlDialect dialect, @NotNull BankFactory factory) {
+        this.database = database;
+        this.dialect = dialect;
+        this.factory = factory;
+    }
+
+    @Override
+    public double getBalanceOrDefault(@NotNull String bank, double defaultVal) {
+        Bank b = banks.get(bank);
+        return b == null ? defaultVal : b.getMoney();
+    }
+
+    @Override
+    public @NotNull Set<String> getBanks() {
+        modified = true; // we have to assume that it's modified
+        return banks.keySet();
+    }
+
+    @Override
+    public boolean has(@NotNull String bank) {
+        return banks.containsKey(bank);
+    }
+
+    @Override
+    public void add(@NotNull Bank bank) {
+        banks.put(bank.getName(), bank);
+        modified = true;
+    }
+
+    @Override
+    public @Nullable Bank get(@NotNull String name) {
+        modified = true; // We have to assume that it was modified since the returning account instance could be modified.
+        return banks.get(name);
+    }
+
+    @Override
+    public @Nullable Bank remove(@NotNull String name) {
+        modified = true;
+        return banks.remove(name);
+    }
+
+    /**
+     * Writes all banks to the database and removes deleted banks from it in a single transaction,
+     *  if any bank might have been modified.
+     * @throws IOException If the database could not be written to
+     * @since 1.2.0
+     */
+    @Override
+    public void save() throws IOException {
+        synchronized (connectionLock) {
+            if (!modified) {
+                return;
+            }
+            // Reset the flag beforehand so changes made during the save are not forgotten
+            modified = false;
+            Set<String> names = new HashSet<>();
+            try {
+                Connection connection = getConnection();
+                try (PreparedStatement upsert = connection.prepareStatement(dialect.getUpsert("banks", "name", "balance, members"));
+                        PreparedStatement delete = connection.prepareStatement("DELETE FROM banks WHERE name = ?")) {
+                    for (Bank bank : banks.values()) {
+                        names.add(bank.getName());
+                        upsert.setString(1, bank.getName());
+                        upsert.setDouble(2, bank.getMoney());
+                        upsert.setBytes(3, getMembers(bank));
+                        upsert.addBatch();
+                    }
+                    upsert.executeBatch();
+                    for (String name : persisted) {
+                        if (!names.contains(name)) {
+                            delete.setString(1, name);
+                            delete.addBatch();
+                        }
+                    }
+                    delete.executeBatch();
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                }
+            } catch (SQLException e) {
+                modified = true;
+                throw new IOException("Unable to save the banks.", e);
+            }
+            persisted = names;
+        }
+    }
+
+    /**
+     * Encodes the members of the bank, see {@link Bank#getMembers()}.
+     */
+    private static byte @NotNull[] getMembers(@NotNull Bank bank) {
+        Set<UUID> members = bank.getMembers();
+        ByteBuffer out = ByteBuffer.allocate(members.size() * 16);
+        for (UUID member : members) {
+            out.putLong(member.getMostSignificantBits()).putLong(member.getLeastSignificantBits());
+        }
+        return out.array();
+    }
+
+    /**
+     * Discards all unsaved changes and loads the banks from the database, creating the table if needed.
+     * @throws IOException If the banks could not be loaded, in which case the banks in memory are kept
+     * @since 1.2.0
+     */
+    public void reload() throws IOException {
+        synchronized (connectionLock) {
+            try {
+                Connection connection = getConnection();
+                Map<String, Bank> loaded = new HashMap<>();
+                try (Statement statement = connection.createStatement();
+                        ResultSet rows = statement.executeQuery("SELECT name, balance, members FROM banks")) {
+                    while (rows.next()) {
+                        String name = rows.getString(1);
+                        ByteBuffer members = ByteBuffer.wrap(rows.getBytes(3));
+                        Set<UUID> uuids = new HashSet<>();
+                        while (members.remaining() >= 16) {
+                            uuids.add(new UUID(members.getLong(), members.getLong()));
+                        }
+                        loaded.put(name, factory.create(name, rows.getDouble(2), uuids));
+                    }
+                }
+                connection.commit();
+                // The banks are only replaced once all of them were read
+                banks.clear();
+                banks.putAll(loaded);
+                persisted = new HashSet<>(loaded.keySet());
+                modified = false;
+            } catch (SQLException e) {
+                throw new IOException("Unable to load the banks.", e);
+            }
+        }
+    }
+
+    private @NotNull Connection getConnection() throws SQLException {
+        Connection connection = this.connection;
+        if (connection == null) {
+            database.getAbsoluteFile().getParentFile().mkdirs();
+            connection = dialect.connect(database);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS banks (name VARCHAR(127) NOT NULL PRIMARY KEY,"
+                        + " balance DOUBLE NOT NULL, members BLOB NOT NULL)");
+            }
+            connection.commit();
+            this.connection = connection;
+        }
+        return connection;
+    }
+
+    /**
+     * Saves the banks and writes a consistent copy of the entire database to the backup directory.
+     * @param backupDirectory The directory to write the backup to
+     * @throws IOException If the backup could not be written
+     * @since 1.2.0
+     */
+    @Override
+    public void backup(@NotNull File backupDirectory) throws IOException {
+        synchronized (connectionLock) {
+            save();
+            File backupFile = new File(backupDirectory, "backup-bank-" + new SimpleDateFormat("yyyy-MM-dd_HH:mm:ss").format(Date.from(Instant.now()))
+                    + (dialect == SqlDialect.H2 ? ".zip" : dialect.getFileExtension()));
+            try (Statement statement = getConnection().createStatement()) {
+                // Neither VACUUM INTO nor BACKUP may run within a transaction
+                getConnection().setAutoCommit(true);
+                try {
+                    statement.execute(dialect.getBackup(backupFile));
+                } finally {
+                    getConnection().setAutoCommit(false);
+                }
+            } catch (SQLException e) {
+                throw new IOException("Unable to back up the banks.", e);
+            }
+        }
+    }
+
+    /**
+     * Closes the connection to the database. Should be called after the final save.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (connectionLock) {
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    throw new IOException(e);
+                } finally {
+                    connection = null;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package de.geolykt.easyconomy.api.storage;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The embedded databases supported by the {@link SqlBalanceStorage} and {@link SqlBankStorage}. The JDBC driver
+ *  of the database needs to be present at runtime, Bukkit servers usually ship the SQLite driver.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+public enum SqlDialect {
+
+    /**
+     * SQLite 3.24 or later, used in WAL mode so reads are not blocked by writes.
+     */
+    SQLITE("org.sqlite.JDBC", ".db") {
+        @Override
+        protected @NotNull String getUrl(@NotNull File database) {
+            return "jdbc:sqlite:" + database.getAbsolutePath();
+        }
+
+        @Override
+        protected void configure(@NotNull Statement statement) throws SQLException {
+            statement.execute("PRAGMA journal_mode=WAL");
+            // Durable enough in WAL mode while not syncing on every commit
+            statement.execute("PRAGMA synchronous=NORMAL");
+            // The balance and bank storages use separate connections to the same file
+            statement.execute("PRAGMA busy_timeout=10000");
+        }
+
+        @Override
+        protected @NotNull String getUpsert(@NotNull String table, @NotNull String keys, @NotNull String values) {
+            String[] columns = values.split(", ");
+            StringBuilder update = new StringBuilder();
+            for (String column : columns) {
+                if (update.length() != 0) {
+                    update.append(", ");
+                }
+                update.append(column).append(" = excluded.").append(column);
+            }
+            return "INSERT INTO " + table + " (" + keys + ", " + values + ") VALUES (" + placeholders(keys, values)
+                    + ") ON CONFLICT (" + keys + ") DO UPDATE SET " + update;
+        }
+
+        @Override
+        protected @NotNull String getBackup(@NotNull File target) {
+            return "VACUUM INTO '" + target.getAbsolutePath().replace("'", "''") + "'";
+        }
+    },
+
+    /**
+     * H2 1.4 or later. H2 stores it's data in a log structured MVStore, so there is no WAL mode to enable.
+     */
+    H2("org.h2.Driver", ".mv.db") {
+        @Override
+        protected @NotNull String getUrl(@NotNull File database) {
+            String path = database.getAbsolutePath();
+            // H2 appends the extension by itself
+            return "jdbc:h2:" + path.substring(0, path.length() - getFileExtension().length());
+        }
+
+        @Override
+        protected void configure(@NotNull Statement statement) throws SQLException {
+            // Nothing to configure
+        }
+
+        @Override
+        protected @NotNull String getUpsert(@NotNull String table, @NotNull String keys, @NotNull String values) {
+            return "MERGE INTO " + table + " (" + keys + ", " + values + ") KEY (" + keys + ") VALUES ("
+                    + placeholders(keys, values) + ")";
+        }
+
+        @Override
+        protected @NotNull String getBackup(@NotNull File target) {
+            return "BACKUP TO '" + target.getAbsolutePath().replace("'", "''") + "'";
+        }
+    };
+
+    private final @NotNull String driver;
+    private final @NotNull String fileExtension;
+
+    private SqlDialect(@NotNull String driver, @NotNull String fileExtension) {
+        this.driver = driver;
+        this.fileExtension = fileExtension;
+    }
+
+    /**
+     * Obtains the extension of the database files.
+     * @return The file extension, including the leading dot
+     * @since 1.2.0
+     */
+    public @NotNull String getFileExtension() {
+        return fileExtension;
+    }
+
+    /**
+     * Obtains the dialect of the given name, ignoring the case.
+     * @param name The name of the dialect, for example "sqlite"
+     * @return The dialect, or null if there is none with that name
+     * @since 1.2.0
+     */
+    public static @Nullable SqlDialect byName(@NotNull String name) {
+        for (SqlDialect dialect : values()) {
+            if (dialect.name().equalsIgnoreCase(name)) {
+                return dialect;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Opens a connection to the database and configures it. Auto-commit is disabled.
+     * @param database The database file
+     * @return The connection
+     * @throws SQLException If the connection could not be established or the driver is not present
+     * @since 1.2.0
+     */
+    public @NotNull Connection connect(@NotNull File database) throws SQLException {
+        try {
+            // Drivers of plugins are not found by the service loader of the DriverManager
+            Class.forName(driver);
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("The JDBC driver " + driver + " is not present.", e);
+        }
+        Connection connection = DriverManager.getConnection(getUrl(database));
+        try (Statement statement = connection.createStatement()) {
+            configure(statement);
+        }
+        connection.setAutoCommit(false);
+        return connection;
+    }
+
+    protected abstract @NotNull String getUrl(@NotNull File database);
+
+    protected abstract void configure(@NotNull Statement statement) throws SQLException;
+
+    /**
+     * Obtains a statement that inserts a row or updates it if a row with the same keys exists.
+     * @param table The name of the table
+     * @param keys The comma separated primary key columns
+     * @param values The comma separated value columns, which are bound after the keys
+     * @return The SQL statement
+     * @since 1.2.0
+     */
+    protected abstract @NotNull String getUpsert(@NotNull String table, @NotNull String keys, @NotNull String values);
+
+    /**
+     * Obtains a statement that writes a consistent copy of the database to the given file.
+     * @param target The backup file, which must not exist yet
+     * @return The SQL statement
+     * @since 1.2.0
+     */
+    protected abstract @NotNull String getBackup(@NotNull File target);
+
+    private static @NotNull String placeholders(@NotNull String keys, @NotNull String values) {
+        int columns = keys.split(", ").length + values.split(", ").length;
+        StringBuilder builder = new StringBuilder("?");
+        for (int i = 1; i < columns; i++) {
+            builder.append(", ?");
+        }
+        return builder.toString();
+    }
+}
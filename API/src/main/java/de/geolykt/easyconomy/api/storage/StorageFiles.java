@@ -0,0 +1,57 @@
+package de.geolykt.easyconomy.api.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Utilities for writing storage files.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+public final class StorageFiles {
+
+    /**
+     * Writes the contents of a file to a stream.
+     * @since 1.2.0
+     */
+    @FunctionalInterface
+    public static interface StreamWriter {
+        public void write(@NotNull OutputStream out) throws IOException;
+    }
+
+    private StorageFiles() {
+        // Utility class
+    }
+
+    /**
+     * Replaces the contents of the target file atomically by writing them to a temporary file first, which is then
+     *  synced to disk and renamed to the target. Readers (and crashes) will thus only ever see the complete old or the
+     *  complete new file.
+     * @param target The file to replace
+     * @param writer The writer that writes the new contents of the file
+     * @throws IOException If an IO Exception occurs while writing or renaming the file
+     * @since 1.2.0
+     */
+    public static void writeAtomically(@NotNull File target, @NotNull StreamWriter writer) throws IOException {
+        File temp = new File(target.getParentFile(), target.getName() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(temp)) {
+            OutputStream out = new BufferedOutputStream(fileOut, 1 << 16);
+            writer.write(out);
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        try {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package de.geolykt.easyconomy.api.storage;
+
+import org.jetbrains.annotations.Nullable;
+
+import de.geolykt.easyconomy.api.FixedPoint;
+
+/**
+ * The settings of a {@link BalanceStorageEngine}, which are usually read from the configuration of the platform.
+ *  All setters return the instance so they can be chained.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+public class StorageSettings {
+
+    private boolean memoryMapped = false;
+    private int format = 2;
+    private double defaultBalance = 0.0;
+    private boolean journaled = false;
+    private long journalCommitInterval = 200L;
+    private long checkpointRecords = 100_000L;
+    private int leaderboardSize = 10;
+    private boolean balanceIndex = false;
+    private int shards = 0;
+    private long coldAfter = 0L;
+    private boolean offHeap = false;
+    private @Nullable FixedPoint fixedPoint = null;
+
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    /**
+     * Sets whether the balances should be kept in a memory mapped file that uses the v3 storage format
+     *  and is updated in place. Defaults to false.
+     * @param memoryMapped True to use a {@link MappedBalanceTable}
+     * @return The instance
+     * @since 1.2.0
+     */
+    public StorageSettings setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+        return this;
+    }
+
+    public int getFormat() {
+        return format;
+    }
+
+    /**
+     * Sets the storage format the file is saved in if it is not memory mapped. Defaults to 2.
+     * @param format Either 2 or {@link BalanceFileWriter#COMPACT_FORMAT_VERSION 4}
+     * @return The instance
+     * @throws IllegalArgumentException If the format can not be written
+     * @since 1.2.0
+     */
+    public StorageSettings setFormat(int format) {
+        if (format != 2 && format != BalanceFileWriter.COMPACT_FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported storage format: v" + format);
+        }
+        this.format = format;
+        return this;
+    }
+
+    public double getDefaultBalance() {
+        return defaultBalance;
+    }
+
+    /**
+     * Sets the balance new players start with. The v2 storage format stores accounts that still have this balance
+     *  without their balance. Defaults to 0.
+     * @param defaultBalance The starting balance
+     * @return The instance
+     * @since 1.2.0
+     */
+    public StorageSettings setDefaultBalance(double defaultBalance) {
+        this.defaultBalance = defaultBalance;
+        return this;
+    }
+
+    public boolean isJournaled() {
+        return journaled;
+    }
+
+    public long getJournalCommitInterval() {
+        return journalCommitInterval;
+    }
+
+    public long getCheckpointRecords() {
+        return checkpointRecords;
+    }
+
+    /**
+     * Sets whether changes should be appended to a {@link BalanceJournal}, in which case the storage file is only
+     *  rewritten once enough changes accumulated. Disabled by default.
+     * @param journaled True to use a journal
+     * @param commitInterval The interval in milliseconds in which the journal is committed
+     * @param checkpointRecords The amount of journaled changes after which the storage file is rewritten during a save
+     * @return The instance
+     * @since 1.2.0
+     */
+    public StorageSettings setJournal(boolean journaled, long commitInterval, long checkpointRecords) {
+        this.journaled = journaled;
+        journalCommitInterval = commitInterval;
+        this.checkpointRecords = checkpointRecords;
+        return this;
+    }
+
+    public int getLeaderboardSize() {
+        return leaderboardSize;
+    }
+
+    /**
+     * Sets the amount of accounts on the {@link Leaderboard}. Defaults to 10.
+     * @param leaderboardSize The size of the leaderboard, 0 to disable it
+     * @return The instance
+     * @since 1.2.0
+     */
+    public StorageSettings setLeaderboardSize(int leaderboardSize) {
+        this.leaderboardSize = leaderboardSize;
+        return this;
+    }
+
+    public boolean isBalanceIndexed() {
+        return balanceIndex;
+    }
+
+    /**
+     * Sets whether all accounts should be kept in a {@link BalanceIndex} ordered by their balance, which answers
+     *  the rank of a player, any page of the leaderboard and balance ranges without scanning all accounts.
+     *  The index replaces the {@link Leaderboard}, which only knows the top accounts. Disabled by default.
+     * @param balanceIndex True to maintain the index
+     * @return The instance
+     * @since 1.2.0
+     */
+    public StorageSettings setBalanceIndexed(boolean balanceIndex) {
+        this.balanceIndex = balanceIndex;
+        return this;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * Sets the amount of files the balances are split into, each of which holds a range of the keyspace and is saved
+     *  only if it was modified. The shards are saved and loaded in parallel. Sharding is not used by memory mapped
+     *  storages and is disabled by default.
+     * @param shards The amount of shards, a power of two between 2 and 4096, or 0 to store all balances in a single file
+     * @return The instance
+     * @throws IllegalArgumentException If the amount of shards is invalid
+     * @since 1.2.0
+     */
+    public StorageSettings setShards(int shards) {
+        if (shards != 0 && (shards < 2 || shards > 4096 || Integer.bitCount(shards) != 1)) {
+            throw new IllegalArgumentException("The amount of shards must be a power of two between 2 and 4096.");
+        }
+        this.shards = shards;
+        return this;
+    }
+
+    public long getColdAfter() {
+        return coldAfter;
+    }
+
+    /**
+     * Sets the time after which accounts that were not used are moved out of memory into a sorted cold file,
+     *  from which they are loaded again once they are used. Tiering is not used by memory mapped storages
+     *  and is disabled by default.
+     * @param coldAfter The time in milliseconds, 0 to keep all accounts in memory
+     * @return The instance
+     * @throws IllegalArgumentException If the time is negative
+     * @since 1.2.0
+     */
+    public StorageSettings setColdAfter(long coldAfter) {
+        if (coldAfter < 0) {
+            throw new IllegalArgumentException("The time after which accounts are moved to the cold file may not be negative.");
+        }
+        this.coldAfter = coldAfter;
+        return this;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * Sets whether the balances should be kept in direct memory outside of the heap, see {@link DirectBalanceMap}.
+     *  The storage files are the same either way, so this can be toggled at any time. Memory mapped storages are
+     *  off-heap already and ignore this setting. Disabled by default.
+     * @param offHeap True to keep the balances off the heap
+     * @return The instance
+     * @since 1.2.0
+     */
+    public StorageSettings setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+        return this;
+    }
+
+    public @Nullable FixedPoint getFixedPoint() {
+        return fixedPoint;
+    }
+
+    /**
+     * Sets the fixed-point scale balance changes are computed with, see {@link FixedPoint}. Defaults to null,
+     *  in which case balances are added via {@link java.math.BigDecimal BigDecimals}.
+     * @param fixedPoint The scale, or null to disable fixed-point arithmetic
+     * @return The instance
+     * @since 1.2.0
+     */
+    public StorageSettings setFixedPoint(@Nullable FixedPoint fixedPoint) {
+        this.fixedPoint = fixedPoint;
+        return this;
+    }
+}
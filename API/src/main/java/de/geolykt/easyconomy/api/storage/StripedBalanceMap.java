@@ -0,0 +1,671 @@
+package de.geolykt.easyconomy.api.storage;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Supplier;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A thread safe UUID to balance map that splits the keyspace into several {@link UUIDBalanceMap} stripes,
+ *  each of which is guarded by it's own monitor. Operations on different players therefore seldom contend with
+ *  each other and read-modify-write operations such as {@link #update(long, long, double, DoubleUnaryOperator)}
+ *  are atomic without needing a global lock.
+ * <br/>
+ * {@link #snapshot() Snapshots} are copy-on-write: taking one only marks the stripes as shared, the first write to a
+ *  shared stripe then copies it. Saving a snapshot thus never holds the lock of a stripe. The original of a copied
+ *  stripe is {@link UUIDBalanceMap#free() freed} once the last snapshot that uses it is closed, so snapshots must not
+ *  be used after closing them.
+ * <br/>
+ * The stripes are {@link UUIDBalanceMap UUIDBalanceMaps} by default, {@link DirectBalanceMap DirectBalanceMaps}
+ *  can be used instead to keep the entries off the heap.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+public class StripedBalanceMap implements BalanceTable {
+
+    /**
+     * The default amount of stripes, must be a power of two.
+     */
+    public static final int DEFAULT_STRIPES = 64;
+
+    private final @NotNull Object[] locks;
+    // Guarded by the lock with the same index
+    private final @NotNull UUIDBalanceMap[] stripes;
+    // The amount of unreleased snapshots that share the stripe, guarded by the lock with the same index
+    private final int @NotNull[] shared;
+    // Stripes that were replaced while they were shared, mapped to the amount of snapshots that still use them.
+    // They are freed once the last of these snapshots is released, which matters for stripes in direct memory.
+    private final @NotNull Map<UUIDBalanceMap, Integer> detached = new IdentityHashMap<>();
+    private final @NotNull Supplier<? extends UUIDBalanceMap> stripeFactory;
+    private final int stripeShift;
+    private volatile @Nullable UUIDBalanceMap.EntryConsumer updateListener;
+
+    public StripedBalanceMap() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * Creates a new map with the given amount of stripes.
+     * @param stripeCount The amount of stripes, needs to be a power of two
+     * @since 1.2.0
+     */
+    public StripedBalanceMap(int stripeCount) {
+        this(stripeCount, UUIDBalanceMap::new);
+    }
+
+    /**
+     * Creates a new map with the given amount of stripes, which are created by the given factory.
+     * @param stripeCount The amount of stripes, needs to be a power of two
+     * @param stripeFactory The factory that creates empty stripes, such as {@code DirectBalanceMap::new}
+     * @since 1.2.0
+     */
+    public StripedBalanceMap(int stripeCount, @NotNull Supplier<? extends UUIDBalanceMap> stripeFactory) {
+        if (stripeCount < 1 || Integer.bitCount(stripeCount) != 1) {
+            throw new IllegalArgumentException("The amount of stripes must be a power of two.");
+        }
+        locks = new Object[stripeCount];
+        stripes = new UUIDBalanceMap[stripeCount];
+        shared = new int[stripeCount];
+        this.stripeFactory = stripeFactory;
+        for (int i = 0; i < stripeCount; i++) {
+            locks[i] = new Object();
+            stripes[i] = stripeFactory.get();
+        }
+        // The stripe is selected via the upper bits of the hash as the stripes themselves use the lower bits
+        stripeShift = 32 - Integer.numberOfTrailingZeros(stripeCount);
+    }
+
+    protected int stripeIndex(long mostSigBits, long leastSigBits) {
+        if (stripes.length == 1) {
+            return 0;
+        }
+        return UUIDBalanceMap.hash(mostSigBits, leastSigBits) >>> stripeShift;
+    }
+
+    /**
+     * Obtains the stripe for writing, copying it first if it is shared with a snapshot.
+     * The caller must hold the lock of the stripe.
+     */
+    private @NotNull UUIDBalanceMap writableStripe(int index) {
+        if (shared[index] != 0) {
+            UUIDBalanceMap stripe = stripes[index];
+            stripes[index] = stripe.copy();
+            detach(index, stripe);
+        }
+        return stripes[index];
+    }
+
+    /**
+     * Hands a stripe that was just replaced over to the snapshots that share it.
+     * The caller must hold the lock of the stripe.
+     */
+    private void detach(int index, @NotNull UUIDBalanceMap stripe) {
+        synchronized (detached) {
+            detached.put(stripe, shared[index]);
+        }
+        shared[index] = 0;
+    }
+
+    @Override
+    public double getOrDefault(long mostSigBits, long leastSigBits, double defaultValue) {
+        int index = stripeIndex(mostSigBits, leastSigBits);
+        synchronized (locks[index]) {
+            return stripes[index].getOrDefault(mostSigBits, leastSigBits, defaultValue);
+        }
+    }
+
+    @Override
+    public boolean containsKey(long mostSigBits, long leastSigBits) {
+        int index = stripeIndex(mostSigBits, leastSigBits);
+        synchronized (locks[index]) {
+            return stripes[index].containsKey(mostSigBits, leastSigBits);
+        }
+    }
+
+    /**
+     * Sets the listener that is notified about every change made via {@link #put(long, long, double)}
+     *  or {@link #update(long, long, double, DoubleUnaryOperator)}. The listener is invoked while the lock of the
+     *  affected stripe is held, which means that it observes the changes of a key in the order in which they were
+     *  applied. It must be cheap and must not access the map.
+     * @param listener The new listener, or null to remove the current one
+     * @since 1.2.0
+     */
+    @Override
+    public void setUpdateListener(@Nullable UUIDBalanceMap.EntryConsumer listener) {
+        updateListener = listener;
+    }
+
+    @Override
+    public void put(long mostSigBits, long leastSigBits, double balance) {
+        int index = stripeIndex(mostSigBits, leastSigBits);
+        synchronized (locks[index]) {
+            writableStripe(index).put(mostSigBits, leastSigBits, balance);
+            UUIDBalanceMap.EntryConsumer listener = updateListener;
+            if (listener != null) {
+                listener.accept(mostSigBits, leastSigBits, balance);
+            }
+        }
+    }
+
+    @Override
+    public void load(long mostSigBits, long leastSigBits, double balance) {
+        int index = stripeIndex(mostSigBits, leastSigBits);
+        synchronized (locks[index]) {
+            writableStripe(index).put(mostSigBits, leastSigBits, balance);
+        }
+    }
+
+    /**
+     * Removes the entry of the given key without notifying the update listener, as the balance itself
+     *  does not change. Used to move accounts to another storage.
+     * @param mostSigBits The most significant bits of the UUID
+     * @param leastSigBits The least significant bits of the UUID
+     * @return True if the entry was removed
+     * @since 1.2.0
+     */
+    public boolean remove(long mostSigBits, long leastSigBits) {
+        int index = stripeIndex(mostSigBits, leastSigBits);
+        synchronized (locks[index]) {
+            return writableStripe(index).remove(mostSigBits, leastSigBits);
+        }
+    }
+
+    /**
+     * Atomically replaces the balance of a key with the result of the given function.
+     * Only the stripe the key belongs to is locked while the function is evaluated, so the function should be cheap
+     *  and must not access other keys of the map.
+     * @param mostSigBits The most significant bits of the UUID
+     * @param leastSigBits The least significant bits of the UUID
+     * @param absentValue The balance that is passed to the function if the key is not known yet
+     * @param function The function that calculates the new balance from the old one
+     * @return The new balance
+     * @since 1.2.0
+     */
+    @Override
+    public double update(long mostSigBits, long leastSigBits, double absentValue, @NotNull DoubleUnaryOperator function) {
+        int index = stripeIndex(mostSigBits, leastSigBits);
+        synchronized (locks[index]) {
+            UUIDBalanceMap stripe = writableStripe(index);
+            double balance = function.applyAsDouble(stripe.getOrDefault(mostSigBits, leastSigBits, absentValue));
+            stripe.put(mostSigBits, leastSigBits, balance);
+            UUIDBalanceMap.EntryConsumer listener = updateListener;
+            if (listener != null) {
+                listener.accept(mostSigBits, leastSigBits, balance);
+            }
+            return balance;
+        }
+    }
+
+    @Override
+    public double updateIfAtLeast(long mostSigBits, long leastSigBits, double absentValue, double minimum,
+            @NotNull DoubleUnaryOperator function) {
+        int index = stripeIndex(mostSigBits, leastSigBits);
+        synchronized (locks[index]) {
+            double old = stripes[index].getOrDefault(mostSigBits, leastSigBits, absentValue);
+            if (!(old >= minimum)) {
+                return Double.NaN;
+            }
+            double balance = function.applyAsDouble(old);
+            writableStripe(index).put(mostSigBits, leastSigBits, balance);
+            UUIDBalanceMap.EntryConsumer listener = updateListener;
+            if (listener != null) {
+                listener.accept(mostSigBits, leastSigBits, balance);
+            }
+            return balance;
+        }
+    }
+
+    /**
+     * Atomically changes the balances of two keys. The locks of both stripes are held while the balances are changed,
+     *  they are acquired in the order of their index, which is the same order in which {@link #snapshot()} acquires
+     *  them, so concurrent transfers can not deadlock.
+     * @param srcMostSigBits The most significant bits of the UUID of the source
+     * @param srcLeastSigBits The least significant bits of the UUID of the source
+     * @param srcAbsentValue The balance of the source if it is not known yet
+     * @param destMostSigBits The most significant bits of the UUID of the destination
+     * @param destLeastSigBits The least significant bits of the UUID of the destination
+     * @param destAbsentValue The balance of the destination if it is not known yet
+     * @param minimum The balance the source needs to have at least, {@link Double#NEGATIVE_INFINITY} to always
+     *  change the balances
+     * @param withdraw The function that calculates the new balance of the source
+     * @param deposit The function that calculates the new balance of the destination
+     * @return True if the balances were changed, false if the balance of the source is below the minimum
+     * @since 1.2.0
+     */
+    @Override
+    public boolean transfer(long srcMostSigBits, long srcLeastSigBits, double srcAbsentValue,
+            long destMostSigBits, long destLeastSigBits, double destAbsentValue, double minimum,
+            @NotNull DoubleUnaryOperator withdraw, @NotNull DoubleUnaryOperator deposit) {
+        int srcIndex = stripeIndex(srcMostSigBits, srcLeastSigBits);
+        int destIndex = stripeIndex(destMostSigBits, destLeastSigBits);
+        synchronized (locks[Math.min(srcIndex, destIndex)]) {
+            synchronized (locks[Math.max(srcIndex, destIndex)]) {
+                double srcBalance = stripes[srcIndex].getOrDefault(srcMostSigBits, srcLeastSigBits, srcAbsentValue);
+                if (!(srcBalance >= minimum)) {
+                    return false;
+                }
+                srcBalance = withdraw.applyAsDouble(srcBalance);
+                writableStripe(srcIndex).put(srcMostSigBits, srcLeastSigBits, srcBalance);
+                UUIDBalanceMap destStripe = writableStripe(destIndex);
+                double destBalance = deposit.applyAsDouble(destStripe.getOrDefault(destMostSigBits, destLeastSigBits, destAbsentValue));
+                destStripe.put(destMostSigBits, destLeastSigBits, destBalance);
+                UUIDBalanceMap.EntryConsumer listener = updateListener;
+                if (listener != null) {
+                    listener.accept(srcMostSigBits, srcLeastSigBits, srcBalance);
+                    listener.accept(destMostSigBits, destLeastSigBits, destBalance);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Obtains the balances of several keys at once, locking each stripe only once.
+     * @param keys The keys, the most significant bits of key i are at index 2i, the least significant at 2i + 1
+     * @param defaultValue The balance that is returned for keys that are not known
+     * @param results The array the balance of key i is stored in at index i
+     * @since 1.2.0
+     */
+    @Override
+    public void getAll(long @NotNull[] keys, double defaultValue, double @NotNull[] results) {
+        int[] order = new int[results.length];
+        int[] starts = groupByStripe(keys, order);
+        for (int index = 0; index < stripes.length; index++) {
+            if (starts[index] == starts[index + 1]) {
+                continue;
+            }
+            synchronized (locks[index]) {
+                UUIDBalanceMap stripe = stripes[index];
+                for (int j = starts[index]; j < starts[index + 1]; j++) {
+                    int i = order[j];
+                    results[i] = stripe.getOrDefault(keys[i * 2], keys[i * 2 + 1], defaultValue);
+                }
+            }
+        }
+    }
+
+    /**
+     * Atomically replaces the balance of several keys with the result of the given function. The keys are grouped by
+     *  their stripe, so each stripe is locked only once and the update listener is notified once per stripe via
+     *  {@link UUIDBalanceMap.EntryConsumer#acceptAll(long[], double[], int)} while the lock is still held.
+     * @param keys The keys, the most significant bits of key i are at index 2i, the least significant at 2i + 1
+     * @param operands The operand of key i is at index i
+     * @param absentValue The balance that is passed to the function if a key is not known yet
+     * @param function The function that calculates the new balance from the old one and the operand
+     * @param results The array the new balance of key i is stored in at index i
+     * @since 1.2.0
+     */
+    @Override
+    public void updateAll(long @NotNull[] keys, double @NotNull[] operands, double absentValue,
+            @NotNull DoubleBinaryOperator function, double @NotNull[] results) {
+        int[] order = new int[operands.length];
+        int[] starts = groupByStripe(keys, order);
+        UUIDBalanceMap.EntryConsumer listener = updateListener;
+        long[] changedKeys = listener == null ? null : new long[operands.length * 2];
+        double[] changedBalances = listener == null ? null : new double[operands.length];
+        for (int index = 0; index < stripes.length; index++) {
+            if (starts[index] == starts[index + 1]) {
+                continue;
+            }
+            synchronized (locks[index]) {
+                UUIDBalanceMap stripe = writableStripe(index);
+                int changed = 0;
+                for (int j = starts[index]; j < starts[index + 1]; j++) {
+                    int i = order[j];
+                    long msb = keys[i * 2];
+                    long lsb = keys[i * 2 + 1];
+                    double balance = function.applyAsDouble(stripe.getOrDefault(msb, lsb, absentValue), operands[i]);
+                    stripe.put(msb, lsb, balance);
+                    results[i] = balance;
+                    if (listener != null) {
+                        changedKeys[changed * 2] = msb;
+                        changedKeys[changed * 2 + 1] = lsb;
+                        changedBalances[changed++] = balance;
+                    }
+                }
+                if (listener != null) {
+                    listener.acceptAll(changedKeys, changedBalances, changed);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sorts the indices of the keys by their stripe via a counting sort, which keeps the order of the keys
+     *  within a stripe.
+     * @param keys The keys, the most significant bits of key i are at index 2i, the least significant at 2i + 1
+     * @param order The array the sorted indices are stored in, it's length is the amount of keys
+     * @return The index within the order array at which the indices of each stripe start, followed by the amount of keys
+     */
+    private int @NotNull[] groupByStripe(long @NotNull[] keys, int @NotNull[] order) {
+        int[] stripeOf = new int[order.length];
+        int[] starts = new int[stripes.length + 1];
+        for (int i = 0; i < order.length; i++) {
+            stripeOf[i] = stripeIndex(keys[i * 2], keys[i * 2 + 1]);
+            starts[stripeOf[i] + 1]++;
+        }
+        for (int i = 0; i < stripes.length; i++) {
+            starts[i + 1] += starts[i];
+        }
+        int[] next = Arrays.copyOf(starts, stripes.length);
+        for (int i = 0; i < order.length; i++) {
+            order[next[stripeOf[i]]++] = i;
+        }
+        return starts;
+    }
+
+    /**
+     * Obtains the amount of entries within the map. As the stripes are queried one after another the result is only
+     *  an estimate if the map is modified concurrently.
+     * @return The amount of entries
+     * @since 1.2.0
+     */
+    @Override
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            synchronized (locks[i]) {
+                size += stripes[i].size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < stripes.length; i++) {
+            synchronized (locks[i]) {
+                if (shared[i] != 0) {
+                    UUIDBalanceMap stripe = stripes[i];
+                    stripes[i] = stripeFactory.get();
+                    detach(i, stripe);
+                } else {
+                    stripes[i].clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes sure that the map can hold the given amount of entries without needing to resize any stripe,
+     *  assuming that the entries are evenly distributed among the stripes.
+     * @param expectedSize The amount of entries the map is expected to hold
+     * @since 1.2.0
+     */
+    @Override
+    public void ensureCapacity(int expectedSize) {
+        // Leave a bit of headroom as the keys will never be perfectly distributed
+        int perStripe = expectedSize / stripes.length + (expectedSize / stripes.length >> 3) + 1;
+        for (int i = 0; i < stripes.length; i++) {
+            synchronized (locks[i]) {
+                writableStripe(i).ensureCapacity(perStripe);
+            }
+        }
+    }
+
+    /**
+     * Passes every entry of the map to the consumer. The stripes are locked one after another,
+     *  so the iteration is consistent within a stripe but not across the whole map. The consumer is invoked while the
+     *  lock of the stripe is held and as such must not access the map.
+     * @param consumer The consumer to pass the entries to
+     * @since 1.2.0
+     */
+    @Override
+    public void forEach(@NotNull UUIDBalanceMap.EntryConsumer consumer) {
+        for (int i = 0; i < stripes.length; i++) {
+            synchronized (locks[i]) {
+                stripes[i].forEach(consumer);
+            }
+        }
+    }
+
+    /**
+     * Obtains the amount of partitions of the map, each stripe is a partition.
+     * @return The amount of stripes
+     * @since 1.2.0
+     */
+    @Override
+    public int getPartitionCount() {
+        return stripes.length;
+    }
+
+    /**
+     * Passes every entry of a single stripe to the consumer while the lock of the stripe is held,
+     *  so the consumer must not access the map.
+     * @param partition The index of the stripe
+     * @param consumer The consumer to pass the entries to
+     * @since 1.2.0
+     */
+    @Override
+    public void forEach(int partition, @NotNull UUIDBalanceMap.EntryConsumer consumer) {
+        synchronized (locks[partition]) {
+            stripes[partition].forEach(consumer);
+        }
+    }
+
+    /**
+     * Takes a consistent snapshot of the entire map. All stripe locks are held at once while the snapshot is taken,
+     *  which only marks the stripes as shared and is thus independent of the amount of entries.
+     * @param cut The action to run while all stripe locks are held
+     * @return The snapshot, which should be closed once it is no longer needed
+     * @since 1.2.0
+     */
+    @Override
+    public @NotNull BalanceSnapshot snapshot(@NotNull Runnable cut) {
+        UUIDBalanceMap[] view = new UUIDBalanceMap[stripes.length];
+        freeze(0, view, cut);
+        return new Snapshot(0, view);
+    }
+
+    /**
+     * Takes a snapshot of a single stripe, which only holds the lock of that stripe.
+     * @param stripe The index of the stripe
+     * @return The snapshot, which should be closed once it is no longer needed
+     * @since 1.2.0
+     */
+    public @NotNull BalanceSnapshot snapshot(int stripe) {
+        synchronized (locks[stripe]) {
+            shared[stripe]++;
+            return new Snapshot(stripe, new UUIDBalanceMap[] {stripes[stripe]});
+        }
+    }
+
+    /**
+     * Obtains the amount of stripes of the map.
+     * @return The amount of stripes
+     * @since 1.2.0
+     */
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * Runs an action while all stripe locks are held, which are acquired in the order of their index.
+     * @param action The action to run while the map is locked
+     * @since 1.2.0
+     */
+    @Override
+    public void exclusive(@NotNull Runnable action) {
+        exclusive(0, action);
+    }
+
+    private void exclusive(int index, @NotNull Runnable action) {
+        if (index == stripes.length) {
+            action.run();
+            return;
+        }
+        synchronized (locks[index]) {
+            exclusive(index + 1, action);
+        }
+    }
+
+    private void freeze(int index, @NotNull UUIDBalanceMap[] view, @NotNull Runnable cut) {
+        if (index == stripes.length) {
+            cut.run();
+            return;
+        }
+        synchronized (locks[index]) {
+            shared[index]++;
+            view[index] = stripes[index];
+            freeze(index + 1, view, cut);
+        }
+    }
+
+    private class Snapshot implements BalanceSnapshot {
+
+        // The index of the stripe that corresponds to the first element of the view
+        private final int first;
+        private final @NotNull UUIDBalanceMap[] view;
+        private boolean released;
+
+        private Snapshot(int first, @NotNull UUIDBalanceMap[] view) {
+            this.first = first;
+            this.view = view;
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            for (UUIDBalanceMap stripe : view) {
+                size += stripe.size();
+            }
+            return size;
+        }
+
+        @Override
+        public void writeEntries(@NotNull EntryWriter writer) throws IOException {
+            for (UUIDBalanceMap stripe : view) {
+                stripe.writeEntries(writer);
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            if (released) {
+                return;
+            }
+            released = true;
+            for (int i = 0; i < view.length; i++) {
+                int index = first + i;
+                synchronized (locks[index]) {
+                    if (stripes[index] == view[i]) {
+                        shared[index]--;
+                        continue;
+                    }
+                }
+                // The stripe was replaced in the meantime, the last snapshot that uses it frees it
+                boolean last;
+                synchronized (detached) {
+                    int remaining = detached.get(view[i]) - 1;
+                    last = remaining == 0;
+                    if (last) {
+                        detached.remove(view[i]);
+                    } else {
+                        detached.put(view[i], remaining);
+                    }
+                }
+                if (last) {
+                    view[i].free();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a read-only {@link Map} view of this map for APIs that operate on boxed values.
+     * Lookups are thread safe, while iteration copies the map stripe by stripe and is thus weakly consistent.
+     * @return A read-only view of the map
+     * @since 1.2.0
+     */
+    @Override
+    public @NotNull Map<UUID, Double> asMap() {
+        return new AbstractMap<UUID, Double>() {
+
+            @Override
+            public int size() {
+                return StripedBalanceMap.this.size();
+            }
+
+            @Override
+            public boolean containsKey(@Nullable Object key) {
+                return key instanceof UUID && StripedBalanceMap.this.containsKey((UUID) key);
+            }
+
+            @Override
+            public @Nullable Double get(@Nullable Object key) {
+                if (!(key instanceof UUID)) {
+                    return null;
+                }
+                double balance = StripedBalanceMap.this.getOrDefault((UUID) key, Double.NaN);
+                if (Double.isNaN(balance) && !containsKey(key)) {
+                    return null;
+                }
+                return balance;
+            }
+
+            @Override
+            public @NotNull Set<Map.Entry<UUID, Double>> entrySet() {
+                return new AbstractSet<Map.Entry<UUID, Double>>() {
+
+                    @Override
+                    public int size() {
+                        return StripedBalanceMap.this.size();
+                    }
+
+                    @Override
+                    public @NotNull Iterator<Map.Entry<UUID, Double>> iterator() {
+                        return new StripeIterator();
+                    }
+                };
+            }
+        };
+    }
+
+    private class StripeIterator implements Iterator<Map.Entry<UUID, Double>> {
+
+        private int nextStripe = 0;
+        private @NotNull Iterator<Map.Entry<UUID, Double>> current = Collections.emptyIterator();
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (nextStripe == stripes.length) {
+                    return false;
+                }
+                int index = nextStripe++;
+                List<Map.Entry<UUID, Double>> entries;
+                synchronized (locks[index]) {
+                    UUIDBalanceMap stripe = stripes[index];
+                    entries = new ArrayList<>(stripe.size());
+                    stripe.forEach((msb, lsb, balance) ->
+                            entries.add(new AbstractMap.SimpleImmutableEntry<>(new UUID(msb, lsb), balance)));
+                }
+                current = entries.iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public Map.Entry<UUID, Double> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package de.geolykt.easyconomy.api.storage;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A primitive-specialised open-addressing hash table that maps UUIDs to balances.
+ * The UUIDs are stored as their two longs and the balances as raw doubles, which means that neither
+ *  lookups nor insertions of existing keys allocate any objects. Collisions are resolved via linear probing.
+ * The nil UUID (all bits 0) marks empty slots and as such is stored outside of the table.
+ * <br/>
+ * This class is NOT thread safe, callers need to synchronise on the instance if they need that.
+ * @author Geolykt
+ * @since 1.2.0
+ */
+public class UUIDBalanceMap {
+
+    /**
+     * Callback used to iterate over the entries of the map without allocating an UUID per entry.
+     * @since 1.2.0
+     */
+    @FunctionalInterface
+    public static interface EntryConsumer {
+        public void accept(long mostSigBits, long leastSigBits, double balance);
+
+        /**
+         * Passes several entries at once. Used by batch operations so that consumers which need to lock
+         *  can do so once per batch instead of once per entry.
+         * @param keys The keys of the entries, the most significant bits of entry i are at index 2i,
+         *  the least significant at 2i + 1
+         * @param balances The balances of the entries
+         * @param count The amount of entries
+         * @since 1.2.0
+         */
+        public default void acceptAll(long @NotNull[] keys, double @NotNull[] balances, int count) {
+            for (int i = 0; i < count; i++) {
+                accept(keys[i * 2], keys[i * 2 + 1], balances[i]);
+            }
+        }
+    }
+
+    private static final int MINIMUM_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.7f;
+
+    /**
+     * The keys of the table, the most significant bits of slot i are at index 2i, the least significant at 2i + 1.
+     */
+    protected long[] keys;
+    protected double[] values;
+    protected int mask;
+    protected int size;
+    protected int resizeThreshold;
+
+    private boolean hasNilKey;
+    private double nilValue;
+
+    public UUIDBalanceMap() {
+        this(MINIMUM_CAPACITY);
+    }
+
+    /**
+     * Creates a new map that is able to hold the given amount of entries without needing to resize the table.
+     * @param expectedSize The amount of entries the map is expected to hold
+     * @since 1.2.0
+     */
+    public UUIDBalanceMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * Creates a map without a table, for subclasses that store their entries elsewhere. Such subclasses need to
+     *  override every operation that accesses the table.
+     * @param external Ignored, only distinguishes this constructor
+     * @since 1.2.0
+     */
+    protected UUIDBalanceMap(boolean external) {
+        // The table is allocated by the subclass
+    }
+
+    /**
+     * Spreads the bits of a UUID so they can be used as the index within a table.
+     * @param mostSigBits The most significant bits of the UUID
+     * @param leastSigBits The least significant bits of the UUID
+     * @return The hash of the UUID
+     * @since 1.2.0
+     */
+    public static int hash(long mostSigBits, long leastSigBits) {
+        long h = mostSigBits ^ leastSigBits;
+        // Finaliser of the 64-bit MurmurHash3
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long required = (long) Math.ceil(Math.max(expectedSize, 1) / (double) LOAD_FACTOR);
+        if (required > 1 << 30) {
+            throw new IllegalArgumentException("Too many entries: " + expectedSize);
+        }
+        int capacity = MINIMUM_CAPACITY;
+        while (capacity < required) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity * 2];
+        values = new double[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * Obtains the slot in which the key is stored or the negative slot minus one at which it could be inserted.
+     */
+    protected int indexOf(long mostSigBits, long leastSigBits) {
+        int slot = hash(mostSigBits, leastSigBits) & mask;
+        while (true) {
+            long msb = keys[slot * 2];
+            long lsb = keys[slot * 2 + 1];
+            if (msb == mostSigBits && lsb == leastSigBits) {
+                return slot;
+            }
+            if (msb == 0L && lsb == 0L) {
+                return -slot - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public double getOrDefault(long mostSigBits, long leastSigBits, double defaultValue) {
+        if (mostSigBits == 0L && leastSigBits == 0L) {
+            return hasNilKey ? nilValue : defaultValue;
+        }
+        int slot = indexOf(mostSigBits, leastSigBits);
+        return slot < 0 ? defaultValue : values[slot];
+    }
+
+    public double getOrDefault(@NotNull UUID key, double defaultValue) {
+        return getOrDefault(key.getMostSignificantBits(), key.getLeastSignificantBits(), defaultValue);
+    }
+
+    public boolean containsKey(long mostSigBits, long leastSigBits) {
+        if (mostSigBits == 0L && leastSigBits == 0L) {
+            return hasNilKey;
+        }
+        return indexOf(mostSigBits, leastSigBits) >= 0;
+    }
+
+    public boolean containsKey(@NotNull UUID key) {
+        return containsKey(key.getMostSignificantBits(), key.getLeastSignificantBits());
+    }
+
+    /**
+     * Associates the given balance with the key, overwriting the previous balance if there was any.
+     * @param mostSigBits The most significant bits of the UUID
+     * @param leastSigBits The least significant bits of the UUID
+     * @param balance The new balance
+     * @since 1.2.0
+     */
+    public void put(long mostSigBits, long leastSigBits, double balance) {
+        if (mostSigBits == 0L && leastSigBits == 0L) {
+            if (!hasNilKey) {
+                hasNilKey = true;
+                size++;
+            }
+            nilValue = balance;
+            return;
+        }
+        int slot = indexOf(mostSigBits, leastSigBits);
+        if (slot >= 0) {
+            values[slot] = balance;
+            return;
+        }
+        slot = -slot - 1;
+        keys[slot * 2] = mostSigBits;
+        keys[slot * 2 + 1] = leastSigBits;
+        values[slot] = balance;
+        if (++size > resizeThreshold) {
+            rehash((mask + 1) << 1);
+        }
+    }
+
+    public void put(@NotNull UUID key, double balance) {
+        put(key.getMostSignificantBits(), key.getLeastSignificantBits(), balance);
+    }
+
+    /**
+     * Removes the entry of the given key, if there is one.
+     * @param mostSigBits The most significant bits of the UUID
+     * @param leastSigBits The least significant bits of the UUID
+     * @return True if the entry was removed
+     * @since 1.2.0
+     */
+    public boolean remove(long mostSigBits, long leastSigBits) {
+        if (mostSigBits == 0L && leastSigBits == 0L) {
+            if (!hasNilKey) {
+                return false;
+            }
+            hasNilKey = false;
+            nilValue = 0.0;
+            size--;
+            return true;
+        }
+        int gap = indexOf(mostSigBits, leastSigBits);
+        if (gap < 0) {
+            return false;
+        }
+        // Shift the following entries of the cluster back so that lookups do not stop at the gap
+        int slot = (gap + 1) & mask;
+        while (true) {
+            long msb = keys[slot * 2];
+            long lsb = keys[slot * 2 + 1];
+            if (msb == 0L && lsb == 0L) {
+                break;
+            }
+            int home = hash(msb, lsb) & mask;
+            // The entry may only be moved if the gap is between it's home slot and it's current slot
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                keys[gap * 2] = msb;
+                keys[gap * 2 + 1] = lsb;
+                values[gap] = values[slot];
+                gap = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[gap * 2] = 0L;
+        keys[gap * 2 + 1] = 0L;
+        values[gap] = 0.0;
+        size--;
+        return true;
+    }
+
+    /**
+     * Makes sure that the table can hold the given amount of entries without needing to resize.
+     * Useful before bulk insertions such as when reading the storage file.
+     * @param expectedSize The amount of entries the map is expected to hold
+     * @since 1.2.0
+     */
+    public void ensureCapacity(int expectedSize) {
+        int capacity = capacityFor(expectedSize);
+        if (capacity > mask + 1) {
+            rehash(capacity);
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        double[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            long msb = oldKeys[i * 2];
+            long lsb = oldKeys[i * 2 + 1];
+            if (msb != 0L || lsb != 0L) {
+                int slot = -indexOf(msb, lsb) - 1;
+                keys[slot * 2] = msb;
+                keys[slot * 2 + 1] = lsb;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all entries from the map, the table is not shrunk.
+     * @since 1.2.0
+     */
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        Arrays.fill(values, 0.0);
+        hasNilKey = false;
+        size = 0;
+    }
+
+    /**
+     * Releases memory that is not managed by the garbage collector, the map must not be used afterwards.
+     *  The table of this class is on the heap, so this method does nothing.
+     * @since 1.2.0
+     */
+    public void free() {
+        // The arrays are collected along with the map
+    }
+
+    /**
+     * Creates a copy of this map that shares no state with this map.
+     * @return The copy
+     * @since 1.2.0
+     */
+    public @NotNull UUIDBalanceMap copy() {
+        UUIDBalanceMap copy = new UUIDBalanceMap(MINIMUM_CAPACITY);
+        copy.keys = keys.clone();
+        copy.values = values.clone();
+        copy.mask = mask;
+        copy.size = size;
+        copy.resizeThreshold = resizeThreshold;
+        copy.hasNilKey = hasNilKey;
+        copy.nilValue = nilValue;
+        return copy;
+    }
+
+    /**
+     * Passes every entry of the map to the consumer.
+     * @param consumer The consumer to pass the entries to
+     * @since 1.2.0
+     */
+    public void forEach(@NotNull EntryConsumer consumer) {
+        if (hasNilKey) {
+            consumer.accept(0L, 0L, nilValue);
+        }
+        for (int i = 0; i < values.length; i++) {
+            long msb = keys[i * 2];
+            long lsb = keys[i * 2 + 1];
+            if (msb != 0L || lsb != 0L) {
+                consumer.accept(msb, lsb, values[i]);
+            }
+        }
+    }
+
+    /**
+     * Passes every entry of the map to the writer.
+     * @param writer The writer to pass the entries to
+     * @throws IOException If the writer throws an IO Exception
+     * @since 1.2.0
+     */
+    public void writeEntries(@NotNull BalanceSnapshot.EntryWriter writer) throws IOException {
+        if (hasNilKey) {
+            writer.write(0L, 0L, nilValue);
+        }
+        for (int i = 0; i < values.length; i++) {
+            long msb = keys[i * 2];
+            long lsb = keys[i * 2 + 1];
+            if (msb != 0L || lsb != 0L) {
+                writer.write(msb, lsb, values[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns a read-only {@link Map} view of this map for APIs that operate on boxed values.
+     * The view is backed by this map and as such shares it's (lack of) thread safety; the entries
+     *  returned by it's iterators are allocated on demand.
+     * @return A read-only view of the map
+     * @since 1.2.0
+     */
+    public @NotNull Map<UUID, Double> asMap() {
+        return new MapView();
+    }
+
+    private class MapView extends AbstractMap<UUID, Double> {
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean containsKey(@Nullable Object key) {
+            return key instanceof UUID && UUIDBalanceMap.this.containsKey((UUID) key);
+        }
+
+        @Override
+        public @Nullable Double get(@Nullable Object key) {
+            if (!containsKey(key)) {
+                return null;
+            }
+            return UUIDBalanceMap.this.getOrDefault((UUID) key, 0.0);
+        }
+
+        @Override
+        public @NotNull Set<Map.Entry<UUID, Double>> entrySet() {
+            return new AbstractSet<Map.Entry<UUID,Double>>() {
+
+                @Override
+                public int size() {
+                    return size;
+                }
+
+                @Override
+                public @NotNull Iterator<Map.Entry<UUID, Double>> iterator() {
+                    return new EntryIterator();
+                }
+            };
+        }
+    }
+
+    private class EntryIterator implements Iterator<Map.Entry<UUID, Double>> {
+
+        private boolean nilPending = hasNilKey;
+        private int slot = -1;
+
+        private EntryIterator() {
+            advance();
+        }
+
+        private void advance() {
+            slot++;
+            while (slot < values.length && keys[slot * 2] == 0L && keys[slot * 2 + 1] == 0L) {
+                slot++;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nilPending || slot < values.length;
+        }
+
+        @Override
+        public Map.Entry<UUID, Double> next() {
+            if (nilPending) {
+                nilPending = false;
+                return new AbstractMap.SimpleImmutableEntry<>(new UUID(0L, 0L), nilValue);
+            }
+            if (slot >= values.length) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<UUID, Double> entry = new AbstractMap.SimpleImmutableEntry<>(
+                    new UUID(keys[slot * 2], keys[slot * 2 + 1]), values[slot]);
+            advance();
+            return entry;
+        }
+    }
+}
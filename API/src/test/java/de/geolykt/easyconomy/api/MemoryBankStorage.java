@@ -0,0 +1,53 @@
+package de.geolykt.easyconomy.api;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A {@link BankStorageEngine} that only keeps the banks in memory.
+ */
+public class MemoryBankStorage implements BankStorageEngine {
+
+    private final @NotNull Map<String, Bank> banks = new ConcurrentHashMap<>();
+
+    @Override
+    public double getBalanceOrDefault(@NotNull String bank, double defaultVal) {
+        Bank b = banks.get(bank);
+        return b == null ? defaultVal : b.getMoney();
+    }
+
+    @Override
+    public @NotNull Set<String> getBanks() {
+        return banks.keySet();
+    }
+
+    @Override
+    public boolean has(@NotNull String bank) {
+        return banks.containsKey(bank);
+    }
+
+    @Override
+    public void add(@NotNull Bank bank) {
+        banks.put(bank.getName(), bank);
+    }
+
+    @Override
+    public @Nullable Bank get(@NotNull String name) {
+        return banks.get(name);
+    }
+
+    @Override
+    public void save() {
+        // Nothing to save
+    }
+
+    @Override
+    public void backup(@NotNull File backupDirectory) {
+        // Nothing to back up
+    }
+}
@@ -0,0 +1,140 @@
+package de.geolykt.easyconomy.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.geolykt.easyconomy.api.storage.BalanceStorageEngine;
+import de.geolykt.easyconomy.api.storage.StorageSettings;
+
+class TransferEngineTest {
+
+    private static final FixedPoint CENTS = new FixedPoint(2);
+    private static final double INITIAL_BALANCE = 1000.0;
+
+    @TempDir
+    File directory;
+
+    private BalanceStorageEngine players;
+    private MemoryBankStorage banks;
+    private TransferEngine engine;
+    private AccountKey[] accounts;
+
+    @BeforeEach
+    void setUp() {
+        players = new BalanceStorageEngine(new File(directory, "balances.dat"), new StorageSettings().setFixedPoint(CENTS));
+        players.reload();
+        banks = new MemoryBankStorage();
+        engine = new TransferEngine(players, banks, CENTS);
+        accounts = new AccountKey[9];
+        for (int i = 0; i < 6; i++) {
+            UUID player = new UUID(i, i);
+            players.set(player, INITIAL_BALANCE);
+            accounts[i] = AccountKey.player(player);
+        }
+        for (int i = 6; i < accounts.length; i++) {
+            banks.add(new PlaceholderBank("bank-" + i, INITIAL_BALANCE));
+            accounts[i] = AccountKey.bank("bank-" + i);
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        players.close();
+    }
+
+    private double balance(AccountKey account) {
+        return account.isBank() ? banks.getBalance(account.getBank()) : players.getOrDefault(account.getPlayer(), 0.0);
+    }
+
+    private long totalMinorUnits() {
+        long total = 0;
+        for (AccountKey account : accounts) {
+            total += CENTS.toMinorUnits(balance(account));
+        }
+        return total;
+    }
+
+    @Test
+    void transfersBetweenAllKindsOfAccounts() {
+        double[] balances = new double[2];
+        assertTrue(engine.transfer(accounts[0], accounts[1], 0.1, true, balances));
+        assertEquals(999.9, balances[0]);
+        assertEquals(1000.1, balances[1]);
+        assertTrue(engine.transfer(accounts[0], accounts[6], 0.2, true, balances));
+        assertEquals(999.7, balances[0]);
+        assertEquals(1000.2, balances[1]);
+        assertTrue(engine.transfer(accounts[6], accounts[7], 0.3, true, balances));
+        assertEquals(999.9, balances[0]);
+        assertEquals(1000.3, balances[1]);
+        assertTrue(engine.transfer(accounts[7], accounts[0], 0.3, true, balances));
+        assertEquals(1000.0, balances[0]);
+        assertEquals(1000.0, balances[1]);
+        assertEquals(6 * 100_000 + 3 * 100_000, totalMinorUnits());
+    }
+
+    @Test
+    void failedTransfersChangeNothing() {
+        double[] balances = {-1.0, -1.0};
+        assertFalse(engine.transfer(accounts[0], AccountKey.bank("missing"), 1.0, true, balances));
+        assertFalse(engine.transfer(AccountKey.bank("missing"), accounts[0], 1.0, true, balances));
+        assertFalse(engine.transfer(accounts[0], accounts[1], 1000.01, true, balances));
+        assertFalse(engine.transfer(accounts[6], accounts[0], 1000.01, true, balances));
+        assertFalse(engine.transfer(accounts[6], accounts[7], 1000.01, true, balances));
+        assertEquals(-1.0, balances[0]);
+        assertEquals(-1.0, balances[1]);
+        for (AccountKey account : accounts) {
+            assertEquals(INITIAL_BALANCE, balance(account));
+        }
+        // Overdrawing is allowed if the transfer does not fail on insufficient balances
+        assertTrue(engine.transfer(accounts[6], accounts[0], 1500.0, false, balances));
+        assertEquals(-500.0, balances[0]);
+        assertEquals(2500.0, balances[1]);
+    }
+
+    @Test
+    void concurrentTransfersConserveMoney() throws InterruptedException {
+        long expected = totalMinorUnits();
+        Thread[] threads = new Thread[8];
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int t = 0; t < threads.length; t++) {
+            Random random = new Random(t);
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < 20_000; i++) {
+                        AccountKey src = accounts[random.nextInt(accounts.length)];
+                        AccountKey dest = accounts[random.nextInt(accounts.length)];
+                        engine.transfer(src, dest, random.nextInt(50_000) / 100.0, true);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get());
+        assertEquals(expected, totalMinorUnits());
+        for (AccountKey account : accounts) {
+            assertTrue(balance(account) >= 0.0, account + " was overdrawn");
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package de.geolykt.easyconomy.api.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.geolykt.easyconomy.api.AccountKey;
+import de.geolykt.easyconomy.api.storage.AuditRecord.Action;
+
+class AuditLogTest {
+
+    private static final UUID ALICE = new UUID(1L, 1L);
+    private static final UUID BOB = new UUID(2L, 2L);
+
+    @TempDir
+    File directory;
+
+    private static List<AuditRecord> readAll(AuditLog log, long from) throws IOException {
+        List<AuditRecord> records = new ArrayList<>();
+        log.read(from, Long.MAX_VALUE, records::add);
+        return records;
+    }
+
+    private static long nextMillisecond() {
+        long now = System.currentTimeMillis();
+        while (System.currentTimeMillis() == now) {
+            Thread.yield();
+        }
+        return System.currentTimeMillis();
+    }
+
+    @Test
+    void recordsRoundTrip() throws IOException {
+        AuditLog log = new AuditLog(directory, 1 << 20, 0, 64);
+        try {
+            log.appendPlayer(Action.DEPOSIT, ALICE, 5.0, 15.0);
+            log.appendBank(Action.WITHDRAW, "bank", 2.5, Double.NaN);
+            log.appendTransfer(AccountKey.player(ALICE), AccountKey.bank("bank"), 1.0, 14.0, 8.5);
+
+            List<AuditRecord> records = readAll(log, 0);
+            assertEquals(4, records.size());
+            AuditRecord deposit = records.get(0);
+            assertEquals(Action.DEPOSIT, deposit.getAction());
+            assertEquals(AccountKey.player(ALICE), deposit.getAccount());
+            assertNull(deposit.getCounterparty());
+            assertEquals(5.0, deposit.getAmount());
+            assertEquals(15.0, deposit.getBalance());
+
+            AuditRecord withdrawal = records.get(1);
+            assertEquals(AccountKey.bank("bank"), withdrawal.getAccount());
+            assertTrue(Double.isNaN(withdrawal.getBalance()));
+
+            // One record per side of the transfer
+            for (int i = 2; i < 4; i++) {
+                assertEquals(Action.TRANSFER, records.get(i).getAction());
+                assertEquals(AccountKey.player(ALICE), records.get(i).getAccount());
+                assertEquals(AccountKey.bank("bank"), records.get(i).getCounterparty());
+                assertEquals(1.0, records.get(i).getAmount());
+            }
+            assertEquals(AccountKey.player(ALICE), records.get(2).getBalanceAccount());
+            assertEquals(14.0, records.get(2).getBalance());
+            assertEquals(AccountKey.bank("bank"), records.get(3).getBalanceAccount());
+            assertEquals(8.5, records.get(3).getBalance());
+        } finally {
+            log.close();
+        }
+    }
+
+    @Test
+    void readsWithinTimeRange() throws IOException {
+        AuditLog log = new AuditLog(directory, 1 << 20, 0, 64);
+        try {
+            log.appendPlayer(Action.SET, ALICE, 1.0, 1.0);
+            long from = nextMillisecond();
+            log.appendPlayer(Action.SET, ALICE, 2.0, 2.0);
+
+            List<AuditRecord> records = readAll(log, from);
+            assertEquals(1, records.size());
+            assertEquals(2.0, records.get(0).getBalance());
+            assertEquals(2, readAll(log, 0).size());
+        } finally {
+            log.close();
+        }
+    }
+
+    @Test
+    void historySpansSegmentsAndReopening() throws IOException {
+        // Every flushed block starts a new segment
+        AuditLog log = new AuditLog(directory, 1, 0, 64);
+        try {
+            for (int i = 1; i <= 3; i++) {
+                log.appendPlayer(Action.DEPOSIT, ALICE, i, i);
+                log.appendPlayer(Action.DEPOSIT, BOB, 10.0, 10.0 * i);
+                log.flush();
+            }
+        } finally {
+            log.close();
+        }
+        assertTrue(directory.list((dir, name) -> name.endsWith(".log")).length >= 3);
+
+        log = new AuditLog(directory, 1, 0, 64);
+        try {
+            log.appendTransfer(AccountKey.player(BOB), AccountKey.player(ALICE), 4.0, 26.0, 10.0);
+            List<AuditRecord> history = log.getHistory(ALICE, 0, 10);
+            // The transfer and the three deposits, most recent first
+            assertEquals(4, history.size());
+            // Players only see the side of a transfer that carries their balance
+            assertEquals(AccountKey.player(ALICE), history.get(0).getBalanceAccount());
+            assertEquals(10.0, history.get(0).getBalance());
+            assertEquals(3.0, history.get(1).getAmount());
+            assertEquals(1.0, history.get(3).getAmount());
+            assertEquals(26.0, log.getHistory(BOB, 0, 1).get(0).getBalance());
+
+            List<AuditRecord> page = log.getHistory(ALICE, 1, 2);
+            assertEquals(2, page.size());
+            assertEquals(3.0, page.get(0).getAmount());
+            assertEquals(2.0, page.get(1).getAmount());
+        } finally {
+            log.close();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package de.geolykt.easyconomy.api.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.geolykt.easyconomy.api.storage.BalanceFileReader.CorruptedStorageException;
+
+class BalanceFileTest {
+
+    private static final UUID NIL = new UUID(0L, 0L);
+    private static final long LAST_BACKUP = 1_600_000_000_000L;
+
+    @TempDir
+    File directory;
+
+    private File write(StripedBalanceMap balances, int format, double defaultBalance) throws IOException {
+        File file = new File(directory, "balances-v" + format + ".dat");
+        try (BalanceSnapshot snapshot = balances.snapshot();
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            if (format == 2) {
+                BalanceFileWriter.writeV2(snapshot, out, LAST_BACKUP, defaultBalance);
+            } else {
+                BalanceFileWriter.writeV4(snapshot, out, LAST_BACKUP);
+            }
+        }
+        return file;
+    }
+
+    private static StripedBalanceMap read(File file, int format) throws IOException {
+        StripedBalanceMap balances = new StripedBalanceMap();
+        try (BalanceFileReader reader = new BalanceFileReader(file)) {
+            assertEquals(format, reader.getVersion());
+            reader.read(balances, reader.getVersion());
+            assertEquals(LAST_BACKUP, reader.getLastBackup());
+        }
+        return balances;
+    }
+
+    private void assertRoundTrip(StripedBalanceMap balances, double defaultBalance) throws IOException {
+        for (int format : new int[] {2, BalanceFileWriter.COMPACT_FORMAT_VERSION}) {
+            StripedBalanceMap read = read(write(balances, format, defaultBalance), format);
+            assertEquals(balances.size(), read.size(), "v" + format);
+            balances.forEach((msb, lsb, balance) -> assertEquals(Double.doubleToRawLongBits(balance),
+                    Double.doubleToRawLongBits(read.getOrDefault(msb, lsb, Double.NaN)), "v" + format));
+        }
+    }
+
+    @Test
+    void roundTripsNoAccounts() throws IOException {
+        assertRoundTrip(new StripedBalanceMap(), 0.0);
+    }
+
+    @Test
+    void roundTripsNilUUID() throws IOException {
+        StripedBalanceMap balances = new StripedBalanceMap();
+        balances.put(NIL, 12.5);
+        assertRoundTrip(balances, 0.0);
+        // Stored as an inactive account without it's balance in v2
+        assertRoundTrip(balances, 12.5);
+    }
+
+    @Test
+    void roundTripsSingleAccount() throws IOException {
+        StripedBalanceMap balances = new StripedBalanceMap();
+        balances.put(new UUID(-1L, -1L), -3.25);
+        assertRoundTrip(balances, 0.0);
+    }
+
+    @Test
+    void roundTripsManyAccounts() throws IOException {
+        Random random = new Random(7);
+        StripedBalanceMap balances = new StripedBalanceMap();
+        balances.put(NIL, 0.0);
+        balances.put(new UUID(0L, 1L), 1.0);
+        balances.put(new UUID(-1L, -1L), -0.0);
+        balances.put(new UUID(Long.MIN_VALUE, 0L), Double.MAX_VALUE);
+        for (int i = 0; i < 20_000; i++) {
+            // Mostly shared balances, which end up in the dictionary of the v4 format
+            double balance = random.nextInt(4) == 0 ? random.nextDouble() * 1000 : random.nextInt(200);
+            balances.put(new UUID(random.nextLong(), random.nextLong()), balance);
+        }
+        assertRoundTrip(balances, 0.0);
+    }
+
+    @Test
+    void rejectsCorruptedCompactFile() throws IOException {
+        StripedBalanceMap balances = new StripedBalanceMap();
+        balances.put(NIL, 1.0);
+        balances.put(new UUID(5L, 6L), 2.0);
+        File file = write(balances, BalanceFileWriter.COMPACT_FORMAT_VERSION, 0.0);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // Flip a bit of the last balance
+            long position = raf.length() - 5;
+            raf.seek(position);
+            int flipped = raf.read() ^ 1;
+            raf.seek(position);
+            raf.write(flipped);
+        }
+        assertThrows(CorruptedStorageException.class, () -> read(file, BalanceFileWriter.COMPACT_FORMAT_VERSION));
+    }
+
+    @Test
+    void rejectsTruncatedV2File() throws IOException {
+        StripedBalanceMap balances = new StripedBalanceMap();
+        balances.put(NIL, 1.0);
+        File file = write(balances, 2, 0.0);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 1);
+        }
+        assertThrows(CorruptedStorageException.class, () -> read(file, 2));
+    }
+}
@@ -0,0 +1,90 @@
+package de.geolykt.easyconomy.api.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BalanceJournalTest {
+
+    @TempDir
+    File directory;
+
+    private File storageFile() {
+        return new File(directory, "balances.dat");
+    }
+
+    private File segment(long id) {
+        return new File(directory, "balances.dat." + id + ".journal");
+    }
+
+    private void write(int records) throws IOException {
+        BalanceJournal journal = new BalanceJournal(storageFile(), 1000);
+        journal.start();
+        for (int i = 0; i < records; i++) {
+            journal.append(1L, i, i * 10.0);
+        }
+        journal.close();
+    }
+
+    @Test
+    void replaysCommittedRecordsInOrder() throws IOException {
+        write(3);
+        double[] last = new double[] {-1};
+        UUIDBalanceMap replayed = new UUIDBalanceMap();
+        long count = new BalanceJournal(storageFile(), 1000).replay((msb, lsb, balance) -> {
+            assertEquals(last[0] + 1, lsb);
+            last[0] = lsb;
+            replayed.put(msb, lsb, balance);
+        });
+        assertEquals(3, count);
+        assertEquals(20.0, replayed.getOrDefault(1L, 2L, Double.NaN));
+    }
+
+    @Test
+    void replayStopsAtTornRecord() throws IOException {
+        write(3);
+        try (RandomAccessFile file = new RandomAccessFile(segment(0), "rw")) {
+            file.setLength(file.length() - 5);
+        }
+        UUIDBalanceMap replayed = new UUIDBalanceMap();
+        assertEquals(2, new BalanceJournal(storageFile(), 1000).replay(replayed::put));
+        assertEquals(2, replayed.size());
+        assertFalse(replayed.containsKey(1L, 2L));
+    }
+
+    @Test
+    void replayStopsAtStaleSequence() throws IOException {
+        write(3);
+        // A complete record left over from an earlier write, which has an older sequence number
+        ByteBuffer stale = ByteBuffer.allocate(BalanceJournal.RECORD_SIZE);
+        stale.putLong(1L).putLong(99L).putDouble(990.0).putLong(1L);
+        try (RandomAccessFile file = new RandomAccessFile(segment(0), "rw")) {
+            file.seek(file.length());
+            file.write(stale.array());
+        }
+        UUIDBalanceMap replayed = new UUIDBalanceMap();
+        assertEquals(3, new BalanceJournal(storageFile(), 1000).replay(replayed::put));
+        assertFalse(replayed.containsKey(1L, 99L));
+    }
+
+    @Test
+    void appendsAfterReplayContinueTheSequence() throws IOException {
+        write(2);
+        BalanceJournal journal = new BalanceJournal(storageFile(), 1000);
+        assertEquals(2, journal.replay((msb, lsb, balance) -> { }));
+        journal.start();
+        journal.append(2L, 0L, 5.0);
+        journal.close();
+
+        UUIDBalanceMap replayed = new UUIDBalanceMap();
+        assertEquals(3, new BalanceJournal(storageFile(), 1000).replay(replayed::put));
+        assertEquals(5.0, replayed.getOrDefault(2L, 0L, Double.NaN));
+    }
+}
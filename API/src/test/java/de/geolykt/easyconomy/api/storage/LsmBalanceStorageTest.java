@@ -0,0 +1,139 @@
+package de.geolykt.easyconomy.api.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.UUID;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LsmBalanceStorageTest {
+
+    private static final UUID SHARED = new UUID(0L, 0L);
+
+    private static class TestStorage extends LsmBalanceStorage {
+
+        private volatile IOException failure;
+        private int loadedSegments = -1;
+
+        private TestStorage(@NotNull File directory) {
+            super(directory, 64, 5);
+        }
+
+        @Override
+        protected void onLoaded(int segments, long millis) {
+            loadedSegments = segments;
+        }
+
+        @Override
+        protected void onLoadFailed(@NotNull IOException e) {
+            failure = e;
+        }
+
+        @Override
+        protected void onBackgroundFailure(@NotNull IOException e) {
+            failure = e;
+        }
+    }
+
+    @TempDir
+    File directory;
+
+    private TestStorage open() {
+        TestStorage storage = new TestStorage(new File(directory, "balances"));
+        storage.reload();
+        assertNull(storage.failure);
+        return storage;
+    }
+
+    private static UUID player(int round, int i) {
+        return new UUID(round + 1L, i * 0x9E3779B97F4A7C15L);
+    }
+
+    private int segmentFiles() {
+        int count = 0;
+        for (String name : new File(directory, "balances").list()) {
+            if (name.endsWith(".lsm")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    void flushedBalancesSurviveReopen() throws IOException {
+        try (TestStorage storage = open()) {
+            for (int i = 0; i < 100; i++) {
+                storage.set(player(0, i), i);
+            }
+            storage.save();
+            // Lookups now read the segment, while the next changes are within the memtable
+            assertEquals(42.0, storage.getOrDefault(player(0, 42), Double.NaN));
+            storage.addAndGet(player(0, 42), 1.0);
+            assertTrue(storage.transfer(player(0, 99), player(0, 1), 9.0, 9.0));
+            assertFalse(storage.has(player(1, 0)));
+            storage.save();
+            assertNull(storage.failure);
+        }
+        try (TestStorage storage = open()) {
+            assertEquals(2, storage.loadedSegments);
+            assertEquals(43.0, storage.getOrDefault(player(0, 42), Double.NaN));
+            assertEquals(90.0, storage.getOrDefault(player(0, 99), Double.NaN));
+            assertEquals(10.0, storage.getOrDefault(player(0, 1), Double.NaN));
+            assertEquals(100, storage.getAllKeys().size());
+            assertEquals(player(0, 98), storage.getBaltop().keySet().iterator().next());
+        }
+    }
+
+    @Test
+    void reloadDiscardsTheMemtable() throws IOException {
+        try (TestStorage storage = open()) {
+            storage.set(player(0, 0), 1.0);
+            storage.save();
+            storage.set(player(0, 0), 2.0);
+            storage.set(player(0, 1), 2.0);
+            storage.reload();
+            assertEquals(1.0, storage.getOrDefault(player(0, 0), Double.NaN));
+            assertFalse(storage.has(player(0, 1)));
+        }
+    }
+
+    @Test
+    void compactionMergesSegments() throws IOException {
+        int rounds = 12;
+        TestStorage written = open();
+        try {
+            for (int round = 0; round < rounds; round++) {
+                for (int i = 0; i < 50; i++) {
+                    written.set(player(round, i), round * 100 + i);
+                }
+                // Overwritten in every segment, only the newest balance may survive the merges
+                written.set(SHARED, round);
+                written.save();
+            }
+        } finally {
+            // Waits for the compaction, which deletes the merged segments
+            written.close();
+        }
+        assertNull(written.failure);
+        assertTrue(segmentFiles() <= 4, segmentFiles() + " segments");
+        try (TestStorage storage = open()) {
+            assertEquals(segmentFiles(), storage.loadedSegments);
+            assertEquals(rounds - 1.0, storage.getOrDefault(SHARED, Double.NaN));
+            for (int round = 0; round < rounds; round++) {
+                for (int i = 0; i < 50; i++) {
+                    assertEquals(round * 100.0 + i, storage.getOrDefault(player(round, i), Double.NaN));
+                }
+            }
+            assertEquals(rounds * 50 + 1, new HashSet<>(storage.getAllKeys()).size());
+            assertEquals(rounds * 50 + 1, storage.getAllKeys().size());
+        }
+    }
+}
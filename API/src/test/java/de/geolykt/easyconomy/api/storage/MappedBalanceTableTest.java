@@ -0,0 +1,141 @@
+package de.geolykt.easyconomy.api.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedBalanceTableTest {
+
+    // More than the initial capacity of the file, so that reopening covers a grown file and index
+    private static final int PLAYERS = 3000;
+
+    private static final MappedBalanceTable.LegacyReader NO_LEGACY = (file, target) -> fail("Unexpected legacy file");
+
+    @TempDir
+    File directory;
+
+    private static UUID[] players() {
+        Random random = new Random(4);
+        UUID[] players = new UUID[PLAYERS];
+        for (int i = 0; i < PLAYERS; i++) {
+            players[i] = new UUID(random.nextLong(), random.nextLong());
+        }
+        return players;
+    }
+
+    private File fill(UUID[] players) throws IOException {
+        File file = new File(directory, "balances.dat");
+        MappedBalanceTable table = new MappedBalanceTable(file);
+        table.open(NO_LEGACY);
+        for (int i = 0; i < players.length; i++) {
+            table.put(players[i], i);
+        }
+        // In-place update of a known player
+        table.update(players[0], 0.0, balance -> balance + 0.5);
+        table.force();
+        table.close();
+        return file;
+    }
+
+    private static void assertBalances(MappedBalanceTable table, UUID[] players) {
+        assertEquals(players.length, table.size());
+        assertEquals(0.5, table.getOrDefault(players[0], Double.NaN));
+        for (int i = 1; i < players.length; i++) {
+            assertEquals(i, table.getOrDefault(players[i], Double.NaN));
+        }
+    }
+
+    @Test
+    void reopenKeepsBalances() throws IOException {
+        UUID[] players = players();
+        File file = fill(players);
+        try (FileInputStream in = new FileInputStream(file)) {
+            assertEquals(MappedBalanceTable.FORMAT_VERSION, in.read());
+        }
+
+        MappedBalanceTable table = new MappedBalanceTable(file);
+        table.open(NO_LEGACY);
+        try {
+            assertBalances(table, players);
+            UUID added = new UUID(0L, 0L);
+            table.put(added, 7.0);
+            table.force();
+        } finally {
+            table.close();
+        }
+
+        table = new MappedBalanceTable(file);
+        table.open(NO_LEGACY);
+        try {
+            assertEquals(PLAYERS + 1, table.size());
+            assertEquals(7.0, table.getOrDefault(new UUID(0L, 0L), Double.NaN));
+        } finally {
+            table.close();
+        }
+    }
+
+    @Test
+    void reopenRebuildsStaleIndex() throws IOException {
+        UUID[] players = players();
+        File file = fill(players);
+        // An index that does not belong to the storage file, for example one left over from a crash
+        try (OutputStream out = new FileOutputStream(new File(directory, "balances.dat.idx"))) {
+            out.write(new byte[64]);
+        }
+
+        MappedBalanceTable table = new MappedBalanceTable(file);
+        table.open(NO_LEGACY);
+        try {
+            assertBalances(table, players);
+        } finally {
+            table.close();
+        }
+    }
+
+    @Test
+    void openConvertsLegacyFile() throws IOException {
+        File file = new File(directory, "balances.dat");
+        StripedBalanceMap legacy = new StripedBalanceMap();
+        legacy.put(new UUID(1L, 2L), 10.0);
+        legacy.put(new UUID(3L, 4L), 0.0);
+        try (BalanceSnapshot snapshot = legacy.snapshot();
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            BalanceFileWriter.writeV2(snapshot, out, 0L, 0.0);
+        }
+
+        MappedBalanceTable table = new MappedBalanceTable(file);
+        table.open((source, target) -> {
+            try (BalanceFileReader reader = new BalanceFileReader(source)) {
+                reader.read(target, reader.getVersion());
+            }
+        });
+        try {
+            assertEquals(2, table.size());
+            assertEquals(10.0, table.getOrDefault(new UUID(1L, 2L), Double.NaN));
+            assertEquals(0.0, table.getOrDefault(new UUID(3L, 4L), Double.NaN));
+        } finally {
+            table.close();
+        }
+        assertTrue(new File(directory, "balances.dat.v2").exists());
+
+        table = new MappedBalanceTable(file);
+        table.open(NO_LEGACY);
+        try {
+            assertEquals(10.0, table.getOrDefault(new UUID(1L, 2L), Double.NaN));
+        } finally {
+            table.close();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package de.geolykt.easyconomy.api.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.geolykt.easyconomy.api.AccountKey;
+import de.geolykt.easyconomy.api.MemoryBankStorage;
+import de.geolykt.easyconomy.api.PlaceholderBank;
+import de.geolykt.easyconomy.api.storage.AuditRecord.Action;
+
+class PointInTimeRecoveryTest {
+
+    private static final UUID ALICE = new UUID(1L, 1L);
+    private static final UUID BOB = new UUID(2L, 2L);
+    private static final UUID CAROL = new UUID(3L, 3L);
+
+    @TempDir
+    File directory;
+
+    private BalanceStorageEngine players;
+    private MemoryBankStorage banks;
+    private AuditLog log;
+    private PointInTimeRecovery recovery;
+
+    @BeforeEach
+    void setUp() {
+        players = new BalanceStorageEngine(new File(directory, "balances.dat"), new StorageSettings());
+        players.reload();
+        banks = new MemoryBankStorage();
+        log = new AuditLog(new File(directory, "audit"), 1 << 20, 0, 64);
+        recovery = new PointInTimeRecovery(new File(directory, "snapshots"), log, 0);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        log.close();
+        players.close();
+    }
+
+    private static long nextMillisecond() {
+        long now = System.currentTimeMillis();
+        while (System.currentTimeMillis() == now) {
+            Thread.yield();
+        }
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Takes a snapshot and audits changes after it without applying them to the storages, as only the log is replayed.
+     * @return The time between the two batches of changes
+     */
+    private long snapshotAndAudit() throws IOException {
+        players.set(ALICE, 10.0);
+        players.set(BOB, 20.0);
+        banks.add(new PlaceholderBank("bank", 100.0));
+        recovery.snapshot(players, banks);
+        nextMillisecond();
+
+        log.appendPlayer(Action.SET, ALICE, 15.0, 15.0);
+        log.appendTransfer(AccountKey.player(ALICE), AccountKey.bank("bank"), 5.0, 10.0, 105.0);
+        // Changes whose resulting balance is unknown are replayed by their amount
+        log.appendPlayer(Action.DEPOSIT, BOB, 3.0, Double.NaN);
+        log.appendBank(Action.WITHDRAW, "bank", 1.0, Double.NaN);
+        long between = nextMillisecond();
+        log.appendPlayer(Action.SET, ALICE, 99.0, 99.0);
+        log.appendBank(Action.SET, "new", 7.0, 7.0);
+        return between;
+    }
+
+    @Test
+    void stageReplaysTheLog() throws IOException {
+        long between = snapshotAndAudit();
+
+        PointInTimeRecovery.State state = recovery.stage(between - 1);
+        assertNotNull(state);
+        assertEquals(between - 1, state.getTime());
+        assertEquals(10.0, state.getPlayers().get(ALICE).doubleValue());
+        assertEquals(23.0, state.getPlayers().get(BOB).doubleValue());
+        assertEquals(104.0, state.getBanks().get("bank").doubleValue());
+        assertFalse(state.getBanks().containsKey("new"));
+
+        state = recovery.stage(System.currentTimeMillis());
+        assertNotNull(state);
+        assertEquals(99.0, state.getPlayers().get(ALICE).doubleValue());
+        assertEquals(23.0, state.getPlayers().get(BOB).doubleValue());
+        assertEquals(7.0, state.getBanks().get("new").doubleValue());
+
+        // Staging does not touch the live storages
+        assertEquals(10.0, players.getOrDefault(ALICE, Double.NaN));
+        assertFalse(banks.has("new"));
+    }
+
+    @Test
+    void stageBeforeTheFirstSnapshot() throws IOException {
+        long before = System.currentTimeMillis() - 1;
+        assertNull(recovery.stage(before));
+        snapshotAndAudit();
+        assertNull(recovery.stage(before));
+        assertTrue(recovery.getEarliestRestorableTime() > before);
+    }
+
+    @Test
+    void applySwapsTheStagedBalances() throws IOException {
+        long between = snapshotAndAudit();
+        players.set(CAROL, 50.0);
+        banks.add(new PlaceholderBank("later", 5.0));
+        banks.remove("bank");
+
+        PointInTimeRecovery.State state = recovery.stage(between - 1);
+        assertNotNull(state);
+        recovery.apply(state, players, banks);
+        assertEquals(10.0, players.getOrDefault(ALICE, Double.NaN));
+        assertEquals(23.0, players.getOrDefault(BOB, Double.NaN));
+        // Accounts that did not exist at the staged time can not be removed
+        assertEquals(0.0, players.getOrDefault(CAROL, Double.NaN));
+        assertEquals(0.0, banks.getBalance("later"));
+        assertEquals(104.0, banks.getBalance("bank"));
+    }
+}
@@ -0,0 +1,135 @@
+package de.geolykt.easyconomy.api.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.geolykt.easyconomy.api.Bank;
+import de.geolykt.easyconomy.api.PlaceholderBank;
+
+class SqlStorageTest {
+
+    private static final UUID ALICE = new UUID(1L, 1L);
+    private static final UUID BOB = new UUID(-1L, 2L);
+
+    private static class MemberBank extends PlaceholderBank {
+
+        private final @NotNull Set<UUID> members;
+
+        MemberBank(@NotNull String name, double balance, @NotNull Set<UUID> members) {
+            super(name, balance);
+            this.members = members;
+        }
+
+        @Override
+        public boolean isMember(@NotNull UUID player) {
+            return members.contains(player);
+        }
+
+        @Override
+        public @NotNull Set<UUID> getMembers() {
+            return members;
+        }
+    }
+
+    @TempDir
+    File directory;
+
+    private File database() {
+        return new File(directory, "economy" + SqlDialect.SQLITE.getFileExtension());
+    }
+
+    private SqlBalanceStorage openBalances() {
+        SqlBalanceStorage storage = new SqlBalanceStorage(database(), SqlDialect.SQLITE, 10) {
+            @Override
+            protected void onLoadFailed(@NotNull IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        storage.reload();
+        return storage;
+    }
+
+    private SqlBankStorage openBanks() throws IOException {
+        SqlBankStorage storage = new SqlBankStorage(database(), SqlDialect.SQLITE, MemberBank::new);
+        storage.reload();
+        return storage;
+    }
+
+    @Test
+    void balancesSurviveReopen() throws IOException {
+        try (SqlBalanceStorage storage = openBalances()) {
+            storage.set(ALICE, 10.0);
+            assertEquals(5.0, storage.addAndGet(BOB, 5.0));
+            assertTrue(storage.transfer(ALICE, BOB, 4.0, 4.0));
+            assertFalse(storage.transfer(ALICE, BOB, 100.0, 100.0));
+            storage.save();
+            // A second save updates the existing rows
+            storage.addAndGet(ALICE, 1.0);
+            storage.save();
+        }
+        try (SqlBalanceStorage storage = openBalances()) {
+            assertEquals(2, storage.getAllKeys().size());
+            assertEquals(7.0, storage.getOrDefault(ALICE, Double.NaN));
+            assertEquals(9.0, storage.getOrDefault(BOB, Double.NaN));
+            assertEquals(BOB, storage.getBaltop().keySet().iterator().next());
+        }
+    }
+
+    @Test
+    void reloadDiscardsUnsavedChanges() throws IOException {
+        try (SqlBalanceStorage storage = openBalances()) {
+            storage.set(ALICE, 10.0);
+            storage.save();
+            storage.set(ALICE, 20.0);
+            storage.set(BOB, 1.0);
+            storage.reload();
+            assertEquals(10.0, storage.getOrDefault(ALICE, Double.NaN));
+            assertFalse(storage.has(BOB));
+            // The discarded changes are not written by the next save either
+            storage.save();
+        }
+        try (SqlBalanceStorage storage = openBalances()) {
+            assertEquals(10.0, storage.getOrDefault(ALICE, Double.NaN));
+            assertFalse(storage.has(BOB));
+        }
+    }
+
+    @Test
+    void banksSurviveReopen() throws IOException {
+        try (SqlBalanceStorage balances = openBalances(); SqlBankStorage banks = openBanks()) {
+            // Both storages share the database file
+            balances.set(ALICE, 3.0);
+            balances.save();
+            banks.add(new MemberBank("shared", 50.0, new HashSet<>(Arrays.asList(ALICE, BOB))));
+            banks.add(new MemberBank("empty", 0.0, new HashSet<>()));
+            banks.add(new MemberBank("removed", 1.0, new HashSet<>()));
+            banks.save();
+            banks.remove("removed");
+            banks.get("shared").setMoney(75.0);
+            banks.save();
+        }
+        try (SqlBalanceStorage balances = openBalances(); SqlBankStorage banks = openBanks()) {
+            assertEquals(3.0, balances.getOrDefault(ALICE, Double.NaN));
+            assertEquals(new HashSet<>(Arrays.asList("shared", "empty")), new HashSet<>(banks.getBanks()));
+            Bank shared = banks.get("shared");
+            assertNotNull(shared);
+            assertEquals(75.0, shared.getMoney());
+            assertEquals(new HashSet<>(Arrays.asList(ALICE, BOB)), shared.getMembers());
+            assertTrue(banks.get("empty").getMembers().isEmpty());
+        }
+    }
+}
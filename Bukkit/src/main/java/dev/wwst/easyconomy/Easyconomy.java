@@ -26,24 +26,34 @@ import dev.wwst.easyconomy.commands.PayCommand;
 import dev.wwst.easyconomy.commands.SetmoneyCommand;
 import dev.wwst.easyconomy.eco.VaultEconomyProvider;
 import dev.wwst.easyconomy.events.JoinEvent;
+import dev.wwst.easyconomy.events.PreLoginEvent;
+import dev.wwst.easyconomy.storage.ServerNameIndex;
 import dev.wwst.easyconomy.utils.*;
 import net.milkbowl.vault.economy.Economy;
 import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
 import org.bukkit.plugin.PluginManager;
 import org.bukkit.plugin.RegisteredServiceProvider;
 import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import de.geolykt.easyconomy.api.AsyncEasyconomyEcoAPI;
 import de.geolykt.easyconomy.api.EasyconomyEcoAPI;
 import de.geolykt.easyconomy.api.Saveable;
+import de.geolykt.easyconomy.api.storage.AuditLog;
+import de.geolykt.easyconomy.api.storage.PlayerNameIndex;
+import de.geolykt.easyconomy.api.storage.PointInTimeRecovery;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Weiiswurst, Geolykt
@@ -53,6 +63,9 @@ public final class Easyconomy extends JavaPlugin {
     private final List<Saveable> toSave = new ArrayList<>();
 
     private EasyconomyEcoAPI ecp;
+    private AsyncEasyconomyEcoAPI asyncEcp;
+    private @Nullable PointInTimeRecovery recovery;
+    private PlayerNameIndex names;
     private MessageTranslator translator;
 
     private void handleConfigUpdateing() {
@@ -67,7 +80,26 @@ public final class Easyconomy extends JavaPlugin {
             getConfig().addDefault("saving.delay", 100l); // 5 seconds delay
             getConfig().addDefault("saving.period", 1200l); // save every minute
         case 5:
-            // Things to do when the config version is bumped to 6
+            getConfig().addDefault("saving.backend", "binary");
+            getConfig().addDefault("saving.lsm.memtable-size", 131072);
+            getConfig().addDefault("saving.format", 2);
+            getConfig().addDefault("saving.memory-mapped", false);
+            getConfig().addDefault("saving.shards", 0);
+            getConfig().addDefault("saving.off-heap", false);
+            getConfig().addDefault("saving.balance-index", false);
+            getConfig().addDefault("saving.name-cache-size", 10000);
+            getConfig().addDefault("saving.tiered.cold-after-days", 0);
+            getConfig().addDefault("saving.journal.enabled", false);
+            getConfig().addDefault("saving.journal.commit-interval", 200l);
+            getConfig().addDefault("saving.journal.checkpoint-records", 100000l);
+            getConfig().addDefault("fixed-point", false);
+            getConfig().addDefault("audit.segment-size-mb", 16);
+            getConfig().addDefault("audit.retention-days", 90);
+            getConfig().addDefault("audit.buffer-size", 65536);
+            getConfig().addDefault("audit.snapshot-interval-minutes", 0);
+            getConfig().addDefault("permissions.restore", "");
+        case 6:
+            // Things to do when the config version is bumped to 7
         }
     }
 
@@ -100,6 +132,14 @@ public final class Easyconomy extends JavaPlugin {
             pm.disablePlugin(this);
             return;
         }
+        names = new ServerNameIndex(this);
+        try {
+            names.reload();
+        } catch (IOException e) {
+            e.printStackTrace();
+            getLogger().warning("Unable to read the names of the players, they are learned again as players join.");
+        }
+        addSaveable(names);
         RegisteredServiceProvider<Economy> rsp = Bukkit.getServicesManager().getRegistration(Economy.class);
         if(rsp == null) {
             try {
@@ -130,6 +170,18 @@ public final class Easyconomy extends JavaPlugin {
         File backupFolder = new File(ecp.getPlayerDataStorage().getStorageFile().getParentFile().getParentFile(), "backups");
         backupFolder.mkdir();
         handleConfigUpdateing();
+        if (names.size() == 0) {
+            // The names of the players that joined before the index existed are only known to the server
+            for (OfflinePlayer player : Bukkit.getOfflinePlayers()) {
+                String name = player.getName();
+                if (name != null) {
+                    names.update(player.getUniqueId(), name);
+                }
+            }
+        }
+        // Futures are completed on the main thread, so callbacks can interact with the server
+        asyncEcp = new AsyncEasyconomyEcoAPI(ecp, runnable -> Bukkit.getScheduler().runTask(this, runnable));
+        Bukkit.getServicesManager().register(AsyncEasyconomyEcoAPI.class, asyncEcp, this, ServicePriority.Normal);
         translator = new MessageTranslator(getConfig().getString("language"), this);
 
         String perm = getConfig().getString("permissions.balance", null);
@@ -168,16 +220,31 @@ public final class Easyconomy extends JavaPlugin {
         getCommand("balance").setExecutor(new BalanceCommand(ecp, translator, this));
         getCommand("eco").setExecutor(new EcoCommand(ecp, translator, this, backupFolder));
         getCommand("pay").setExecutor(new PayCommand(ecp, translator, this));
-        getCommand("baltop").setExecutor(new BaltopCommand(ecp, translator));
-        getCommand("givemoney").setExecutor(new GivemoneyCommand(ecp, translator, false));
-        getCommand("takemoney").setExecutor(new GivemoneyCommand(ecp, translator, true));
-        getCommand("setmoney").setExecutor(new SetmoneyCommand(ecp, translator));
+        getCommand("baltop").setExecutor(new BaltopCommand(ecp, translator, names, getConfig().getInt("baltopPlayers")));
+        getCommand("givemoney").setExecutor(new GivemoneyCommand(ecp, translator, names, false));
+        getCommand("takemoney").setExecutor(new GivemoneyCommand(ecp, translator, names, true));
+        getCommand("setmoney").setExecutor(new SetmoneyCommand(ecp, translator, names));
 
+        Bukkit.getPluginManager().registerEvents(new PreLoginEvent(ecp, names), this);
         if (getConfig().getInt("startingBalance") != 0) {
             Bukkit.getPluginManager().registerEvents(new JoinEvent(ecp, this),this);
         }
         getServer().getScheduler().runTaskTimerAsynchronously(this, this::saveData, 
                 getConfig().getLong("saving.delay"), getConfig().getLong("saving.period"));
+
+        AuditLog audit = ecp.getAuditLog();
+        long snapshotInterval = getConfig().getLong("audit.snapshot-interval-minutes") * 60L * 20L;
+        if (audit != null && snapshotInterval > 0) {
+            recovery = new PointInTimeRecovery(new File(getDataFolder(), "snapshots"), audit,
+                    getConfig().getLong("audit.retention-days") * 24L * 60L * 60L * 1000L) {
+                @Override
+                protected void onDeleteFailed(@NotNull File snapshot) {
+                    getLogger().warning("Unable to delete the expired snapshot " + snapshot.getName());
+                }
+            };
+            getServer().getScheduler().runTaskTimerAsynchronously(this, this::snapshotEconomy,
+                    getConfig().getLong("saving.delay"), snapshotInterval);
+        }
     }
 
     @Override
@@ -185,7 +252,28 @@ public final class Easyconomy extends JavaPlugin {
         if (!isLoaded) {
             return;
         }
+        // Pending asynchronous operations need to complete before the final save, otherwise their changes are lost
+        if (asyncEcp != null && !asyncEcp.close(AsyncEasyconomyEcoAPI.CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            getLogger().warning("Asynchronous economy operations did not complete in time, their changes may be lost.");
+        }
         saveData();
+        for (Saveable saveable : toSave) {
+            if (saveable instanceof Closeable) {
+                try {
+                    ((Closeable) saveable).close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void snapshotEconomy() {
+        try {
+            recovery.snapshot(ecp.getPlayerDataStorage(), ecp.getBankStorage());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
     public void addSaveable(@NotNull Saveable saveable) {
@@ -196,4 +284,34 @@ public final class Easyconomy extends JavaPlugin {
     public EasyconomyEcoAPI getAPI() {
         return ecp;
     }
+
+    /**
+     * Obtains the asynchronous variant of the API, whose futures are completed on the main thread.
+     * @return The asynchronous API
+     * @since 1.2.0
+     */
+    @NotNull
+    public AsyncEasyconomyEcoAPI getAsyncAPI() {
+        return asyncEcp;
+    }
+
+    /**
+     * Obtains the point-in-time recovery of the economy, which is used to restore all balances as of a certain time.
+     * @return The recovery, or null if either logging or snapshots are disabled
+     * @since 1.2.0
+     */
+    public @Nullable PointInTimeRecovery getRecovery() {
+        return recovery;
+    }
+
+    /**
+     * Obtains the index of the names of the players, which should be used instead of looking up players by name
+     *  or the names of offline players through the server.
+     * @return The name index
+     * @since 1.2.0
+     */
+    @NotNull
+    public PlayerNameIndex getNameIndex() {
+        return names;
+    }
 }
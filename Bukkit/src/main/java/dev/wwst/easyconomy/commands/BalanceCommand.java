@@ -20,8 +20,6 @@ package dev.wwst.easyconomy.commands;
 
 import dev.wwst.easyconomy.Easyconomy;
 import dev.wwst.easyconomy.utils.MessageTranslator;
-import org.bukkit.Bukkit;
-import org.bukkit.OfflinePlayer;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
@@ -29,16 +27,21 @@ import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 
 import de.geolykt.easyconomy.api.EasyconomyEcoAPI;
+import de.geolykt.easyconomy.api.storage.PlayerNameIndex;
+
+import java.util.UUID;
 
 public class BalanceCommand implements CommandExecutor {
 
     private final EasyconomyEcoAPI eco;
     private final MessageTranslator msg;
+    private final PlayerNameIndex names;
     private final String permissionOther;
 
     public BalanceCommand(@NotNull EasyconomyEcoAPI economy, @NotNull MessageTranslator translator, @NotNull Easyconomy plugin) {
         eco = economy;
         msg = translator;
+        names = plugin.getNameIndex();
         permissionOther = plugin.getConfig().getString("permissions.othersBalance", "");
     }
 
@@ -72,12 +75,12 @@ public class BalanceCommand implements CommandExecutor {
     }
 
     private void sendBalanceOfOther(@NotNull CommandSender sender, @NotNull String otherName) {
-        @SuppressWarnings("deprecation")
-        OfflinePlayer p = Bukkit.getOfflinePlayer(otherName);
-        if(!p.hasPlayedBefore() || !eco.isPlayerExisting(p.getUniqueId())) {
+        UUID p = names.getUUID(otherName);
+        if(p == null || !eco.isPlayerExisting(p)) {
             sender.sendMessage(msg.getMessageAndReplace("general.noAccount", true, otherName));
         } else {
-            sender.sendMessage(msg.getMessageAndReplace("balance.ofOther", true, p.getName(), eco.format(eco.getPlayerBalance(p.getUniqueId()))));
+            String name = names.getName(p);
+            sender.sendMessage(msg.getMessageAndReplace("balance.ofOther", true, name == null ? otherName : name, eco.format(eco.getPlayerBalance(p))));
         }
     }
 }
@@ -19,7 +19,6 @@
 package dev.wwst.easyconomy.commands;
 
 import dev.wwst.easyconomy.utils.MessageTranslator;
-import org.bukkit.Bukkit;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
@@ -27,6 +26,7 @@ import org.jetbrains.annotations.NotNull;
 
 import de.geolykt.easyconomy.api.EasyconomyEcoAPI;
 import de.geolykt.easyconomy.api.PlayerDataStorage;
+import de.geolykt.easyconomy.api.storage.PlayerNameIndex;
 
 import java.util.Map;
 import java.util.UUID;
@@ -36,35 +36,57 @@ public class BaltopCommand implements CommandExecutor {
     private final MessageTranslator msg;
     private final PlayerDataStorage pds;
     private final EasyconomyEcoAPI eco;
+    private final PlayerNameIndex names;
+    private final int pageSize;
 
-    public BaltopCommand(@NotNull EasyconomyEcoAPI economy, @NotNull MessageTranslator translator) {
+    public BaltopCommand(@NotNull EasyconomyEcoAPI economy, @NotNull MessageTranslator translator,
+            @NotNull PlayerNameIndex nameIndex, int pageSize) {
         msg = translator;
         eco = economy;
         pds = economy.getPlayerDataStorage();
+        names = nameIndex;
+        this.pageSize = pageSize;
     }
 
     @Override
     public boolean onCommand(@NotNull CommandSender sender,
             @NotNull Command command, @NotNull String label, @NotNull String[] args) {
 
-        if(pds.getBaltop() == null || pds.getBaltop().size() == 0) {
+        int page = 1;
+        if(args.length != 0) {
+            try {
+                page = Integer.parseInt(args[0]);
+            } catch(NumberFormatException e) {
+                page = 0;
+            }
+            if(page < 1) {
+                sender.sendMessage(msg.getMessageAndReplace("general.notAnumber",true,args[0]));
+                return true;
+            }
+        }
+
+        // The first page is the regular baltop, further pages are looked up on demand
+        Map<UUID, Double> baltop = page == 1 || pageSize < 1 ? pds.getBaltop() : pds.getBaltop((page - 1) * pageSize, pageSize);
+        if(baltop == null || baltop.size() == 0) {
             sender.sendMessage(msg.getMessage("baltop.none", true));
             return true;
         }
 
-        StringBuilder message = new StringBuilder(msg.getMessage("baltop.start",true));
+        StringBuilder message = new StringBuilder(page == 1 ? msg.getMessage("baltop.start",true)
+                : msg.getMessageAndReplace("baltop.page", true, page));
         message.append("\n"); // newline
-        for(Map.Entry<UUID, Double> entry : pds.getBaltop().entrySet()) {
-            if(Bukkit.getOfflinePlayer(entry.getKey()).getName() == null) {
-                message.append("Invalid entry: ").append(entry.getKey().toString());
-            } else {
-                message.append(msg.getMessageAndReplace("baltop.value", false, eco.format(entry.getValue()), Bukkit.getOfflinePlayer(entry.getKey()).getName()));
-                message.append("\n");
+        for(Map.Entry<UUID, Double> entry : baltop.entrySet()) {
+            String name = names.getName(entry.getKey());
+            if(name == null) {
+                // The player did not join since the name index exists
+                name = entry.getKey().toString();
             }
+            message.append(msg.getMessageAndReplace("baltop.value", false, eco.format(entry.getValue()), name));
+            message.append("\n");
         }
 
         sender.sendMessage(message.toString());
 
         return true;
     }
-}
\ No newline at end of file
+}
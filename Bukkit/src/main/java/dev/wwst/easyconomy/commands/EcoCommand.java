@@ -23,32 +23,50 @@ import dev.wwst.easyconomy.utils.MessageTranslator;
 
 import java.io.File;
 import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
-import org.bukkit.OfflinePlayer;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.jetbrains.annotations.NotNull;
 
+import de.geolykt.easyconomy.api.AccountKey;
 import de.geolykt.easyconomy.api.BankStorageEngine;
 import de.geolykt.easyconomy.api.EasyconomyEcoAPI;
 import de.geolykt.easyconomy.api.PlayerDataStorage;
+import de.geolykt.easyconomy.api.storage.AuditRecord;
+import de.geolykt.easyconomy.api.storage.PlayerNameIndex;
+import de.geolykt.easyconomy.api.storage.PointInTimeRecovery;
 
 public class EcoCommand implements CommandExecutor {
 
+    private static final int HISTORY_PAGE_SIZE = 10;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
+
     private final EasyconomyEcoAPI eco;
     private final PlayerDataStorage balanceFile;
     private final BankStorageEngine bankFile;
     private final MessageTranslator msg;
     private final String version;
     private final String permissionModify;
+    private final String permissionRestore;
     private final String[] backupCMD;
     private final Easyconomy plugin;
+    private final PlayerNameIndex names;
     private final File backupDir;
+    // Set while a restore is running, so that only one restore can run at a time
+    private final AtomicBoolean restoring = new AtomicBoolean();
 
     public EcoCommand(@NotNull EasyconomyEcoAPI economy, @NotNull MessageTranslator translator, @NotNull Easyconomy invokingPlugin, File backupDirectory) {
         this.eco = economy;
@@ -57,6 +75,7 @@ public class EcoCommand implements CommandExecutor {
         this.msg = translator;
         this.version = invokingPlugin.getDescription().getVersion();
         this.permissionModify = invokingPlugin.getConfig().getString("permissions.modify","");
+        this.permissionRestore = invokingPlugin.getConfig().getString("permissions.restore","");
         List<String> cmd = invokingPlugin.getConfig().getStringList("saving.backup-postrun");
         if (cmd == null || cmd.isEmpty()) {
             backupCMD = null;
@@ -64,6 +83,7 @@ public class EcoCommand implements CommandExecutor {
             backupCMD = cmd.toArray(new String[0]);
         }
         this.plugin = invokingPlugin;
+        this.names = invokingPlugin.getNameIndex();
         this.backupDir = backupDirectory;
     }
 
@@ -80,6 +100,12 @@ public class EcoCommand implements CommandExecutor {
                 return true;
             }
             if(command.getName().equals("eco")) {
+                if (args.length >= 2 && args[0].equalsIgnoreCase("history")) {
+                    return showHistory(sender, args);
+                }
+                if ((args.length == 2 || args.length == 3) && args[0].equalsIgnoreCase("restore")) {
+                    return restore(sender, args[1], args.length == 3 && args[2].equalsIgnoreCase("confirm"));
+                }
                 if (args.length != 3) {
                     if (args.length == 1) {
                         if (args[0].equalsIgnoreCase("help")) {
@@ -134,9 +160,8 @@ public class EcoCommand implements CommandExecutor {
     }
 
     private boolean performOperation(CommandSender sender, String operation, String target, String amountStr) {
-        @SuppressWarnings("deprecation")
-        final OfflinePlayer p = Bukkit.getOfflinePlayer(target);
-        if(!p.isOnline() && !p.hasPlayedBefore()) {
+        final UUID p = names.getUUID(target);
+        if(p == null) {
             sender.sendMessage(msg.getMessageAndReplace("general.noAccount",true,target));
             return true;
         }
@@ -150,20 +175,178 @@ public class EcoCommand implements CommandExecutor {
         double now = 0.0;
         switch (operation.toLowerCase()) {
             case "add": case "addmoney": case "give": case "givemoney":
-                now = eco.givePlayerMoney(p.getUniqueId(), amount);
+                now = eco.givePlayerMoney(p, amount);
                 break;
             case "remove": case "removemoney": case "take": case "takemoney":
-                now = eco.removePlayerMoney(p.getUniqueId(),amount);
+                now = eco.removePlayerMoney(p,amount);
                 break;
             case "set": case "setbalance": case "setmoney":
                 now = amount;
-                amount = Math.abs(amount - eco.setBalance(p.getUniqueId(), amount));
+                amount = Math.abs(amount - eco.setBalance(p, amount));
                 break;
             default:
                 sender.sendMessage(msg.getMessageAndReplace("general.syntax", true, "/eco give|take|set <playerName> <amount>"));
                 return true;
         }
-        sender.sendMessage(msg.getMessageAndReplace("eco.success", true, p.getName(), eco.format(amount), eco.format(now)));
+        sender.sendMessage(msg.getMessageAndReplace("eco.success", true, getName(p, target), eco.format(amount), eco.format(now)));
+        return true;
+    }
+
+    private boolean showHistory(CommandSender sender, String[] args) {
+        if (args.length > 3) {
+            sender.sendMessage(msg.getMessageAndReplace("general.syntax", true, "/eco history <playerName> [page]"));
+            return true;
+        }
+        final UUID p = names.getUUID(args[1]);
+        if(p == null) {
+            sender.sendMessage(msg.getMessageAndReplace("general.noAccount",true,args[1]));
+            return true;
+        }
+        int page = 1;
+        if (args.length == 3) {
+            try {
+                page = Integer.parseInt(args[2]);
+            } catch(NumberFormatException e) {
+                page = 0;
+            }
+            if (page < 1) {
+                sender.sendMessage(msg.getMessageAndReplace("general.notAnumber",true,args[2]));
+                return true;
+            }
+        }
+        if (eco.getAuditLog() == null) {
+            sender.sendMessage(msg.getMessage("history.disabled", true));
+            return true;
+        }
+        final int finalPage = page;
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            List<AuditRecord> history;
+            try {
+                history = eco.getHistory(p, (finalPage - 1) * HISTORY_PAGE_SIZE, HISTORY_PAGE_SIZE);
+            } catch (IOException e) {
+                e.printStackTrace();
+                sender.sendMessage(msg.getMessage("history.ioissue", true));
+                return;
+            }
+            if (history.isEmpty()) {
+                sender.sendMessage(msg.getMessage("history.none", true));
+                return;
+            }
+            sender.sendMessage(msg.getMessageAndReplace("history.start", true, getName(p, args[1]), finalPage));
+            for (AuditRecord record : history) {
+                String time = TIME_FORMAT.format(Instant.ofEpochMilli(record.getTimestamp()));
+                String action = record.getAction().name().toLowerCase();
+                AccountKey counterparty = record.getCounterparty();
+                if (counterparty != null) {
+                    sender.sendMessage(msg.getMessageAndReplace("history.transfer", false, time, action,
+                            eco.format(record.getAmount()), getName(record.getAccount()), getName(counterparty)));
+                } else {
+                    String balance = Double.isNaN(record.getBalance()) ? "?" : eco.format(record.getBalance());
+                    sender.sendMessage(msg.getMessageAndReplace("history.entry", false, time, action,
+                            eco.format(record.getAmount()), balance));
+                }
+            }
+        });
         return true;
     }
+
+    private boolean restore(CommandSender sender, String timeStr, boolean confirmed) {
+        if("".equals(permissionRestore) && !sender.isOp() || !permissionRestore.equals("") && !sender.hasPermission(permissionRestore)) {
+            sender.sendMessage(msg.getMessageAndReplace("general.noPerms",true,"".equals(permissionRestore)?"Operator permissions":permissionRestore));
+            return true;
+        }
+        final PointInTimeRecovery recovery = plugin.getRecovery();
+        if (recovery == null) {
+            sender.sendMessage(msg.getMessage("restore.disabled", true));
+            return true;
+        }
+        final long time = parseTime(timeStr);
+        if (time < 0 || time > System.currentTimeMillis()) {
+            sender.sendMessage(msg.getMessageAndReplace("restore.invalidTime", true, timeStr));
+            return true;
+        }
+        final String formattedTime = TIME_FORMAT.format(Instant.ofEpochMilli(time));
+        if (!confirmed) {
+            // Every balance is overwritten, so the command has to be repeated with confirm
+            sender.sendMessage(msg.getMessageAndReplace("restore.confirm", true, formattedTime, timeStr));
+            return true;
+        }
+        if (!restoring.compareAndSet(false, true)) {
+            sender.sendMessage(msg.getMessage("restore.running", true));
+            return true;
+        }
+        sender.sendMessage(msg.getMessageAndReplace("restore.start", true, formattedTime));
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            try {
+                restore(sender, recovery, time, formattedTime);
+            } finally {
+                restoring.set(false);
+            }
+        });
+        return true;
+    }
+
+    private void restore(CommandSender sender, PointInTimeRecovery recovery, long time, String formattedTime) {
+        final PointInTimeRecovery.State state;
+        try {
+            // Snapshot the current balances first so the restore can be undone
+            recovery.snapshot(balanceFile, bankFile);
+            state = recovery.stage(time);
+        } catch (IOException e) {
+            e.printStackTrace();
+            sender.sendMessage(msg.getMessage("restore.ioissue", true));
+            return;
+        }
+        if (state == null) {
+            sender.sendMessage(msg.getMessageAndReplace("restore.noSnapshot", true, formattedTime,
+                    TIME_FORMAT.format(Instant.ofEpochMilli(recovery.getEarliestRestorableTime()))));
+            return;
+        }
+        // Other changes wait until all balances were swapped in
+        recovery.apply(state, balanceFile, bankFile);
+        try {
+            // The restore itself is not audited, so the changes that follow need to be based on a new snapshot
+            recovery.snapshot(balanceFile, bankFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        sender.sendMessage(msg.getMessageAndReplace("restore.finished", true, state.getPlayers().size(),
+                state.getBanks().size(), formattedTime));
+    }
+
+    /**
+     * Parses a time that is either given in milliseconds since the epoch, as a local date time such as
+     *  2021-05-01T18:30 or as an UTC instant such as 2021-05-01T16:30:00Z.
+     * @return The time in milliseconds since the epoch or -1 if it is invalid
+     */
+    private static long parseTime(@NotNull String time) {
+        try {
+            return Long.parseLong(time);
+        } catch (NumberFormatException expected) {
+            // Not in milliseconds
+        }
+        try {
+            return LocalDateTime.parse(time).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException expected) {
+            // Not a local date time
+        }
+        try {
+            return Instant.parse(time).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    private @NotNull String getName(@NotNull AccountKey account) {
+        UUID player = account.getPlayer();
+        if (player == null) {
+            return account.toString();
+        }
+        return getName(player, player.toString());
+    }
+
+    private @NotNull String getName(@NotNull UUID player, @NotNull String fallback) {
+        String name = names.getName(player);
+        return name == null ? fallback : name;
+    }
 }
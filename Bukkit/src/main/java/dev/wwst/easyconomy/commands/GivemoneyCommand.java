@@ -29,27 +29,31 @@ import org.bukkit.entity.Entity;
 import org.jetbrains.annotations.NotNull;
 
 import de.geolykt.easyconomy.api.EasyconomyEcoAPI;
+import de.geolykt.easyconomy.api.storage.PlayerNameIndex;
 import dev.wwst.easyconomy.utils.MessageTranslator;
 
 public class GivemoneyCommand implements CommandExecutor {
 
     private final EasyconomyEcoAPI economy;
     private final MessageTranslator msgTranslator;
+    private final PlayerNameIndex names;
     private final boolean isTaking;
 
     /**
      * Creates a new GiveMoneyCommand instance, which handles the givemoney and takemoney commands and their aliases.
      * @param eco The economy object to use
      * @param translator The message translator to use
+     * @param nameIndex The index used to look up offline players by name
      * @param take True if the executor should perform the takemoney command, false otherwise
      */
-    public GivemoneyCommand(@NotNull EasyconomyEcoAPI eco, @NotNull MessageTranslator translator, boolean take) {
+    public GivemoneyCommand(@NotNull EasyconomyEcoAPI eco, @NotNull MessageTranslator translator,
+            @NotNull PlayerNameIndex nameIndex, boolean take) {
         economy = eco;
         msgTranslator = translator;
+        names = nameIndex;
         isTaking = take;
     }
 
-    @SuppressWarnings("deprecation")
     @Override
     public boolean onCommand(@NotNull CommandSender sender, @NotNull Command command,
             @NotNull String label, @NotNull String[] args) {
@@ -82,7 +86,11 @@ public class GivemoneyCommand implements CommandExecutor {
                 }
             } else {
                 // Add balance to (offline) player
-                UUID player = Bukkit.getOfflinePlayer(args[0]).getUniqueId();
+                UUID player = names.getUUID(args[0]);
+                if (player == null) {
+                    sender.sendMessage(msgTranslator.getMessageAndReplace("general.noAccount", true, args[0]));
+                    return true;
+                }
                 if (isTaking) {
                     economy.removePlayerMoney(player, amount);
                     now = economy.getPlayerBalance(player);
@@ -21,26 +21,31 @@ package dev.wwst.easyconomy.commands;
 import dev.wwst.easyconomy.Easyconomy;
 import dev.wwst.easyconomy.utils.MessageTranslator;
 import org.bukkit.Bukkit;
-import org.bukkit.OfflinePlayer;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 
+import de.geolykt.easyconomy.api.AccountKey;
 import de.geolykt.easyconomy.api.EasyconomyEcoAPI;
+import de.geolykt.easyconomy.api.storage.PlayerNameIndex;
+
+import java.util.UUID;
 
 public class PayCommand implements CommandExecutor {
 
 
     private final EasyconomyEcoAPI eco;
     private final MessageTranslator msg;
+    private final PlayerNameIndex names;
 
     private final double minimumTransactionAmount;
 
     public PayCommand(@NotNull EasyconomyEcoAPI economy, @NotNull MessageTranslator translator, @NotNull Easyconomy plugin) {
         eco = economy;
         msg = translator;
+        names = plugin.getNameIndex();
         minimumTransactionAmount = plugin.getConfig().getDouble("minimumTransactionAmount",0.1d);
     }
 
@@ -72,20 +77,21 @@ public class PayCommand implements CommandExecutor {
             sender.sendMessage(msg.getMessage("pay.self",true));
             return true;
         }
-        if(eco.getPlayerBalance(p.getUniqueId()) < amount) {
-            sender.sendMessage(msg.getMessageAndReplace("general.insufficientFunds",true,eco.format(amount-eco.getPlayerBalance(p.getUniqueId()))));
+        final UUID target = names.getUUID(args[0]);
+        if(target == null || !eco.isPlayerExisting(target)) {
+            sender.sendMessage(msg.getMessageAndReplace("general.noAccount",true,args[0]));
             return true;
         }
-        @SuppressWarnings("deprecation")
-        OfflinePlayer target = Bukkit.getOfflinePlayer(args[0]);
-        if(!eco.isPlayerExisting(target.getUniqueId())) {
-            sender.sendMessage(msg.getMessageAndReplace("general.noAccount",true,args[0]));
+        // Checking the balance and moving the money is one atomic step, so concurrent payments can not overdraw it
+        if(!eco.transfer(AccountKey.player(p.getUniqueId()), AccountKey.player(target), amount, true)) {
+            sender.sendMessage(msg.getMessageAndReplace("general.insufficientFunds",true,eco.format(amount-eco.getPlayerBalance(p.getUniqueId()))));
             return true;
         }
-        eco.transferBalance(p.getUniqueId(), target.getUniqueId(), amount);
-        p.sendMessage(msg.getMessageAndReplace("pay.you",true,target.getName(),eco.format(amount),eco.format(eco.getPlayerBalance(p.getUniqueId()))));
-        if(target.getPlayer() != null) {
-            target.getPlayer().sendMessage(msg.getMessageAndReplace("pay.target", true, p.getName(), eco.format(amount), eco.format(eco.getPlayerBalance(target.getUniqueId()))));
+        String targetName = names.getName(target);
+        p.sendMessage(msg.getMessageAndReplace("pay.you",true,targetName == null ? args[0] : targetName,eco.format(amount),eco.format(eco.getPlayerBalance(p.getUniqueId()))));
+        Player online = Bukkit.getPlayer(target);
+        if(online != null) {
+            online.sendMessage(msg.getMessageAndReplace("pay.target", true, p.getName(), eco.format(amount), eco.format(eco.getPlayerBalance(target))));
         }
         return true;
     }
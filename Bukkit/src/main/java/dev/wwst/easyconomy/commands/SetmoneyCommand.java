@@ -18,6 +18,7 @@
 package dev.wwst.easyconomy.commands;
 
 import java.util.List;
+import java.util.UUID;
 
 import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
@@ -28,24 +29,28 @@ import org.bukkit.entity.Entity;
 import org.jetbrains.annotations.NotNull;
 
 import de.geolykt.easyconomy.api.EasyconomyEcoAPI;
+import de.geolykt.easyconomy.api.storage.PlayerNameIndex;
 import dev.wwst.easyconomy.utils.MessageTranslator;
 
 public class SetmoneyCommand implements CommandExecutor {
 
     private final EasyconomyEcoAPI economy;
     private final MessageTranslator msgTranslator;
+    private final PlayerNameIndex names;
 
     /**
      * Creates a new SetmoneyCommand instance, which handles the setmoney command and it's aliases.
      * @param eco The economy object to use
      * @param translator The message translator to use
+     * @param nameIndex The index used to look up offline players by name
      */
-    public SetmoneyCommand(@NotNull EasyconomyEcoAPI eco, @NotNull MessageTranslator translator) {
+    public SetmoneyCommand(@NotNull EasyconomyEcoAPI eco, @NotNull MessageTranslator translator,
+            @NotNull PlayerNameIndex nameIndex) {
         economy = eco;
         msgTranslator = translator;
+        names = nameIndex;
     }
 
-    @SuppressWarnings("deprecation")
     @Override
     public boolean onCommand(@NotNull CommandSender sender, @NotNull Command command,
             @NotNull String label, @NotNull String[] args) {
@@ -64,7 +69,12 @@ public class SetmoneyCommand implements CommandExecutor {
         if (ents.size() == 0) {
             if (economy.setBalance(args[0], amount) == Double.NEGATIVE_INFINITY) {
                 // Set balance of (offline) player instead since there was no given bank balance
-                economy.setBalance(Bukkit.getOfflinePlayer(args[0]).getUniqueId(), amount);
+                UUID player = names.getUUID(args[0]);
+                if (player == null) {
+                    sender.sendMessage(msgTranslator.getMessageAndReplace("general.noAccount", true, args[0]));
+                    return true;
+                }
+                economy.setBalance(player, amount);
             }
             sender.sendMessage(msgTranslator.getMessageAndReplace("eco.success",
                     true,
@@ -75,7 +85,7 @@ public class SetmoneyCommand implements CommandExecutor {
             // Add balance to all selected players
             for (Entity entity : ents) {
                 if (entity instanceof OfflinePlayer) {
-                    economy.setBalance(Bukkit.getOfflinePlayer(args[0]).getUniqueId(), amount);
+                    economy.setBalance(entity.getUniqueId(), amount);
                     sender.sendMessage(msgTranslator.getMessageAndReplace("eco.success",
                             true,
                             args[0],
@@ -21,26 +21,35 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.UUID;
 
-import org.bukkit.Bukkit;
-import org.bukkit.OfflinePlayer;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import de.geolykt.easyconomy.api.Bank;
 import de.geolykt.easyconomy.api.PlaceholderBank;
+import de.geolykt.easyconomy.api.storage.PlayerNameIndex;
 
 public class Account implements Bank {
 
     private final Set<UUID> memberUUIDs;
     private final String name;
+    private final PlayerNameIndex names;
     private double bal;
 
-    public Account(@NotNull String bankName, double balance, @Nullable Set<UUID> members) {
+    /**
+     * Creates a new bank account.
+     * @param bankName The name of the bank, which may not be longer than 127 bytes in UTF-8
+     * @param balance The balance of the bank
+     * @param members The UUIDs of the members, or null if the bank has no members yet
+     * @param nameIndex The index that resolves the names passed to {@link #isMember(String)}
+     */
+    public Account(@NotNull String bankName, double balance, @Nullable Set<UUID> members, @NotNull PlayerNameIndex nameIndex) {
         name = bankName;
+        names = nameIndex;
         if (name.getBytes(StandardCharsets.UTF_8).length > 127) {
             throw new IllegalArgumentException("Bank names may not be longer than 127 bytes.");
         }
@@ -49,12 +58,12 @@ public class Account implements Bank {
     }
 
     @Override
-    public void setMoney(double amount) {
+    public synchronized void setMoney(double amount) {
         bal = amount;
     }
 
     @Override
-    public double getMoney() {
+    public synchronized double getMoney() {
         return bal;
     }
 
@@ -86,12 +95,16 @@ public class Account implements Bank {
 
     @Override
     public boolean isMember(@NotNull String playerName) {
-        @SuppressWarnings("deprecation")
-        OfflinePlayer player = Bukkit.getOfflinePlayer(playerName);
+        UUID player = names.getUUID(playerName);
         if (player == null) {
             return false;
         }
-        return memberUUIDs.contains(player.getUniqueId());
+        return memberUUIDs.contains(player);
+    }
+
+    @Override
+    public @NotNull Set<UUID> getMembers() {
+        return Collections.unmodifiableSet(memberUUIDs);
     }
 
     @NotNull
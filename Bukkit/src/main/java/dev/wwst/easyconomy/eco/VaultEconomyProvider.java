@@ -18,6 +18,7 @@
  */
 package dev.wwst.easyconomy.eco;
 
+import java.io.File;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
@@ -26,7 +27,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
-import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
 import org.bukkit.Bukkit;
@@ -36,13 +36,27 @@ import org.bukkit.configuration.file.FileConfiguration;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import de.geolykt.easyconomy.api.AccountKey;
+import de.geolykt.easyconomy.api.AccountLocks;
 import de.geolykt.easyconomy.api.Bank;
+import de.geolykt.easyconomy.api.BankStorageEngine;
 import de.geolykt.easyconomy.api.EasyconomyEcoAPI;
+import de.geolykt.easyconomy.api.FixedPoint;
 import de.geolykt.easyconomy.api.PlaceholderBank;
 import de.geolykt.easyconomy.api.PlayerDataStorage;
+import de.geolykt.easyconomy.api.TransferEngine;
+import de.geolykt.easyconomy.api.WithdrawResult;
+import de.geolykt.easyconomy.api.storage.AuditLog;
+import de.geolykt.easyconomy.api.storage.AuditRecord.Action;
+import de.geolykt.easyconomy.api.storage.LsmBalanceStorage;
+import de.geolykt.easyconomy.api.storage.PlayerNameIndex;
+import de.geolykt.easyconomy.api.storage.SqlBankStorage;
+import de.geolykt.easyconomy.api.storage.SqlDialect;
 import dev.wwst.easyconomy.Easyconomy;
 import dev.wwst.easyconomy.storage.BinaryAccountStoarge;
 import dev.wwst.easyconomy.storage.BinaryDataStorage;
+import dev.wwst.easyconomy.storage.LsmDataStorage;
+import dev.wwst.easyconomy.storage.SqlDataStorage;
 import net.milkbowl.vault.economy.Economy;
 import net.milkbowl.vault.economy.EconomyResponse;
 import net.milkbowl.vault.economy.EconomyResponse.ResponseType;
@@ -57,8 +71,9 @@ import net.milkbowl.vault.economy.EconomyResponse.ResponseType;
 public class VaultEconomyProvider implements Economy, EasyconomyEcoAPI {
 
     private final PlayerDataStorage playerPDS;
-    private final BinaryAccountStoarge bankPDS;
-    private final @Nullable Logger logger;
+    private final BankStorageEngine bankPDS;
+    private final @Nullable AuditLog audit;
+    private final @NotNull PlayerNameIndex names;
     private static final Pattern INVALID_PLAYERNAME = Pattern.compile("[^a-zA-Z0-9_]");
 
     private final String currencyFormatSingular,
@@ -66,6 +81,9 @@ public class VaultEconomyProvider implements Economy, EasyconomyEcoAPI {
             currencyNameSingular,
             currencyNamePlural;
     private final int fractionalDigits;
+    // The scale of the balances if fixed-point arithmetic is enabled
+    private final @Nullable FixedPoint fixedPoint;
+    private final @NotNull TransferEngine transfers;
 
     /**
      * Creates a new instance of the class with the given parameters to load the required dependencies of the plugin
@@ -74,20 +92,85 @@ public class VaultEconomyProvider implements Economy, EasyconomyEcoAPI {
      * @throws IOException
      */
     public VaultEconomyProvider(@NotNull FileConfiguration config, @NotNull Easyconomy invokingPlugin) throws IOException {
-        playerPDS = new BinaryDataStorage(invokingPlugin,
-                config.getString("storage-location-player", "balances.dat"), config.getInt("baltopPlayers"));
-        bankPDS = new BinaryAccountStoarge(config.getString("storage-location-bank", "banks.dat"), invokingPlugin);
+        fractionalDigits = config.getInt("decimalsShown");
+        names = invokingPlugin.getNameIndex();
+        if (!config.getBoolean("fixed-point", false)) {
+            fixedPoint = null;
+        } else if (fractionalDigits < 0) {
+            invokingPlugin.getLogger().warning("Fixed-point balances require decimalsShown to be set, they are disabled.");
+            fixedPoint = null;
+        } else {
+            fixedPoint = new FixedPoint(Math.min(fractionalDigits, 9));
+        }
+        String backend = config.getString("saving.backend", "binary");
+        SqlDialect dialect = SqlDialect.byName(backend);
+        if (dialect == null) {
+            if (backend.equalsIgnoreCase("lsm")) {
+                LsmDataStorage lsm = new LsmDataStorage(invokingPlugin, config.getString("storage-location-player", "balances.dat") + ".lsm",
+                        config.getInt("saving.lsm.memtable-size", LsmBalanceStorage.DEFAULT_MEMTABLE_SIZE), config.getInt("baltopPlayers"));
+                lsm.setFixedPoint(fixedPoint);
+                playerPDS = lsm;
+            } else {
+                if (!backend.equalsIgnoreCase("binary")) {
+                    invokingPlugin.getLogger().warning("Unknown storage backend " + backend + ", using the binary backend instead.");
+                }
+                playerPDS = new BinaryDataStorage(invokingPlugin,
+                        config.getString("storage-location-player", "balances.dat"), config.getInt("baltopPlayers"), fixedPoint);
+            }
+            bankPDS = new BinaryAccountStoarge(config.getString("storage-location-bank", "banks.dat"), invokingPlugin);
+        } else {
+            File database = new File(invokingPlugin.getDataFolder() + "/storage", "economy" + dialect.getFileExtension());
+            SqlDataStorage sql = new SqlDataStorage(invokingPlugin, database, dialect, config.getInt("baltopPlayers"));
+            sql.setFixedPoint(fixedPoint);
+            playerPDS = sql;
+            SqlBankStorage banks = new SqlBankStorage(database, dialect, (name, balance, members) -> {
+                if (members.isEmpty()) {
+                    return new PlaceholderBank(name, balance);
+                }
+                return new Account(name, balance, members, names);
+            });
+            banks.reload();
+            invokingPlugin.addSaveable(banks);
+            bankPDS = banks;
+        }
 
-        if(config.getBoolean("enable-logging",true))
-            logger = invokingPlugin.getLogger();
-        else
-            logger = null;
+        transfers = new TransferEngine(playerPDS, bankPDS, fixedPoint);
+
+        if(config.getBoolean("enable-logging",true)) {
+            audit = new AuditLog(new File(invokingPlugin.getDataFolder(), "audit"),
+                    config.getLong("audit.segment-size-mb", 16L) * 1024L * 1024L,
+                    config.getLong("audit.retention-days", 90L) * 24L * 60L * 60L * 1000L,
+                    config.getInt("audit.buffer-size", 65536)) {
+                @Override
+                protected void onWriteFailed(@NotNull IOException e, int records, boolean discarded) {
+                    invokingPlugin.getLogger().warning("Unable to write " + records + " records of the audit log"
+                            + (discarded ? ", they are lost: " : ", retrying: ") + e);
+                }
+
+                @Override
+                protected void onDeleteFailed(@NotNull File segment) {
+                    invokingPlugin.getLogger().warning("Unable to delete the expired audit log segment " + segment.getName());
+                }
+            };
+            invokingPlugin.addSaveable(audit);
+        } else {
+            audit = null;
+        }
 
         currencyNameSingular = config.getString("names.currencyNameSingular","Dollar");
         currencyNamePlural = config.getString("names.currencyNamePlural","Dollars");
         currencyFormatSingular = ChatColor.translateAlternateColorCodes('&',config.getString("names.currencyFormatSingular", "%s Dollar"));
         currencyFormatPlural = ChatColor.translateAlternateColorCodes('&',config.getString("names.currencyFormatPlural","%s Dollars"));
-        fractionalDigits = config.getInt("decimalsShown");
+    }
+
+    /**
+     * Looks up a player by name through the name index, so the server does not need to look up the profile.
+     * @param playerName The name of the player
+     * @return The player, or null if no known player uses that name
+     */
+    private @Nullable OfflinePlayer getOfflinePlayer(@NotNull String playerName) {
+        UUID player = names.getUUID(playerName);
+        return player == null ? null : Bukkit.getOfflinePlayer(player);
     }
 
     /**
@@ -130,7 +213,7 @@ public class VaultEconomyProvider implements Economy, EasyconomyEcoAPI {
      */
     @Override
     public int fractionalDigits() {
-        return -1;
+        return fixedPoint == null ? -1 : fixedPoint.getFractionalDigits();
     }
 
     /**
@@ -143,8 +226,10 @@ public class VaultEconomyProvider implements Economy, EasyconomyEcoAPI {
     @Override
     @NotNull
     public String format(double amount) {
-        if(fractionalDigits >= 0) {
-            amount = new BigDecimal(amount).setScale(fractionalDigits, RoundingMode.DOWN).doubleValue();
+        if (fractionalDigits >= 0 && Double.isFinite(amount)) {
+            // Truncated the same way whether fixed-point balances are enabled or not, balances in whole minor units
+            // are shown as they are. The decimal value of the double is truncated, not it's binary approximation.
+            amount = BigDecimal.valueOf(amount).setScale(fractionalDigits, RoundingMode.DOWN).doubleValue();
         }
         if(amount != 1) return String.format(currencyFormatPlural,amount);
         else return String.format(currencyFormatSingular,amount);
@@ -183,7 +268,8 @@ public class VaultEconomyProvider implements Economy, EasyconomyEcoAPI {
         if (INVALID_PLAYERNAME.matcher(playerName).find()) {
             return bankPDS.get(playerName) != null;
         } else {
-            return hasAccount(Bukkit.getOfflinePlayer(playerName));
+            OfflinePlayer player = getOfflinePlayer(playerName);
+            return player != null && hasAccount(player);
         }
     }
 
@@ -233,7 +319,8 @@ public class VaultEconomyProvider implements Economy, EasyconomyEcoAPI {
         if (INVALID_PLAYERNAME.matcher(playerName).find()) {
             return bankBalance(playerName).balance;
         } else {
-            return getBalance(Bukkit.getOfflinePlayer(playerName));
+            OfflinePlayer player = getOfflinePlayer(playerName);
+            return player == null ? Double.NEGATIVE_INFINITY : getBalance(player);
         }
     }
 
@@ -329,7 +416,11 @@ public class VaultEconomyProvider implements Economy, EasyconomyEcoAPI {
         if (INVALID_PLAYERNAME.matcher(playerName).find()) {
             return bankWithdraw(playerName, amount);
         } else {
-            return withdrawPlayer(Bukkit.getOfflinePlayer(playerName), amount);
+            OfflinePlayer player = getOfflinePlayer(playerName);
+            if (player == null) {
+                return new EconomyResponse(0, 0, EconomyResponse.ResponseType.FAILURE, "Unknown player.");
+            }
+            return withdrawPlayer(player, amount);
         }
     }
 
@@ -343,14 +434,17 @@ public class VaultEconomyProvider implements Economy, EasyconomyEcoAPI {
     @Override
     @NotNull
     public EconomyResponse withdrawPlayer(@NotNull OfflinePlayer player, double amount) {
-        final double oldBalance = getBalance(player);
-        // BigDecimal for less approximations when dealing with doubles (due to how floating point values are handled in
-        // Java, there will always be approximations) ( https://docs.oracle.com/cd/E19957-01/806-3568/ncg_goldberg.html )
-        final double newBalance = BigDecimal.valueOf(oldBalance).subtract(BigDecimal.valueOf(amount)).doubleValue();
-        if(logger != null)
-            logger.info("[TRANSFER-DEL] " + player.getUniqueId() + " " + format(amount));
-        playerPDS.set(player.getUniqueId(), newBalance);
-        return new EconomyResponse(amount, newBalance, EconomyResponse.ResponseType.SUCCESS, null);
+        // Checked and withdrawn in one step, so callers that check has() beforehand can not overdraw the balance
+        final WithdrawResult result;
+        try {
+            result = withdrawIfAtLeast(player.getUniqueId(), amount);
+        } catch (ArithmeticException e) {
+            return unrepresentable(getPlayerBalance(player.getUniqueId()));
+        }
+        if (!result.isSuccess()) {
+            return new EconomyResponse(0, result.getNewBalance(), EconomyResponse.ResponseType.FAILURE, "Insufficient funds.");
+        }
+        return new EconomyResponse(amount, result.getNewBalance(), EconomyResponse.ResponseType.SUCCESS, null);
     }
 
     /**
@@ -390,13 +484,23 @@ public class VaultEconomyProvider implements Economy, EasyconomyEcoAPI {
     public EconomyResponse depositPlayer(@NotNull String playerName, double amount) {
         if (INVALID_PLAYERNAME.matcher(playerName).find()) {
             if (!bankPDS.has(playerName)) {
-                bankPDS.add(new PlaceholderBank(playerName, amount));
-                return new EconomyResponse(amount, amount, EconomyResponse.ResponseType.SUCCESS, null);
+                final double balance;
+                try {
+                    balance = toBalance(amount);
+                } catch (ArithmeticException e) {
+                    return unrepresentable(0);
+                }
+                bankPDS.add(new PlaceholderBank(playerName, balance));
+                return new EconomyResponse(amount, balance, EconomyResponse.ResponseType.SUCCESS, null);
             } else {
                 return bankDeposit(playerName, amount);
             }
         } else {
-            return depositPlayer(Bukkit.getOfflinePlayer(playerName), amount);
+            OfflinePlayer player = getOfflinePlayer(playerName);
+            if (player == null) {
+                return new EconomyResponse(0, 0, EconomyResponse.ResponseType.FAILURE, "Unknown player.");
+            }
+            return depositPlayer(player, amount);
         }
     }
 
@@ -410,11 +514,12 @@ public class VaultEconomyProvider implements Economy, EasyconomyEcoAPI {
     @Override
     @NotNull
     public EconomyResponse depositPlayer(@NotNull OfflinePlayer player, double amount) {
-        final double oldBalance = getBalance(player);
-        final double newBalance = BigDecimal.valueOf(oldBalance).add(BigDecimal.valueOf(amount)).doubleValue();
-        if(logger != null)
-            logger.info("[TRANSFER-ADD] " + player.getUniqueId() + " " + format(amount));
-        playerPDS.set(player.getUniqueId(), newBalance);
+        final double newBalance;
+        try {
+            newBalance = givePlayerMoney(player.getUniqueId(), amount);
+        } catch (ArithmeticException e) {
+            return unrepresentable(getPlayerBalance(player.getUniqueId()));
+        }
         return new EconomyResponse(amount, newBalance, EconomyResponse.ResponseType.SUCCESS, null);
     }
 
@@ -454,15 +559,15 @@ public class VaultEconomyProvider implements Economy, EasyconomyEcoAPI {
     @NotNull
     public EconomyResponse createBank(@NotNull String name, @NotNull String player) {
         if (bankPDS.has(name)) {
-            return new EconomyResponse(0, bankPDS.getMoney(name),
+            return new EconomyResponse(0, bankPDS.getBalanceOrDefault(name, 0.0),
                     EconomyResponse.ResponseType.FAILURE, "Bank already exists.");
         }
         Set<UUID> uuids = new HashSet<UUID>();
-        OfflinePlayer plyr = Bukkit.getOfflinePlayer(player);
-        if (plyr != null) {
-            uuids.add(plyr.getUniqueId());
+        UUID owner = names.getUUID(player);
+        if (owner != null) {
+            uuids.add(owner);
         }
-        bankPDS.add(new Account(name, 0, uuids));
+        bankPDS.add(new Account(name, 0, uuids, names));
         return new EconomyResponse(0, 0, EconomyResponse.ResponseType.SUCCESS, null);
     }
 
@@ -477,12 +582,12 @@ public class VaultEconomyProvider implements Economy, EasyconomyEcoAPI {
     @NotNull
     public EconomyResponse createBank(@NotNull String name, @NotNull OfflinePlayer player) {
         if (bankPDS.has(name)) {
-            return new EconomyResponse(0, bankPDS.getMoney(name),
+            return new EconomyResponse(0, bankPDS.getBalanceOrDefault(name, 0.0),
                     EconomyResponse.ResponseType.FAILURE, "Bank already exists.");
         }
         Set<UUID> uuids = new HashSet<UUID>();
         uuids.add(player.getUniqueId());
-        bankPDS.add(new Account(name, 0, uuids));
+        bankPDS.add(new Account(name, 0, uuids, names));
         return new EconomyResponse(0, 0, EconomyResponse.ResponseType.SUCCESS, null);
     }
 
@@ -495,7 +600,7 @@ public class VaultEconomyProvider implements Economy, EasyconomyEcoAPI {
     @Override
     @NotNull
     public EconomyResponse deleteBank(@NotNull String name) {
-        Bank bank = bankPDS.removeAccount(name);
+        Bank bank = bankPDS.remove(name);
         if (bank == null) {
             return new EconomyResponse(0, 0,
                     EconomyResponse.ResponseType.FAILURE, "Bank doesn't exist.");
@@ -557,10 +662,16 @@ public class VaultEconomyProvider implements Economy, EasyconomyEcoAPI {
             return new EconomyResponse(0, 0,
                     EconomyResponse.ResponseType.FAILURE, "Bank doesn't exist.");
         }
-        if(logger != null)
-            logger.info("[BANK-TRANSFER] "+ name +" "+format(-amount));
-        bank.removeMoney(amount);
-        return new EconomyResponse(amount, bank.getMoney(), EconomyResponse.ResponseType.SUCCESS, null);
+        final WithdrawResult result;
+        try {
+            result = withdrawBankIfAtLeast(bank, amount);
+        } catch (ArithmeticException e) {
+            return unrepresentable(bank.getMoney());
+        }
+        if (!result.isSuccess()) {
+            return new EconomyResponse(0, result.getNewBalance(), EconomyResponse.ResponseType.FAILURE, "Insufficient funds.");
+        }
+        return new EconomyResponse(amount, result.getNewBalance(), EconomyResponse.ResponseType.SUCCESS, null);
     }
 
     /**
@@ -578,10 +689,26 @@ public class VaultEconomyProvider implements Economy, EasyconomyEcoAPI {
             return new EconomyResponse(0, 0,
                     EconomyResponse.ResponseType.FAILURE, "Bank doesn't exist.");
         }
-        if(logger != null)
-            logger.info("[BANK-TRANSFER] "+ name +" "+format(amount));
-        bank.addMoney(amount);
-        return new EconomyResponse(amount, bank.getMoney(), EconomyResponse.ResponseType.SUCCESS, null);
+        final double newBalance;
+        final long locked = lockAudited(AccountLocks.stripe(name));
+        try {
+            newBalance = addBankMoney(bank, amount);
+            if(audit != null)
+                audit.appendBank(Action.DEPOSIT, name, amount, newBalance);
+        } catch (ArithmeticException e) {
+            return unrepresentable(bank.getMoney());
+        } finally {
+            unlockAudited(locked);
+        }
+        return new EconomyResponse(amount, newBalance, EconomyResponse.ResponseType.SUCCESS, null);
+    }
+
+    /**
+     * The response to a transaction that was not made as the amount or the new balance can not be represented
+     *  in minor units, which only happens if fixed-point balances are enabled.
+     */
+    private @NotNull EconomyResponse unrepresentable(double balance) {
+        return new EconomyResponse(0, balance, EconomyResponse.ResponseType.FAILURE, "The amount is too large.");
     }
 
     /**
@@ -597,9 +724,10 @@ public class VaultEconomyProvider implements Economy, EasyconomyEcoAPI {
             return new EconomyResponse(0, 0,
                     EconomyResponse.ResponseType.FAILURE, "Bank doesn't exist.");
         }
+        UUID player = names.getUUID(playerName);
         return new EconomyResponse(0, 
                 bank.getMoney(),
-                bank.isMember(playerName) ? ResponseType.SUCCESS : ResponseType.FAILURE,
+                player != null && bank.isMember(player) ? ResponseType.SUCCESS : ResponseType.FAILURE,
                  null);
     }
 
@@ -670,11 +798,12 @@ public class VaultEconomyProvider implements Economy, EasyconomyEcoAPI {
             if (bankPDS.has(playerName)) {
                 return false;
             } else {
-                bankPDS.add(new Account(playerName, 0, new HashSet<UUID>()));
+                bankPDS.add(new Account(playerName, 0, new HashSet<UUID>(), names));
                 return true;
             }
         } else {
-            return createPlayerAccount(Bukkit.getOfflinePlayer(playerName));
+            OfflinePlayer player = getOfflinePlayer(playerName);
+            return player != null && createPlayerAccount(player);
         }
     }
 
@@ -728,7 +857,15 @@ public class VaultEconomyProvider implements Economy, EasyconomyEcoAPI {
         if (!bankPDS.has(bank)) {
             return false;
         }
-        bankPDS.get(bank).setMoney(amount);
+        final double balance = toBalance(amount);
+        final long locked = lockAudited(AccountLocks.stripe(bank));
+        try {
+            bankPDS.get(bank).setMoney(balance);
+            if(audit != null)
+                audit.appendBank(Action.SET, bank, balance, balance);
+        } finally {
+            unlockAudited(locked);
+        }
         return true;
     }
 
@@ -743,7 +880,7 @@ public class VaultEconomyProvider implements Economy, EasyconomyEcoAPI {
         if (!playerPDS.has(player.getUniqueId())) {
             return false;
         }
-        playerPDS.set(player.getUniqueId(), amount);
+        setBalance(player.getUniqueId(), amount);
         return true;
     }
 
@@ -753,30 +890,241 @@ public class VaultEconomyProvider implements Economy, EasyconomyEcoAPI {
     }
 
     @Override
-    public @NotNull BinaryAccountStoarge getBankStorage() {
+    public @NotNull BankStorageEngine getBankStorage() {
         return bankPDS;
     }
 
     @Override
     public double givePlayerMoney(@NotNull UUID player, double amount) {
-        final double oldBalance = playerPDS.getOrDefault(player, 0.0);
-        final double newBalance = BigDecimal.valueOf(oldBalance).add(BigDecimal.valueOf(amount)).doubleValue();
-        if(logger != null)
-            logger.info("[TRANSFER-ADD] " + player + " " + format(amount));
-        playerPDS.set(player, newBalance);
+        final double newBalance;
+        final long locked = lockAudited(AccountLocks.stripe(player));
+        try {
+            newBalance = playerPDS.addAndGet(player, amount);
+            if(audit != null)
+                audit.appendPlayer(Action.DEPOSIT, player, amount, newBalance);
+        } finally {
+            unlockAudited(locked);
+        }
         return newBalance;
     }
 
     @Override
     public double removePlayerMoney(@NotNull UUID player, double amount) {
-        final double oldBalance = playerPDS.getOrDefault(player, 0.0);
-        final double newBalance = BigDecimal.valueOf(oldBalance).subtract(BigDecimal.valueOf(amount)).doubleValue();
-        if(logger != null)
-            logger.info("[TRANSFER-DEL] " + player + " " + format(amount));
-        playerPDS.set(player, newBalance);
+        final double newBalance;
+        final long locked = lockAudited(AccountLocks.stripe(player));
+        try {
+            newBalance = playerPDS.addAndGet(player, -amount);
+            if(audit != null)
+                audit.appendPlayer(Action.WITHDRAW, player, amount, newBalance);
+        } finally {
+            unlockAudited(locked);
+        }
         return newBalance;
     }
 
+    @Override
+    public boolean giveBankMoney(@NotNull String bankName, double amount) {
+        Bank bank = bankPDS.get(bankName);
+        if (bank == null) {
+            return false;
+        }
+        final long locked = lockAudited(AccountLocks.stripe(bankName));
+        try {
+            final double newBalance = addBankMoney(bank, amount);
+            if(audit != null)
+                audit.appendBank(Action.DEPOSIT, bankName, amount, newBalance);
+        } finally {
+            unlockAudited(locked);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean removeBankMoney(@NotNull String bankName, double amount) {
+        Bank bank = bankPDS.get(bankName);
+        if (bank == null) {
+            return false;
+        }
+        final long locked = lockAudited(AccountLocks.stripe(bankName));
+        try {
+            final double newBalance = addBankMoney(bank, -amount);
+            if(audit != null)
+                audit.appendBank(Action.WITHDRAW, bankName, amount, newBalance);
+        } finally {
+            unlockAudited(locked);
+        }
+        return true;
+    }
+
+    @Override
+    public double transferBalance(@NotNull UUID src, @NotNull UUID dest, double amount) {
+        final double[] newBalances = new double[2];
+        final long locked = lockAudited(AccountLocks.stripe(src) | AccountLocks.stripe(dest));
+        try {
+            playerPDS.transfer(src, dest, amount, Double.NEGATIVE_INFINITY, newBalances);
+            if(audit != null)
+                audit.appendTransfer(AccountKey.player(src), AccountKey.player(dest), amount, newBalances[0], newBalances[1]);
+        } finally {
+            unlockAudited(locked);
+        }
+        return amount;
+    }
+
+    @Override
+    public boolean transfer(@NotNull AccountKey src, @NotNull AccountKey dest, double amount, boolean failIfInsufficient) {
+        final double[] newBalances = new double[2];
+        final long locked = lockAudited(AccountLocks.stripe(src) | AccountLocks.stripe(dest));
+        try {
+            if (!transfers.transfer(src, dest, amount, failIfInsufficient, newBalances)) {
+                return false;
+            }
+            if(audit != null)
+                audit.appendTransfer(src, dest, amount, newBalances[0], newBalances[1]);
+        } finally {
+            unlockAudited(locked);
+        }
+        return true;
+    }
+
+    @Override
+    public double @NotNull[] getPlayerBalances(@NotNull UUID @NotNull[] players) {
+        return playerPDS.getBalances(players, Double.NEGATIVE_INFINITY);
+    }
+
+    @Override
+    public double @NotNull[] applyPlayerDeltas(@NotNull UUID @NotNull[] players, double @NotNull[] amounts) {
+        long stripes = 0L;
+        for (UUID player : players) {
+            stripes |= AccountLocks.stripe(player);
+        }
+        final double[] newBalances;
+        final long locked = lockAudited(stripes);
+        try {
+            newBalances = playerPDS.addAndGetAll(players, amounts);
+            if (audit != null) {
+                audit.appendPlayers(players, amounts, newBalances);
+            }
+        } finally {
+            unlockAudited(locked);
+        }
+        return newBalances;
+    }
+
+    @Override
+    public double @NotNull[] applyBankDeltas(@NotNull String @NotNull[] banks, double @NotNull[] amounts) {
+        if (banks.length != amounts.length) {
+            throw new IllegalArgumentException("There are " + banks.length + " banks but " + amounts.length + " amounts.");
+        }
+        long stripes = 0L;
+        for (String bank : banks) {
+            stripes |= AccountLocks.stripe(bank);
+        }
+        final double[] newBalances = new double[banks.length];
+        final long locked = lockAudited(stripes);
+        try {
+            for (int i = 0; i < banks.length; i++) {
+                Bank bank = bankPDS.get(banks[i]);
+                if (bank == null) {
+                    newBalances[i] = Double.NEGATIVE_INFINITY;
+                } else {
+                    newBalances[i] = addBankMoney(bank, amounts[i]);
+                }
+            }
+            if (audit != null) {
+                audit.appendBanks(banks, amounts, newBalances);
+            }
+        } finally {
+            unlockAudited(locked);
+        }
+        return newBalances;
+    }
+
+    @Override
+    public @NotNull WithdrawResult withdrawIfAtLeast(@NotNull UUID player, double amount) {
+        final double newBalance;
+        final long locked = lockAudited(AccountLocks.stripe(player));
+        try {
+            newBalance = playerPDS.addAndGetIfAtLeast(player, -amount, amount);
+            if (!Double.isNaN(newBalance) && audit != null)
+                audit.appendPlayer(Action.WITHDRAW, player, amount, newBalance);
+        } finally {
+            unlockAudited(locked);
+        }
+        if (Double.isNaN(newBalance)) {
+            return WithdrawResult.failure(playerPDS.getOrDefault(player, Double.NEGATIVE_INFINITY));
+        }
+        return WithdrawResult.success(newBalance);
+    }
+
+    @Override
+    public @NotNull WithdrawResult withdrawBankIfAtLeast(@NotNull String bankName, double amount) {
+        Bank bank = bankPDS.get(bankName);
+        if (bank == null) {
+            return WithdrawResult.failure(Double.NEGATIVE_INFINITY);
+        }
+        return withdrawBankIfAtLeast(bank, amount);
+    }
+
+    private @NotNull WithdrawResult withdrawBankIfAtLeast(@NotNull Bank bank, double amount) {
+        double newBalance;
+        final long locked = lockAudited(AccountLocks.stripe(bank.getName()));
+        try {
+            synchronized (bank) {
+                double balance = bank.getMoney();
+                if (!(balance >= amount)) {
+                    return WithdrawResult.failure(balance);
+                }
+                newBalance = addBankMoney(bank, -amount);
+            }
+            if(audit != null)
+                audit.appendBank(Action.WITHDRAW, bank.getName(), amount, newBalance);
+        } finally {
+            unlockAudited(locked);
+        }
+        return WithdrawResult.success(newBalance);
+    }
+
+    /**
+     * Locks accounts in the account locks of the audit log, which needs to be done before changing them so that the
+     *  changes and their records are made in the same order. Does nothing if changes are not audited.
+     * @return The stripes that were locked, which need to be passed to {@link #unlockAudited(long)}
+     */
+    private long lockAudited(long stripes) {
+        if (audit == null) {
+            return 0L;
+        }
+        audit.getLocks().lock(stripes);
+        return stripes;
+    }
+
+    private void unlockAudited(long stripes) {
+        if (stripes != 0L) {
+            audit.getLocks().unlock(stripes);
+        }
+    }
+
+    /**
+     * Adds money to a bank, which is done in minor units if fixed-point balances are enabled.
+     * @return The new balance of the bank
+     */
+    private double addBankMoney(@NotNull Bank bank, double amount) {
+        synchronized (bank) {
+            if (fixedPoint == null) {
+                bank.addMoney(amount);
+            } else {
+                bank.setMoney(fixedPoint.add(bank.getMoney(), amount));
+            }
+            return bank.getMoney();
+        }
+    }
+
+    /**
+     * Rounds a balance that is set from the outside to the nearest minor unit if fixed-point balances are enabled.
+     */
+    private double toBalance(double amount) {
+        return fixedPoint == null ? amount : fixedPoint.round(amount);
+    }
+
     @Override
     public @Nullable Bank getBank(@NotNull String name) {
         return bankPDS.get(name);
@@ -807,22 +1155,45 @@ public class VaultEconomyProvider implements Economy, EasyconomyEcoAPI {
 
     @Override
     public double setBalance(@NotNull UUID player, double amount) {
-        double old = playerPDS.getOrDefault(player, Double.NEGATIVE_INFINITY);
-        playerPDS.set(player, amount);
-        return old;
+        final double balance = toBalance(amount);
+        final long locked = lockAudited(AccountLocks.stripe(player));
+        try {
+            double old = playerPDS.getOrDefault(player, Double.NEGATIVE_INFINITY);
+            playerPDS.set(player, balance);
+            if(audit != null)
+                audit.appendPlayer(Action.SET, player, balance, balance);
+            return old;
+        } finally {
+            unlockAudited(locked);
+        }
     }
 
     @Override
     public double setBalance(@NotNull String bank, double amount) {
         Bank bankObj = bankPDS.get(bank);
         if (bankObj != null) {
-            double old = bankObj.getMoney();
-            bankObj.setMoney(amount);
-            return old;
+            final long locked = lockAudited(AccountLocks.stripe(bank));
+            try {
+                synchronized (bankObj) {
+                    double old = bankObj.getMoney();
+                    final double balance = toBalance(amount);
+                    bankObj.setMoney(balance);
+                    if(audit != null)
+                        audit.appendBank(Action.SET, bank, balance, balance);
+                    return old;
+                }
+            } finally {
+                unlockAudited(locked);
+            }
         }
         return Double.NEGATIVE_INFINITY;
     }
 
+    @Override
+    public @Nullable AuditLog getAuditLog() {
+        return audit;
+    }
+
     @Override
     public double getPlayerBalance(@NotNull UUID player) {
         return playerPDS.getOrDefault(player, Double.NEGATIVE_INFINITY);
@@ -0,0 +1,53 @@
+/*
+ * EasyconomyAdvanced, a lightweight economy plugin
+ * Copyright (C) Weiiswurst
+ * Copyright (C) Geolykt (<https://geolykt.de>)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.wwst.easyconomy.events;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.jetbrains.annotations.NotNull;
+
+import de.geolykt.easyconomy.api.EasyconomyEcoAPI;
+import de.geolykt.easyconomy.api.storage.PlayerNameIndex;
+
+/**
+ * Loads the balance of players that are logging in while still being off the main thread, so storages that do not
+ *  keep all balances in memory do not need to read from the disk once the player joined.
+ *  Additionally remembers the name of the player in the name index.
+ * @author Geolykt
+ */
+public class PreLoginEvent implements Listener {
+
+    private final EasyconomyEcoAPI economy;
+    private final PlayerNameIndex names;
+
+    public PreLoginEvent(@NotNull EasyconomyEcoAPI eco, @NotNull PlayerNameIndex nameIndex) {
+        this.economy = eco;
+        this.names = nameIndex;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLogin(@NotNull AsyncPlayerPreLoginEvent e) {
+        if (e.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            economy.getPlayerDataStorage().preload(e.getUniqueId());
+            names.update(e.getUniqueId(), e.getName());
+        }
+    }
+}
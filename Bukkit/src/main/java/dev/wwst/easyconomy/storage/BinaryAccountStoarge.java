@@ -43,6 +43,7 @@ import com.google.common.io.Files;
 import de.geolykt.easyconomy.api.Bank;
 import de.geolykt.easyconomy.api.BankStorageEngine;
 import de.geolykt.easyconomy.api.PlaceholderBank;
+import de.geolykt.easyconomy.api.storage.PlayerNameIndex;
 import dev.wwst.easyconomy.Easyconomy;
 import dev.wwst.easyconomy.eco.Account;
 
@@ -56,8 +57,10 @@ public class BinaryAccountStoarge implements BankStorageEngine {
     private final File storageLoc;
     private final Map<String, Bank> accounts = Collections.synchronizedMap(new HashMap<>());
     private final Logger logger;
+    private final PlayerNameIndex names;
 
     public BinaryAccountStoarge(@NotNull String path, @NotNull Easyconomy plugin) throws IOException {
+        names = plugin.getNameIndex();
         File storageFolder = new File(plugin.getDataFolder() + "/storage");
         if (!storageFolder.exists())
             storageFolder.mkdirs();
@@ -115,7 +118,7 @@ public class BinaryAccountStoarge implements BankStorageEngine {
     }
 
     @Nullable
-    private static Bank deserializeBank(@NotNull InputStream ioStream) throws IOException {
+    private static Bank deserializeBank(@NotNull InputStream ioStream, @NotNull PlayerNameIndex names) throws IOException {
         byte[] data = new byte[4];
         if (ioStream.read(data) == -1) {
             return null;
@@ -136,7 +139,7 @@ public class BinaryAccountStoarge implements BankStorageEngine {
             while (buffer.hasRemaining()) {
                 members.add(new UUID(buffer.getLong(), buffer.getLong()));
             }
-            return new Account(name, money, members);
+            return new Account(name, money, members, names);
         }
     }
 
@@ -144,7 +147,7 @@ public class BinaryAccountStoarge implements BankStorageEngine {
         try (FileInputStream ioStream = new FileInputStream(storageLoc)) {
             accounts.clear();
             while (true) {
-                Bank acc = deserializeBank(ioStream);
+                Bank acc = deserializeBank(ioStream, names);
                 if (acc == null) { // returns null if the stream is closed.
                     break;
                 }
@@ -180,6 +183,11 @@ public class BinaryAccountStoarge implements BankStorageEngine {
         return accounts.remove(name);
     }
 
+    @Override
+    public @Nullable Bank remove(@NotNull String name) {
+        return removeAccount(name);
+    }
+
     /**
      * Returns the amount of money a given bank has, or defaultValue if the bank does not exist. 
      *  Does not throw NullPointers.
@@ -18,58 +18,43 @@
 package dev.wwst.easyconomy.storage;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.text.SimpleDateFormat;
-import java.time.Instant;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.UUID;
-import java.util.stream.Collectors;
 
 import org.bukkit.Bukkit;
+import org.bukkit.configuration.file.FileConfiguration;
 import org.jetbrains.annotations.NotNull;
-
-import com.google.common.io.Files;
-
-import de.geolykt.easyconomy.api.PlayerDataStorage;
+import org.jetbrains.annotations.Nullable;
+
+import de.geolykt.easyconomy.api.FixedPoint;
+import de.geolykt.easyconomy.api.storage.BalanceFileReader;
+import de.geolykt.easyconomy.api.storage.BalanceFileWriter;
+import de.geolykt.easyconomy.api.storage.BalanceStorageEngine;
+import de.geolykt.easyconomy.api.storage.BalanceSummary;
+import de.geolykt.easyconomy.api.storage.StorageSettings;
 import dev.wwst.easyconomy.Easyconomy;
 
 /**
  * An implementation of the PlayerDataStoarge that directly stores data in binary form.
  *  This yields in a smaller file size and faster I/O speeds.
+ *  The storage itself is implemented by the {@link BalanceStorageEngine}, this class only reads the settings
+ *  from the configuration and reports to the logger of the plugin.
  * @author Geolykt
  */
-public class BinaryDataStorage implements PlayerDataStorage {
-    private boolean modified = false;
-
-    private final File file;
-    private final Map<UUID, Double> balances = Collections.synchronizedMap(new HashMap<>());
+public class BinaryDataStorage extends BalanceStorageEngine {
 
     private final Easyconomy plugin;
 
-    private LinkedHashMap<UUID, Double> balTop;
-    private double smallestBalTop = Double.MAX_VALUE;
-    private double lastBackup = 0;
-
-    public BinaryDataStorage(@NotNull Easyconomy invokingPlugin, @NotNull String path, int baltopLength) {
+    public BinaryDataStorage(@NotNull Easyconomy invokingPlugin, @NotNull String path, int baltopLength,
+            @Nullable FixedPoint fixedPoint) {
+        super(new File(invokingPlugin.getDataFolder() + "/storage", path), readSettings(invokingPlugin, baltopLength)
+                .setFixedPoint(fixedPoint));
         plugin = invokingPlugin;
         plugin.getLogger().info("Loading Storage: " + path);
         long timestamp = System.currentTimeMillis();
 
-        File storageFolder = new File(plugin.getDataFolder() + "/storage");
-        if (!storageFolder.exists())
-            storageFolder.mkdirs();
-
-        file = new File(plugin.getDataFolder() + "/storage", path);
-
+        File file = getStorageFile();
+        if (!file.getParentFile().exists())
+            file.getParentFile().mkdirs();
         if (!file.exists()) {
             try {
                 file.createNewFile();
@@ -79,169 +64,73 @@ public class BinaryDataStorage implements PlayerDataStorage {
         }
         reload();
         plugin.addSaveable(this);
-
-        if (baltopLength > 0) {
-            plugin.getLogger().info(
-                    "Calculating top balances... (if you have thousands of accounts, this could take a few seconds)");
-            recalcBaltop(balances, baltopLength);
-            plugin.getLogger().info(balTop.size() + " balances are now in the baltop.");
-        } else {
-            balTop = null;
+        // Only logged if the summary stored alongside the storage file is still valid, computing it would scan all balances
+        BalanceSummary summary = getSummaryIfPresent();
+        if (summary != null) {
+            plugin.getLogger().info(summary.getAccounts() + " accounts hold " + summary.getTotal() + " in total, "
+                    + summary.getDefaultAccounts() + " of them still have the starting balance.");
         }
         timestamp = System.currentTimeMillis() - timestamp;
         plugin.getLogger().info("Loaded Storage: " + path + " within " + timestamp + "ms");
     }
 
-    @Override
-    public double getOrDefault(@NotNull UUID player, double defaultValue) {
-        return balances.getOrDefault(player, defaultValue);
-    }
-
-    @Override
-    @NotNull
-    public List<UUID> getAllKeys() {
-        ArrayList<UUID> data = new ArrayList<>();
-        synchronized (balances) {
-            balances.forEach((id, balance) -> {
-                if (balance != null && balance != 0.0) {
-                    data.add(id);
-                }
-            });
-        }
-        return data;
-    }
-
-    /*
-     ** Saves the current FileConfiguration to the file on the disk
-     */
-    @Override
-    public void save() {
-        if (modified) {
-            long time = System.currentTimeMillis();
-            synchronized (BinaryDataStorage.class) {
-                try (FileOutputStream fileOut = new FileOutputStream(file)) {
-                    fileOut.write(1);
-                    synchronized (balances) {
-                        for (Map.Entry<UUID, Double> entry : balances.entrySet()) {
-                            fileOut.write(ByteBuffer.allocate(24)
-                                    .putLong(entry.getKey().getMostSignificantBits())
-                                    .putLong(entry.getKey().getLeastSignificantBits())
-                                    .putDouble(entry.getValue())
-                                    .array());
-                        }
-                    }
-                    plugin.getLogger().info("Storage file " + file.getName() + " saved within " + (System.currentTimeMillis() - time) + "ms.");
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-            modified = false;
+    private static @NotNull StorageSettings readSettings(@NotNull Easyconomy plugin, int baltopLength) {
+        FileConfiguration config = plugin.getConfig();
+        StorageSettings settings = new StorageSettings()
+                .setMemoryMapped(config.getBoolean("saving.memory-mapped", false))
+                .setOffHeap(config.getBoolean("saving.off-heap", false))
+                .setDefaultBalance(config.getInt("startingBalance"))
+                .setJournal(config.getBoolean("saving.journal.enabled", false),
+                        config.getLong("saving.journal.commit-interval", 200L),
+                        config.getLong("saving.journal.checkpoint-records", 100_000L))
+                .setLeaderboardSize(Math.max(baltopLength, 0))
+                .setBalanceIndexed(config.getBoolean("saving.balance-index", false));
+        int format = config.getInt("saving.format", 2);
+        if (format == 2 || format == BalanceFileWriter.COMPACT_FORMAT_VERSION) {
+            settings.setFormat(format);
+        } else {
+            plugin.getLogger().warning("Unknown storage format v" + format + ", using the v2 format instead.");
         }
-    }
-
-    @Override
-    public void set(@NotNull UUID account, double balance) {
-        balances.put(account, balance);
-        if (balance > smallestBalTop) {
-            System.out.println("Recalculating top balances (If you have a lot of accounts, this should happen very rarely)");
-            balTop.put(account, balance);
-            recalcBaltop(balTop, plugin.getConfig().getInt("baltopPlayers"));
+        try {
+            settings.setShards(config.getInt("saving.shards", 0));
+        } catch (IllegalArgumentException e) {
+            plugin.getLogger().warning(e.getMessage() + " Sharding is disabled.");
         }
-        modified = true;
+        settings.setColdAfter(Math.max(config.getLong("saving.tiered.cold-after-days", 0L), 0L) * 86_400_000L);
+        return settings;
     }
 
     @Override
-    public void reload() {
-        long time = System.currentTimeMillis();
-        try (FileInputStream fileIn = new FileInputStream(file)) {
-            int version = fileIn.read();
-            ByteBuffer buff = ByteBuffer.wrap(fileIn.readAllBytes());
-            balances.clear();
-            switch (version) {
-            case 2: { // New v2 binary storage format, which stores less data on servers that have a high amount of inactive players.
-                lastBackup = buff.getLong();
-                int activeAccounts = buff.getInt(); // Used for corruption tests
-                int inactiveAccounts = buff.getInt();
-                double defaultMoney = buff.getDouble();
-                // Corruption tests
-                if (inactiveAccounts*16 + activeAccounts*24 != buff.remaining()) {
-                    plugin.getLogger().severe("Storage file " + file.getName() + " has an invalid length."
-                            + " It's probably corrupted and the plugin will be disabled to prevent damage.");
-                    Bukkit.getPluginManager().disablePlugin(plugin);
-                    throw new IOException("Unexpected file size for the v2 binary storage format.");
-                }
-                synchronized (balances) {
-                    while (inactiveAccounts-- > 0) {
-                        balances.put(new UUID(buff.getLong(), buff.getLong()), defaultMoney);
-                    }
-                }
-            }
-            case 1: // Old v1 binary storage format
-                break;
-            case -1: // File hasn't yet been created.
-                return;
-            default:
-                plugin.getLogger().warning("Storage file " + file.getName() + " has an invalid version."
-                        + " Reading it anyway.");
-            }
-            if (buff.remaining() % 24 != 0) {
-                plugin.getLogger().severe("Storage file " + file.getName() + " has an invalid length."
-                        + " It's probably corrupted and the plugin will be disabled to prevent damage.");
-                Bukkit.getPluginManager().disablePlugin(plugin);
-                // This should force everything in the stack to terminate as plugins don't get disabled instantly
-                throw new IOException("Unexpected file size"); 
-            }
-            while (buff.hasRemaining()) {
-                balances.put(new UUID(buff.getLong(), buff.getLong()), buff.getDouble());
-            }
-            plugin.getLogger().info("Storage file " + file.getName() + " loaded within " + (System.currentTimeMillis() - time) + "ms.");
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        modified = false;
-    }
-
-    /**
-     * Recalculates the balance top by sorting the raw unsorted data which needs to be provided to the function.
-     * @param notSorted The unsorted leaderboard
-     * @param baltopLength The maximum length of the leaderboard
-     * @since 1.1.0
-     * @author Weiiswurst
-     */
-    private void recalcBaltop(@NotNull Map<UUID, Double> notSorted, int baltopLength) {
-        balTop = notSorted.entrySet().stream()
-                .filter((entry) -> entry.getValue() != 0.0)
-                .sorted((c1, c2) -> -c1.getValue().compareTo(c2.getValue()))
-                .peek(val->{
-                    if(val.getValue() < smallestBalTop) smallestBalTop = val.getValue();})
-                .limit(baltopLength)
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (e1, e2) -> e1, LinkedHashMap::new));
-        if(balTop.size() < baltopLength) {
-            smallestBalTop = Double.NEGATIVE_INFINITY;
+    protected void onLoaded(long replayedRecords, long millis) {
+        if (replayedRecords != 0) {
+            plugin.getLogger().info("Replayed " + replayedRecords + " journal records of " + getStorageFile().getName() + ".");
         }
+        plugin.getLogger().info("Storage file " + getStorageFile().getName() + " loaded within " + millis + "ms.");
     }
 
     @Override
-    @NotNull
-    public Map<UUID, Double> getBaltop() {
-        return balTop;
+    protected void onSaved(long millis) {
+        plugin.getLogger().info("Storage file " + getStorageFile().getName() + " saved within " + millis + "ms.");
     }
 
     @Override
-    public boolean has(@NotNull UUID key) {
-        return balances.containsKey(key);
+    protected void onDemoted(int accounts, long millis) {
+        plugin.getLogger().info("Moved " + accounts + " inactive accounts of " + getStorageFile().getName()
+                + " into the cold file within " + millis + "ms.");
     }
 
     @Override
-    public synchronized void backup(@NotNull File backupFolder) throws IOException {
-        File backupFile = new File(backupFolder, "backup-bal-" + new SimpleDateFormat("yyyy-MM-dd_HH:mm:ss").format(Date.from(Instant.now())) + ".dat");
-        Files.copy(file, backupFile);
-        lastBackup = System.currentTimeMillis();
+    protected void onUnsupportedVersion(@NotNull File source, int version) {
+        plugin.getLogger().warning("Storage file " + source.getName() + " has an invalid version."
+                + " Reading it anyway.");
     }
 
     @Override
-    @NotNull
-    public File getStorageFile() {
-        return file;
+    protected void onCorrupted(@NotNull File source, @NotNull BalanceFileReader.CorruptedStorageException e) {
+        plugin.getLogger().severe("Storage file " + source.getName() + " has an invalid length."
+                + " It's probably corrupted and the plugin will be disabled to prevent damage.");
+        Bukkit.getPluginManager().disablePlugin(plugin);
+        // The exception is rethrown afterwards, which should force everything in the stack to terminate
+        // as plugins don't get disabled instantly
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,71 @@
+/*
+ * EasyconomyAdvanced, a lightweight economy plugin
+ * Copyright (C) Geolykt (<https://geolykt.de>)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.wwst.easyconomy.storage;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.bukkit.Bukkit;
+import org.jetbrains.annotations.NotNull;
+
+import de.geolykt.easyconomy.api.storage.LsmBalanceStorage;
+import dev.wwst.easyconomy.Easyconomy;
+
+/**
+ * An implementation of the PlayerDataStoarge that only keeps recently changed balances in memory.
+ *  The storage itself is implemented by the {@link LsmBalanceStorage}, this class only loads it
+ *  and reports to the logger of the plugin.
+ * @author Geolykt
+ */
+public class LsmDataStorage extends LsmBalanceStorage {
+
+    private final Easyconomy plugin;
+
+    public LsmDataStorage(@NotNull Easyconomy invokingPlugin, @NotNull String path, int memtableSize, int baltopLength) {
+        super(new File(invokingPlugin.getDataFolder() + "/storage", path), Math.max(memtableSize, 1), Math.max(baltopLength, 0));
+        plugin = invokingPlugin;
+        plugin.getLogger().info("Loading Storage: " + path);
+        reload();
+        plugin.addSaveable(this);
+    }
+
+    @Override
+    protected void onLoaded(int segments, long millis) {
+        plugin.getLogger().info("Opened " + segments + " segments of " + getStorageFile().getName() + " within " + millis + "ms.");
+    }
+
+    @Override
+    protected void onLoadFailed(@NotNull IOException e) {
+        e.printStackTrace();
+        plugin.getLogger().severe("Unable to open " + getStorageFile().getName() + "."
+                + " It's probably corrupted and the plugin will be disabled to prevent damage.");
+        Bukkit.getPluginManager().disablePlugin(plugin);
+    }
+
+    @Override
+    protected void onSaved(long millis) {
+        plugin.getLogger().info("Storage " + getStorageFile().getName() + " saved within " + millis + "ms.");
+    }
+
+    @Override
+    protected void onBackgroundFailure(@NotNull IOException e) {
+        e.printStackTrace();
+        plugin.getLogger().warning("Unable to write a segment of " + getStorageFile().getName() + " in the background,"
+                + " retrying later.");
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * EasyconomyAdvanced, a lightweight economy plugin
+ * Copyright (C) Weiiswurst
+ * Copyright (C) Geolykt (<https://geolykt.de>)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.wwst.easyconomy.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.UUID;
+
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import de.geolykt.easyconomy.api.storage.PlayerNameIndex;
+import dev.wwst.easyconomy.Easyconomy;
+
+/**
+ * The {@link PlayerNameIndex} of the plugin, which is stored as names.dat and asks the server for the players it does
+ *  not know. The server is only asked for players whose profile it does not need to look up: online players,
+ *  the players in the profile cache of the server if the server provides {@code Bukkit#getOfflinePlayerIfCached}
+ *  (Paper) and the names of players by their UUID, which are stored locally.
+ * @author Geolykt
+ */
+public class ServerNameIndex extends PlayerNameIndex {
+
+    private static final @Nullable Method GET_IF_CACHED = findGetIfCached();
+
+    private final Easyconomy plugin;
+
+    public ServerNameIndex(@NotNull Easyconomy invokingPlugin) {
+        super(new File(invokingPlugin.getDataFolder(), "names.dat"),
+                invokingPlugin.getConfig().getInt("saving.name-cache-size", 10000));
+        plugin = invokingPlugin;
+    }
+
+    private static @Nullable Method findGetIfCached() {
+        try {
+            // Only exists on Paper and it's forks
+            return Bukkit.class.getMethod("getOfflinePlayerIfCached", String.class);
+        } catch (NoSuchMethodException expected) {
+            return null;
+        }
+    }
+
+    @Override
+    protected @Nullable String lookupName(@NotNull UUID player) {
+        // Does not look up the profile of the player, unlike Bukkit#getOfflinePlayer(String)
+        return Bukkit.getOfflinePlayer(player).getName();
+    }
+
+    @Override
+    protected @Nullable UUID lookupUUID(@NotNull String name) {
+        Player online = Bukkit.getPlayerExact(name);
+        if (online != null) {
+            return online.getUniqueId();
+        }
+        Method getIfCached = GET_IF_CACHED;
+        if (getIfCached == null) {
+            return null;
+        }
+        try {
+            OfflinePlayer cached = (OfflinePlayer) getIfCached.invoke(null, name);
+            return cached == null ? null : cached.getUniqueId();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            return null;
+        }
+    }
+
+    @Override
+    protected void onReadFailed(@NotNull IOException e) {
+        plugin.getLogger().warning("Unable to read the names of the players from names.dat: " + e.getMessage());
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * EasyconomyAdvanced, a lightweight economy plugin
+ * Copyright (C) Geolykt (<https://geolykt.de>)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.wwst.easyconomy.storage;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.bukkit.Bukkit;
+import org.jetbrains.annotations.NotNull;
+
+import de.geolykt.easyconomy.api.storage.SqlBalanceStorage;
+import de.geolykt.easyconomy.api.storage.SqlDialect;
+import dev.wwst.easyconomy.Easyconomy;
+
+/**
+ * An implementation of the PlayerDataStoarge that stores the balances in an embedded database.
+ *  The storage itself is implemented by the {@link SqlBalanceStorage}, this class only loads it
+ *  and reports to the logger of the plugin.
+ * @author Geolykt
+ */
+public class SqlDataStorage extends SqlBalanceStorage {
+
+    private final Easyconomy plugin;
+
+    public SqlDataStorage(@NotNull Easyconomy invokingPlugin, @NotNull File database, @NotNull SqlDialect dialect, int baltopLength) {
+        super(database, dialect, Math.max(baltopLength, 0));
+        plugin = invokingPlugin;
+        plugin.getLogger().info("Loading Storage: " + database.getName());
+        reload();
+        plugin.addSaveable(this);
+    }
+
+    @Override
+    protected void onLoaded(long millis) {
+        plugin.getLogger().info("Balances of " + getStorageFile().getName() + " loaded within " + millis + "ms.");
+    }
+
+    @Override
+    protected void onLoadFailed(@NotNull IOException e) {
+        e.printStackTrace();
+        plugin.getLogger().severe("Unable to load the balances from " + getStorageFile().getName() + "."
+                + " Is the JDBC driver present? The plugin will be disabled to prevent damage.");
+        Bukkit.getPluginManager().disablePlugin(plugin);
+    }
+
+    @Override
+    protected void onSaved(long millis) {
+        plugin.getLogger().info("Balances of " + getStorageFile().getName() + " saved within " + millis + "ms.");
+    }
+}
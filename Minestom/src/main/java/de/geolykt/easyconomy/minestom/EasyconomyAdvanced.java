@@ -1,16 +1,29 @@
 package de.geolykt.easyconomy.minestom;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import de.geolykt.easyconomy.api.AsyncEasyconomyEcoAPI;
 import de.geolykt.easyconomy.api.BankStorageEngine;
 import de.geolykt.easyconomy.api.EasyconomyEcoAPI;
+import de.geolykt.easyconomy.api.PlaceholderBank;
 import de.geolykt.easyconomy.api.PlayerDataStorage;
 import de.geolykt.easyconomy.api.Saveable;
+import de.geolykt.easyconomy.api.storage.BalanceFileWriter;
+import de.geolykt.easyconomy.api.storage.LsmBalanceStorage;
+import de.geolykt.easyconomy.api.storage.PlayerNameIndex;
+import de.geolykt.easyconomy.api.storage.SqlBalanceStorage;
+import de.geolykt.easyconomy.api.storage.SqlBankStorage;
+import de.geolykt.easyconomy.api.storage.SqlDialect;
+import de.geolykt.easyconomy.api.storage.StorageSettings;
 import de.geolykt.easyconomy.minestom.commands.BalanceCommand;
 import de.geolykt.easyconomy.minestom.commands.BaltopCommand;
 import de.geolykt.easyconomy.minestom.commands.GivemoneyCommand;
@@ -27,7 +40,10 @@ public class EasyconomyAdvanced extends Extension {
     private final Set<Saveable> toSave = new HashSet<>();
     private static EasyconomyAdvanced instance;
     private EasyconomyEcoAPI economy;
+    private AsyncEasyconomyEcoAPI asyncEconomy;
+    private final ExecutorService storageExecutor = AsyncEasyconomyEcoAPI.newStorageExecutor();
     private EasyconomyConfiguration config;
+    private PlayerNameIndex names;
 
     private void saveAll() {
         Set<Saveable> erroringSaveables = new HashSet<>();
@@ -60,9 +76,68 @@ public class EasyconomyAdvanced extends Extension {
         File parent = new File(MinecraftServer.getExtensionManager().getExtensionFolder(), "easyconomy");
         parent.mkdir();
         config = new EasyconomyConfiguration(new File(parent, "config.conf"));
+        names = new PlayerNameIndex(new File(parent, "names.dat"), config.getNameCacheSize()) {
+            @Override
+            protected @Nullable String lookupName(@NotNull UUID player) {
+                Player online = MinecraftServer.getConnectionManager().getPlayer(player);
+                return online == null ? null : online.getUsername();
+            }
+
+            @Override
+            protected @Nullable UUID lookupUUID(@NotNull String name) {
+                Player online = MinecraftServer.getConnectionManager().getPlayer(name);
+                return online == null ? null : online.getUuid();
+            }
+        };
+        try {
+            names.reload();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        addSaveable(names);
         if (economy == null) {
             // FIXME Minestom makes use of StorageManager, we should too!
-            PlayerDataStorage pds = new PlayerDataEngine(new File(parent, "players.dat"));
+            SqlDialect dialect = SqlDialect.byName(config.getStorageBackend());
+            if (dialect != null) {
+                File database = new File(parent, "economy" + dialect.getFileExtension());
+                SqlBalanceStorage pds = new SqlBalanceStorage(database, dialect, config.getMaximumBaltopSize()) {
+                    @Override
+                    protected void onLoadFailed(@NotNull IOException e) {
+                        // Running on an empty economy would overwrite the balances with the next save
+                        throw new IllegalStateException("Unable to load the balances from " + database.getName() + ".", e);
+                    }
+                };
+                pds.setFixedPoint(config.getFixedPoint());
+                pds.reload();
+                SqlBankStorage bds = new SqlBankStorage(database, dialect, (name, balance, members) -> new PlaceholderBank(name, balance));
+                try {
+                    bds.reload();
+                } catch (IOException e) {
+                    throw new IllegalStateException("Unable to load the banks from " + database.getName() + ".", e);
+                }
+                registerEconomy(new DefaultEconomyProvider(this, pds, bds));
+            } else if (config.getStorageBackend().equalsIgnoreCase("lsm")) {
+                LsmBalanceStorage pds = new LsmBalanceStorage(new File(parent, "players.lsm"),
+                        config.getLsmMemtableSize(), config.getMaximumBaltopSize());
+                pds.setFixedPoint(config.getFixedPoint());
+                pds.reload();
+                registerEconomy(new DefaultEconomyProvider(this, pds, new BankDataEngine(new File(parent, "banks.dat"))));
+            }
+        }
+        if (economy == null) {
+            File playerFile = new File(parent, "players.dat");
+            StorageSettings settings = new StorageSettings()
+                    .setMemoryMapped(config.isMemoryMapped())
+                    .setOffHeap(config.isOffHeap())
+                    .setFixedPoint(config.getFixedPoint())
+                    .setJournal(config.isJournalEnabled(), config.getJournalCommitInterval(), config.getJournalCheckpointRecords())
+                    .setShards(config.getStorageShards())
+                    .setColdAfter(config.getStorageColdAfterDays() * 86_400_000L)
+                    .setLeaderboardSize(config.getMaximumBaltopSize());
+            if (config.getStorageFormat() == BalanceFileWriter.COMPACT_FORMAT_VERSION) {
+                settings.setFormat(BalanceFileWriter.COMPACT_FORMAT_VERSION);
+            }
+            PlayerDataStorage pds = new PlayerDataEngine(playerFile, settings);
             BankStorageEngine bds = new BankDataEngine(new File(parent, "banks.dat"));
             registerEconomy(new DefaultEconomyProvider(this, pds, bds));
         }
@@ -70,7 +145,11 @@ public class EasyconomyAdvanced extends Extension {
             .repeat(10, TimeUnit.MINUTE)
             .delay(10, TimeUnit.MINUTE).schedule();
         MinecraftServer.getConnectionManager()
-                .addPlayerInitialization((Player p) -> getEconomy().createPlayer(p.getUuid()));
+                .addPlayerInitialization((Player p) -> {
+                    getEconomy().getPlayerDataStorage().preload(p.getUuid());
+                    getEconomy().createPlayer(p.getUuid());
+                    names.update(p.getUuid(), p.getUsername());
+                });
         MinecraftServer.getCommandManager().register(new BalanceCommand(this));
         MinecraftServer.getCommandManager().register(new BaltopCommand(this));
         // FIXME correct permissions for the commands below - they could be better
@@ -86,9 +165,29 @@ public class EasyconomyAdvanced extends Extension {
     @Override
     public void preTerminate() {
         getLogger().info("Preparing shutdown...");
+        // Pending asynchronous operations need to complete before the final save, otherwise their changes are lost
+        storageExecutor.shutdown();
+        try {
+            if (!storageExecutor.awaitTermination(AsyncEasyconomyEcoAPI.CLOSE_TIMEOUT_SECONDS,
+                    java.util.concurrent.TimeUnit.SECONDS)) {
+                getLogger().warn("Asynchronous economy operations did not complete in time, their changes may be lost.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
         this.saveAll();
+        for (Saveable saveable : toSave) {
+            if (saveable instanceof Closeable) {
+                try {
+                    ((Closeable) saveable).close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
         toSave.clear();
         economy = null;
+        asyncEconomy = null;
         instance = null;
     }
 
@@ -113,6 +212,9 @@ public class EasyconomyAdvanced extends Extension {
             instance.toSave.remove(instance.economy.getPlayerDataStorage());
         }
         instance.economy = eco;
+        // Futures are completed by the scheduler of the server
+        instance.asyncEconomy = new AsyncEasyconomyEcoAPI(eco, instance.storageExecutor,
+                runnable -> MinecraftServer.getSchedulerManager().buildTask(runnable).schedule());
         instance.toSave.add(eco.getBankStorage());
         instance.toSave.add(eco.getPlayerDataStorage());
     }
@@ -125,10 +227,32 @@ public class EasyconomyAdvanced extends Extension {
         return eco;
     }
 
+    /**
+     * Obtains the asynchronous variant of the active economy, whose futures are completed by the scheduler of the server.
+     * @return The asynchronous economy
+     * @since 1.2.0
+     */
+    public static @NotNull AsyncEasyconomyEcoAPI getAsyncEconomy() {
+        AsyncEasyconomyEcoAPI eco = instance.asyncEconomy;
+        if (eco == null) {
+            throw new IllegalStateException("The economy is not yet defined!");
+        }
+        return eco;
+    }
+
     @Override
     public void terminate() {}
 
     public EasyconomyConfiguration getConfig() {
         return config;
     }
+
+    /**
+     * Obtains the index of the names of the players, which also knows the names of offline players.
+     * @return The name index
+     * @since 1.2.0
+     */
+    public @NotNull PlayerNameIndex getNameIndex() {
+        return names;
+    }
 }
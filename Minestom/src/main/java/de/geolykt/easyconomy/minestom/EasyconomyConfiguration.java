@@ -6,10 +6,14 @@ import java.io.IOException;
 import java.io.InputStream;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.spongepowered.configurate.CommentedConfigurationNode;
 import org.spongepowered.configurate.ConfigurateException;
 import org.spongepowered.configurate.hocon.HoconConfigurationLoader;
 
+import de.geolykt.easyconomy.api.FixedPoint;
+import de.geolykt.easyconomy.api.storage.LsmBalanceStorage;
+
 import net.minestom.server.chat.ChatColor;
 
 /**
@@ -91,6 +95,60 @@ public class EasyconomyConfiguration {
         return getString("error-unpermitted", ChatColor.DARK_RED + "You are not permitted to use this command.");
     }
 
+    /**
+     * Obtains the fixed-point scale of the balances.
+     * @return The scale, or null if balances should not be computed in minor units
+     * @since 1.2.0
+     */
+    public @Nullable FixedPoint getFixedPoint() {
+        int digits = config.node("fixed-point-digits").getInt(-1);
+        return digits < 0 ? null : new FixedPoint(Math.min(digits, 9));
+    }
+
+    public @NotNull String getStorageBackend() {
+        return getString("storage-backend", "binary");
+    }
+
+    public int getNameCacheSize() {
+        return Math.max(config.node("name-cache-size").getInt(10_000), 1);
+    }
+
+    public int getLsmMemtableSize() {
+        return Math.max(config.node("lsm-memtable-size").getInt(LsmBalanceStorage.DEFAULT_MEMTABLE_SIZE), 1);
+    }
+
+    public int getStorageFormat() {
+        return config.node("storage-format").getInt(2);
+    }
+
+    public boolean isMemoryMapped() {
+        return config.node("storage-memory-mapped").getBoolean(false);
+    }
+
+    public boolean isOffHeap() {
+        return config.node("storage-off-heap").getBoolean(false);
+    }
+
+    public int getStorageShards() {
+        return config.node("storage-shards").getInt(0);
+    }
+
+    public long getStorageColdAfterDays() {
+        return Math.max(config.node("storage-cold-after-days").getLong(0L), 0L);
+    }
+
+    public boolean isJournalEnabled() {
+        return config.node("journal-enabled").getBoolean(false);
+    }
+
+    public long getJournalCommitInterval() {
+        return config.node("journal-commit-interval").getLong(200L);
+    }
+
+    public long getJournalCheckpointRecords() {
+        return config.node("journal-checkpoint-records").getLong(100_000L);
+    }
+
     public @NotNull String getAdminPermission() {
         return getString("permission-admin", "easyconomy.admin");
     }
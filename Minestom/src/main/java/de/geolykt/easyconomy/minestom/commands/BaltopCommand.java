@@ -1,6 +1,5 @@
 package de.geolykt.easyconomy.minestom.commands;
 
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.UUID;
@@ -8,17 +7,14 @@ import java.util.UUID;
 import org.jetbrains.annotations.NotNull;
 
 import de.geolykt.easyconomy.minestom.EasyconomyAdvanced;
-import net.minestom.server.MinecraftServer;
 import net.minestom.server.command.CommandSender;
 import net.minestom.server.command.builder.Command;
 import net.minestom.server.command.builder.CommandContext;
-import net.minestom.server.entity.Player;
 
 @SuppressWarnings("static-access")
 public class BaltopCommand extends Command {
 
     private final @NotNull EasyconomyAdvanced extension;
-    private static final @NotNull HashMap<UUID, String> UUID_TO_NAME = new HashMap<>();
 
     private final String header;
     private final String entry;
@@ -51,19 +47,16 @@ public class BaltopCommand extends Command {
         int i = 0;
         while (balances.hasNext() && i++ < entriesPerPage) {
             Map.Entry<UUID, Double> e = balances.next();
-            if (!UUID_TO_NAME.containsKey(e.getKey())) {
-                UUID id = e.getKey();
-                if (id == null) {
-                    throw new IllegalStateException("Null Id is in circulation!");
-                }
-                Player p = MinecraftServer.getConnectionManager().getPlayer(id);
-                if (p == null) {
-                    i--;
-                    continue;
-                }
-                UUID_TO_NAME.put(id, p.getUsername());
+            UUID id = e.getKey();
+            if (id == null) {
+                throw new IllegalStateException("Null Id is in circulation!");
             }
-            message = String.format(entry, i, UUID_TO_NAME.get(e.getKey()), extension.getEconomy().format(e.getValue()));
+            String name = extension.getNameIndex().getName(id);
+            if (name == null) {
+                // The player did not join since the name index exists
+                name = id.toString();
+            }
+            message = String.format(entry, i, name, extension.getEconomy().format(e.getValue()));
             if (message == null) {
                 throw new InternalError("The JVM is kinda fucked");
             }
@@ -60,7 +60,7 @@ public class GivemoneyCommand extends Command {
                     + ChatColor.BRIGHT_GREEN + ". The player now has " + extension.getEconomy().format(now)
                     + ChatColor.BRIGHT_GREEN + ".");
         } else {
-            bank.addMoney(money);
+            extension.getEconomy().giveBankMoney(target, money);
             sender.sendMessage(ChatColor.BRIGHT_GREEN + "Gave " + ChatColor.CYAN + extension.getEconomy().format(money)
                     + ChatColor.BRIGHT_GREEN + " to the bank " + ChatColor.DARK_BLUE + target 
                     + ChatColor.BRIGHT_GREEN + ". It now has " + extension.getEconomy().format(bank.getMoney())
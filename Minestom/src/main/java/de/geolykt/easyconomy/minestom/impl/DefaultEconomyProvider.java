@@ -1,16 +1,19 @@
 package de.geolykt.easyconomy.minestom.impl;
 
-import java.math.BigDecimal;
 import java.util.UUID;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import de.geolykt.easyconomy.api.AccountKey;
 import de.geolykt.easyconomy.api.Bank;
 import de.geolykt.easyconomy.api.BankStorageEngine;
 import de.geolykt.easyconomy.api.EasyconomyEcoAPI;
+import de.geolykt.easyconomy.api.FixedPoint;
 import de.geolykt.easyconomy.api.PlaceholderBank;
 import de.geolykt.easyconomy.api.PlayerDataStorage;
+import de.geolykt.easyconomy.api.TransferEngine;
+import de.geolykt.easyconomy.api.WithdrawResult;
 import de.geolykt.easyconomy.minestom.EasyconomyAdvanced;
 
 /**
@@ -24,13 +27,17 @@ public class DefaultEconomyProvider implements EasyconomyEcoAPI {
     private final @NotNull PlayerDataStorage playerPDS;
 
     private final String currencyFormat;
+    private final @Nullable FixedPoint fixedPoint;
+    private final @NotNull TransferEngine transfers;
 
     public DefaultEconomyProvider(@NotNull EasyconomyAdvanced extension,
             @NotNull PlayerDataStorage playerStorageEngine,
             @NotNull BankStorageEngine bankStorageEngine) {
         currencyFormat = extension.getConfig().getEcoFormat();
+        fixedPoint = extension.getConfig().getFixedPoint();
         playerPDS = playerStorageEngine;
         bankPDS = bankStorageEngine;
+        transfers = new TransferEngine(playerPDS, bankPDS, fixedPoint);
     }
 
     @Override
@@ -80,6 +87,16 @@ public class DefaultEconomyProvider implements EasyconomyEcoAPI {
         return playerPDS.getOrDefault(player, Double.NEGATIVE_INFINITY);
     }
 
+    @Override
+    public double @NotNull[] getPlayerBalances(@NotNull UUID @NotNull[] players) {
+        return playerPDS.getBalances(players, Double.NEGATIVE_INFINITY);
+    }
+
+    @Override
+    public double @NotNull[] applyPlayerDeltas(@NotNull UUID @NotNull[] players, double @NotNull[] amounts) {
+        return playerPDS.addAndGetAll(players, amounts);
+    }
+
     @Override
     public @NotNull PlayerDataStorage getPlayerDataStorage() {
         return playerPDS;
@@ -87,10 +104,7 @@ public class DefaultEconomyProvider implements EasyconomyEcoAPI {
 
     @Override
     public double givePlayerMoney(@NotNull UUID player, double amount) {
-        final double newBalance = BigDecimal.valueOf(playerPDS.getOrDefault(player, 0.0))
-                                            .add(BigDecimal.valueOf(amount)).doubleValue();
-        playerPDS.set(player, newBalance);
-        return newBalance;
+        return playerPDS.addAndGet(player, amount);
     }
 
     @Override
@@ -100,16 +114,13 @@ public class DefaultEconomyProvider implements EasyconomyEcoAPI {
 
     @Override
     public double removePlayerMoney(@NotNull UUID player, double amount) {
-        final double newBalance = BigDecimal.valueOf(playerPDS.getOrDefault(player, 0.0))
-                                            .subtract(BigDecimal.valueOf(amount)).doubleValue();
-        playerPDS.set(player, newBalance);
-        return newBalance;
+        return playerPDS.addAndGet(player, -amount);
     }
 
     @Override
     public double setBalance(@NotNull UUID player, double amount) {
         final double oldBalance = playerPDS.getOrDefault(player, Double.NEGATIVE_INFINITY);
-        playerPDS.set(player, amount);
+        playerPDS.set(player, toBalance(amount));
         return oldBalance;
     }
 
@@ -119,9 +130,67 @@ public class DefaultEconomyProvider implements EasyconomyEcoAPI {
         if (b == null) {
             return Double.NEGATIVE_INFINITY;
         }
-        double oldAmount = b.getMoney();
-        b.setMoney(amount);
-        return oldAmount;
+        synchronized (b) {
+            double oldAmount = b.getMoney();
+            b.setMoney(toBalance(amount));
+            return oldAmount;
+        }
+    }
+
+    @Override
+    public boolean giveBankMoney(@NotNull String bankName, double amount) {
+        Bank bank = bankPDS.get(bankName);
+        if (bank == null) {
+            return false;
+        }
+        addBankMoney(bank, amount);
+        return true;
+    }
+
+    @Override
+    public @NotNull WithdrawResult withdrawBankIfAtLeast(@NotNull String bankName, double amount) {
+        Bank bank = bankPDS.get(bankName);
+        if (bank == null) {
+            return WithdrawResult.failure(Double.NEGATIVE_INFINITY);
+        }
+        synchronized (bank) {
+            double balance = bank.getMoney();
+            if (!(balance >= amount)) {
+                return WithdrawResult.failure(balance);
+            }
+            addBankMoney(bank, -amount);
+            return WithdrawResult.success(bank.getMoney());
+        }
+    }
+
+    /**
+     * Adds money to a bank, which is done in minor units if fixed-point balances are enabled.
+     */
+    private void addBankMoney(@NotNull Bank bank, double amount) {
+        if (fixedPoint == null) {
+            bank.addMoney(amount);
+        } else {
+            synchronized (bank) {
+                bank.setMoney(fixedPoint.add(bank.getMoney(), amount));
+            }
+        }
+    }
+
+    @Override
+    public boolean removeBankMoney(@NotNull String bankName, double amount) {
+        return giveBankMoney(bankName, -amount);
+    }
+
+    @Override
+    public boolean transfer(@NotNull AccountKey src, @NotNull AccountKey dest, double amount, boolean failIfInsufficient) {
+        return transfers.transfer(src, dest, amount, failIfInsufficient);
+    }
+
+    /**
+     * Rounds a balance that is set from the outside to the nearest minor unit if fixed-point balances are enabled.
+     */
+    private double toBalance(double amount) {
+        return fixedPoint == null ? amount : fixedPoint.round(amount);
     }
 
 }